@@ -0,0 +1,192 @@
+package liquibase.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import liquibase.util.JsonRowReader;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and compares their scores with a baseline result file.
+ * A benchmark whose score is worse than its baseline by more than the
+ * threshold fails the run, and so does a missing baseline file. Scores are
+ * only comparable on the machine they were measured on, so with
+ * <code>benchmark.record</code> set to true the results of the run are
+ * recorded as the baseline instead.
+ * <p>
+ * Settings are system properties: <code>benchmark.include</code>,
+ * <code>benchmark.results</code>, <code>benchmark.baseline</code>,
+ * <code>benchmark.threshold</code>, a fraction such as <code>0.25</code>, and
+ * <code>benchmark.record</code>.
+ */
+public class BenchmarkGate {
+
+	private final File results;
+	private final File baseline;
+	private final double threshold;
+	private final boolean record;
+
+	public BenchmarkGate(File results, File baseline, double threshold, boolean record) {
+		this.results = results;
+		this.baseline = baseline;
+		this.threshold = threshold;
+		this.record = record;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkGate gate = new BenchmarkGate(new File(System.getProperty("benchmark.results", "target/jmh-result.json")),
+				new File(System.getProperty("benchmark.baseline", "baseline.json")),
+				Double.parseDouble(System.getProperty("benchmark.threshold", "0.25")),
+				Boolean.getBoolean("benchmark.record"));
+		gate.run(System.getProperty("benchmark.include", "liquibase.benchmark.*"));
+		List<String> regressions = gate.check();
+		if (!regressions.isEmpty()) {
+			System.err.println(regressions.size() + " benchmark check(s) failed, threshold " + Math.round(gate.threshold * 100) + "%:");
+			for (String regression : regressions) {
+				System.err.println("  " + regression);
+			}
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Runs the benchmarks matching the expression, writing the result file.
+	 */
+	public void run(String include) throws RunnerException {
+		File directory = results.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		Options options = new OptionsBuilder()
+				.include(include)
+				.resultFormat(ResultFormatType.JSON)
+				.result(results.getPath())
+				.build();
+		new Runner(options).run();
+	}
+
+	/**
+	 * Compares the result file with the baseline, or records it as the
+	 * baseline if <code>record</code> is set.
+	 *
+	 * @return description of each regression, or of the missing baseline
+	 */
+	public List<String> check() throws IOException {
+		List<String> regressions = new ArrayList<String>();
+		if (record) {
+			copy(results, baseline);
+			System.out.println("Recorded this run as the benchmark baseline " + baseline.getAbsolutePath());
+			return regressions;
+		}
+		if (!baseline.exists()) {
+			regressions.add("no baseline " + baseline.getAbsolutePath() + ", run with -Dbenchmark.record=true to record one");
+			return regressions;
+		}
+		Map<String, Score> baselineScores = readScores(baseline);
+		for (Map.Entry<String, Score> entry : readScores(results).entrySet()) {
+			Score score = entry.getValue();
+			Score base = baselineScores.get(entry.getKey());
+			if (base == null || !base.unit.equals(score.unit)) {
+				System.out.println(entry.getKey() + ": " + score + ", no baseline");
+				continue;
+			}
+			// average and sample times are better when lower, throughput when higher
+			double change = score.higherIsBetter() ? base.value / score.value - 1 : score.value / base.value - 1;
+			String line = entry.getKey() + ": " + score + ", baseline " + base + " (" + (change > 0 ? "+" : "") + Math.round(change * 100) + "%)";
+			System.out.println(line);
+			if (change > threshold) {
+				regressions.add(line);
+			}
+		}
+		return regressions;
+	}
+
+	/**
+	 * Primary scores of a JMH JSON result file by benchmark and parameters.
+	 */
+	static Map<String, Score> readScores(File file) throws IOException {
+		Map<String, Score> scores = new LinkedHashMap<String, Score>();
+		JsonRowReader reader = new JsonRowReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			Map<String, Object> row;
+			while ((row = reader.readRow()) != null) {
+				Object metric = row.get("primaryMetric");
+				if (!(metric instanceof Map)) {
+					continue;
+				}
+				Object value = ((Map<?, ?>) metric).get("score");
+				if (!(value instanceof Number)) {
+					continue;
+				}
+				StringBuilder key = new StringBuilder(String.valueOf(row.get("benchmark")));
+				Object params = row.get("params");
+				if (params instanceof Map) {
+					String separator = ":";
+					for (Map.Entry<?, ?> param : new TreeMap<Object, Object>((Map<?, ?>) params).entrySet()) {
+						key.append(separator).append(param.getKey()).append('=').append(param.getValue());
+						separator = ",";
+					}
+				}
+				scores.put(key.toString(), new Score(((Number) value).doubleValue(),
+						String.valueOf(((Map<?, ?>) metric).get("scoreUnit")), String.valueOf(row.get("mode"))));
+			}
+		} finally {
+			reader.close();
+		}
+		return scores;
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		try {
+			OutputStream out = new FileOutputStream(to);
+			try {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	static class Score {
+		final double value;
+		final String unit;
+		final String mode;
+
+		Score(double value, String unit, String mode) {
+			this.value = value;
+			this.unit = unit;
+			this.mode = mode;
+		}
+
+		boolean higherIsBetter() {
+			return "thrpt".equals(mode);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.3f %s", value, unit);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package liquibase.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Computing the checksum of a change set, done for every change set of the
+ * changelog on each update, and parsing one read from databasechangelog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckSumBenchmark {
+
+	@Param({ "1", "20" })
+	public int changes;
+
+	private ChangeSet changeSet;
+	private String storedCheckSum;
+
+	@Setup
+	public void setUp() {
+		changeSet = Fixtures.changeSet("create-raw-metrics", changes);
+		storedCheckSum = changeSet.generateCheckSum().toString();
+	}
+
+	@Benchmark
+	public CheckSum generateCheckSum() {
+		return changeSet.generateCheckSum();
+	}
+
+	@Benchmark
+	public boolean parseAndCompare() {
+		return CheckSum.parse(storedCheckSum).equals(changeSet.generateCheckSum());
+	}
+}
@@ -0,0 +1,52 @@
+package liquibase.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import liquibase.database.core.CassandraDatabase;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.core.CreateTableGeneratorCassandra;
+import liquibase.statement.core.CreateTableStatement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generating the CQL of a <code>createTable</code> with a compound partition
+ * key, clustering order and table options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateTableBenchmark {
+
+	@Param({ "10", "100" })
+	public int columns;
+
+	private final CreateTableGeneratorCassandra generator = new CreateTableGeneratorCassandra();
+	private CassandraDatabase database;
+	private CreateTableStatement statement;
+
+	@Setup
+	public void setUp() {
+		database = new CassandraDatabase();
+		database.setDefaultSchemaName("benchmark");
+		statement = (CreateTableStatement) Fixtures.createTable("raw_metrics", columns).generateStatements(database)[0];
+	}
+
+	@Benchmark
+	public Sql[] generateSql() {
+		return generator.generateSql(statement, database, null);
+	}
+}
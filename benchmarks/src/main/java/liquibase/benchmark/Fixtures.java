@@ -0,0 +1,56 @@
+package liquibase.benchmark;
+
+import liquibase.change.ColumnConfig;
+import liquibase.change.ConstraintsConfig;
+import liquibase.change.core.CreateTableChangeCassandra;
+import liquibase.changelog.ChangeSet;
+
+/**
+ * Change sets the benchmarks work on, shaped like the ones of a time series
+ * schema.
+ */
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	/**
+	 * A table partitioned by <code>schedule_id</code> and <code>day</code>,
+	 * clustered by <code>time</code>, with <code>columns</code> columns in
+	 * total and table options.
+	 */
+	static CreateTableChangeCassandra createTable(String tableName, int columns) {
+		CreateTableChangeCassandra change = new CreateTableChangeCassandra();
+		change.setSchemaName("benchmark");
+		change.setTableName(tableName);
+		change.setRemarks("raw samples, one partition per schedule and day");
+		change.setPartitionKey("schedule_id, day");
+		change.setClusteringOrder("time DESC");
+		change.setCompaction("TimeWindowCompactionStrategy");
+		change.setDefaultTimeToLive(604800);
+		change.setBloomFilterFpChance(0.01);
+		change.addColumn(primaryKey("schedule_id", "int"));
+		change.addColumn(primaryKey("day", "int"));
+		change.addColumn(primaryKey("time", "timestamp"));
+		String[] types = { "double", "varchar(255)", "bigint", "map<text, text>", "uuid", "boolean" };
+		for (int i = 3; i < columns; i++) {
+			change.addColumn(new ColumnConfig().setName("value_" + i).setType(types[i % types.length]));
+		}
+		return change;
+	}
+
+	/**
+	 * A change set creating <code>changes</code> tables.
+	 */
+	static ChangeSet changeSet(String id, int changes) {
+		ChangeSet changeSet = new ChangeSet(id, "benchmark", false, false, "db/changelog/benchmark.xml", null, null, null);
+		for (int i = 0; i < changes; i++) {
+			changeSet.addChange(createTable("raw_metrics_" + i, 10));
+		}
+		return changeSet;
+	}
+
+	private static ColumnConfig primaryKey(String name, String type) {
+		return new ColumnConfig().setName(name).setType(type).setConstraints(new ConstraintsConfig().setPrimaryKey(true));
+	}
+}
@@ -0,0 +1,63 @@
+package liquibase.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LockException;
+import liquibase.lockservice.LockServiceCassandra;
+import liquibase.standin.CassandraStandIn;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Taking and releasing the changelog lock with its lightweight transactions,
+ * answered by a {@link CassandraStandIn}. The lease is off, so no heartbeat
+ * thread is started.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockBenchmark {
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+	private LockServiceCassandra lockService;
+
+	@Setup
+	public void setUp() throws Exception {
+		CassandraConfiguration.getInstance().setLockLeaseTime(0);
+		node = new CassandraStandIn();
+		database = node.connect("benchmark");
+		lockService = new LockServiceCassandra();
+		lockService.setDatabase(database);
+		lockService.init();
+	}
+
+	@TearDown
+	public void tearDown() throws DatabaseException {
+		database.close();
+		node.shutdown();
+	}
+
+	@Benchmark
+	public boolean acquireAndRelease() throws LockException {
+		boolean acquired = lockService.acquireLock();
+		lockService.releaseLock();
+		return acquired;
+	}
+}
@@ -0,0 +1,63 @@
+package liquibase.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.core.MarkChangeSetRanGeneratorCassandra;
+import liquibase.standin.CassandraStandIn;
+import liquibase.statement.core.MarkChangeSetRanStatement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generating the history write of a change set: the databasechangelog row,
+ * including its checksum, and the databasechangeloghead rows batched with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarkChangeSetRanBenchmark {
+
+	@Param({ "EXECUTED", "RERAN" })
+	public String execType;
+
+	private final MarkChangeSetRanGeneratorCassandra generator = new MarkChangeSetRanGeneratorCassandra();
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+	private MarkChangeSetRanStatement statement;
+
+	@Setup
+	public void setUp() throws Exception {
+		node = new CassandraStandIn();
+		database = node.connect("benchmark");
+		statement = new MarkChangeSetRanStatement(Fixtures.changeSet("create-raw-metrics", 1), ChangeSet.ExecType.valueOf(execType));
+	}
+
+	@TearDown
+	public void tearDown() throws DatabaseException {
+		database.close();
+		node.shutdown();
+	}
+
+	@Benchmark
+	public Sql[] generateSql() {
+		return generator.generateSql(statement, database, null);
+	}
+}
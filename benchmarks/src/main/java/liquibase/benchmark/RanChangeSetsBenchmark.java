@@ -0,0 +1,78 @@
+package liquibase.benchmark;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import liquibase.changelog.ChangeLogHistoryServiceCassandra;
+import liquibase.changelog.RanChangeSet;
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.standin.CassandraStandIn;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the history: paging through databasechangelog and converting each
+ * row to a {@link RanChangeSet}. The history holds rows of
+ * <code>loadData</code> change sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RanChangeSetsBenchmark {
+
+	@Param({ "100", "10000" })
+	public int changeSets;
+
+	@Param({ "1000" })
+	public int fetchSize;
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+	private ChangeLogHistoryServiceCassandra historyService;
+
+	@Setup
+	public void setUp() throws Exception {
+		CassandraConfiguration.getInstance().setHistoryFetchSize(fetchSize);
+		node = new CassandraStandIn();
+		database = node.connect("benchmark");
+		historyService = new ChangeLogHistoryServiceCassandra();
+		historyService.setDatabase(database);
+		historyService.init();
+		long time = 1420070400000L;
+		for (int i = 0; i < changeSets; i++) {
+			node.execute("benchmark", "INSERT INTO databasechangelog (ID, AUTHOR, FILENAME, MD5SUM, DATEEXECUTED, ORDEREXECUTED, EXECTYPE, DESCRIPTION, COMMENTS)"
+					+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+					Arrays.asList(String.format("%08d-load-data", i + 1), "benchmark", "db/changelog/release-" + (i / 100) + ".xml",
+							"7:" + String.format("%032x", i), new Date(time + i * 1000L), i + 1, "EXECUTED", "loadData", ""));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws DatabaseException {
+		database.close();
+		node.shutdown();
+	}
+
+	@Benchmark
+	public List<RanChangeSet> getRanChangeSets() throws DatabaseException {
+		return historyService.getRanChangeSets();
+	}
+}
@@ -0,0 +1,157 @@
+package liquibase.change.core;
+
+import liquibase.change.AbstractChange;
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.BackfillStatementCassandra;
+
+/**
+ * Updates every row of a table with CQL, for backfills after a schema change.
+ * The table is read in parallel token ranges and the progress is checkpointed,
+ * so a failed run resumes where it stopped, see
+ * {@link liquibase.database.core.CassandraBackfill}.
+ * <pre>
+ * &lt;ext:backfill tableName="gs_order" select="id, legacy_attr"
+ *         update="UPDATE gs_order SET attr_['legacy'] = :legacy_attr WHERE id = :id" maxRowsPerSecond="5000"/&gt;
+ * </pre>
+ */
+@DatabaseChange(name = "backfill", description = "Runs a CQL update for every row of a Cassandra table",
+        priority = ChangeMetaData.PRIORITY_DEFAULT, appliesTo = "table")
+public class BackfillChangeCassandra extends AbstractChange {
+
+    private String schemaName;
+    private String tableName;
+    private String select;
+    private String update;
+    private String backfillId;
+    private Integer threads;
+    private Integer rangeCount;
+    private Integer pageSize;
+    private Integer maxRowsPerSecond;
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof CassandraDatabase;
+    }
+
+    @DatabaseChangeProperty(mustEqualExisting = "table.schema")
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public void setSchemaName(String schemaName) {
+        this.schemaName = schemaName;
+    }
+
+    @DatabaseChangeProperty(mustEqualExisting = "table", description = "Table whose rows are updated")
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    @DatabaseChangeProperty(description = "Columns read for each row, e.g. 'id, legacy_attr'")
+    public String getSelect() {
+        return select;
+    }
+
+    public void setSelect(String select) {
+        this.select = select;
+    }
+
+    @DatabaseChangeProperty(description = "CQL run for each row, with :column markers for the selected values")
+    public String getUpdate() {
+        return update;
+    }
+
+    public void setUpdate(String update) {
+        this.update = update;
+    }
+
+    @DatabaseChangeProperty(description = "Name of the checkpoints, by default id, author and file of the change set")
+    public String getBackfillId() {
+        return backfillId;
+    }
+
+    public void setBackfillId(String backfillId) {
+        this.backfillId = backfillId;
+    }
+
+    @DatabaseChangeProperty(description = "Token ranges processed at the same time")
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    @DatabaseChangeProperty(description = "Number of token ranges the ring is split into")
+    public Integer getRangeCount() {
+        return rangeCount;
+    }
+
+    public void setRangeCount(Integer rangeCount) {
+        this.rangeCount = rangeCount;
+    }
+
+    @DatabaseChangeProperty(description = "Rows read per query and between two checkpoints")
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    @DatabaseChangeProperty(description = "Upper bound of the rows updated per second")
+    public Integer getMaxRowsPerSecond() {
+        return maxRowsPerSecond;
+    }
+
+    public void setMaxRowsPerSecond(Integer maxRowsPerSecond) {
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        if (update != null && !update.contains(":")) {
+            errors.addError("update needs :column markers for the selected values");
+        }
+        if ((threads != null && threads < 1) || (rangeCount != null && rangeCount < 1) || (pageSize != null && pageSize < 1)
+                || (maxRowsPerSecond != null && maxRowsPerSecond < 0)) {
+            errors.addError("threads, rangeCount and pageSize must be at least 1, maxRowsPerSecond at least 0");
+        }
+        return errors;
+    }
+
+    public SqlStatement[] generateStatements(Database database) {
+        return new SqlStatement[] {
+                new BackfillStatementCassandra((CassandraDatabase) database, getEffectiveBackfillId(), getSchemaName(), getTableName(),
+                        getSelect(), getUpdate())
+                        .setThreads(threads)
+                        .setRangeCount(rangeCount)
+                        .setPageSize(pageSize)
+                        .setMaxRowsPerSecond(maxRowsPerSecond)
+        };
+    }
+
+    public String getConfirmationMessage() {
+        return "Backfilled " + getTableName();
+    }
+
+    private String getEffectiveBackfillId() {
+        if (backfillId != null || getChangeSet() == null) {
+            return backfillId == null ? getTableName() : backfillId;
+        }
+        return getChangeSet().getId() + ":" + getChangeSet().getAuthor() + ":" + getChangeSet().getFilePath();
+    }
+}
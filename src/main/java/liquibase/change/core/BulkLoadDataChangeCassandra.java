@@ -0,0 +1,87 @@
+package liquibase.change.core;
+
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.BulkLoadStatementCassandra;
+
+/**
+ * loadData for large files. Instead of an INSERT per row it streams the CSV
+ * or JSON file and writes the rows in UNLOGGED batches per partition, with
+ * several batches in flight, see {@link liquibase.database.core.CassandraBulkLoader}.
+ * <pre>
+ * &lt;ext:bulkLoadData tableName="country" file="data/country.json"/&gt;
+ * </pre>
+ * Columns may rename a field with <code>header</code> and <code>name</code>,
+ * or leave it out with <code>type="skip"</code>. Other column settings are
+ * not used, values get the type of their table column.
+ */
+@DatabaseChange(name = "bulkLoadData", description = "Loads CSV or JSON data into a Cassandra table in partition batches",
+        priority = ChangeMetaData.PRIORITY_DATABASE, appliesTo = "table")
+public class BulkLoadDataChangeCassandra extends LoadDataChange {
+
+    private String format;
+
+    @Override
+    public boolean supports(Database database) {
+        return database instanceof CassandraDatabase;
+    }
+
+    @DatabaseChangeProperty(description = "csv or json, by default taken from the file extension", supportsDatabase = "cassandra")
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        if (format != null && !BulkLoadStatementCassandra.FORMAT_CSV.equalsIgnoreCase(format)
+                && !BulkLoadStatementCassandra.FORMAT_JSON.equalsIgnoreCase(format)) {
+            errors.addError("Unknown format '" + format + "', expected csv or json");
+        }
+        return errors;
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        BulkLoadStatementCassandra statement = new BulkLoadStatementCassandra((CassandraDatabase) database, getSchemaName(), getTableName(),
+                getFile(), isRelativeToChangelogFile(), getChangeSet(), getResourceAccessor());
+        statement.setFormat(getEffectiveFormat()).setEncoding(getEncoding());
+        if (getSeparator() != null && getSeparator().length() > 0) {
+            statement.setSeparator(getSeparator().replace("\\t", "\t").charAt(0));
+        }
+        if (getQuotchar() != null && getQuotchar().length() > 0) {
+            statement.setQuotchar(getQuotchar().charAt(0));
+        }
+        for (LoadDataColumnConfig column : getColumns()) {
+            String field = column.getHeader() == null ? column.getName() : column.getHeader();
+            if ("skip".equalsIgnoreCase(column.getType())) {
+                statement.skipColumn(field);
+            } else if (column.getHeader() != null && column.getName() != null) {
+                statement.setColumnName(column.getHeader(), column.getName());
+            }
+        }
+        return new SqlStatement[] { statement };
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Data bulk loaded from " + getFile() + " into " + getTableName();
+    }
+
+    private String getEffectiveFormat() {
+        if (format != null) {
+            return format.toLowerCase();
+        }
+        return getFile() != null && getFile().toLowerCase().endsWith(".json")
+                ? BulkLoadStatementCassandra.FORMAT_JSON : BulkLoadStatementCassandra.FORMAT_CSV;
+    }
+}
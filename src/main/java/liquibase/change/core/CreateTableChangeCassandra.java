@@ -0,0 +1,204 @@
+package liquibase.change.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.exception.ValidationErrors;
+import liquibase.statement.core.CreateTableStatement;
+import liquibase.statement.core.CreateTableStatementCassandra;
+import liquibase.util.StringUtils;
+
+/**
+ * createTable with Cassandra specific attributes for the partition key,
+ * clustering order and table options. Generators of other databases ignore
+ * the attributes, so there it behaves like {@link CreateTableChange}.
+ * <pre>
+ * &lt;createTable tableName="raw_metrics" partitionKey="schedule_id, day" clusteringOrder="time DESC"
+ *         compaction="TimeWindowCompactionStrategy" bloomFilterFpChance="0.01" defaultTimeToLive="604800"&gt;
+ * </pre>
+ */
+@DatabaseChange(name = "createTable", description = "Create Table", priority = ChangeMetaData.PRIORITY_DATABASE)
+public class CreateTableChangeCassandra extends CreateTableChange {
+
+    private String partitionKey;
+    private String clusteringOrder;
+    private String compaction;
+    private String compression;
+    private String caching;
+    private Double bloomFilterFpChance;
+    private Integer defaultTimeToLive;
+    private Integer gcGraceSeconds;
+    private String tableOptions;
+
+    @DatabaseChangeProperty(description = "Comma separated columns of the partition key, by default the first primary key column", supportsDatabase = "cassandra")
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    public void setPartitionKey(String partitionKey) {
+        this.partitionKey = partitionKey;
+    }
+
+    @DatabaseChangeProperty(description = "Comma separated clustering columns with ASC or DESC, e.g. 'time DESC'", supportsDatabase = "cassandra")
+    public String getClusteringOrder() {
+        return clusteringOrder;
+    }
+
+    public void setClusteringOrder(String clusteringOrder) {
+        this.clusteringOrder = clusteringOrder;
+    }
+
+    @DatabaseChangeProperty(description = "Compaction strategy class, or the full compaction map as a CQL literal", supportsDatabase = "cassandra")
+    public String getCompaction() {
+        return compaction;
+    }
+
+    public void setCompaction(String compaction) {
+        this.compaction = compaction;
+    }
+
+    @DatabaseChangeProperty(description = "Compressor class, or the full compression map as a CQL literal", supportsDatabase = "cassandra")
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    @DatabaseChangeProperty(description = "Caching, e.g. 'KEYS_ONLY' or a CQL map literal", supportsDatabase = "cassandra")
+    public String getCaching() {
+        return caching;
+    }
+
+    public void setCaching(String caching) {
+        this.caching = caching;
+    }
+
+    @DatabaseChangeProperty(description = "False positive chance of the sstable bloom filters", supportsDatabase = "cassandra")
+    public Double getBloomFilterFpChance() {
+        return bloomFilterFpChance;
+    }
+
+    public void setBloomFilterFpChance(Double bloomFilterFpChance) {
+        this.bloomFilterFpChance = bloomFilterFpChance;
+    }
+
+    @DatabaseChangeProperty(description = "Seconds after which written cells expire", supportsDatabase = "cassandra")
+    public Integer getDefaultTimeToLive() {
+        return defaultTimeToLive;
+    }
+
+    public void setDefaultTimeToLive(Integer defaultTimeToLive) {
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    @DatabaseChangeProperty(description = "Seconds before tombstones are purged", supportsDatabase = "cassandra")
+    public Integer getGcGraceSeconds() {
+        return gcGraceSeconds;
+    }
+
+    public void setGcGraceSeconds(Integer gcGraceSeconds) {
+        this.gcGraceSeconds = gcGraceSeconds;
+    }
+
+    @DatabaseChangeProperty(description = "Further table options in CQL, joined with AND, e.g. \"read_repair_chance = 0.0 AND speculative_retry = '99PERCENTILE'\"", supportsDatabase = "cassandra")
+    public String getTableOptions() {
+        return tableOptions;
+    }
+
+    public void setTableOptions(String tableOptions) {
+        this.tableOptions = tableOptions;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        if (clusteringOrder != null) {
+            for (String column : splitList(clusteringOrder)) {
+                String[] parts = column.split("\\s+");
+                if (parts.length > 2 || (parts.length == 2 && !parts[1].equalsIgnoreCase("ASC") && !parts[1].equalsIgnoreCase("DESC"))) {
+                    errors.addError("Invalid clustering order '" + column + "', expected a column followed by ASC or DESC");
+                }
+            }
+        }
+        if (bloomFilterFpChance != null && (bloomFilterFpChance <= 0 || bloomFilterFpChance > 1)) {
+            errors.addError("bloomFilterFpChance must be greater than 0 and at most 1");
+        }
+        return errors;
+    }
+
+    @Override
+    protected CreateTableStatement generateCreateTableStatement() {
+        CreateTableStatementCassandra statement = new CreateTableStatementCassandra(getCatalogName(), getSchemaName(), getTableName(), getRemarks());
+        if (partitionKey != null) {
+            statement.setPartitionKeyColumns(splitList(partitionKey));
+        }
+        if (clusteringOrder != null) {
+            for (String column : splitList(clusteringOrder)) {
+                String[] parts = column.split("\\s+");
+                statement.addClusteringOrder(parts[0], parts.length > 1 ? parts[1].toUpperCase() : "ASC");
+            }
+        }
+        if (compaction != null) {
+            statement.setTableOption("compaction", toMapLiteral(compaction, "class"));
+        }
+        if (compression != null) {
+            statement.setTableOption("compression", toMapLiteral(compression, "sstable_compression"));
+        }
+        if (caching != null) {
+            statement.setTableOption("caching", caching.trim().startsWith("{") ? caching.trim() : toStringLiteral(caching.trim()));
+        }
+        if (bloomFilterFpChance != null) {
+            statement.setTableOption("bloom_filter_fp_chance", bloomFilterFpChance.toString());
+        }
+        if (defaultTimeToLive != null) {
+            statement.setTableOption("default_time_to_live", defaultTimeToLive.toString());
+        }
+        if (gcGraceSeconds != null) {
+            statement.setTableOption("gc_grace_seconds", gcGraceSeconds.toString());
+        }
+        if (StringUtils.trimToNull(tableOptions) != null) {
+            for (String option : tableOptions.split("(?i)\\s+AND\\s+(?=\\w+\\s*=)")) {
+                int equals = option.indexOf('=');
+                if (equals > 0) {
+                    statement.setTableOption(option.substring(0, equals).trim(), option.substring(equals + 1).trim());
+                }
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * A CQL map literal as is, otherwise a map with the value under the given
+     * key.
+     */
+    private static String toMapLiteral(String value, String key) {
+        String trimmed = value.trim();
+        if (trimmed.startsWith("{")) {
+            return trimmed;
+        }
+        return "{'" + key + "': " + toStringLiteral(trimmed) + "}";
+    }
+
+    private static String toStringLiteral(String value) {
+        if (value.startsWith("'") && value.endsWith("'") && value.length() > 1) {
+            return value;
+        }
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<String>();
+        for (String item : value.split(",")) {
+            if (item.trim().length() > 0) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+}
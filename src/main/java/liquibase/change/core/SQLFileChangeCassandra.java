@@ -0,0 +1,63 @@
+package liquibase.change.core;
+
+import liquibase.change.ChangeMetaData;
+import liquibase.change.DatabaseChange;
+import liquibase.change.DatabaseChangeProperty;
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.SqlFileStatementCassandra;
+
+/**
+ * sqlFile that on Cassandra reads the file while running it instead of
+ * loading it into memory, and splits it with a CQL aware splitter, see
+ * {@link SqlFileStatementCassandra}. Other databases get the standard
+ * behaviour.
+ */
+@DatabaseChange(name = "sqlFile", description = "The 'sqlFile' tag allows you to specify any sql statements and have it stored external in a file",
+        priority = ChangeMetaData.PRIORITY_DATABASE)
+public class SQLFileChangeCassandra extends SQLFileChange {
+
+    private Integer batchSize;
+
+    @DatabaseChangeProperty(description = "Consecutive INSERT, UPDATE and DELETE statements of one partition sent per UNLOGGED batch, 1 by default", supportsDatabase = "cassandra")
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = super.validate(database);
+        if (batchSize != null && batchSize < 1) {
+            errors.addError("batchSize must be at least 1");
+        }
+        return errors;
+    }
+
+    @Override
+    public boolean generateStatementsVolatile(Database database) {
+        return database instanceof CassandraDatabase || super.generateStatementsVolatile(database);
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) {
+        if (!(database instanceof CassandraDatabase)) {
+            return super.generateStatements(database);
+        }
+        SqlFileStatementCassandra statement = new SqlFileStatementCassandra((CassandraDatabase) database, getPath(),
+                isRelativeToChangelogFile(), getChangeSet(), getResourceAccessor())
+                .setEncoding(getEncoding())
+                .setEndDelimiter(getEndDelimiter())
+                .setSplitStatements(!Boolean.FALSE.equals(isSplitStatements()))
+                .setStripComments(Boolean.TRUE.equals(isStripComments()));
+        if (batchSize != null) {
+            statement.setBatchSize(batchSize);
+        }
+        return new SqlStatement[] { statement };
+    }
+}
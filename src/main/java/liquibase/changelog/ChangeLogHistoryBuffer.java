@@ -0,0 +1,306 @@
+package liquibase.changelog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraHistoryLayout;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.CassandraNativeExecutor;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.logging.LogFactory;
+import liquibase.metrics.CassandraMetrics;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.sqlgenerator.core.MarkChangeSetRanGeneratorCassandra;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.RawSqlStatement;
+import liquibase.statement.core.UpdateStatement;
+
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.exceptions.DriverException;
+
+/**
+ * Write-behind buffer of databasechangelog rows. Rows of one partition are
+ * written as an UNLOGGED batch, so a batch only goes to the replicas of that
+ * partition; a partition with a single row is written on its own, on a native
+ * connection asynchronously. A row is only dropped from the buffer once it has
+ * been written, so a failed flush can be retried. The databasechangeloghead
+ * rows follow once every row is written.
+ */
+public class ChangeLogHistoryBuffer {
+
+    /**
+     * Upper bound of the statements sent in one batch, well below the
+     * cluster's batch size warning for rows of this size.
+     */
+    public static final int MAX_BATCH_SIZE = 20;
+
+    private static final MarkChangeSetRanGeneratorCassandra MARK_RAN_GENERATOR = new MarkChangeSetRanGeneratorCassandra();
+
+    private final Database database;
+    private final List<Entry> pending = new ArrayList<Entry>();
+    private int flushCount;
+
+    public ChangeLogHistoryBuffer(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Buffers the write of a change set's row. A row that already has a
+     * buffered write is preceded by a flush, since writes in one batch share a
+     * timestamp and would not apply in order.
+     */
+    public synchronized void add(ChangeSet changeSet, ChangeSet.ExecType execType, SqlStatement statement) throws DatabaseException {
+        Object row = getRowKey(statement);
+        for (Entry entry : pending) {
+            if (entry.row.equals(row)) {
+                flush();
+                break;
+            }
+        }
+        pending.add(new Entry(changeSet, execType, statement, getPartitionKey(statement), row));
+    }
+
+    /**
+     * The ran change sets read from the table with the buffered runs applied,
+     * so the history can be read without a flush.
+     */
+    public synchronized List<RanChangeSet> applyTo(List<RanChangeSet> ranChangeSets) {
+        if (pending.isEmpty()) {
+            return ranChangeSets;
+        }
+        List<RanChangeSet> applied = new ArrayList<RanChangeSet>(ranChangeSets);
+        for (Entry entry : pending) {
+            for (Iterator<RanChangeSet> iterator = applied.iterator(); iterator.hasNext();) {
+                if (iterator.next().isSameAs(entry.changeSet)) {
+                    iterator.remove();
+                }
+            }
+            applied.add(new RanChangeSet(entry.changeSet, entry.execType, entry.changeSet.getContexts(), entry.changeSet.getLabels()));
+        }
+        return applied;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Number of flushes that wrote at least one row.
+     */
+    public synchronized int getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Writes every buffered row.
+     */
+    public synchronized void flush() throws DatabaseException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Executor executor = ExecutorService.getInstance().getExecutor(database);
+        int rows = pending.size();
+        CassandraMetrics metrics = ((CassandraDatabase) database).getMetrics();
+        long start = CassandraMetrics.start();
+        boolean failed = true;
+        try {
+            String lastChangeSetId = pending.get(pending.size() - 1).changeSet.getId();
+            SqlStatement lastStatement = pending.get(pending.size() - 1).statement;
+            SqlStatement lastInsert = null;
+            for (Entry entry : pending) {
+                if (entry.statement instanceof InsertStatement) {
+                    lastInsert = entry.statement;
+                }
+            }
+            List<Entry> singles = new ArrayList<Entry>();
+            for (List<Entry> batch : toBatches()) {
+                if (batch.size() == 1) {
+                    singles.add(batch.get(0));
+                    continue;
+                }
+                List<SqlStatement> statements = new ArrayList<SqlStatement>();
+                for (Entry entry : batch) {
+                    statements.add(entry.statement);
+                }
+                try {
+                    if (executor instanceof CassandraNativeExecutor) {
+                        ((CassandraNativeExecutor) executor).executeUnloggedBatch(statements);
+                    } else {
+                        executor.execute(new RawSqlStatement(CassandraDatabase.toUnloggedBatch(toCql(statements))));
+                    }
+                } catch (DatabaseException e) {
+                    throw recordFailure(e);
+                }
+                pending.removeAll(batch);
+            }
+            writeSingles(executor, singles);
+            if (MARK_RAN_GENERATOR.hasHeadTable(database)) {
+                for (SqlStatement head : MARK_RAN_GENERATOR.generateHeadStatements(database, lastChangeSetId, lastStatement, lastInsert)) {
+                    executor.execute(head);
+                }
+            }
+            database.commit();
+            failed = false;
+        } finally {
+            metrics.record(CassandraMetrics.HISTORY_WRITE, start, failed);
+        }
+        metrics.increment(CassandraMetrics.HISTORY_ROWS_WRITTEN, rows);
+        flushCount++;
+        LogFactory.getLogger().debug("Wrote " + rows + " buffered " + database.getDatabaseChangeLogTableName() + " rows");
+    }
+
+    /**
+     * Writes rows that are alone in their partition one by one. On a native
+     * connection they are sent asynchronously, at most
+     * <code>maxConcurrentWrites</code> at a time.
+     */
+    private void writeSingles(Executor executor, List<Entry> singles) throws DatabaseException {
+        if (!(executor instanceof CassandraNativeExecutor)) {
+            for (Entry entry : singles) {
+                try {
+                    executor.execute(entry.statement);
+                } catch (DatabaseException e) {
+                    throw recordFailure(e);
+                }
+                pending.remove(entry);
+            }
+            return;
+        }
+        CassandraNativeExecutor nativeExecutor = (CassandraNativeExecutor) executor;
+        int window = Math.max(1, CassandraConfiguration.getInstance().getMaxConcurrentWrites());
+        for (int from = 0; from < singles.size(); from += window) {
+            List<Entry> sent = singles.subList(from, Math.min(singles.size(), from + window));
+            List<ResultSetFuture> futures = new ArrayList<ResultSetFuture>();
+            DatabaseException failure = null;
+            for (Entry entry : sent) {
+                try {
+                    futures.add(nativeExecutor.executeAsync(entry.statement));
+                } catch (DatabaseException e) {
+                    failure = e;
+                    break;
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).getUninterruptibly();
+                    pending.remove(sent.get(i));
+                } catch (DriverException e) {
+                    if (failure == null) {
+                        failure = new DatabaseException(e.getMessage(), e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw recordFailure(failure);
+            }
+        }
+    }
+
+    private DatabaseException recordFailure(DatabaseException e) {
+        return new DatabaseException("Could not record " + pending.size() + " executed change sets, starting with "
+                + pending.get(0).changeSet + ": " + e.getMessage(), e);
+    }
+
+    /**
+     * Groups the rows by partition, in the order the partitions were first
+     * written. Each group becomes its own batch; a partition holding more
+     * than {@link #MAX_BATCH_SIZE} rows is split into several.
+     */
+    private List<List<Entry>> toBatches() {
+        Map<Object, List<Entry>> partitions = new LinkedHashMap<Object, List<Entry>>();
+        for (Entry entry : pending) {
+            List<Entry> partition = partitions.get(entry.partition);
+            if (partition == null) {
+                partition = new ArrayList<Entry>();
+                partitions.put(entry.partition, partition);
+            }
+            partition.add(entry);
+        }
+
+        List<List<Entry>> batches = new ArrayList<List<Entry>>();
+        for (List<Entry> partition : partitions.values()) {
+            for (int from = 0; from < partition.size(); from += MAX_BATCH_SIZE) {
+                batches.add(new ArrayList<Entry>(partition.subList(from, Math.min(partition.size(), from + MAX_BATCH_SIZE))));
+            }
+        }
+        return batches;
+    }
+
+    private List<String> toCql(List<SqlStatement> statements) {
+        List<String> cql = new ArrayList<String>();
+        for (SqlStatement statement : statements) {
+            for (Sql sql : SqlGeneratorFactory.getInstance().generateSql(statement, database)) {
+                cql.add(sql.toSql());
+            }
+        }
+        return cql;
+    }
+
+    /**
+     * The partition key of the row written: the change set ID, or the bucket
+     * in the v2 layout.
+     */
+    protected Object getPartitionKey(SqlStatement statement) {
+        if (statement instanceof InsertStatement) {
+            Object bucket = ((InsertStatement) statement).getColumnValue(CassandraHistoryLayout.BUCKET);
+            if (bucket != null) {
+                return bucket;
+            }
+            Object id = ((InsertStatement) statement).getColumnValue("ID");
+            if (id != null) {
+                return id;
+            }
+        } else if (statement instanceof UpdateStatement) {
+            List<Object> parameters = ((UpdateStatement) statement).getWhereParameters();
+            if (parameters != null && !parameters.isEmpty()) {
+                return parameters.get(0);
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * The row written: its partition, or the bucket and ORDEREXECUTED in the
+     * v2 layout, where many rows share a partition.
+     */
+    protected Object getRowKey(SqlStatement statement) {
+        if (statement instanceof InsertStatement) {
+            InsertStatement insert = (InsertStatement) statement;
+            if (insert.getColumnValue(CassandraHistoryLayout.BUCKET) != null) {
+                return Arrays.asList(insert.getColumnValue(CassandraHistoryLayout.BUCKET), insert.getColumnValue("ORDEREXECUTED"));
+            }
+        } else if (statement instanceof UpdateStatement) {
+            UpdateStatement update = (UpdateStatement) statement;
+            if (update.getWhereClause() != null && update.getWhereClause().trim().startsWith(CassandraHistoryLayout.BUCKET)) {
+                return new ArrayList<Object>(update.getWhereParameters());
+            }
+        }
+        return getPartitionKey(statement);
+    }
+
+    private static class Entry {
+        private final ChangeSet changeSet;
+        private final ChangeSet.ExecType execType;
+        private final SqlStatement statement;
+        private final Object partition;
+        private final Object row;
+
+        private Entry(ChangeSet changeSet, ChangeSet.ExecType execType, SqlStatement statement, Object partition, Object row) {
+            this.changeSet = changeSet;
+            this.execType = execType;
+            this.statement = statement;
+            this.partition = partition;
+            this.row = row;
+        }
+    }
+}
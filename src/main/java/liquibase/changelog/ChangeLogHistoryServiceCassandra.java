@@ -1,21 +1,23 @@
 package liquibase.changelog;
 
+import liquibase.configuration.CassandraConfiguration;
 import liquibase.database.Database;
 import liquibase.database.core.CassandraDatabase;
-import liquibase.database.jvm.JdbcConnection;
+import liquibase.database.core.CassandraHistoryLayout;
 import liquibase.exception.DatabaseException;
+import liquibase.exception.DatabaseHistoryException;
 import liquibase.exception.LiquibaseException;
+import liquibase.exception.LockException;
 import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.executor.Executor;
 import liquibase.executor.ExecutorService;
+import liquibase.lockservice.LockServiceCassandra;
+import liquibase.metrics.CassandraMetrics;
 import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.sqlgenerator.core.MarkChangeSetRanGeneratorCassandra;
 import liquibase.statement.SqlStatement;
 import liquibase.statement.core.*;
 
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -29,6 +31,9 @@ import org.slf4j.LoggerFactory;
 public class ChangeLogHistoryServiceCassandra extends StandardChangeLogHistoryService {
 
     private static final Logger log = LoggerFactory.getLogger(ChangeLogHistoryServiceCassandra.class);
+    private static final MarkChangeSetRanGeneratorCassandra MARK_RAN_GENERATOR = new MarkChangeSetRanGeneratorCassandra();
+
+    private ChangeLogHistoryBuffer buffer;
 
     @Override
     public int getPriority() {
@@ -39,6 +44,12 @@ public class ChangeLogHistoryServiceCassandra extends StandardChangeLogHistorySe
     public boolean supports(Database database) {
         return database instanceof CassandraDatabase;
     }
+
+    @Override
+    public void setDatabase(Database database) {
+        super.setDatabase(database);
+        ((CassandraDatabase) database).installNativeExecutor();
+    }
   
     @Override
     public boolean hasDatabaseChangeLogTable() throws DatabaseException {
@@ -56,7 +67,12 @@ public class ChangeLogHistoryServiceCassandra extends StandardChangeLogHistorySe
     	if(!hasTable(database, database.getDatabaseChangeLogTableName())) {
     		SqlStatement createTableStatement = new CreateDatabaseChangeLogTableStatement();
     		if (SqlGeneratorFactory.getInstance().supports(createTableStatement, database)) {
-        		executor.execute(createTableStatement);
+        		try {
+        			executor.execute(createTableStatement);
+        		} finally {
+        			((CassandraDatabase) database).invalidateKeyspaceMetadata();
+        		}
+        		((CassandraDatabase) database).recordHistoryLayout();
                 getDatabase().commit();
              } else {
             	 log.info("Cannot run "+createTableStatement.getClass().getSimpleName()+" on "+getDatabase().getShortName()+" when checking databasechangelog table");
@@ -64,52 +80,162 @@ public class ChangeLogHistoryServiceCassandra extends StandardChangeLogHistorySe
     	 }
     }
 
+    /**
+     * Creates the databasechangeloghead table first, it records the layout of
+     * a new history table.
+     */
     @Override
     public void init() throws DatabaseException {
+    	((CassandraDatabase) getDatabase()).checkDatabaseChangeLogHeadTable();
     	initialzeChangeLogTable();
     }
 
+    /**
+     * The v2 layout is not keyed by ID, the row is deleted by the bucket and
+     * ORDEREXECUTED of the change set's last run.
+     */
+    @Override
+    public void removeFromHistory(ChangeSet changeSet) throws DatabaseException {
+        flush();
+        CassandraDatabase database = (CassandraDatabase) getDatabase();
+        if (database.getHistoryLayout() == CassandraHistoryLayout.V2) {
+            RanChangeSet ranChangeSet;
+            try {
+                ranChangeSet = getRanChangeSet(changeSet);
+            } catch (DatabaseHistoryException e) {
+                throw new DatabaseException(e);
+            }
+            if (ranChangeSet != null && ranChangeSet.getOrderExecuted() != null) {
+                ExecutorService.getInstance().getExecutor(database).execute(new RawSqlStatement("DELETE FROM "
+                        + database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName())
+                        + " WHERE BUCKET = " + CassandraHistoryLayout.getBucket(ranChangeSet.getOrderExecuted())
+                        + " AND ORDEREXECUTED = " + ranChangeSet.getOrderExecuted()));
+                database.commit();
+            }
+        } else {
+            super.removeFromHistory(changeSet);
+        }
+        database.updateDatabaseChangeLogVersion();
+    }
+
+    /**
+     * Tags through the head row, see {@link CassandraDatabase#tag(String)},
+     * instead of counting the history and updating it with a subselect.
+     */
+    @Override
+    public void tag(String tagString) throws DatabaseException {
+        flush();
+        ((CassandraDatabase) getDatabase()).tag(tagString);
+    }
+
+    /**
+     * Clears the checksums with a bulk write by the full key of each row,
+     * see {@link CassandraDatabase#clearChecksums()}; Cassandra has no UPDATE
+     * without a key.
+     */
+    @Override
+    public void clearAllCheckSums() throws LiquibaseException {
+        flush();
+        ((CassandraDatabase) getDatabase()).clearChecksums();
+    }
+
+    /**
+     * With <code>historyWriteBehind</code> on, the row of the change set is
+     * buffered and written in batches; see {@link ChangeLogHistoryBuffer}.
+     * Statements for output instead of execution are never buffered.
+     */
+    @Override
+    public void setExecType(ChangeSet changeSet, ChangeSet.ExecType execType) throws DatabaseException {
+        Database database = getDatabase();
+        checkLease();
+        CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+        boolean updatesDatabase = ExecutorService.getInstance().getExecutor(database).updatesDatabase();
+        if (!configuration.getHistoryWriteBehind() || !updatesDatabase || execType.equals(ChangeSet.ExecType.FAILED)) {
+            flush();
+            if (!updatesDatabase) {
+                super.setExecType(changeSet, execType);
+                return;
+            }
+            CassandraMetrics metrics = ((CassandraDatabase) database).getMetrics();
+            long start = CassandraMetrics.start();
+            boolean failed = true;
+            try {
+                super.setExecType(changeSet, execType);
+                failed = false;
+            } finally {
+                metrics.record(CassandraMetrics.HISTORY_WRITE, start, failed);
+            }
+            metrics.increment(CassandraMetrics.HISTORY_ROWS_WRITTEN, 1);
+            return;
+        }
+
+        SqlStatement runStatement = MARK_RAN_GENERATOR.generateRunStatement(new MarkChangeSetRanStatement(changeSet, execType), database);
+        if (runStatement == null) {
+            return;
+        }
+        ChangeLogHistoryBuffer buffer = getBuffer();
+        buffer.add(changeSet, execType, runStatement);
+        if (buffer.size() >= configuration.getHistoryFlushInterval()) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered databasechangelog rows, if any.
+     */
+    public synchronized void flush() throws DatabaseException {
+        if (buffer != null && buffer.size() > 0) {
+            checkLease();
+            buffer.flush();
+        }
+    }
+
+    private void checkLease() throws DatabaseException {
+        try {
+            LockServiceCassandra.checkLease(getDatabase());
+        } catch (LockException e) {
+            throw new DatabaseException(e.getMessage(), e);
+        }
+    }
+
+    private synchronized ChangeLogHistoryBuffer getBuffer() {
+        if (buffer == null) {
+            buffer = new ChangeLogHistoryBuffer(getDatabase());
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes the buffered databasechangelog rows first. If that fails the
+     * rows stay buffered and the update fails, unless the lock lease was
+     * lost: then they are dropped and the change sets run again.
+     */
+    @Override
+    public synchronized void reset() {
+        try {
+            flush();
+        } catch (DatabaseException e) {
+            if (!(e.getCause() instanceof LockException)) {
+                throw new UnexpectedLiquibaseException("Buffered databasechangelog rows were not written: " + e.getMessage(), e);
+            }
+            log.error("Buffered databasechangelog rows were not written", e);
+            buffer = null;
+        }
+        super.reset();
+    }
+
     @Override
 	public List<RanChangeSet> getRanChangeSets() throws DatabaseException {
         Database database = getDatabase();
         CassandraDatabase cassandraDatabase = (CassandraDatabase)database;
-        return cassandraDatabase.getRanChangeSets(this, cassandraDatabase);
+        List<RanChangeSet> ranChangeSets = cassandraDatabase.getRanChangeSets(this, cassandraDatabase);
+        synchronized (this) {
+            return buffer == null ? ranChangeSets : buffer.applyTo(ranChangeSets);
+        }
     }
     
     private boolean hasTable(Database database, String objectName) throws DatabaseException {
-    	Connection connection = null;
-		Statement statement = null;
-		ResultSet resultSet = null;
-		try {
-			String schema = database.getLiquibaseSchemaName();
-				// This is a bit of hack to get at the underlying connection.
-			JdbcConnection wrapperConnection = (JdbcConnection) database
-					.getConnection();
-			connection = wrapperConnection.getUnderlyingConnection();
-			statement = connection.createStatement();
-
-			String sql = "select \"keyspace_name\", \"columnfamily_name\" from \"system\".\"schema_columnfamilies\" where \"keyspace_name\" ='"+schema+"' and \"columnfamily_name\" ='"+objectName.toLowerCase()+"'";
-			resultSet = statement.executeQuery(sql);
-			if (!resultSet.next()) {
-				return false;
-			}
-			return true;
-		} catch (SQLException e) {
-			throw new DatabaseException(e);
-		} finally {
-			if (resultSet != null) {
-				try {
-					resultSet.close();
-				} catch (SQLException e) {
-				}
-			}
-			if (statement != null) {
-				try {
-					statement.close();
-				} catch (SQLException e) {
-				}
-			}
-		}
+    	return ((CassandraDatabase) database).hasTable(objectName);
     }
     
  }
@@ -0,0 +1,321 @@
+package liquibase.changelog.visitor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import liquibase.change.Change;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.filter.ChangeSetFilterResult;
+import liquibase.database.Database;
+import liquibase.database.ObjectQuotingStrategy;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraKeyspaceMetadata;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.MigrationFailedException;
+import liquibase.exception.SetupException;
+import liquibase.lockservice.LockServiceCassandra;
+import liquibase.logging.LogFactory;
+import liquibase.metrics.CassandraMetrics;
+import liquibase.precondition.core.PreconditionContainer;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.RawSqlStatement;
+
+/**
+ * {@link UpdateVisitor} running change sets that only change the schema of
+ * unrelated tables at the same time. Such change sets are collected until a
+ * change set that has to run on its own comes along, or until {@link #flush()}
+ * at the end of the changelog. The collected change sets are put in levels: a
+ * change set touching a table or keyspace of an earlier one goes into a later
+ * level, and the change sets of a level run concurrently on pooled
+ * connections. They are recorded in changelog order once all levels are done,
+ * so ORDEREXECUTED does not depend on which one finished first. If a change
+ * set fails, only the change sets before it in changelog order are recorded;
+ * later ones that already ran run again on the next update, so their CQL
+ * should be idempotent (<code>IF NOT EXISTS</code>).
+ * <p>
+ * A change set only runs in parallel if it has no preconditions or sql
+ * visitors and all its statements are DDL whose tables are known, see
+ * {@link CassandraKeyspaceMetadata#getSchemaObjects(String, String)}.
+ */
+public class ParallelUpdateVisitor extends UpdateVisitor {
+
+    private final CassandraDatabase database;
+    private final int threads;
+    private final List<PlannedChangeSet> planned = new ArrayList<PlannedChangeSet>();
+    private ExecutorService workers;
+
+    public ParallelUpdateVisitor(CassandraDatabase database, ChangeExecListener execListener, int threads) {
+        super(database, execListener);
+        if (threads < 1) {
+            throw new IllegalArgumentException("Parallel update needs at least one thread");
+        }
+        this.database = database;
+        this.threads = threads;
+    }
+
+    @Override
+    public void visit(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database, Set<ChangeSetFilterResult> filterResults) throws LiquibaseException {
+        PlannedChangeSet plan = plan(changeSet, databaseChangeLog);
+        if (plan != null) {
+            plan.filterResults = filterResults;
+            planned.add(plan);
+            return;
+        }
+        flush();
+        super.visit(changeSet, databaseChangeLog, database, filterResults);
+    }
+
+    /**
+     * Runs and records the collected change sets.
+     */
+    public void flush() throws LiquibaseException {
+        if (planned.isEmpty()) {
+            return;
+        }
+        List<PlannedChangeSet> run = new ArrayList<PlannedChangeSet>(planned);
+        planned.clear();
+        if (run.size() == 1) {
+            PlannedChangeSet plan = run.get(0);
+            super.visit(plan.changeSet, plan.changeLog, database, plan.filterResults);
+            return;
+        }
+
+        List<List<PlannedChangeSet>> levels = toLevels(run);
+        LogFactory.getLogger().info("Running " + run.size() + " change sets in " + levels.size() + " parallel steps");
+        PlannedChangeSet failed = null;
+        for (List<PlannedChangeSet> level : levels) {
+            LockServiceCassandra.checkLease(database);
+            for (PlannedChangeSet plan : level) {
+                fireWillRun(plan.changeSet, plan.changeLog, database, plan.runStatus);
+            }
+            failed = runLevel(level);
+            if (failed != null) {
+                break;
+            }
+        }
+        database.awaitSchemaAgreement();
+
+        int recorded = 0;
+        for (PlannedChangeSet plan : run) {
+            if (!plan.done) {
+                break;
+            }
+            ChangeSet.ExecType execType = plan.runStatus.equals(ChangeSet.RunStatus.NOT_RAN)
+                    ? ChangeSet.ExecType.EXECUTED : ChangeSet.ExecType.RERAN;
+            fireRan(plan.changeSet, plan.changeLog, database, execType);
+            database.markChangeSetExecStatus(plan.changeSet, execType);
+            database.commit();
+            recorded++;
+        }
+        for (PlannedChangeSet plan : run.subList(recorded, run.size())) {
+            if (plan.done) {
+                LogFactory.getLogger().warning("ChangeSet " + plan.changeSet.toString(false)
+                        + " ran after a failed change set and is not recorded, it runs again on the next update");
+            }
+        }
+        if (failed != null) {
+            MigrationFailedException e = new MigrationFailedException(failed.changeSet, failed.error.getMessage(), failed.error);
+            fireRunFailed(failed.changeSet, failed.changeLog, database, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+    }
+
+    /**
+     * The CQL and schema objects of a change set that may run in parallel,
+     * or null if it has to run on its own.
+     */
+    protected PlannedChangeSet plan(ChangeSet changeSet, DatabaseChangeLog changeLog) throws LiquibaseException {
+        if (!liquibase.executor.ExecutorService.getInstance().getExecutor(database).updatesDatabase()
+                || !changeSet.getSqlVisitors().isEmpty()
+                || hasPreconditions(changeSet.getPreconditions())
+                || Boolean.FALSE.equals(changeSet.getFailOnError())
+                || changeSet.getOnValidationFail() == ChangeSet.ValidationFailOption.MARK_RAN
+                || changeSet.getChanges().isEmpty()) {
+            return null;
+        }
+
+        String keyspace = database.getDefaultSchemaName() == null ? database.getLiquibaseSchemaName() : database.getDefaultSchemaName();
+        List<String> cql = new ArrayList<String>();
+        Set<String> objects = new HashSet<String>();
+        database.setObjectQuotingStrategy(changeSet.getObjectQuotingStrategy());
+        try {
+            for (Change change : changeSet.getChanges()) {
+                try {
+                    change.finishInitialization();
+                } catch (SetupException e) {
+                    throw new MigrationFailedException(changeSet, e);
+                }
+                if (change.generateStatementsVolatile(database)) {
+                    return null;
+                }
+                for (SqlStatement statement : change.generateStatements(database)) {
+                    if (statement.skipOnUnsupported() && !SqlGeneratorFactory.getInstance().supports(statement, database)) {
+                        continue;
+                    }
+                    List<String> statementCql = new ArrayList<String>();
+                    if (statement instanceof RawSqlStatement) {
+                        statementCql.add(((RawSqlStatement) statement).getSql());
+                    } else {
+                        for (Sql sql : SqlGeneratorFactory.getInstance().generateSql(statement, database)) {
+                            statementCql.add(sql.toSql());
+                        }
+                    }
+                    for (String single : statementCql) {
+                        Set<String> statementObjects = CassandraKeyspaceMetadata.getSchemaObjects(single, keyspace);
+                        if (statementObjects == null) {
+                            return null;
+                        }
+                        objects.addAll(statementObjects);
+                        cql.add(single);
+                    }
+                }
+            }
+        } finally {
+            database.setObjectQuotingStrategy(ObjectQuotingStrategy.LEGACY);
+        }
+        if (cql.isEmpty()) {
+            return null;
+        }
+        return new PlannedChangeSet(changeSet, changeLog, database.getRunStatus(changeSet), cql, objects);
+    }
+
+    /**
+     * Puts each change set one level after the last earlier change set it
+     * shares a schema object with.
+     */
+    protected List<List<PlannedChangeSet>> toLevels(List<PlannedChangeSet> run) {
+        List<List<PlannedChangeSet>> levels = new ArrayList<List<PlannedChangeSet>>();
+        int[] levelOf = new int[run.size()];
+        for (int i = 0; i < run.size(); i++) {
+            int level = 0;
+            for (int j = 0; j < i; j++) {
+                if (levelOf[j] >= level && CassandraKeyspaceMetadata.overlap(run.get(j).objects, run.get(i).objects)) {
+                    level = levelOf[j] + 1;
+                }
+            }
+            levelOf[i] = level;
+            if (levels.size() == level) {
+                levels.add(new ArrayList<PlannedChangeSet>());
+            }
+            levels.get(level).add(run.get(i));
+        }
+        return levels;
+    }
+
+    /**
+     * Runs the change sets of a level and returns the first one in changelog
+     * order that failed. Like on the serial path, each change set first checks
+     * the lock lease and is timed as a {@link CassandraMetrics#CHANGE_SET}.
+     */
+    private PlannedChangeSet runLevel(List<PlannedChangeSet> level) {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final PlannedChangeSet plan : level) {
+            futures.add(getWorkers().submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    LockServiceCassandra.checkLease(database);
+                    CassandraMetrics metrics = database.getMetrics();
+                    metrics.startChangeSet(plan.changeSet.toString(false));
+                    long metricsStart = CassandraMetrics.start();
+                    boolean failed = true;
+                    long start = System.currentTimeMillis();
+                    try {
+                        for (String cql : plan.cql) {
+                            database.executeCql(cql);
+                        }
+                        failed = false;
+                    } finally {
+                        metrics.endChangeSet(metricsStart, failed);
+                    }
+                    plan.done = true;
+                    LogFactory.getLogger().info("ChangeSet " + plan.changeSet.toString(false) + " ran successfully in "
+                            + (System.currentTimeMillis() - start) + "ms");
+                    return null;
+                }
+            }));
+        }
+        PlannedChangeSet failed = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                level.get(i).error = e;
+            } catch (ExecutionException e) {
+                level.get(i).error = e.getCause();
+            }
+            if (level.get(i).error != null && failed == null) {
+                failed = level.get(i);
+            }
+        }
+        return failed;
+    }
+
+    private synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "liquibase-cassandra-changeset-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return workers;
+    }
+
+    private static boolean hasPreconditions(PreconditionContainer preconditions) {
+        return preconditions != null && preconditions.getNestedPreconditions() != null
+                && !preconditions.getNestedPreconditions().isEmpty();
+    }
+
+    protected static class PlannedChangeSet {
+        private final ChangeSet changeSet;
+        private final DatabaseChangeLog changeLog;
+        private final ChangeSet.RunStatus runStatus;
+        private final List<String> cql;
+        private final Set<String> objects;
+        private Set<ChangeSetFilterResult> filterResults;
+        private volatile boolean done;
+        private volatile Throwable error;
+
+        protected PlannedChangeSet(ChangeSet changeSet, DatabaseChangeLog changeLog, ChangeSet.RunStatus runStatus,
+                                   List<String> cql, Set<String> objects) {
+            this.changeSet = changeSet;
+            this.changeLog = changeLog;
+            this.runStatus = runStatus;
+            this.cql = cql;
+            this.objects = objects;
+        }
+
+        public ChangeSet getChangeSet() {
+            return changeSet;
+        }
+
+        public Set<String> getObjects() {
+            return objects;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package liquibase.configuration;
+
+import java.io.File;
+
+/**
+ * Configuration container for the Cassandra extension. Values can be set
+ * through system properties prefixed with <code>liquibase.cassandra.</code>
+ */
+public class CassandraConfiguration extends AbstractConfigurationContainer {
+
+    public static final String CONNECTION_POOL_SIZE = "connectionPoolSize";
+    public static final String CONNECTION_POOL_WAIT_TIME = "connectionPoolWaitTime";
+    public static final String LOCK_RETRY_BASE_DELAY = "lockRetryBaseDelay";
+    public static final String LOCK_RETRY_MAX_DELAY = "lockRetryMaxDelay";
+    public static final String LOCK_LEASE_TIME = "lockLeaseTime";
+    public static final String HISTORY_WRITE_BEHIND = "historyWriteBehind";
+    public static final String HISTORY_FLUSH_INTERVAL = "historyFlushInterval";
+    public static final String HISTORY_FETCH_SIZE = "historyFetchSize";
+    public static final String HISTORY_CACHE = "historyCache";
+    public static final String HISTORY_CACHE_DIRECTORY = "historyCacheDirectory";
+    public static final String SEQUENCE_RESERVATION = "sequenceReservation";
+    public static final String SEQUENCE_BLOCK_SIZE = "sequenceBlockSize";
+    public static final String MAX_CONCURRENT_WRITES = "maxConcurrentWrites";
+    public static final String WRITE_BATCH_SIZE = "writeBatchSize";
+    public static final String SCHEMA_AGREEMENT_TIMEOUT = "schemaAgreementTimeout";
+    public static final String SCHEMA_AGREEMENT_POLL_INTERVAL = "schemaAgreementPollInterval";
+    public static final String PARALLEL_UPDATE = "parallelUpdate";
+    public static final String PARALLEL_UPDATE_THREADS = "parallelUpdateThreads";
+    public static final String BACKFILL_THREADS = "backfillThreads";
+    public static final String BACKFILL_PAGE_SIZE = "backfillPageSize";
+    public static final String BACKFILL_MAX_ROWS_PER_SECOND = "backfillMaxRowsPerSecond";
+    public static final String METRICS_SINK = "metricsSink";
+    public static final String HISTORY_READ_CONSISTENCY = "historyReadConsistency";
+    public static final String HISTORY_WRITE_CONSISTENCY = "historyWriteConsistency";
+    public static final String LOCK_CONSISTENCY = "lockConsistency";
+    public static final String LOCK_SERIAL_CONSISTENCY = "lockSerialConsistency";
+    public static final String DDL_CONSISTENCY = "ddlConsistency";
+    public static final String HISTORY_LAYOUT = "historyLayout";
+    public static final String RETRY_MAX_ATTEMPTS = "retryMaxAttempts";
+    public static final String RETRY_BASE_DELAY = "retryBaseDelay";
+    public static final String RETRY_MAX_DELAY = "retryMaxDelay";
+    public static final String RETRY_DEADLINE = "retryDeadline";
+
+    public CassandraConfiguration() {
+        super("liquibase.cassandra");
+
+        getContainer().addProperty(CONNECTION_POOL_SIZE, Integer.class)
+                .setDescription("Maximum number of connections the extension opens for its own metadata queries")
+                .setDefaultValue(4);
+
+        getContainer().addProperty(CONNECTION_POOL_WAIT_TIME, Long.class)
+                .setDescription("Milliseconds to wait for a free pooled connection before failing")
+                .setDefaultValue(30000L);
+
+        getContainer().addProperty(LOCK_RETRY_BASE_DELAY, Long.class)
+                .setDescription("Milliseconds to back off after the first failed attempt to take the changelog lock")
+                .setDefaultValue(500L);
+
+        getContainer().addProperty(LOCK_RETRY_MAX_DELAY, Long.class)
+                .setDescription("Upper bound in milliseconds of the jittered exponential backoff between lock attempts")
+                .setDefaultValue(10000L);
+
+        getContainer().addProperty(LOCK_LEASE_TIME, Integer.class)
+                .setDescription("Seconds a changelog lock lives without a heartbeat before it expires, 0 for locks that never expire")
+                .setDefaultValue(300);
+
+        getContainer().addProperty(HISTORY_WRITE_BEHIND, Boolean.class)
+                .setDescription("Buffer databasechangelog rows and write them in batches instead of one round trip per change set")
+                .setDefaultValue(false);
+
+        getContainer().addProperty(HISTORY_FLUSH_INTERVAL, Integer.class)
+                .setDescription("Number of buffered databasechangelog rows that triggers a flush when historyWriteBehind is on")
+                .setDefaultValue(50);
+
+        getContainer().addProperty(HISTORY_FETCH_SIZE, Integer.class)
+                .setDescription("Number of databasechangelog rows read per round trip")
+                .setDefaultValue(1000);
+
+        getContainer().addProperty(HISTORY_CACHE, Boolean.class)
+                .setDescription("Keep a local copy of each keyspace's databasechangelog and read it instead of the table while the history is unchanged; every process updating the keyspace needs it on")
+                .setDefaultValue(false);
+
+        getContainer().addProperty(HISTORY_CACHE_DIRECTORY, String.class)
+                .setDescription("Directory of the local databasechangelog copies")
+                .setDefaultValue(new File(System.getProperty("user.home"), ".liquibase" + File.separator + "cassandra").getPath());
+
+        getContainer().addProperty(SEQUENCE_RESERVATION, Boolean.class)
+                .setDescription("Reserve ORDEREXECUTED values cluster-wide in blocks, for migrators running concurrently against one keyspace")
+                .setDefaultValue(false);
+
+        getContainer().addProperty(SEQUENCE_BLOCK_SIZE, Integer.class)
+                .setDescription("Number of ORDEREXECUTED values reserved at a time when sequenceReservation is on")
+                .setDefaultValue(100);
+
+        getContainer().addProperty(MAX_CONCURRENT_WRITES, Integer.class)
+                .setDescription("Maximum number of asynchronous writes in flight during bulk operations on a native connection")
+                .setDefaultValue(32);
+
+        getContainer().addProperty(WRITE_BATCH_SIZE, Integer.class)
+                .setDescription("Number of rows of one partition per UNLOGGED batch during bulk operations")
+                .setDefaultValue(20);
+
+        getContainer().addProperty(SCHEMA_AGREEMENT_TIMEOUT, Long.class)
+                .setDescription("Milliseconds to wait for all nodes to agree on the schema after DDL, 0 to not wait")
+                .setDefaultValue(30000L);
+
+        getContainer().addProperty(SCHEMA_AGREEMENT_POLL_INTERVAL, Long.class)
+                .setDescription("Milliseconds between two schema version checks while waiting for schema agreement")
+                .setDefaultValue(200L);
+
+        getContainer().addProperty(PARALLEL_UPDATE, Boolean.class)
+                .setDescription("Run change sets that only change the schema of unrelated tables concurrently during update")
+                .setDefaultValue(false);
+
+        getContainer().addProperty(PARALLEL_UPDATE_THREADS, Integer.class)
+                .setDescription("Maximum number of change sets run at the same time when parallelUpdate is on")
+                .setDefaultValue(4);
+
+        getContainer().addProperty(BACKFILL_THREADS, Integer.class)
+                .setDescription("Token ranges a backfill processes at the same time")
+                .setDefaultValue(4);
+
+        getContainer().addProperty(BACKFILL_PAGE_SIZE, Integer.class)
+                .setDescription("Rows a backfill reads per query and between two checkpoints of a token range")
+                .setDefaultValue(1000);
+
+        getContainer().addProperty(BACKFILL_MAX_ROWS_PER_SECOND, Integer.class)
+                .setDescription("Upper bound of the rows a backfill writes per second over all threads, 0 for no limit")
+                .setDefaultValue(0);
+
+        getContainer().addProperty(METRICS_SINK, String.class)
+                .setDescription("Where operation timings go: jmx, none or the class name of a MetricsSink")
+                .setDefaultValue("jmx");
+
+        getContainer().addProperty(HISTORY_READ_CONSISTENCY, String.class)
+                .setDescription("Consistency level of databasechangelog reads, e.g. LOCAL_ONE; the driver's default if not set");
+
+        getContainer().addProperty(HISTORY_WRITE_CONSISTENCY, String.class)
+                .setDescription("Consistency level of databasechangelog writes; the driver's default if not set");
+
+        getContainer().addProperty(LOCK_CONSISTENCY, String.class)
+                .setDescription("Consistency level of changelog lock reads and writes; the driver's default if not set");
+
+        getContainer().addProperty(LOCK_SERIAL_CONSISTENCY, String.class)
+                .setDescription("SERIAL or LOCAL_SERIAL, the serial consistency of the changelog lock conditions on cql:// connections");
+
+        getContainer().addProperty(DDL_CONSISTENCY, String.class)
+                .setDescription("Consistency level of schema changes; the driver's default if not set");
+
+        getContainer().addProperty(HISTORY_LAYOUT, String.class)
+                .setDescription("Layout of a new databasechangelog table: v1, one partition per change set ID, or v2, partitions of ORDEREXECUTED buckets")
+                .setDefaultValue("v1");
+
+        getContainer().addProperty(RETRY_MAX_ATTEMPTS, Integer.class)
+                .setDescription("Attempts at an idempotent statement failing with a timeout, unavailable or overloaded error, 1 for no retries")
+                .setDefaultValue(4);
+
+        getContainer().addProperty(RETRY_BASE_DELAY, Long.class)
+                .setDescription("Milliseconds to back off before the first retry of a statement")
+                .setDefaultValue(100L);
+
+        getContainer().addProperty(RETRY_MAX_DELAY, Long.class)
+                .setDescription("Upper bound in milliseconds of the jittered exponential backoff between retries of a statement")
+                .setDefaultValue(5000L);
+
+        getContainer().addProperty(RETRY_DEADLINE, Long.class)
+                .setDescription("Milliseconds after the first attempt at a statement when no more retries are started")
+                .setDefaultValue(60000L);
+    }
+
+    public static CassandraConfiguration getInstance() {
+        return LiquibaseConfiguration.getInstance().getConfiguration(CassandraConfiguration.class);
+    }
+
+    public Integer getConnectionPoolSize() {
+        return getContainer().getValue(CONNECTION_POOL_SIZE, Integer.class);
+    }
+
+    public CassandraConfiguration setConnectionPoolSize(Integer size) {
+        getContainer().setValue(CONNECTION_POOL_SIZE, size);
+        return this;
+    }
+
+    public Long getConnectionPoolWaitTime() {
+        return getContainer().getValue(CONNECTION_POOL_WAIT_TIME, Long.class);
+    }
+
+    public CassandraConfiguration setConnectionPoolWaitTime(Long millis) {
+        getContainer().setValue(CONNECTION_POOL_WAIT_TIME, millis);
+        return this;
+    }
+
+    public Long getLockRetryBaseDelay() {
+        return getContainer().getValue(LOCK_RETRY_BASE_DELAY, Long.class);
+    }
+
+    public CassandraConfiguration setLockRetryBaseDelay(Long millis) {
+        getContainer().setValue(LOCK_RETRY_BASE_DELAY, millis);
+        return this;
+    }
+
+    public Long getLockRetryMaxDelay() {
+        return getContainer().getValue(LOCK_RETRY_MAX_DELAY, Long.class);
+    }
+
+    public CassandraConfiguration setLockRetryMaxDelay(Long millis) {
+        getContainer().setValue(LOCK_RETRY_MAX_DELAY, millis);
+        return this;
+    }
+
+    public Integer getLockLeaseTime() {
+        return getContainer().getValue(LOCK_LEASE_TIME, Integer.class);
+    }
+
+    public CassandraConfiguration setLockLeaseTime(Integer seconds) {
+        getContainer().setValue(LOCK_LEASE_TIME, seconds);
+        return this;
+    }
+
+    public Boolean getHistoryWriteBehind() {
+        return getContainer().getValue(HISTORY_WRITE_BEHIND, Boolean.class);
+    }
+
+    public CassandraConfiguration setHistoryWriteBehind(Boolean writeBehind) {
+        getContainer().setValue(HISTORY_WRITE_BEHIND, writeBehind);
+        return this;
+    }
+
+    public Integer getHistoryFlushInterval() {
+        return getContainer().getValue(HISTORY_FLUSH_INTERVAL, Integer.class);
+    }
+
+    public CassandraConfiguration setHistoryFlushInterval(Integer changeSets) {
+        getContainer().setValue(HISTORY_FLUSH_INTERVAL, changeSets);
+        return this;
+    }
+
+    public Integer getHistoryFetchSize() {
+        return getContainer().getValue(HISTORY_FETCH_SIZE, Integer.class);
+    }
+
+    public CassandraConfiguration setHistoryFetchSize(Integer rows) {
+        getContainer().setValue(HISTORY_FETCH_SIZE, rows);
+        return this;
+    }
+
+    public Boolean getHistoryCache() {
+        return getContainer().getValue(HISTORY_CACHE, Boolean.class);
+    }
+
+    public CassandraConfiguration setHistoryCache(Boolean cache) {
+        getContainer().setValue(HISTORY_CACHE, cache);
+        return this;
+    }
+
+    public String getHistoryCacheDirectory() {
+        return getContainer().getValue(HISTORY_CACHE_DIRECTORY, String.class);
+    }
+
+    public CassandraConfiguration setHistoryCacheDirectory(String directory) {
+        getContainer().setValue(HISTORY_CACHE_DIRECTORY, directory);
+        return this;
+    }
+
+    public Boolean getSequenceReservation() {
+        return getContainer().getValue(SEQUENCE_RESERVATION, Boolean.class);
+    }
+
+    public CassandraConfiguration setSequenceReservation(Boolean reservation) {
+        getContainer().setValue(SEQUENCE_RESERVATION, reservation);
+        return this;
+    }
+
+    public Integer getSequenceBlockSize() {
+        return getContainer().getValue(SEQUENCE_BLOCK_SIZE, Integer.class);
+    }
+
+    public CassandraConfiguration setSequenceBlockSize(Integer size) {
+        getContainer().setValue(SEQUENCE_BLOCK_SIZE, size);
+        return this;
+    }
+
+    public Integer getMaxConcurrentWrites() {
+        return getContainer().getValue(MAX_CONCURRENT_WRITES, Integer.class);
+    }
+
+    public CassandraConfiguration setMaxConcurrentWrites(Integer writes) {
+        getContainer().setValue(MAX_CONCURRENT_WRITES, writes);
+        return this;
+    }
+
+    public Integer getWriteBatchSize() {
+        return getContainer().getValue(WRITE_BATCH_SIZE, Integer.class);
+    }
+
+    public CassandraConfiguration setWriteBatchSize(Integer size) {
+        getContainer().setValue(WRITE_BATCH_SIZE, size);
+        return this;
+    }
+
+    public Long getSchemaAgreementTimeout() {
+        return getContainer().getValue(SCHEMA_AGREEMENT_TIMEOUT, Long.class);
+    }
+
+    public CassandraConfiguration setSchemaAgreementTimeout(Long millis) {
+        getContainer().setValue(SCHEMA_AGREEMENT_TIMEOUT, millis);
+        return this;
+    }
+
+    public Long getSchemaAgreementPollInterval() {
+        return getContainer().getValue(SCHEMA_AGREEMENT_POLL_INTERVAL, Long.class);
+    }
+
+    public CassandraConfiguration setSchemaAgreementPollInterval(Long millis) {
+        getContainer().setValue(SCHEMA_AGREEMENT_POLL_INTERVAL, millis);
+        return this;
+    }
+
+    public Boolean getParallelUpdate() {
+        return getContainer().getValue(PARALLEL_UPDATE, Boolean.class);
+    }
+
+    public CassandraConfiguration setParallelUpdate(Boolean parallel) {
+        getContainer().setValue(PARALLEL_UPDATE, parallel);
+        return this;
+    }
+
+    public Integer getParallelUpdateThreads() {
+        return getContainer().getValue(PARALLEL_UPDATE_THREADS, Integer.class);
+    }
+
+    public CassandraConfiguration setParallelUpdateThreads(Integer threads) {
+        getContainer().setValue(PARALLEL_UPDATE_THREADS, threads);
+        return this;
+    }
+
+    public Integer getBackfillThreads() {
+        return getContainer().getValue(BACKFILL_THREADS, Integer.class);
+    }
+
+    public CassandraConfiguration setBackfillThreads(Integer threads) {
+        getContainer().setValue(BACKFILL_THREADS, threads);
+        return this;
+    }
+
+    public Integer getBackfillPageSize() {
+        return getContainer().getValue(BACKFILL_PAGE_SIZE, Integer.class);
+    }
+
+    public CassandraConfiguration setBackfillPageSize(Integer rows) {
+        getContainer().setValue(BACKFILL_PAGE_SIZE, rows);
+        return this;
+    }
+
+    public Integer getBackfillMaxRowsPerSecond() {
+        return getContainer().getValue(BACKFILL_MAX_ROWS_PER_SECOND, Integer.class);
+    }
+
+    public CassandraConfiguration setBackfillMaxRowsPerSecond(Integer rows) {
+        getContainer().setValue(BACKFILL_MAX_ROWS_PER_SECOND, rows);
+        return this;
+    }
+
+    public String getMetricsSink() {
+        return getContainer().getValue(METRICS_SINK, String.class);
+    }
+
+    public CassandraConfiguration setMetricsSink(String sink) {
+        getContainer().setValue(METRICS_SINK, sink);
+        return this;
+    }
+
+    public String getHistoryReadConsistency() {
+        return getContainer().getValue(HISTORY_READ_CONSISTENCY, String.class);
+    }
+
+    public CassandraConfiguration setHistoryReadConsistency(String level) {
+        getContainer().setValue(HISTORY_READ_CONSISTENCY, level);
+        return this;
+    }
+
+    public String getHistoryWriteConsistency() {
+        return getContainer().getValue(HISTORY_WRITE_CONSISTENCY, String.class);
+    }
+
+    public CassandraConfiguration setHistoryWriteConsistency(String level) {
+        getContainer().setValue(HISTORY_WRITE_CONSISTENCY, level);
+        return this;
+    }
+
+    public String getLockConsistency() {
+        return getContainer().getValue(LOCK_CONSISTENCY, String.class);
+    }
+
+    public CassandraConfiguration setLockConsistency(String level) {
+        getContainer().setValue(LOCK_CONSISTENCY, level);
+        return this;
+    }
+
+    public String getLockSerialConsistency() {
+        return getContainer().getValue(LOCK_SERIAL_CONSISTENCY, String.class);
+    }
+
+    public CassandraConfiguration setLockSerialConsistency(String level) {
+        getContainer().setValue(LOCK_SERIAL_CONSISTENCY, level);
+        return this;
+    }
+
+    public String getDdlConsistency() {
+        return getContainer().getValue(DDL_CONSISTENCY, String.class);
+    }
+
+    public CassandraConfiguration setDdlConsistency(String level) {
+        getContainer().setValue(DDL_CONSISTENCY, level);
+        return this;
+    }
+
+    public String getHistoryLayout() {
+        return getContainer().getValue(HISTORY_LAYOUT, String.class);
+    }
+
+    public CassandraConfiguration setHistoryLayout(String layout) {
+        getContainer().setValue(HISTORY_LAYOUT, layout);
+        return this;
+    }
+
+    public Integer getRetryMaxAttempts() {
+        return getContainer().getValue(RETRY_MAX_ATTEMPTS, Integer.class);
+    }
+
+    public CassandraConfiguration setRetryMaxAttempts(Integer attempts) {
+        getContainer().setValue(RETRY_MAX_ATTEMPTS, attempts);
+        return this;
+    }
+
+    public Long getRetryBaseDelay() {
+        return getContainer().getValue(RETRY_BASE_DELAY, Long.class);
+    }
+
+    public CassandraConfiguration setRetryBaseDelay(Long millis) {
+        getContainer().setValue(RETRY_BASE_DELAY, millis);
+        return this;
+    }
+
+    public Long getRetryMaxDelay() {
+        return getContainer().getValue(RETRY_MAX_DELAY, Long.class);
+    }
+
+    public CassandraConfiguration setRetryMaxDelay(Long millis) {
+        getContainer().setValue(RETRY_MAX_DELAY, millis);
+        return this;
+    }
+
+    public Long getRetryDeadline() {
+        return getContainer().getValue(RETRY_DEADLINE, Long.class);
+    }
+
+    public CassandraConfiguration setRetryDeadline(Long millis) {
+        getContainer().setValue(RETRY_DEADLINE, millis);
+        return this;
+    }
+}
@@ -0,0 +1,388 @@
+package liquibase.database.core;
+
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+import liquibase.util.ProgressListener;
+import liquibase.util.RateLimiter;
+
+/**
+ * Runs a CQL update for every row of a table. The token ring is split into
+ * ranges that are processed by a pool of threads; each range is read in pages
+ * of <code>pageSize</code> rows, ordered by token, and after each page the
+ * last token done is checkpointed into the <code>databasechangelogbackfill</code>
+ * table. An interrupted backfill with the same id resumes where the
+ * checkpoints left off; the checkpoints are removed once all ranges are done.
+ * <p>
+ * The update names the selected columns it needs as markers, e.g.
+ * <code>UPDATE gs_order SET attr_ = attr_ + {'legacy': :legacy} WHERE id = :id</code>
+ * with <code>id, legacy</code> selected. Only the Murmur3 partitioner is
+ * supported.
+ */
+public class CassandraBackfill {
+
+	public static final String CHECKPOINT_TABLE = "databasechangelogbackfill";
+
+	private static final String MURMUR3_PARTITIONER = "org.apache.cassandra.dht.Murmur3Partitioner";
+
+	private final CassandraDatabase database;
+	private final String id;
+	private final String keyspace;
+	private final String table;
+	private final String select;
+	private final String update;
+	private int threads = CassandraConfiguration.getInstance().getBackfillThreads();
+	private int rangeCount;
+	private int pageSize = CassandraConfiguration.getInstance().getBackfillPageSize();
+	private int maxRowsPerSecond = CassandraConfiguration.getInstance().getBackfillMaxRowsPerSecond();
+	private ProgressListener progressListener;
+
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicBoolean stopped = new AtomicBoolean();
+	private RateLimiter rateLimiter;
+	private String tokenFunction;
+	private String updateCql;
+	private List<String> updateParameters;
+
+	/**
+	 * @param id identifies the checkpoints of this backfill
+	 * @param select columns, or other select expressions, read for each row
+	 * @param update CQL run for each row, with <code>:column</code> markers for the selected values
+	 */
+	public CassandraBackfill(CassandraDatabase database, String id, String keyspace, String table, String select, String update) {
+		this.database = database;
+		this.id = id;
+		this.keyspace = keyspace;
+		this.table = table;
+		this.select = select;
+		this.update = update;
+	}
+
+	public CassandraBackfill setThreads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Number of token ranges of a backfill that starts from scratch, by
+	 * default 16 per thread. A resumed backfill keeps the ranges it started
+	 * with.
+	 */
+	public CassandraBackfill setRangeCount(int rangeCount) {
+		this.rangeCount = rangeCount;
+		return this;
+	}
+
+	public CassandraBackfill setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+		return this;
+	}
+
+	/**
+	 * @param maxRowsPerSecond 0 for no limit
+	 */
+	public CassandraBackfill setMaxRowsPerSecond(int maxRowsPerSecond) {
+		this.maxRowsPerSecond = maxRowsPerSecond;
+		return this;
+	}
+
+	public CassandraBackfill setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	/**
+	 * Runs the backfill, or the ranges an earlier run did not finish.
+	 *
+	 * @return number of rows updated by this run
+	 */
+	public long run() throws DatabaseException {
+		if (threads < 1 || pageSize < 1) {
+			throw new DatabaseException("Backfill needs at least one thread and a page size of at least one row");
+		}
+		checkPartitioner();
+		CassandraTableMetadata metadata = CassandraTableMetadata.load(database, keyspace, table);
+		StringBuilder partitionKey = new StringBuilder();
+		for (String column : metadata.getPartitionKey()) {
+			partitionKey.append(partitionKey.length() == 0 ? "" : ", ").append(database.escapeColumnName(null, keyspace, table, column));
+		}
+		tokenFunction = "token(" + partitionKey + ")";
+		parseUpdate();
+		rateLimiter = maxRowsPerSecond > 0 ? new RateLimiter(maxRowsPerSecond) : null;
+
+		List<TokenRange> ranges = loadCheckpoints();
+		List<TokenRange> remaining = new ArrayList<TokenRange>();
+		for (TokenRange range : ranges) {
+			if (!range.done) {
+				remaining.add(range);
+			}
+		}
+		LogFactory.getLogger().info("Backfill " + id + " of " + keyspace + "." + table + ": " + remaining.size() + " of "
+				+ ranges.size() + " token ranges to do");
+
+		long start = System.currentTimeMillis();
+		runRanges(remaining, ranges.size());
+		executeCql("DELETE FROM " + getCheckpointTable() + " WHERE ID = " + quote(id));
+
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		long count = written.get();
+		LogFactory.getLogger().info("Backfill " + id + ": " + count + " rows in " + elapsed + "ms (" + (count * 1000 / elapsed) + " rows/s)");
+		if (progressListener != null) {
+			progressListener.onProgress("Backfill " + table, count, elapsed);
+		}
+		return count;
+	}
+
+	private void runRanges(List<TokenRange> remaining, final int total) throws DatabaseException {
+		final AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, remaining.size())), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "liquibase-cassandra-backfill-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final AtomicInteger done = new AtomicInteger(total - remaining.size());
+		final int concurrency = Math.max(1, CassandraConfiguration.getInstance().getMaxConcurrentWrites() / threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (final TokenRange range : remaining) {
+				futures.add(workers.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						if (!stopped.get()) {
+							runRange(range, concurrency);
+							LogFactory.getLogger().info("Backfill " + id + ": " + done.incrementAndGet() + "/" + total + " token ranges done");
+						}
+						return null;
+					}
+				}));
+			}
+			DatabaseException failure = null;
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					stopped.set(true);
+					throw new DatabaseException("Backfill " + id + " interrupted");
+				} catch (ExecutionException e) {
+					stopped.set(true);
+					if (failure == null) {
+						failure = e.getCause() instanceof DatabaseException ? (DatabaseException) e.getCause()
+								: new DatabaseException("Backfill " + id + " failed: " + e.getCause().getMessage(), e.getCause());
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Updates the rows of a range page by page, checkpointing each page. A
+	 * full page may end in the middle of a partition, so the rows of its last
+	 * token are read again as a whole.
+	 */
+	private void runRange(TokenRange range, int concurrency) throws DatabaseException, InterruptedException {
+		CassandraBulkWriter writer = new CassandraBulkWriter(database, updateCql, "Backfill " + table, concurrency,
+				CassandraConfiguration.getInstance().getWriteBatchSize());
+		String from = "SELECT " + tokenFunction + ", " + select + " FROM " + database.escapeTableName(null, keyspace, table) + " WHERE ";
+		long last = range.lastToken == null ? range.start : range.lastToken;
+		try {
+			while (last < range.end && !stopped.get()) {
+				List<Map<String, Object>> rows = queryCql(from + tokenFunction + " > " + last + " AND " + tokenFunction + " <= " + range.end
+						+ " LIMIT " + pageSize);
+				if (rows.isEmpty()) {
+					break;
+				}
+				boolean full = rows.size() >= pageSize;
+				long pageEnd = getToken(rows.get(rows.size() - 1));
+				if (full) {
+					Iterator<Map<String, Object>> iterator = rows.iterator();
+					while (iterator.hasNext()) {
+						if (getToken(iterator.next()) == pageEnd) {
+							iterator.remove();
+						}
+					}
+					rows.addAll(queryCql(from + tokenFunction + " = " + pageEnd));
+				}
+				if (rateLimiter != null) {
+					rateLimiter.acquire(rows.size());
+				}
+				for (Map<String, Object> row : rows) {
+					Object[] values = new Object[updateParameters.size()];
+					for (int i = 0; i < values.length; i++) {
+						if (!row.containsKey(updateParameters.get(i))) {
+							throw new DatabaseException("Backfill update uses :" + updateParameters.get(i).toLowerCase()
+									+ ", which is not selected");
+						}
+						values[i] = row.get(updateParameters.get(i));
+					}
+					writer.add(values);
+				}
+				writer.flush();
+				written.addAndGet(rows.size());
+				range.rows += rows.size();
+				last = pageEnd;
+				executeCql("UPDATE " + getCheckpointTable() + " SET LAST_TOKEN = " + last + ", ROWS_WRITTEN = " + range.rows
+						+ " WHERE ID = " + quote(id) + " AND RANGE_START = " + range.start);
+				if (!full) {
+					break;
+				}
+			}
+			if (!stopped.get()) {
+				executeCql("UPDATE " + getCheckpointTable() + " SET DONE = true, ROWS_WRITTEN = " + range.rows
+						+ " WHERE ID = " + quote(id) + " AND RANGE_START = " + range.start);
+			}
+		} finally {
+			writer.finish();
+		}
+	}
+
+	/**
+	 * The ranges of the checkpoint table, or new ones covering the ring.
+	 */
+	private List<TokenRange> loadCheckpoints() throws DatabaseException {
+		executeCql("CREATE TABLE IF NOT EXISTS " + getCheckpointTable() + " (ID text, RANGE_START bigint, RANGE_END bigint,"
+				+ " LAST_TOKEN bigint, DONE boolean, ROWS_WRITTEN bigint, PRIMARY KEY (ID, RANGE_START))");
+		database.awaitSchemaAgreement();
+		List<TokenRange> ranges = new ArrayList<TokenRange>();
+		for (Map<String, Object> row : queryCql("SELECT RANGE_START, RANGE_END, LAST_TOKEN, DONE, ROWS_WRITTEN FROM " + getCheckpointTable()
+				+ " WHERE ID = " + quote(id))) {
+			TokenRange range = new TokenRange(((Number) row.get("RANGE_START")).longValue(), ((Number) row.get("RANGE_END")).longValue());
+			range.lastToken = row.get("LAST_TOKEN") == null ? null : ((Number) row.get("LAST_TOKEN")).longValue();
+			range.done = Boolean.TRUE.equals(row.get("DONE"));
+			range.rows = row.get("ROWS_WRITTEN") == null ? 0 : ((Number) row.get("ROWS_WRITTEN")).longValue();
+			ranges.add(range);
+		}
+		if (!ranges.isEmpty()) {
+			return ranges;
+		}
+
+		int count = rangeCount > 0 ? rangeCount : threads * 16;
+		BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+		BigInteger width = BigInteger.valueOf(Long.MAX_VALUE).subtract(min);
+		long start = Long.MIN_VALUE;
+		for (int i = 1; i <= count; i++) {
+			long end = i == count ? Long.MAX_VALUE
+					: min.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count))).longValue();
+			ranges.add(new TokenRange(start, end));
+			executeCql("INSERT INTO " + getCheckpointTable() + " (ID, RANGE_START, RANGE_END, DONE, ROWS_WRITTEN) VALUES ("
+					+ quote(id) + ", " + start + ", " + end + ", false, 0)");
+			start = end;
+		}
+		return ranges;
+	}
+
+	/**
+	 * Replaces the <code>:name</code> markers of the update with
+	 * <code>?</code>, leaving string literals and quoted names alone.
+	 */
+	private void parseUpdate() throws DatabaseException {
+		StringBuilder cql = new StringBuilder();
+		updateParameters = new ArrayList<String>();
+		char quote = 0;
+		for (int i = 0; i < update.length(); i++) {
+			char c = update.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+				cql.append(c);
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+				cql.append(c);
+			} else if (c == ':' && i + 1 < update.length() && Character.isJavaIdentifierStart(update.charAt(i + 1))) {
+				int end = i + 1;
+				while (end < update.length() && Character.isJavaIdentifierPart(update.charAt(end))) {
+					end++;
+				}
+				updateParameters.add(update.substring(i + 1, end).toUpperCase());
+				cql.append('?');
+				i = end - 1;
+			} else {
+				cql.append(c);
+			}
+		}
+		if (updateParameters.isEmpty()) {
+			throw new DatabaseException("Backfill update needs :column markers for the rows it updates: " + update);
+		}
+		updateCql = cql.toString();
+	}
+
+	private void checkPartitioner() throws DatabaseException {
+		List<Map<String, Object>> rows = queryCql("SELECT partitioner FROM system.local WHERE key = 'local'");
+		Object partitioner = rows.isEmpty() ? null : rows.get(0).get("PARTITIONER");
+		if (partitioner != null && !MURMUR3_PARTITIONER.equals(partitioner.toString())) {
+			throw new DatabaseException("Backfill needs the Murmur3Partitioner, the cluster uses " + partitioner);
+		}
+	}
+
+	private long getToken(Map<String, Object> row) throws DatabaseException {
+		for (Map.Entry<String, Object> column : row.entrySet()) {
+			if (column.getKey().startsWith("TOKEN(") && column.getValue() instanceof Number) {
+				return ((Number) column.getValue()).longValue();
+			}
+		}
+		throw new DatabaseException("Backfill query returned no token");
+	}
+
+	private String getCheckpointTable() {
+		return database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), CHECKPOINT_TABLE);
+	}
+
+	private List<Map<String, Object>> queryCql(String cql) throws DatabaseException {
+		try {
+			return database.queryCql(cql);
+		} catch (SQLException e) {
+			throw new DatabaseException("Backfill " + id + " failed: " + e.getMessage() + " [" + cql + "]", e);
+		}
+	}
+
+	private void executeCql(String cql) throws DatabaseException {
+		try {
+			database.executeCql(cql);
+		} catch (SQLException e) {
+			throw new DatabaseException("Backfill " + id + " failed: " + e.getMessage() + " [" + cql + "]", e);
+		}
+	}
+
+	private static String quote(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+	/**
+	 * Tokens after <code>start</code> up to and including <code>end</code>.
+	 */
+	private static class TokenRange {
+		private final long start;
+		private final long end;
+		private Long lastToken;
+		private boolean done;
+		private long rows;
+
+		private TokenRange(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+}
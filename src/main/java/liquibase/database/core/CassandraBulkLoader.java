@@ -0,0 +1,249 @@
+package liquibase.database.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+import liquibase.util.JsonRowReader;
+import liquibase.util.ProgressListener;
+import liquibase.util.csv.CSVReader;
+
+/**
+ * Streams rows from CSV or JSON input into a table. Values are converted to
+ * the types of the table's columns, and rows are written with
+ * {@link CassandraBulkWriter#addToPartition(Object, Object...)}, grouped into
+ * UNLOGGED batches per partition key. Empty values are left unset instead of
+ * being written as null, so loading creates no tombstones.
+ */
+public class CassandraBulkLoader {
+
+	private final CassandraDatabase database;
+	private final String keyspace;
+	private final String table;
+	private Map<String, String> columnNames = new HashMap<String, String>();
+	private Set<String> skippedColumns = new HashSet<String>();
+	private ProgressListener progressListener;
+
+	public CassandraBulkLoader(CassandraDatabase database, String keyspace, String table) {
+		this.database = database;
+		this.keyspace = keyspace;
+		this.table = table;
+	}
+
+	/**
+	 * Columns to write fields of the input to, by field name. Fields not
+	 * listed go to the column of the same name.
+	 */
+	public CassandraBulkLoader setColumnNames(Map<String, String> columnNames) {
+		this.columnNames = new HashMap<String, String>(columnNames);
+		return this;
+	}
+
+	/**
+	 * Fields of the input that are not loaded.
+	 */
+	public CassandraBulkLoader setSkippedColumns(Set<String> skippedColumns) {
+		this.skippedColumns = new HashSet<String>(skippedColumns);
+		return this;
+	}
+
+	public CassandraBulkLoader setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	/**
+	 * Loads CSV whose first line names the fields.
+	 *
+	 * @return number of rows written
+	 */
+	public long loadCsv(CSVReader reader) throws DatabaseException {
+		try {
+			String[] header = reader.readNext();
+			if (header == null) {
+				return 0;
+			}
+			Load load = new Load();
+			try {
+				long line = 1;
+				String[] fields;
+				while ((fields = reader.readNext()) != null) {
+					line++;
+					if (fields.length == 1 && fields[0].trim().length() == 0) {
+						continue;
+					}
+					if (fields.length != header.length) {
+						throw load.failed("line " + line + " has " + fields.length + " fields, the header " + header.length, null);
+					}
+					Map<String, Object> row = new LinkedHashMap<String, Object>();
+					for (int i = 0; i < header.length; i++) {
+						row.put(header[i].trim(), fields[i]);
+					}
+					load.add(row, "line " + line);
+				}
+				return load.finish();
+			} finally {
+				load.abort();
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot read CSV input for " + keyspace + "." + table + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Loads the objects of a JSON array.
+	 *
+	 * @return number of rows written
+	 */
+	public long loadJson(JsonRowReader reader) throws DatabaseException {
+		try {
+			Load load = new Load();
+			try {
+				long count = 0;
+				Map<String, Object> row;
+				while ((row = reader.readRow()) != null) {
+					load.add(row, "object " + ++count);
+				}
+				return load.finish();
+			} finally {
+				load.abort();
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot read JSON input for " + keyspace + "." + table + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writers of one load, one per set of columns rows have values for.
+	 */
+	private class Load {
+		private final CassandraTableMetadata metadata = CassandraTableMetadata.load(database, keyspace, table);
+		private final CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+		private final Map<List<String>, CassandraBulkWriter> writers = new LinkedHashMap<List<String>, CassandraBulkWriter>();
+		private final Map<String, String> resolvedColumns = new HashMap<String, String>();
+		private final long start = System.currentTimeMillis();
+		private boolean finished;
+
+		private Load() throws DatabaseException {
+		}
+
+		private void add(Map<String, Object> row, String position) throws DatabaseException {
+			List<String> columns = new ArrayList<String>(row.size());
+			List<Object> values = new ArrayList<Object>(row.size());
+			Map<String, Object> byColumn = new HashMap<String, Object>();
+			for (Map.Entry<String, Object> field : row.entrySet()) {
+				if (skippedColumns.contains(field.getKey())) {
+					continue;
+				}
+				String column = resolveColumn(field.getKey(), position);
+				Object value;
+				try {
+					value = CassandraValueConverter.convert(metadata.getColumnType(column), field.getValue());
+				} catch (IllegalArgumentException e) {
+					throw failed(position + ", column " + column + ": " + e.getMessage(), e);
+				}
+				if (value != null) {
+					columns.add(column);
+					values.add(value);
+					byColumn.put(column, value);
+				}
+			}
+			if (columns.isEmpty()) {
+				return;
+			}
+
+			List<String> partitionKeyColumns = metadata.getPartitionKey();
+			List<Object> partitionKey = new ArrayList<Object>(partitionKeyColumns.size());
+			for (String column : partitionKeyColumns) {
+				Object value = byColumn.get(column);
+				if (value == null) {
+					throw failed(position + " has no value for partition key column " + column, null);
+				}
+				partitionKey.add(value);
+			}
+			getWriter(columns).addToPartition(partitionKey.size() == 1 ? partitionKey.get(0) : partitionKey, values.toArray());
+		}
+
+		private long finish() throws DatabaseException {
+			long count = 0;
+			for (CassandraBulkWriter writer : writers.values()) {
+				count += writer.finish();
+			}
+			finished = true;
+			if (writers.size() > 1) {
+				long elapsed = Math.max(1, System.currentTimeMillis() - start);
+				LogFactory.getLogger().info("Loaded " + count + " rows into " + keyspace + "." + table + " in " + elapsed + "ms ("
+						+ (count * 1000 / elapsed) + " rows/s)");
+			}
+			return count;
+		}
+
+		/**
+		 * Waits for the writes sent so far if the load did not finish, so a
+		 * failure is reported with no writes left in flight.
+		 */
+		private void abort() {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			for (CassandraBulkWriter writer : writers.values()) {
+				try {
+					writer.finish();
+				} catch (DatabaseException e) {
+					LogFactory.getLogger().debug("Error finishing load of " + table + ": " + e.getMessage());
+				}
+			}
+		}
+
+		private DatabaseException failed(String message, Throwable cause) {
+			return new DatabaseException("Cannot load " + keyspace + "." + table + ", " + message, cause);
+		}
+
+		private String resolveColumn(String field, String position) throws DatabaseException {
+			String column = resolvedColumns.get(field);
+			if (column != null) {
+				return column;
+			}
+			String name = columnNames.containsKey(field) ? columnNames.get(field) : field;
+			if (metadata.getColumnType(name) != null) {
+				column = name;
+			} else if (metadata.getColumnType(name.toLowerCase()) != null) {
+				column = name.toLowerCase();
+			} else {
+				throw failed(position + ": table has no column " + name, null);
+			}
+			resolvedColumns.put(field, column);
+			return column;
+		}
+
+		private CassandraBulkWriter getWriter(List<String> columns) {
+			CassandraBulkWriter writer = writers.get(columns);
+			if (writer == null) {
+				StringBuilder cql = new StringBuilder("INSERT INTO ").append(database.escapeTableName(null, keyspace, table)).append(" (");
+				for (int i = 0; i < columns.size(); i++) {
+					cql.append(i == 0 ? "" : ", ").append(database.escapeColumnName(null, keyspace, table, columns.get(i)));
+				}
+				cql.append(") VALUES (");
+				for (int i = 0; i < columns.size(); i++) {
+					cql.append(i == 0 ? "?" : ", ?");
+				}
+				cql.append(")");
+				writer = new CassandraBulkWriter(database, cql.toString(), "Load " + table,
+						configuration.getMaxConcurrentWrites(), configuration.getWriteBatchSize())
+						.setProgressListener(progressListener);
+				writers.put(Collections.unmodifiableList(columns), writer);
+			}
+			return writer;
+		}
+	}
+}
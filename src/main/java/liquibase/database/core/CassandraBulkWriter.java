@@ -0,0 +1,293 @@
+package liquibase.database.core;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+import liquibase.util.ProgressListener;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Runs one parameterized CQL statement for many rows. On a native connection
+ * the statement is prepared once and the rows are sent asynchronously, with at
+ * most <code>concurrency</code> writes in flight. Over JDBC the rows are sent
+ * one after the other on a pooled connection. Either way the
+ * {@link CassandraConsistency} level of the statement applies. Call
+ * {@link #finish()} to wait for the last writes.
+ * <p>
+ * Rows added with {@link #addToPartition(Object, Object...)} are grouped by
+ * partition key and each group is written as one UNLOGGED batch, so a batch
+ * only ever goes to the replicas of one partition. A group is written when it
+ * holds <code>batchSize</code> rows, and all groups are written once
+ * <code>concurrency</code> times <code>batchSize</code> rows are buffered,
+ * which bounds the memory used for input with many small partitions.
+ */
+public class CassandraBulkWriter {
+
+	/** Rows between two progress reports. */
+	public static final int PROGRESS_INTERVAL = 1000;
+
+	private final CassandraDatabase database;
+	private final String cql;
+	private final String operation;
+	private final int concurrency;
+	private final int batchSize;
+	private final long start = System.currentTimeMillis();
+
+	private ProgressListener progressListener;
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	private Semaphore inFlight;
+	private Connection connection;
+	private java.sql.PreparedStatement single;
+	private final Map<Object, List<Object[]>> partitions = new LinkedHashMap<Object, List<Object[]>>();
+	private int partitionedRows;
+
+	/**
+	 * @param operation name used in progress reports and logs
+	 */
+	public CassandraBulkWriter(CassandraDatabase database, String cql, String operation, int concurrency, int batchSize) {
+		if (concurrency < 1 || batchSize < 1) {
+			throw new IllegalArgumentException("Concurrency and batch size must be at least 1");
+		}
+		this.database = database;
+		this.cql = cql;
+		this.operation = operation;
+		this.concurrency = concurrency;
+		this.batchSize = batchSize;
+	}
+
+	public CassandraBulkWriter setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	/**
+	 * Writes a row with the values bound to the markers of the statement, on
+	 * its own. Errors of earlier asynchronous writes are thrown here at the
+	 * latest.
+	 */
+	public void add(Object... values) throws DatabaseException {
+		checkFailure();
+		if (database.isNativeConnection()) {
+			addAsync(prepare().bind(values), 1);
+		} else {
+			writeBatch(Collections.singletonList(values));
+		}
+	}
+
+	/**
+	 * Writes a row in an UNLOGGED batch together with other rows of the same
+	 * partition.
+	 *
+	 * @param partitionKey value, or list of values, of the partition key columns
+	 */
+	public void addToPartition(Object partitionKey, Object... values) throws DatabaseException {
+		checkFailure();
+		List<Object[]> rows = partitions.get(partitionKey);
+		if (rows == null) {
+			rows = new ArrayList<Object[]>();
+			partitions.put(partitionKey, rows);
+		}
+		rows.add(values);
+		partitionedRows++;
+		if (rows.size() >= batchSize) {
+			partitions.remove(partitionKey);
+			partitionedRows -= rows.size();
+			writeGroup(rows);
+		}
+		if (partitionedRows >= batchSize * concurrency) {
+			writePartitions();
+		}
+	}
+
+	/**
+	 * Waits for all writes, logs the throughput and releases the connection.
+	 *
+	 * @return number of rows written
+	 */
+	public long finish() throws DatabaseException {
+		try {
+			flush();
+		} finally {
+			if (single != null) {
+				try {
+					single.close();
+				} catch (SQLException e) {
+					LogFactory.getLogger().debug("Could not close statement: " + e.getMessage());
+				}
+				single = null;
+			}
+			if (connection != null) {
+				database.getConnectionPool().release(connection);
+				connection = null;
+			}
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		long count = written.get();
+		LogFactory.getLogger().info(operation + ": " + count + " rows in " + elapsed + "ms (" + (count * 1000 / elapsed) + " rows/s)");
+		if (progressListener != null) {
+			progressListener.onProgress(operation, count, elapsed);
+		}
+		return count;
+	}
+
+	/**
+	 * Waits until every row added so far is written, keeping the connection
+	 * for further rows.
+	 */
+	public void flush() throws DatabaseException {
+		writePartitions();
+		if (inFlight != null) {
+			inFlight.acquireUninterruptibly(concurrency);
+			inFlight.release(concurrency);
+		}
+		checkFailure();
+	}
+
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	private void writePartitions() throws DatabaseException {
+		Iterator<List<Object[]>> groups = partitions.values().iterator();
+		while (groups.hasNext()) {
+			List<Object[]> rows = groups.next();
+			groups.remove();
+			partitionedRows -= rows.size();
+			writeGroup(rows);
+		}
+	}
+
+	private void writeGroup(List<Object[]> rows) throws DatabaseException {
+		if (!database.isNativeConnection()) {
+			writeBatch(rows);
+			rows.clear();
+		} else if (rows.size() == 1) {
+			addAsync(prepare().bind(rows.get(0)), 1);
+		} else {
+			BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+			PreparedStatement prepared = prepare();
+			for (Object[] values : rows) {
+				batch.add(prepared.bind(values));
+			}
+			addAsync(batch, rows.size());
+		}
+	}
+
+	private PreparedStatement prepare() throws DatabaseException {
+		try {
+			return database.getNativeConnection().prepare(cql);
+		} catch (DriverException e) {
+			throw new DatabaseException(operation + " failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Sends a statement writing <code>rows</code> rows, waiting while
+	 * <code>concurrency</code> statements are in flight.
+	 */
+	private void addAsync(Statement statement, final int rows) throws DatabaseException {
+		if (inFlight == null) {
+			inFlight = new Semaphore(concurrency);
+		}
+		database.getConsistency().apply(statement);
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException(operation + " interrupted");
+		}
+		ResultSetFuture future;
+		try {
+			future = database.getNativeConnection().getSession().executeAsync(statement);
+		} catch (DriverException e) {
+			inFlight.release();
+			throw new DatabaseException(operation + " failed: " + e.getMessage(), e);
+		}
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			public void onSuccess(ResultSet result) {
+				inFlight.release();
+				written(rows);
+			}
+
+			public void onFailure(Throwable t) {
+				failure.compareAndSet(null, t);
+				inFlight.release();
+			}
+		});
+	}
+
+	/**
+	 * Writes rows of one partition over JDBC, in an UNLOGGED batch if there
+	 * is more than one. The statement of a single row is kept for the next.
+	 */
+	private void writeBatch(List<Object[]> rows) throws DatabaseException {
+		try {
+			if (connection == null) {
+				connection = database.getConnectionPool().borrow();
+			}
+			java.sql.PreparedStatement statement;
+			if (rows.size() == 1) {
+				if (single == null) {
+					single = connection.prepareStatement(cql);
+					database.getConsistency().apply(single, cql);
+				}
+				statement = single;
+			} else {
+				String batchCql = CassandraDatabase.toUnloggedBatch(Collections.nCopies(rows.size(), cql));
+				statement = connection.prepareStatement(batchCql);
+				database.getConsistency().apply(statement, batchCql);
+			}
+			try {
+				int index = 1;
+				for (Object[] values : rows) {
+					for (Object value : values) {
+						statement.setObject(index++, value);
+					}
+				}
+				statement.execute();
+			} finally {
+				if (statement != single) {
+					statement.close();
+				}
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(operation + " failed: " + e.getMessage(), e);
+		}
+		written(rows.size());
+	}
+
+	private void written(int count) {
+		long before = written.getAndAdd(count);
+		if (progressListener != null && (before + count) / PROGRESS_INTERVAL > before / PROGRESS_INTERVAL) {
+			progressListener.onProgress(operation, before + count, System.currentTimeMillis() - start);
+		}
+	}
+
+	private void checkFailure() throws DatabaseException {
+		Throwable t = failure.get();
+		if (t != null) {
+			throw new DatabaseException(operation + " failed after " + written.get() + " rows: " + t.getMessage(), t);
+		}
+	}
+}
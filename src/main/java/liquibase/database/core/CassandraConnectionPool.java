@@ -0,0 +1,206 @@
+package liquibase.database.core;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import liquibase.logging.LogFactory;
+
+/**
+ * Bounded pool of JDBC connections owned by a {@link CassandraDatabase}. The
+ * extension uses it for its own metadata queries so each probe reuses an open
+ * connection instead of opening (and leaking) a new one.
+ */
+public class CassandraConnectionPool {
+
+	private final String url;
+	private final String driver;
+	private final int maxSize;
+	private final long waitTime;
+
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<Connection>();
+	private volatile boolean closed;
+
+	private final AtomicInteger created = new AtomicInteger();
+	private final AtomicInteger discarded = new AtomicInteger();
+	private final AtomicLong borrowed = new AtomicLong();
+	private final AtomicLong waited = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicInteger inUse = new AtomicInteger();
+	private final AtomicInteger peakInUse = new AtomicInteger();
+
+	/**
+	 * @param url JDBC url new connections are opened with
+	 * @param driver JDBC driver class, loaded once before the first connect
+	 * @param maxSize maximum number of connections open at the same time
+	 * @param waitTime milliseconds to wait for a free connection
+	 */
+	public CassandraConnectionPool(String url, String driver, int maxSize, long waitTime) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Connection pool size must be at least 1");
+		}
+		this.url = url;
+		this.driver = driver;
+		this.maxSize = maxSize;
+		this.waitTime = waitTime;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Takes an idle connection, or opens a new one while below the pool size.
+	 * Every borrowed connection must be handed back with {@link #release(Connection)}.
+	 */
+	public Connection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("Connection pool for " + url + " is closed");
+		}
+		long start = System.nanoTime();
+		if (!permits.tryAcquire()) {
+			waited.incrementAndGet();
+			try {
+				if (!permits.tryAcquire(waitTime, TimeUnit.MILLISECONDS)) {
+					throw new SQLException("Timed out after " + waitTime + "ms waiting for a pooled connection to " + url + " (" + this + ")");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted waiting for a pooled connection to " + url, e);
+			} finally {
+				waitNanos.addAndGet(System.nanoTime() - start);
+			}
+		}
+
+		try {
+			Connection connection;
+			while ((connection = idle.pollFirst()) != null) {
+				if (!connection.isClosed()) {
+					break;
+				}
+				discarded.incrementAndGet();
+			}
+			if (connection == null) {
+				connection = open();
+			}
+			borrowed.incrementAndGet();
+			int current = inUse.incrementAndGet();
+			int peak;
+			while (current > (peak = peakInUse.get()) && !peakInUse.compareAndSet(peak, current)) {
+				;
+			}
+			return connection;
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a borrowed connection. Closed connections are dropped and
+	 * replaced on the next borrow.
+	 */
+	public void release(Connection connection) {
+		if (connection == null) {
+			return;
+		}
+		inUse.decrementAndGet();
+		try {
+			if (closed || connection.isClosed()) {
+				discard(connection);
+			} else {
+				idle.offerFirst(connection);
+			}
+		} catch (SQLException e) {
+			discard(connection);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Closes every idle connection. Connections still borrowed are closed as
+	 * they are released.
+	 */
+	public void close() {
+		closed = true;
+		Connection connection;
+		while ((connection = idle.pollFirst()) != null) {
+			discard(connection);
+		}
+		LogFactory.getLogger().debug("Closed Cassandra connection pool: " + this);
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/** Number of physical connections opened over the life of the pool. */
+	public int getCreatedCount() {
+		return created.get();
+	}
+
+	/** Number of connections closed by the pool, because they broke or the pool closed. */
+	public int getDiscardedCount() {
+		return discarded.get();
+	}
+
+	public long getBorrowCount() {
+		return borrowed.get();
+	}
+
+	/** Number of borrows that had to wait for another caller to release a connection. */
+	public long getWaitCount() {
+		return waited.get();
+	}
+
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+	}
+
+	public int getInUseCount() {
+		return inUse.get();
+	}
+
+	public int getPeakInUseCount() {
+		return peakInUse.get();
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	@Override
+	public String toString() {
+		return "max=" + maxSize + ", created=" + getCreatedCount() + ", discarded=" + getDiscardedCount()
+				+ ", borrowed=" + getBorrowCount() + ", waited=" + getWaitCount() + " (" + getTotalWaitMillis() + "ms)"
+				+ ", inUse=" + getInUseCount() + ", peakInUse=" + getPeakInUseCount() + ", idle=" + getIdleCount();
+	}
+
+	private Connection open() throws SQLException {
+		try {
+			Class.forName(driver);
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("Cannot load JDBC driver " + driver, e);
+		}
+		Connection connection = DriverManager.getConnection(url);
+		created.incrementAndGet();
+		return connection;
+	}
+
+	private void discard(Connection connection) {
+		discarded.incrementAndGet();
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			LogFactory.getLogger().debug("Error closing pooled connection: " + e.getMessage());
+		}
+	}
+}
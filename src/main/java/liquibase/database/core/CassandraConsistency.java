@@ -0,0 +1,339 @@
+package liquibase.database.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.logging.LogFactory;
+
+import org.apache.cassandra.cql.jdbc.CassandraStatementExtras;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Statement;
+
+/**
+ * Consistency levels of the statements of a database by what they do:
+ * reading or writing the history, the changelog lock and schema changes, so
+ * each is only as strong, and as slow, as it needs to be. Levels that are not
+ * set are left to the driver; over JDBC that is the <code>consistency</code>
+ * parameter of the url, ONE by default. Any other statement runs at the
+ * driver's level.
+ * <p>
+ * Levels are read from the <code>*Consistency</code> properties, then from
+ * url parameters of the same names, e.g.
+ * <code>cql://host/ks?historyReadConsistency=LOCAL_ONE&amp;lockSerialConsistency=LOCAL_SERIAL</code>,
+ * and can be changed with {@link #setLevel(Operation, ConsistencyLevel)}.
+ * The Thrift protocol of JDBC connections knows neither a serial consistency
+ * nor LOCAL_ONE, so the lock conditions run at SERIAL there.
+ */
+public class CassandraConsistency {
+
+	public enum Operation {
+		HISTORY_READ(CassandraConfiguration.HISTORY_READ_CONSISTENCY),
+		HISTORY_WRITE(CassandraConfiguration.HISTORY_WRITE_CONSISTENCY),
+		LOCK(CassandraConfiguration.LOCK_CONSISTENCY),
+		DDL(CassandraConfiguration.DDL_CONSISTENCY);
+
+		private final String parameter;
+
+		private Operation(String parameter) {
+			this.parameter = parameter;
+		}
+
+		/**
+		 * Name of the property and url parameter of the level.
+		 */
+		public String getParameter() {
+			return parameter;
+		}
+	}
+
+	/** Table a CQL statement reads or writes, in group 2; group 1 tells a read. */
+	private static final Pattern TABLE = Pattern.compile("^\\s*(?:BEGIN\\s+(?:UNLOGGED\\s+)?BATCH\\s+)?"
+			+ "(SELECT\\b.*?\\bFROM|INSERT\\s+INTO|UPDATE|DELETE\\b.*?\\bFROM)\\s+(?:\"?\\w+\"?\\.)?\"?(\\w+)\"?",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private final CassandraDatabase database;
+	private final Map<Operation, ConsistencyLevel> levels = new ConcurrentHashMap<Operation, ConsistencyLevel>();
+	private volatile ConsistencyLevel lockSerialLevel;
+	private final Set<ConsistencyLevel> unsupported = Collections.synchronizedSet(new HashSet<ConsistencyLevel>());
+
+	public CassandraConsistency(CassandraDatabase database) {
+		this.database = database;
+		CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+		setLevel(Operation.HISTORY_READ, toLevel(configuration.getHistoryReadConsistency(), Operation.HISTORY_READ.getParameter()));
+		setLevel(Operation.HISTORY_WRITE, toLevel(configuration.getHistoryWriteConsistency(), Operation.HISTORY_WRITE.getParameter()));
+		setLevel(Operation.LOCK, toLevel(configuration.getLockConsistency(), Operation.LOCK.getParameter()));
+		setLevel(Operation.DDL, toLevel(configuration.getDdlConsistency(), Operation.DDL.getParameter()));
+		setLockSerialLevel(toLevel(configuration.getLockSerialConsistency(), CassandraConfiguration.LOCK_SERIAL_CONSISTENCY));
+	}
+
+	/**
+	 * The level of the operation, null for the driver's default.
+	 */
+	public ConsistencyLevel getLevel(Operation operation) {
+		return levels.get(operation);
+	}
+
+	/**
+	 * @param level null for the driver's default
+	 */
+	public CassandraConsistency setLevel(Operation operation, ConsistencyLevel level) {
+		if (level == null) {
+			levels.remove(operation);
+		} else {
+			levels.put(operation, level);
+		}
+		return this;
+	}
+
+	public ConsistencyLevel getLockSerialLevel() {
+		return lockSerialLevel;
+	}
+
+	/**
+	 * Serial consistency of the lightweight transactions on the lock table,
+	 * SERIAL or LOCAL_SERIAL, null for the driver's default.
+	 */
+	public CassandraConsistency setLockSerialLevel(ConsistencyLevel level) {
+		if (level != null && !level.isSerial()) {
+			throw new UnexpectedLiquibaseException(level + " is not a serial consistency level");
+		}
+		this.lockSerialLevel = level;
+		return this;
+	}
+
+	/**
+	 * Sets the levels given as parameters of the url.
+	 */
+	public void setLevels(String url) {
+		Map<String, String> parameters = getParameters(url);
+		for (Operation operation : Operation.values()) {
+			if (parameters.containsKey(operation.getParameter())) {
+				setLevel(operation, toLevel(parameters.get(operation.getParameter()), operation.getParameter()));
+			}
+		}
+		if (parameters.containsKey(CassandraConfiguration.LOCK_SERIAL_CONSISTENCY)) {
+			setLockSerialLevel(toLevel(parameters.get(CassandraConfiguration.LOCK_SERIAL_CONSISTENCY),
+					CassandraConfiguration.LOCK_SERIAL_CONSISTENCY));
+		}
+	}
+
+	/**
+	 * The url without the consistency parameters, which the JDBC driver
+	 * would reject.
+	 */
+	public static String removeParameters(String url) {
+		int query = url == null ? -1 : url.indexOf('?');
+		if (query < 0) {
+			return url;
+		}
+		StringBuilder kept = new StringBuilder();
+		for (String pair : url.substring(query + 1).split("&")) {
+			if (!isLevelParameter(pair.substring(0, pair.indexOf('=') < 0 ? pair.length() : pair.indexOf('=')))) {
+				kept.append(kept.length() == 0 ? "" : "&").append(pair);
+			}
+		}
+		return url.substring(0, query) + (kept.length() == 0 ? "" : "?" + kept);
+	}
+
+	/**
+	 * What a CQL statement does, null if it is none of the operations.
+	 */
+	public Operation classify(String cql) {
+		if (cql == null) {
+			return null;
+		}
+		if (CassandraKeyspaceMetadata.isSchemaChange(cql)) {
+			return Operation.DDL;
+		}
+		Matcher matcher = TABLE.matcher(cql);
+		if (!matcher.find()) {
+			return null;
+		}
+		String table = matcher.group(2);
+		boolean read = matcher.group(1).regionMatches(true, 0, "SELECT", 0, 6);
+		if (table.equalsIgnoreCase(database.getDatabaseChangeLogLockTableName())) {
+			return Operation.LOCK;
+		}
+		// both layouts, resolving the layout would run a statement itself
+		String history = database.getDatabaseChangeLogBaseTableName();
+		if (table.equalsIgnoreCase(history) || table.equalsIgnoreCase(CassandraHistoryLayout.V2.getTableName(history))
+				|| table.equalsIgnoreCase(database.getDatabaseChangeLogHeadTableName())) {
+			return read ? Operation.HISTORY_READ : Operation.HISTORY_WRITE;
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the levels of a statement of the native driver.
+	 */
+	public void apply(Statement statement) {
+		if (levels.isEmpty() && lockSerialLevel == null) {
+			return;
+		}
+		Operation operation = classify(getQueryString(statement));
+		if (operation == null) {
+			return;
+		}
+		ConsistencyLevel level = levels.get(operation);
+		if (level != null) {
+			statement.setConsistencyLevel(level);
+		}
+		if (operation == Operation.LOCK && lockSerialLevel != null) {
+			statement.setSerialConsistencyLevel(lockSerialLevel);
+		}
+	}
+
+	/**
+	 * Sets the level of a statement of the cassandra-jdbc driver about to
+	 * run the CQL.
+	 */
+	public void apply(java.sql.Statement statement, String cql) {
+		if (levels.isEmpty() || !(statement instanceof CassandraStatementExtras)) {
+			return;
+		}
+		Operation operation = classify(cql);
+		ConsistencyLevel level = operation == null ? null : levels.get(operation);
+		if (level == null) {
+			return;
+		}
+		try {
+			((CassandraStatementExtras) statement).setConsistencyLevel(org.apache.cassandra.thrift.ConsistencyLevel.valueOf(level.name()));
+		} catch (IllegalArgumentException e) {
+			if (unsupported.add(level)) {
+				LogFactory.getLogger().warning("Consistency level " + level + " is not supported over JDBC, using the driver's default");
+			}
+		}
+	}
+
+	/**
+	 * Wraps a JDBC connection so the levels are applied to every statement
+	 * run through it, including those of the liquibase executor.
+	 */
+	public Connection wrap(Connection connection) {
+		if (Proxy.isProxyClass(connection.getClass()) && Proxy.getInvocationHandler(connection) instanceof ConnectionHandler) {
+			return connection;
+		}
+		return (Connection) Proxy.newProxyInstance(CassandraConsistency.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler(connection));
+	}
+
+	private static String getQueryString(Statement statement) {
+		if (statement instanceof RegularStatement) {
+			return ((RegularStatement) statement).getQueryString();
+		} else if (statement instanceof BoundStatement) {
+			return ((BoundStatement) statement).preparedStatement().getQueryString();
+		} else if (statement instanceof BatchStatement && !((BatchStatement) statement).getStatements().isEmpty()) {
+			return getQueryString(((BatchStatement) statement).getStatements().iterator().next());
+		}
+		return null;
+	}
+
+	private static boolean isLevelParameter(String name) {
+		if (name.equals(CassandraConfiguration.LOCK_SERIAL_CONSISTENCY)) {
+			return true;
+		}
+		for (Operation operation : Operation.values()) {
+			if (operation.getParameter().equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Map<String, String> getParameters(String url) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		int query = url == null ? -1 : url.indexOf('?');
+		if (query < 0) {
+			return parameters;
+		}
+		for (String pair : url.substring(query + 1).split("&")) {
+			int index = pair.indexOf('=');
+			if (index > 0 && isLevelParameter(pair.substring(0, index))) {
+				parameters.put(pair.substring(0, index), pair.substring(index + 1));
+			}
+		}
+		return parameters;
+	}
+
+	private static ConsistencyLevel toLevel(String name, String parameter) {
+		if (name == null || name.trim().length() == 0) {
+			return null;
+		}
+		try {
+			return ConsistencyLevel.valueOf(name.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new UnexpectedLiquibaseException("Unknown consistency level " + name + " for " + parameter);
+		}
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private class ConnectionHandler implements InvocationHandler {
+
+		private final Connection connection;
+
+		ConnectionHandler(Connection connection) {
+			this.connection = connection;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("equals")) {
+				return proxy == args[0];
+			} else if (method.getName().equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			Object result = CassandraConsistency.invoke(connection, method, args);
+			if (result instanceof PreparedStatement && args != null && args[0] instanceof String) {
+				apply((PreparedStatement) result, (String) args[0]);
+			} else if (method.getName().equals("createStatement")) {
+				return Proxy.newProxyInstance(CassandraConsistency.class.getClassLoader(),
+						new Class<?>[] { java.sql.Statement.class }, new StatementHandler((java.sql.Statement) result));
+			}
+			return result;
+		}
+	}
+
+	private class StatementHandler implements InvocationHandler {
+
+		private final java.sql.Statement statement;
+
+		StatementHandler(java.sql.Statement statement) {
+			this.statement = statement;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("equals")) {
+				return proxy == args[0];
+			} else if (method.getName().equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (method.getName().startsWith("execute") && args != null && args[0] instanceof String) {
+				apply(statement, (String) args[0]);
+			}
+			return CassandraConsistency.invoke(statement, method, args);
+		}
+	}
+}
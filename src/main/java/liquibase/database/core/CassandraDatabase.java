@@ -1,66 +1,107 @@
 package liquibase.database.core;
 
+import java.io.File;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import liquibase.change.CheckSum;
+import liquibase.change.Change;
 import liquibase.changelog.ChangeLogHistoryServiceFactory;
 import liquibase.changelog.ChangeSet;
 import liquibase.changelog.ChangeLogHistoryServiceCassandra;
 import liquibase.changelog.DatabaseChangeLog;
 import liquibase.changelog.RanChangeSet;
 import liquibase.changelog.StandardChangeLogHistoryService;
+import liquibase.configuration.CassandraConfiguration;
 import liquibase.database.AbstractJdbcDatabase;
 import liquibase.database.Database;
 import liquibase.database.DatabaseConnection;
+import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.DatabaseException;
 import liquibase.exception.LiquibaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.executor.CassandraNativeExecutor;
 import liquibase.executor.Executor;
 import liquibase.executor.ExecutorService;
+import liquibase.executor.jvm.JdbcExecutor;
+import liquibase.lockservice.LockServiceCassandra;
 import liquibase.logging.LogFactory;
+import liquibase.metrics.CassandraMetrics;
+import liquibase.sql.Sql;
+import liquibase.sql.visitor.SqlVisitor;
+import liquibase.sqlgenerator.core.MarkChangeSetRanGeneratorCassandra;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.ExecutablePreparedStatement;
 import liquibase.statement.SqlStatement;
-import liquibase.statement.core.GetNextChangeSetSequenceValueStatement;
-import liquibase.statement.core.SelectFromDatabaseChangeLogStatement;
+import liquibase.util.ProgressListener;
+import liquibase.statement.core.RawSqlStatement;
 import liquibase.statement.core.UpdateStatement;
 
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.exceptions.DriverException;
+
 /**
  * Cassandra NoSQL database support.
  */
 public class CassandraDatabase extends AbstractJdbcDatabase {
 	public static final String PRODUCT_NAME = "Cassandra";
-	private static Integer lastChangeSetSequenceValue = 0;
+	private CassandraConnectionPool connectionPool;
+	private CassandraSequenceAllocator sequenceAllocator;
+	private CassandraKeyspaceMetadata keyspaceMetadata;
+	private CassandraSchemaAgreement schemaAgreement;
+	private CassandraMetrics metrics;
+	private CassandraConsistency consistency;
+	private CassandraHistoryLayout historyLayout;
+	private CassandraRetryPolicy retryPolicy;
+	private ChangeSet timedChangeSet;
+	private long changeSetStart;
 
 	public boolean hasDatabaseChangeLogLockTable() throws DatabaseException {
-		boolean hasChangeLogLockTable;
-		try {
-			String liquibaseSchema = this.getLiquibaseSchemaName();
-			Statement statement = getStatement();
-			String escapeTableName = escapeTableName(getLiquibaseCatalogName(),
-					liquibaseSchema, getDatabaseChangeLogLockTableName());
-			statement.executeQuery("select ID from " + escapeTableName);
-			statement.close();
-			hasChangeLogLockTable = true;
-		} catch (SQLException e) {
+		boolean hasChangeLogLockTable = hasTable(getDatabaseChangeLogLockTableName());
+		if (!hasChangeLogLockTable) {
 			LogFactory.getLogger().info("No DATABASECHANGELOGLOCK available in cassandra.");
-			hasChangeLogLockTable = false;
-		} catch (ClassNotFoundException e) {
-			LogFactory.getLogger().info(e.getMessage());
-			hasChangeLogLockTable = false;
 		}
-
-		// needs to be generated up front
 		return hasChangeLogLockTable;
 	}
 
+	/**
+	 * Checks the liquibase keyspace for a table, using the cached keyspace
+	 * metadata.
+	 */
+	public boolean hasTable(String tableName) throws DatabaseException {
+		return getKeyspaceMetadata().hasTable(tableName);
+	}
+
+	/**
+	 * Table metadata of the liquibase keyspace, loaded once and dropped
+	 * whenever the extension runs DDL.
+	 */
+	public synchronized CassandraKeyspaceMetadata getKeyspaceMetadata() {
+		String keyspace = getLiquibaseSchemaName();
+		if (keyspaceMetadata == null || !keyspaceMetadata.getKeyspace().equals(keyspace)) {
+			keyspaceMetadata = new CassandraKeyspaceMetadata(this, keyspace);
+		}
+		return keyspaceMetadata;
+	}
+
+	/**
+	 * Drops the cached keyspace metadata, e.g. after running DDL.
+	 */
+	public void invalidateKeyspaceMetadata() {
+		CassandraKeyspaceMetadata metadata = keyspaceMetadata;
+		if (metadata != null) {
+			metadata.invalidate();
+		}
+	}
+
 	/**
 	 * This method will check the database ChangeLogLock table used to keep
 	 * track of if a machine is updating the database. If the table does not
@@ -70,41 +111,23 @@ public class CassandraDatabase extends AbstractJdbcDatabase {
 	public void checkDatabaseChangeLogLockTable() throws DatabaseException {
 		if (!hasDatabaseChangeLogLockTable()) {
 			try {
-				Statement statement = getStatement();
-				statement
-						.executeUpdate("CREATE TABLE DATABASECHANGELOGLOCK (ID int PRIMARY KEY, LOCKED boolean, LOCKGRANTED timestamp, LOCKEDBY text)");
-				statement.close();
-
-				statement = getStatement();
-				statement
-						.executeUpdate("insert into DATABASECHANGELOGLOCK (ID, LOCKED) values (1, false)");
-				statement.close();
+				executeCql("CREATE TABLE DATABASECHANGELOGLOCK (ID int PRIMARY KEY, LOCKED boolean, LOCKGRANTED timestamp, LOCKEDBY text)");
+				executeCql("insert into DATABASECHANGELOGLOCK (ID, LOCKED) values (1, false)");
 			} catch (SQLException e) {
 				LogFactory.getLogger().info("No DATABASECHANGELOG available in cassandra.");
 				throw new RuntimeException(e);
-			} catch (ClassNotFoundException e) {
-				throw new RuntimeException(e);
+			} finally {
+				invalidateKeyspaceMetadata();
 			}
 		}
 	}
 
 	// @Override
 	public boolean hasDatabaseChangeLogTable() throws DatabaseException {
-		boolean hasChangeLogTable;
-		try {
-			Statement statement = getStatement();
-			statement.executeQuery("select ID from DATABASECHANGELOG");
-			statement.close();
-			hasChangeLogTable = true;
-		} catch (SQLException e) {
+		boolean hasChangeLogTable = hasTable(getDatabaseChangeLogTableName());
+		if (!hasChangeLogTable) {
 			LogFactory.getLogger().info("No DATABASECHANGELOG available in cassandra.");
-			hasChangeLogTable = false;
-		} catch (ClassNotFoundException e) {
-			LogFactory.getLogger(e.getMessage());
-			hasChangeLogTable = false;
 		}
-
-		// needs to be generated up front
 		return hasChangeLogTable;
 	}
 
@@ -122,16 +145,189 @@ public class CassandraDatabase extends AbstractJdbcDatabase {
 			throws DatabaseException {
 		if (!hasDatabaseChangeLogTable()) {
 			try {
-				Statement statement = getStatement();
-				statement
-						.executeUpdate("CREATE TABLE DATABASECHANGELOG (ID text PRIMARY KEY, AUTHOR text, FILENAME text, DATEEXECUTED timestamp, ORDEREXECUTED int, EXECTYPE text, MD5SUM text, DESCRIPTION text, COMMENTS text, TAG text, LIQUIBASE text)");
-				statement.close();
+				if (getHistoryLayout() == CassandraHistoryLayout.V2) {
+					executeCql("CREATE TABLE " + getDatabaseChangeLogTableName() + " (BUCKET int, ORDEREXECUTED int, ID text, AUTHOR text, FILENAME text, DATEEXECUTED timestamp, EXECTYPE text, MD5SUM text, DESCRIPTION text, COMMENTS text, TAG text, LIQUIBASE text, PRIMARY KEY (BUCKET, ORDEREXECUTED))");
+				} else {
+					executeCql("CREATE TABLE DATABASECHANGELOG (ID text PRIMARY KEY, AUTHOR text, FILENAME text, DATEEXECUTED timestamp, ORDEREXECUTED int, EXECTYPE text, MD5SUM text, DESCRIPTION text, COMMENTS text, TAG text, LIQUIBASE text)");
+				}
 			} catch (SQLException e) {
 				throw new RuntimeException(e);
-			} catch (ClassNotFoundException e) {
-				throw new RuntimeException(e);
+			} finally {
+				invalidateKeyspaceMetadata();
+			}
+			recordHistoryLayout();
+		}
+	}
+
+	/**
+	 * Name of the table holding the version row of the history, see
+	 * {@link #updateDatabaseChangeLogVersion()}. It is the same for both
+	 * history layouts.
+	 */
+	public String getDatabaseChangeLogHeadTableName() {
+		return getDatabaseChangeLogBaseTableName() + "head";
+	}
+
+	/**
+	 * True for the history tables of both layouts, the head table and the
+	 * lock table.
+	 */
+	public boolean isLiquibaseTable(String tableName) {
+		String history = getDatabaseChangeLogBaseTableName();
+		return tableName != null && (tableName.equalsIgnoreCase(history)
+				|| tableName.equalsIgnoreCase(CassandraHistoryLayout.V2.getTableName(history))
+				|| tableName.equalsIgnoreCase(getDatabaseChangeLogHeadTableName())
+				|| tableName.equalsIgnoreCase(getDatabaseChangeLogLockTableName()));
+	}
+
+	/**
+	 * Layout of the history of this keyspace. The <code>layout</code> row of
+	 * the databasechangeloghead table wins over the <code>historyLayout</code>
+	 * property, and a keyspace with a v1 table but no such row stays on v1
+	 * until {@link CassandraHistoryMigrator} moves it. Read once per
+	 * connection and again with every changelog lock, see
+	 * {@link #refreshHistoryLayout()}.
+	 */
+	public synchronized CassandraHistoryLayout getHistoryLayout() {
+		if (historyLayout != null) {
+			return historyLayout;
+		}
+		CassandraHistoryLayout configured = CassandraHistoryLayout.forName(CassandraConfiguration.getInstance().getHistoryLayout());
+		if (getConnection() == null) {
+			return configured;
+		}
+		try {
+			String recorded = readHeadValue(CassandraHistoryLayout.LAYOUT_ROW);
+			if (recorded != null) {
+				historyLayout = CassandraHistoryLayout.forName(recorded);
+			} else if (configured == CassandraHistoryLayout.V2 && hasTable(getDatabaseChangeLogBaseTableName())) {
+				LogFactory.getLogger().warning("Keyspace " + getLiquibaseSchemaName() + " keeps its history in the v1 layout of "
+						+ getDatabaseChangeLogBaseTableName() + " until it is moved with CassandraHistoryMigrator");
+				historyLayout = CassandraHistoryLayout.V1;
+			} else {
+				historyLayout = configured;
 			}
+		} catch (DatabaseException e) {
+			throw new UnexpectedLiquibaseException("Cannot read the history layout of keyspace " + getLiquibaseSchemaName(), e);
 		}
+		return historyLayout;
+	}
+
+	/**
+	 * Re-reads the <code>layout</code> row, so a process that connected
+	 * before {@link CassandraHistoryMigrator} moved the history switches to
+	 * the v2 table. Called once the changelog lock is held, when no
+	 * migration can be running.
+	 */
+	public synchronized void refreshHistoryLayout() throws DatabaseException {
+		if (historyLayout == null || getConnection() == null) {
+			return;
+		}
+		String recorded = readHeadValue(CassandraHistoryLayout.LAYOUT_ROW);
+		if (recorded != null && CassandraHistoryLayout.forName(recorded) != historyLayout) {
+			LogFactory.getLogger().info("History of keyspace " + getLiquibaseSchemaName() + " moved to the " + recorded + " layout");
+			historyLayout = CassandraHistoryLayout.forName(recorded);
+			sequenceAllocator = null;
+			// the migration created the v2 table on another connection
+			invalidateKeyspaceMetadata();
+		}
+	}
+
+	synchronized void setHistoryLayout(CassandraHistoryLayout layout) {
+		historyLayout = layout;
+	}
+
+	/**
+	 * Writes the <code>layout</code> row of a v2 history, so processes
+	 * configured for v1 use the v2 table too.
+	 */
+	public void recordHistoryLayout() throws DatabaseException {
+		if (getHistoryLayout() == CassandraHistoryLayout.V2 && hasTable(getDatabaseChangeLogHeadTableName())) {
+			ExecutorService.getInstance().getExecutor(this).execute(new MarkChangeSetRanGeneratorCassandra()
+					.generateHeadStatement(this, CassandraHistoryLayout.LAYOUT_ROW, CassandraHistoryLayout.V2.getName()));
+		}
+	}
+
+	/**
+	 * Highest bucket of the v2 history that may hold rows: the one recorded
+	 * with the last history write, or the one of the highest ORDEREXECUTED
+	 * value handed out or reserved, whichever is higher. Buckets are never
+	 * skipped, rows in a bucket above the recorded one are only possible
+	 * while another process is writing.
+	 */
+	int readLastHistoryBucket() throws DatabaseException {
+		String recorded = readHeadValue(CassandraHistoryLayout.BUCKET_ROW);
+		int bucket = recorded == null ? 0 : Integer.parseInt(recorded);
+		for (String row : new String[] { CassandraSequenceAllocator.ORDER_EXECUTED, CassandraSequenceAllocator.RESERVED_ORDER_EXECUTED }) {
+			String next = readHeadValue(row);
+			if (next != null) {
+				bucket = Math.max(bucket, CassandraHistoryLayout.getBucket(Math.max(0, Integer.parseInt(next) - 1)));
+			}
+		}
+		return bucket;
+	}
+
+	/**
+	 * Creates the databasechangeloghead table if it does not exist.
+	 */
+	public void checkDatabaseChangeLogHeadTable() throws DatabaseException {
+		if (!hasTable(getDatabaseChangeLogHeadTableName())) {
+			try {
+				executeCql("CREATE TABLE " + getDatabaseChangeLogHeadTableName() + " (NAME text PRIMARY KEY, VALUE text)");
+			} catch (SQLException e) {
+				throw new DatabaseException("Cannot create " + getDatabaseChangeLogHeadTableName(), e);
+			} finally {
+				invalidateKeyspaceMetadata();
+			}
+		}
+	}
+
+	/**
+	 * Random version of the history, replaced with every write to the
+	 * databasechangelog table. Null if it was never written.
+	 */
+	public String readDatabaseChangeLogVersion() throws DatabaseException {
+		return readHeadValue(MarkChangeSetRanGeneratorCassandra.VERSION);
+	}
+
+	/**
+	 * Value of a row of the databasechangeloghead table, null if the table or
+	 * the row does not exist.
+	 */
+	public String readHeadValue(String name) throws DatabaseException {
+		if (!hasTable(getDatabaseChangeLogHeadTableName())) {
+			return null;
+		}
+		List<Map<String, ?>> rows = ExecutorService.getInstance().getExecutor(this).queryForList(new RawSqlStatement(
+				"SELECT VALUE FROM " + escapeTableName(getLiquibaseCatalogName(), getLiquibaseSchemaName(), getDatabaseChangeLogHeadTableName())
+						+ " WHERE NAME = '" + name.replace("'", "''") + "'"));
+		if (rows.isEmpty() || rows.get(0).get("VALUE") == null) {
+			return null;
+		}
+		return rows.get(0).get("VALUE").toString();
+	}
+
+	/**
+	 * Writes a new version of the history, for writes to the
+	 * databasechangelog table that don't go through
+	 * {@link MarkChangeSetRanGeneratorCassandra}. Only the local history
+	 * cache reads the version, so it is not written with the cache off.
+	 */
+	public void updateDatabaseChangeLogVersion() throws DatabaseException {
+		if (CassandraConfiguration.getInstance().getHistoryCache() && hasTable(getDatabaseChangeLogHeadTableName())) {
+			ExecutorService.getInstance().getExecutor(this).execute(new MarkChangeSetRanGeneratorCassandra().generateVersionStatement(this));
+		}
+	}
+
+	/**
+	 * Wraps CQL statements in a single UNLOGGED batch.
+	 */
+	public static String toUnloggedBatch(List<String> statements) {
+		StringBuilder cql = new StringBuilder("BEGIN UNLOGGED BATCH\n");
+		for (String statement : statements) {
+			cql.append(statement).append(";\n");
+		}
+		return cql.append("APPLY BATCH").toString();
 	}
 
 	public String getShortName() {
@@ -171,6 +367,9 @@ public class CassandraDatabase extends AbstractJdbcDatabase {
 	}
 
 	public String getDefaultDriver(String url) {
+		if (CassandraNativeConnection.isNativeUrl(url)) {
+			return null;
+		}
 		return "org.apache.cassandra.cql.jdbc.CassandraDriver";
 	}
 
@@ -202,202 +401,700 @@ public class CassandraDatabase extends AbstractJdbcDatabase {
 		return true;
 	}
 
+	/**
+	 * Next ORDEREXECUTED value of this keyspace, see
+	 * {@link CassandraSequenceAllocator}.
+	 */
 	public int getNextChangeSetSequenceValue() throws LiquibaseException {
-		if (lastChangeSetSequenceValue == null) {
-			if (getConnection() == null) {
-				lastChangeSetSequenceValue = 0;
-			} else {
-				lastChangeSetSequenceValue = ExecutorService
-						.getInstance()
-						.getExecutor(this)
-						.queryForInt(
-								new GetNextChangeSetSequenceValueStatement());
+		return getSequenceAllocator().next();
+	}
+
+	private synchronized CassandraSequenceAllocator getSequenceAllocator() {
+		if (sequenceAllocator == null) {
+			CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+			sequenceAllocator = new CassandraSequenceAllocator(this, configuration.getSequenceReservation(),
+					configuration.getSequenceBlockSize());
+		}
+		return sequenceAllocator;
+	}
+
+	/**
+	 * True if this database talks the CQL binary protocol through a
+	 * {@link CassandraNativeConnection} instead of JDBC.
+	 */
+	public boolean isNativeConnection() {
+		return getConnection() instanceof CassandraNativeConnection;
+	}
+
+	public CassandraNativeConnection getNativeConnection() {
+		return (CassandraNativeConnection) getConnection();
+	}
+
+	/**
+	 * Pool of connections used for the metadata queries run by this class.
+	 * Created on first use from the url of the wrapped connection. Not
+	 * available for native connections, which multiplex a single session.
+	 */
+	public synchronized CassandraConnectionPool getConnectionPool() {
+		if (isNativeConnection()) {
+			throw new UnexpectedLiquibaseException("No JDBC connection pool for native connection " + getConnection().getURL());
+		}
+		if (connectionPool == null) {
+			String url = super.getConnection().getURL();
+			CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+			connectionPool = new CassandraConnectionPool(url, getDefaultDriver(url),
+					configuration.getConnectionPoolSize(),
+					configuration.getConnectionPoolWaitTime());
+		}
+		return connectionPool;
+	}
+
+	/**
+	 * Runs a single CQL statement on a pooled connection. It does not touch
+	 * the executor's connection, so other threads may call it. Transient
+	 * errors are retried, see {@link CassandraRetryPolicy}.
+	 */
+	public void executeCql(String cql) throws SQLException {
+		boolean schemaChange = CassandraKeyspaceMetadata.isSchemaChange(cql);
+		try {
+			if (!schemaChange) {
+				awaitSchemaAgreement();
+			}
+			CassandraRetryPolicy.Attempts attempts = getRetryPolicy().start(cql);
+			while (true) {
+				try {
+					executeCqlOnce(cql);
+					break;
+				} catch (SQLException e) {
+					if (!attempts.retry(e)) {
+						throw e;
+					}
+				}
+			}
+			if (schemaChange) {
+				schemaChanged();
+			}
+		} catch (DatabaseException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+	}
+
+	private void executeCqlOnce(String cql) throws SQLException {
+		if (isNativeConnection()) {
+			try {
+				SimpleStatement statement = new SimpleStatement(cql);
+				getConsistency().apply(statement);
+				getNativeConnection().getSession().execute(statement);
+			} catch (DriverException e) {
+				throw new SQLException(e.getMessage(), e);
+			}
+		} else {
+			CassandraConnectionPool pool = getConnectionPool();
+			Connection con = pool.borrow();
+			try {
+				Statement statement = con.createStatement();
+				try {
+					getConsistency().apply(statement, cql);
+					statement.execute(cql);
+				} finally {
+					statement.close();
+				}
+			} finally {
+				pool.release(con);
+			}
+		}
+	}
+
+	/**
+	 * Runs a CQL query on a pooled connection. Column names of the returned
+	 * rows are upper case, as with the liquibase executor. It does not touch
+	 * the executor's connection, so other threads may call it. Transient
+	 * errors are retried, see {@link CassandraRetryPolicy}.
+	 */
+	public List<Map<String, Object>> queryCql(String cql) throws SQLException {
+		CassandraRetryPolicy.Attempts attempts = getRetryPolicy().start(cql);
+		while (true) {
+			try {
+				return queryCqlOnce(cql);
+			} catch (SQLException e) {
+				if (!attempts.retry(e)) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	private List<Map<String, Object>> queryCqlOnce(String cql) throws SQLException {
+		if (isNativeConnection()) {
+			try {
+				CassandraNativeConnection connection = getNativeConnection();
+				SimpleStatement statement = new SimpleStatement(cql);
+				getConsistency().apply(statement);
+				return connection.toMaps(connection.getSession().execute(statement));
+			} catch (DriverException e) {
+				throw new SQLException(e.getMessage(), e);
+			}
+		}
+		CassandraConnectionPool pool = getConnectionPool();
+		Connection con = pool.borrow();
+		try {
+			Statement statement = con.createStatement();
+			try {
+				getConsistency().apply(statement, cql);
+				ResultSet resultSet = statement.executeQuery(cql);
+				try {
+					ResultSetMetaData metaData = resultSet.getMetaData();
+					int columnCount = metaData.getColumnCount();
+					List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+					while (resultSet.next()) {
+						Map<String, Object> row = new HashMap<String, Object>();
+						for (int i = 1; i <= columnCount; i++) {
+							row.put(metaData.getColumnLabel(i).toUpperCase(), resultSet.getObject(i));
+						}
+						rows.add(row);
+					}
+					return rows;
+				} finally {
+					resultSet.close();
+				}
+			} finally {
+				statement.close();
+			}
+		} finally {
+			pool.release(con);
+		}
+	}
+
+	/**
+	 * Consistency levels of the history, lock and DDL statements. They apply
+	 * to the connections set later too.
+	 */
+	public synchronized CassandraConsistency getConsistency() {
+		if (consistency == null) {
+			consistency = new CassandraConsistency(this);
+		}
+		return consistency;
+	}
+
+	/**
+	 * Retries of statements failing with transient errors. It applies to the
+	 * connections set later too.
+	 */
+	public synchronized CassandraRetryPolicy getRetryPolicy() {
+		if (retryPolicy == null) {
+			retryPolicy = new CassandraRetryPolicy(this);
+		}
+		return retryPolicy;
+	}
+
+	/**
+	 * Timings of the operations on this keyspace.
+	 */
+	public synchronized CassandraMetrics getMetrics() {
+		if (metrics == null) {
+			metrics = new CassandraMetrics(getConnection() == null ? null : getLiquibaseSchemaName());
+		}
+		return metrics;
+	}
+
+	/**
+	 * Runs the statements one by one. A statement changing the schema drops
+	 * the cached keyspace metadata and leaves schema agreement pending; any
+	 * other statement first waits for a pending agreement, so it never reaches
+	 * a node that does not know the new schema yet.
+	 */
+	@Override
+	public void execute(SqlStatement[] statements, List<SqlVisitor> sqlVisitors)
+			throws LiquibaseException {
+		boolean updatesDatabase = ExecutorService.getInstance().getExecutor(this).updatesDatabase();
+		for (SqlStatement statement : statements) {
+			boolean schemaChange = isSchemaChange(statement);
+			if (updatesDatabase && !schemaChange) {
+				awaitSchemaAgreement();
+			}
+			long start = CassandraMetrics.start();
+			boolean failed = true;
+			try {
+				super.execute(new SqlStatement[] { statement }, sqlVisitors);
+				failed = false;
+			} finally {
+				if (schemaChange) {
+					invalidateKeyspaceMetadata();
+				}
+				if (updatesDatabase) {
+					getMetrics().record(schemaChange ? CassandraMetrics.DDL : CassandraMetrics.STATEMENT, start, failed);
+				}
+			}
+			if (updatesDatabase && schemaChange) {
+				schemaChanged();
+			}
+		}
+	}
+
+	/**
+	 * Schema agreement tracker of the connection.
+	 */
+	public synchronized CassandraSchemaAgreement getSchemaAgreement() {
+		if (schemaAgreement == null) {
+			CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+			schemaAgreement = new CassandraSchemaAgreement(this, configuration.getSchemaAgreementTimeout(),
+					configuration.getSchemaAgreementPollInterval());
+		}
+		return schemaAgreement;
+	}
+
+	/**
+	 * Records a schema change. Over JDBC every statement goes to the node of
+	 * the connection, which knows its own changes, so the wait is deferred
+	 * until the next statement that is not DDL and DDL in between shares it. The
+	 * driver of a native connection sends each statement to any node, so
+	 * agreement is awaited right away.
+	 */
+	public void schemaChanged() throws DatabaseException {
+		invalidateKeyspaceMetadata();
+		CassandraSchemaAgreement agreement = getSchemaAgreement();
+		agreement.schemaChanged();
+		if (isNativeConnection()) {
+			awaitSchemaAgreement();
+		}
+	}
+
+	/**
+	 * Waits until all nodes agree on the schema if DDL ran since the last
+	 * wait.
+	 */
+	public void awaitSchemaAgreement() throws DatabaseException {
+		CassandraSchemaAgreement agreement = getSchemaAgreement();
+		if (!agreement.isPending()) {
+			return;
+		}
+		long start = CassandraMetrics.start();
+		boolean failed = true;
+		try {
+			agreement.awaitIfPending();
+			failed = false;
+		} finally {
+			getMetrics().record(CassandraMetrics.SCHEMA_AGREEMENT, start, failed);
+		}
+	}
+
+	/**
+	 * Times the change set of the change from the start of its first change
+	 * until it is marked as ran, or until a change fails. Fails if the lease
+	 * of the changelog lock was lost.
+	 */
+	@Override
+	public void executeStatements(Change change, DatabaseChangeLog changeLog, List<SqlVisitor> sqlVisitors)
+			throws LiquibaseException {
+		LockServiceCassandra.checkLease(this);
+		ChangeSet changeSet = change.getChangeSet();
+		if (changeSet != null && changeSet != timedChangeSet) {
+			timedChangeSet = changeSet;
+			getMetrics().startChangeSet(changeSet.toString(false));
+			changeSetStart = CassandraMetrics.start();
+		}
+		boolean failed = true;
+		try {
+			super.executeStatements(change, changeLog, sqlVisitors);
+			failed = false;
+		} finally {
+			if (failed) {
+				endChangeSet(true);
 			}
 		}
+	}
 
-		return ++lastChangeSetSequenceValue;
+	/**
+	 * Ends the timing of the change set before writing its row.
+	 */
+	@Override
+	public void markChangeSetExecStatus(ChangeSet changeSet, ChangeSet.ExecType execType) throws DatabaseException {
+		if (changeSet == timedChangeSet) {
+			endChangeSet(execType == ChangeSet.ExecType.FAILED);
+		}
+		super.markChangeSetExecStatus(changeSet, execType);
 	}
 
-	protected Statement getStatement() throws ClassNotFoundException,
-			SQLException {
-		String url = super.getConnection().getURL();
-		Class.forName("org.apache.cassandra.cql.jdbc.CassandraDriver");
-		Connection con = DriverManager.getConnection(url);
-		Statement statement = con.createStatement();
-		return statement;
+	private void endChangeSet(boolean failed) {
+		if (timedChangeSet != null) {
+			getMetrics().endChangeSet(changeSetStart, failed);
+			timedChangeSet = null;
+		}
+	}
+
+	private boolean isSchemaChange(SqlStatement statement) {
+		if (statement instanceof ExecutablePreparedStatement) {
+			// runs its own CQL, waiting for schema agreement itself
+			return false;
+		}
+		if (statement instanceof RawSqlStatement) {
+			return CassandraKeyspaceMetadata.isSchemaChange(((RawSqlStatement) statement).getSql());
+		}
+		if (!SqlGeneratorFactory.getInstance().supports(statement, this)) {
+			return false;
+		}
+		for (Sql sql : SqlGeneratorFactory.getInstance().generateSql(statement, this)) {
+			if (CassandraKeyspaceMetadata.isSchemaChange(sql.toSql())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Takes consistency levels from the url of the connection, and wraps
+	 * JDBC connections to apply them and to retry transient errors; see
+	 * {@link CassandraConsistency} and {@link CassandraRetryPolicy}.
+	 */
+	@Override
+	public void setConnection(DatabaseConnection conn) {
+		if (conn != null) {
+			getConsistency().setLevels(conn.getURL());
+			if (conn instanceof JdbcConnection && !CassandraRetryPolicy.isWrapped(((JdbcConnection) conn).getUnderlyingConnection())) {
+				conn = new JdbcConnection(getRetryPolicy().wrap(getConsistency().wrap(((JdbcConnection) conn).getUnderlyingConnection())));
+			}
+		}
+		closeConnectionPool();
+		keyspaceMetadata = null;
+		synchronized (this) {
+			sequenceAllocator = null;
+			schemaAgreement = null;
+			metrics = null;
+			historyLayout = null;
+		}
+		super.setConnection(conn);
+		installNativeExecutor();
+	}
+
+	/**
+	 * Makes a {@link CassandraNativeExecutor} the executor of a database with
+	 * a native connection. Liquibase resets all executors at the end of a
+	 * command and would otherwise hand out a JDBC executor next time;
+	 * executors set on purpose, such as the logging executor of updateSQL,
+	 * are kept.
+	 */
+	public void installNativeExecutor() {
+		if (isNativeConnection()) {
+			Executor executor = ExecutorService.getInstance().getExecutor(this);
+			if (executor.getClass() == JdbcExecutor.class) {
+				ExecutorService.getInstance().setExecutor(this, new CassandraNativeExecutor(this));
+			}
+		}
+	}
+
+	@Override
+	public void close() throws DatabaseException {
+		closeConnectionPool();
+		synchronized (this) {
+			if (metrics != null && !metrics.isEmpty()) {
+				LogFactory.getLogger().info(metrics.report());
+			}
+		}
+		super.close();
+	}
+
+	private synchronized void closeConnectionPool() {
+		if (connectionPool != null) {
+			connectionPool.close();
+			LogFactory.getLogger().info("Cassandra connection pool usage: " + connectionPool);
+			connectionPool = null;
+		}
 	}
 
 	@SuppressWarnings("rawtypes")
 	public List<RanChangeSet> getRanChangeSets(
 			StandardChangeLogHistoryService changeLogHistoryService,
 			Database database) throws DatabaseException {
-		@SuppressWarnings("unused")
-		String databaseChangeLogTableName = database.escapeTableName(
-				database.getLiquibaseCatalogName(),
-				database.getLiquibaseSchemaName(),
-				database.getDatabaseChangeLogTableName());
+		List<RanChangeSet> ranChangeSets;
+		long start = CassandraMetrics.start();
+		boolean failed = true;
+		try {
+			ranChangeSets = readRanChangeSets(changeLogHistoryService);
+			failed = false;
+		} finally {
+			getMetrics().record(CassandraMetrics.HISTORY_READ, start, failed);
+		}
+		getMetrics().increment(CassandraMetrics.HISTORY_ROWS_READ, ranChangeSets.size());
+		return ranChangeSets;
+	}
+
+	private List<RanChangeSet> readRanChangeSets(StandardChangeLogHistoryService changeLogHistoryService)
+			throws DatabaseException {
 		List<RanChangeSet> ranChangeSetList = new ArrayList<RanChangeSet>();
 		if (changeLogHistoryService.hasDatabaseChangeLogTable()) {
-			SqlStatement select = new SelectFromDatabaseChangeLogStatement("FILENAME",
-			 "AUTHOR", "ID", "MD5SUM", "ORDEREXECUTED", "TAG", "EXECTYPE",
-			 "DESCRIPTION", "COMMENTS");
-			List<Map<String, ?>> results = ExecutorService.getInstance()
-					.getExecutor(database).queryForList(select);
-			for (Map rs : results) {
-				String fileName = rs.get("FILENAME").toString();
-				String author = rs.get("AUTHOR").toString();
-				String id = rs.get("ID").toString();
-				String md5sum = rs.get("MD5SUM") == null ? null : rs.get(
-						"MD5SUM").toString();
-				String description = rs.get("DESCRIPTION") == null ? null : rs
-						.get("DESCRIPTION").toString();
-				String comments = rs.get("COMMENTS") == null ? null : rs.get(
-						"COMMENTS").toString();
-				Object tmpDateExecuted = rs.get("DATEEXECUTED");
-				Object orderExecuted = rs.get("ORDEREXECUTED");
-				Date dateExecuted = null;
-				if (tmpDateExecuted instanceof Date) {
-					dateExecuted = (Date) tmpDateExecuted;
-				} else if(tmpDateExecuted != null){
-					DateFormat df = new SimpleDateFormat(
-							"E MMM dd HH:mm:ss z yyyy");
-					try {
-						dateExecuted = df.parse((String) tmpDateExecuted);
-					} catch (ParseException e) {
-						LogFactory.getLogger().info(e.getMessage());
-					}
-				}
-				String tag = rs.get("TAG") == null ? null : rs.get("TAG")
-						.toString();
-				String execType = rs.get("EXECTYPE") == null ? null : rs.get(
-						"EXECTYPE").toString();
-				try {
-					RanChangeSet ranChangeSet = new RanChangeSet(
-							fileName, id, author, CheckSum.parse(md5sum),
-							dateExecuted, tag,
-							ChangeSet.ExecType.valueOf(execType), description,
-							comments);
-					ranChangeSet.setOrderExecuted((Integer) orderExecuted);
-					ranChangeSetList.add(ranChangeSet);
-				} catch (IllegalArgumentException e) {
-					LogFactory.getLogger().info("Unknown EXECTYPE from database: " + execType);
-					throw e;
+			CassandraHistoryCache cache = getHistoryCache();
+			String version = cache == null ? null : readDatabaseChangeLogVersion();
+			if (version != null) {
+				List<RanChangeSet> cached = cache.read(version);
+				if (cached != null) {
+					LogFactory.getLogger().debug("Read " + cached.size() + " ran change sets from " + cache.getFile());
+					return cached;
 				}
 			}
+			Iterator<RanChangeSet> ranChangeSets = readRanChangeSets();
+			while (ranChangeSets.hasNext()) {
+				ranChangeSetList.add(ranChangeSets.next());
+			}
+			if (version != null) {
+				cache.write(version, ranChangeSetList);
+			}
 		}
 		return ranChangeSetList;
 	}
 
+	/**
+	 * The local copy of the history when <code>historyCache</code> is on,
+	 * otherwise null.
+	 */
+	protected CassandraHistoryCache getHistoryCache() {
+		CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+		if (!configuration.getHistoryCache() || getConnection() == null) {
+			return null;
+		}
+		return CassandraHistoryCache.forKeyspace(new File(configuration.getHistoryCacheDirectory()),
+				getConnection().getURL(), getLiquibaseSchemaName());
+	}
+
+	/**
+	 * Streams the rows of the databasechangelog table, reading
+	 * <code>historyFetchSize</code> rows per round trip. Callers that only
+	 * look at each change set once don't need to hold the whole history.
+	 */
+	public Iterator<RanChangeSet> readRanChangeSets() throws DatabaseException {
+		return new CassandraRanChangeSetReader(this, CassandraConfiguration.getInstance().getHistoryFetchSize());
+	}
+
 	public void clearChecksums() throws LiquibaseException {
-		List<RanChangeSet> ranChangeSets = this.getRanChangeSetList();
-		for (RanChangeSet changeSet : ranChangeSets) {
-			UpdateStatement updateStatement = new UpdateStatement(
-					getLiquibaseCatalogName(), getLiquibaseSchemaName(),
-					getDatabaseChangeLogTableName());
-			updateStatement.addNewColumnValue("MD5SUM", null);
-			updateStatement.setWhereClause(escapeColumnName(
-					getLiquibaseCatalogName(), getLiquibaseSchemaName(),
-					getDatabaseChangeLogTableName(), "ID")
-					+ " = '"
-					+ changeSet.getId()
-					+ "' AND "
-					+ escapeColumnName(getLiquibaseCatalogName(),
-							getLiquibaseSchemaName(),
-							getDatabaseChangeLogTableName(), "DATEEXECUTED")
-					+ " = "
-					+ changeSet.getDateExecuted().getTime()
-					+ " AND "
-					+ escapeColumnName(getLiquibaseCatalogName(),
-							getLiquibaseSchemaName(),
-							getDatabaseChangeLogTableName(), "ORDEREXECUTED")
-					+ " = " + changeSet.getOrderExecuted());
-			ExecutorService.getInstance().getExecutor(this)
-					.execute(updateStatement);
+		clearChecksums(null);
+	}
+
+	/**
+	 * Sets MD5SUM of every row to null, streaming the history and writing
+	 * with a {@link CassandraBulkWriter}.
+	 *
+	 * @param progressListener notified every {@link CassandraBulkWriter#PROGRESS_INTERVAL} rows, may be null
+	 * @return number of rows updated
+	 */
+	public long clearChecksums(ProgressListener progressListener) throws LiquibaseException {
+		if (!hasDatabaseChangeLogTable()) {
+			return 0;
+		}
+		CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+		List<String> key = getDatabaseChangeLogKey();
+		StringBuilder condition = new StringBuilder();
+		for (String column : key) {
+			condition.append(condition.length() == 0 ? "" : " AND ").append(column.toUpperCase()).append(" = ?");
+		}
+		CassandraBulkWriter writer = new CassandraBulkWriter(this,
+				"UPDATE " + escapeTableName(getLiquibaseCatalogName(), getLiquibaseSchemaName(), getDatabaseChangeLogTableName())
+						+ " SET MD5SUM = null WHERE " + condition,
+				"Clear checksums", configuration.getMaxConcurrentWrites(), configuration.getWriteBatchSize())
+				.setProgressListener(progressListener);
+		boolean complete = false;
+		try {
+			Iterator<RanChangeSet> ranChangeSets = readRanChangeSets();
+			while (ranChangeSets.hasNext()) {
+				RanChangeSet ranChangeSet = ranChangeSets.next();
+				Object[] values = getDatabaseChangeLogKeyValues(key, ranChangeSet.getId(), ranChangeSet.getDateExecuted(), ranChangeSet.getOrderExecuted());
+				// both layouts are partitioned by their first key column, ID or BUCKET
+				writer.addToPartition(values[0], values);
+			}
+			complete = true;
+		} finally {
+			if (!complete) {
+				try {
+					writer.finish();
+				} catch (DatabaseException e) {
+					LogFactory.getLogger().debug("Error finishing clear checksums: " + e.getMessage());
+				}
+			}
 		}
+		long count = writer.finish();
+		updateDatabaseChangeLogVersion();
 		commit();
+		return count;
+	}
+
+	/**
+	 * Primary key columns of the databasechangelog table, lower case. The
+	 * table the history service creates is keyed by ID, DATEEXECUTED and
+	 * ORDEREXECUTED, the one {@link #checkDatabaseChangeLogTable} creates by
+	 * ID alone, the v2 table by BUCKET and ORDEREXECUTED.
+	 */
+	List<String> getDatabaseChangeLogKey() throws DatabaseException {
+		CassandraTableMetadata metadata = CassandraTableMetadata.load(this, getLiquibaseSchemaName(), getDatabaseChangeLogTableName());
+		List<String> key = new ArrayList<String>(metadata.getPartitionKey());
+		key.addAll(metadata.getClusteringColumns());
+		return key;
 	}
 
+	private Object[] getDatabaseChangeLogKeyValues(List<String> key, String id, Date dateExecuted, Integer orderExecuted) {
+		Object[] values = new Object[key.size()];
+		for (int i = 0; i < values.length; i++) {
+			String column = key.get(i);
+			if (column.equalsIgnoreCase("ID")) {
+				values[i] = id;
+			} else if (column.equalsIgnoreCase("DATEEXECUTED")) {
+				values[i] = dateExecuted;
+			} else if (column.equalsIgnoreCase("ORDEREXECUTED")) {
+				values[i] = orderExecuted;
+			} else if (column.equalsIgnoreCase(CassandraHistoryLayout.BUCKET)) {
+				if (orderExecuted == null) {
+					throw new UnexpectedLiquibaseException("Change set " + id + " has no ORDEREXECUTED in " + getDatabaseChangeLogTableName());
+				}
+				values[i] = CassandraHistoryLayout.getBucket(orderExecuted);
+			} else {
+				throw new UnexpectedLiquibaseException("Unexpected primary key column " + column + " of " + getDatabaseChangeLogTableName());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Tags the change set executed last, found with one read of the
+	 * databasechangeloghead table.
+	 */
 	@Override
 	public void tag(final String tagString) throws DatabaseException {
 		Executor executor = ExecutorService.getInstance().getExecutor(this);
-		ChangeLogHistoryServiceCassandra changeLogHistoryService = (ChangeLogHistoryServiceCassandra) ChangeLogHistoryServiceFactory
-				.getInstance().getChangeLogService(this);
-
 		try {
-			int totalRows = ExecutorService
-					.getInstance()
-					.getExecutor(this)
-					.queryForInt(
-							new SelectFromDatabaseChangeLogStatement("COUNT(*)"));
-			if (totalRows == 0) {
+			String lastChangeSetId = getLastChangeSetId();
+			if (lastChangeSetId == null) {
+				ChangeLogHistoryServiceCassandra changeLogHistoryService = (ChangeLogHistoryServiceCassandra) ChangeLogHistoryServiceFactory
+						.getInstance().getChangeLogService(this);
 				ChangeSet emptyChangeSet = new ChangeSet(
 						String.valueOf(new Date().getTime()), "liquibase",
 						false, false, "liquibase-internal", null, null,
 						getObjectQuotingStrategy(), null);
 				changeLogHistoryService.setExecType(emptyChangeSet,
 						ChangeSet.ExecType.EXECUTED);
+				changeLogHistoryService.flush();
+				lastChangeSetId = emptyChangeSet.getId();
 			}
 
-			// Timestamp lastExecutedDate = (Timestamp)
-			// this.getExecutor().queryForObject(createChangeToTagSQL(),
-			// Timestamp.class);
-			executor.execute(generateTagStatement(tagString));
+			executor.execute(generateTagStatement(tagString, lastChangeSetId));
+			updateDatabaseChangeLogVersion();
 			commit();
-
-			// getRanChangeSets().get(getRanChangeSets().size() -
-			// 1).setTag(tagString);
-			getRanChangeSetList().get(getRanChangeSetList().size() - 1).setTag(
-					tagString);
 		} catch (Exception e) {
 			throw new DatabaseException(e);
 		}
 	}
 
-	private SqlStatement generateTagStatement(String tagString)
-			throws Exception {
-		String liquibaseSchema = null;
-		liquibaseSchema = getLiquibaseSchemaName();
-		UpdateStatement updateStatement = new UpdateStatement(
-				getLiquibaseCatalogName(), liquibaseSchema,
-				getDatabaseChangeLogTableName());
-		updateStatement.addNewColumnValue("TAG", tagString);
-
-		RanChangeSet maxDateExecutedRanChangeSet = getMaxDateExecuted();
-		if (maxDateExecutedRanChangeSet == null) {
-			throw new LiquibaseException("No change sets found");
-		}
-		updateStatement.setWhereClause(escapeColumnName(
-				getLiquibaseCatalogName(), getLiquibaseSchemaName(),
-				getDatabaseChangeLogTableName(), "ID")
-				+ " = '"
-				+ maxDateExecutedRanChangeSet.getId()
-				+ "' AND "
-				+ escapeColumnName(getLiquibaseCatalogName(),
-						getLiquibaseSchemaName(),
-						getDatabaseChangeLogTableName(), "DATEEXECUTED")
-				+ " = "
-				+ maxDateExecutedRanChangeSet.getDateExecuted().getTime()
-				+ " AND "
-				+ escapeColumnName(getLiquibaseCatalogName(),
-						getLiquibaseSchemaName(),
-						getDatabaseChangeLogTableName(), "ORDEREXECUTED")
-				+ " = " + maxDateExecutedRanChangeSet.getOrderExecuted());
-		return updateStatement;
-	}
-
-	private RanChangeSet getMaxDateExecuted() throws Exception {
-		/*CustomChangeLogHistoryService changeLogHistoryService = (CustomChangeLogHistoryService) ChangeLogHistoryServiceFactory
-				.getInstance().getChangeLogService(this);
-		List<RanChangeSet> ranChangeSets = getRanChangeSets(
-				changeLogHistoryService, this);*/
-		List<RanChangeSet> ranChangeSets = this.getRanChangeSetList();
-		if (ranChangeSets == null || ranChangeSets.isEmpty()) {
+	/**
+	 * ID of the change set executed last, or null if the history is empty.
+	 * It is read from the <code>last</code> row of the databasechangeloghead
+	 * table. A history written before that row existed is scanned once and
+	 * the row is written.
+	 */
+	public String getLastChangeSetId() throws DatabaseException {
+		String lastChangeSetId = readHeadValue(MarkChangeSetRanGeneratorCassandra.LAST);
+		if (lastChangeSetId != null || !hasDatabaseChangeLogTable()) {
+			return lastChangeSetId;
+		}
+		RanChangeSet maxDateExecuted = getMaxDateExecuted();
+		if (maxDateExecuted == null) {
+			return null;
+		}
+		if (hasTable(getDatabaseChangeLogHeadTableName())) {
+			ExecutorService.getInstance().getExecutor(this).execute(new MarkChangeSetRanGeneratorCassandra()
+					.generateHeadStatement(this, MarkChangeSetRanGeneratorCassandra.LAST, maxDateExecuted.getId()));
+			if (maxDateExecuted.getOrderExecuted() != null) {
+				ExecutorService.getInstance().getExecutor(this).execute(new MarkChangeSetRanGeneratorCassandra().generateHeadStatement(this,
+						MarkChangeSetRanGeneratorCassandra.LAST_ORDER_EXECUTED, maxDateExecuted.getOrderExecuted().toString()));
+			}
+		}
+		return maxDateExecuted.getId();
+	}
+
+	/**
+	 * UPDATE of the TAG of the change set's row. If DATEEXECUTED and
+	 * ORDEREXECUTED are part of the key, they are read from the partition of
+	 * the ID first, taking the latest row. The v2 table is not partitioned by
+	 * ID; the row is the one of the <code>lastorderexecuted</code> head row,
+	 * and only a history written before that row existed is scanned.
+	 */
+	private SqlStatement generateTagStatement(String tagString, String changeSetId) throws DatabaseException {
+		String table = escapeTableName(getLiquibaseCatalogName(), getLiquibaseSchemaName(), getDatabaseChangeLogTableName());
+		String id = "'" + changeSetId.replace("'", "''") + "'";
+		List<String> key = getDatabaseChangeLogKey();
+		Date dateExecuted = null;
+		Integer orderExecuted = null;
+		if (!key.contains("id")) {
+			orderExecuted = readLastOrderExecuted(table, changeSetId);
+		}
+		if (!key.contains("id") && orderExecuted == null) {
+			Iterator<RanChangeSet> ranChangeSets = readRanChangeSets();
+			while (ranChangeSets.hasNext()) {
+				RanChangeSet ranChangeSet = ranChangeSets.next();
+				if (ranChangeSet.getId().equals(changeSetId) && ranChangeSet.getOrderExecuted() != null
+						&& (orderExecuted == null || ranChangeSet.getOrderExecuted() > orderExecuted)) {
+					dateExecuted = ranChangeSet.getDateExecuted();
+					orderExecuted = ranChangeSet.getOrderExecuted();
+				}
+			}
+			if (orderExecuted == null) {
+				throw new DatabaseException("Change set " + changeSetId + " is not in " + table);
+			}
+			ExecutorService.getInstance().getExecutor(this).execute(new MarkChangeSetRanGeneratorCassandra().generateHeadStatement(this,
+					MarkChangeSetRanGeneratorCassandra.LAST_ORDER_EXECUTED, orderExecuted.toString()));
+		} else if (key.size() > 1) {
+			List<Map<String, ?>> rows = ExecutorService.getInstance().getExecutor(this).queryForList(new RawSqlStatement(
+					"SELECT DATEEXECUTED, ORDEREXECUTED FROM " + table + " WHERE ID = " + id));
+			for (Map<String, ?> row : rows) {
+				Date rowDateExecuted = (Date) row.get("DATEEXECUTED");
+				Integer rowOrderExecuted = row.get("ORDEREXECUTED") == null ? null : ((Number) row.get("ORDEREXECUTED")).intValue();
+				if (dateExecuted == null || rowDateExecuted.after(dateExecuted)
+						|| (rowDateExecuted.equals(dateExecuted) && rowOrderExecuted != null
+								&& (orderExecuted == null || rowOrderExecuted > orderExecuted))) {
+					dateExecuted = rowDateExecuted;
+					orderExecuted = rowOrderExecuted;
+				}
+			}
+			if (dateExecuted == null) {
+				throw new DatabaseException("Change set " + changeSetId + " is not in " + table);
+			}
+		}
+		Object[] values = getDatabaseChangeLogKeyValues(key, changeSetId, dateExecuted, orderExecuted);
+		StringBuilder condition = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			Object value = values[i];
+			condition.append(i == 0 ? "" : " AND ").append(key.get(i).toUpperCase()).append(" = ")
+					.append(value instanceof Date ? String.valueOf(((Date) value).getTime()) : value instanceof Number ? value : id);
+		}
+		return new UpdateStatement(getLiquibaseCatalogName(), getLiquibaseSchemaName(), getDatabaseChangeLogTableName())
+				.addNewColumnValue("TAG", tagString)
+				.setWhereClause(condition.toString());
+	}
+
+	/**
+	 * The <code>lastorderexecuted</code> head row, if the v2 row it points to
+	 * is the one of the change set; one read by key each.
+	 */
+	private Integer readLastOrderExecuted(String table, String changeSetId) throws DatabaseException {
+		String recorded = readHeadValue(MarkChangeSetRanGeneratorCassandra.LAST_ORDER_EXECUTED);
+		if (recorded == null) {
+			return null;
+		}
+		int orderExecuted;
+		try {
+			orderExecuted = Integer.parseInt(recorded.trim());
+		} catch (NumberFormatException e) {
+			LogFactory.getLogger().warning("Ignoring " + MarkChangeSetRanGeneratorCassandra.LAST_ORDER_EXECUTED + " row " + recorded);
 			return null;
 		}
-		RanChangeSet maxDateExecutedRanChangeSet = ranChangeSets.get(0);
-		for (RanChangeSet changeSet : ranChangeSets) {
-			if (changeSet.getDateExecuted().after(
-					maxDateExecutedRanChangeSet.getDateExecuted())) {
+		List<Map<String, ?>> rows = ExecutorService.getInstance().getExecutor(this).queryForList(new RawSqlStatement("SELECT ID FROM " + table
+				+ " WHERE " + CassandraHistoryLayout.BUCKET + " = " + CassandraHistoryLayout.getBucket(orderExecuted) + " AND ORDEREXECUTED = " + orderExecuted));
+		return !rows.isEmpty() && changeSetId.equals(rows.get(0).get("ID")) ? orderExecuted : null;
+	}
+
+	private RanChangeSet getMaxDateExecuted() throws DatabaseException {
+		RanChangeSet maxDateExecutedRanChangeSet = null;
+		Iterator<RanChangeSet> ranChangeSets = readRanChangeSets();
+		while (ranChangeSets.hasNext()) {
+			RanChangeSet changeSet = ranChangeSets.next();
+			if (maxDateExecutedRanChangeSet == null
+					|| (changeSet.getDateExecuted() != null && (maxDateExecutedRanChangeSet.getDateExecuted() == null
+							|| changeSet.getDateExecuted().after(maxDateExecutedRanChangeSet.getDateExecuted())))) {
 				maxDateExecutedRanChangeSet = changeSet;
 			}
 		}
@@ -410,8 +1107,19 @@ public class CassandraDatabase extends AbstractJdbcDatabase {
 		return String.valueOf(System.currentTimeMillis());
 	}
 
+	/**
+	 * The history table of the layout of this keyspace, see
+	 * {@link #getHistoryLayout()}.
+	 */
 	@Override
 	public String getDatabaseChangeLogTableName() {
+		return getHistoryLayout().getTableName(getDatabaseChangeLogBaseTableName());
+	}
+
+	/**
+	 * The configured changelog table name, lower case: the v1 history table.
+	 */
+	public String getDatabaseChangeLogBaseTableName() {
 		return super.getDatabaseChangeLogTableName().toLowerCase();
 	}
 
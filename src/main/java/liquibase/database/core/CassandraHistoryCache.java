@@ -0,0 +1,154 @@
+package liquibase.database.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
+import liquibase.logging.LogFactory;
+
+/**
+ * Local copy of the ran change sets of one keyspace, stored in a compact
+ * binary file together with the version of the history it was read at. A
+ * copy is only returned for the version it was written with, so any write
+ * to the history on the cluster makes it stale.
+ */
+public class CassandraHistoryCache {
+
+	private static final int MAGIC = 0x4C43484C; // "LCHL"
+	private static final int FORMAT = 1;
+
+	private final File file;
+
+	public CassandraHistoryCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Cache file for a keyspace of a cluster, named after the keyspace and a
+	 * hash of the connection url.
+	 */
+	public static CassandraHistoryCache forKeyspace(File directory, String url, String keyspace) {
+		String name = (keyspace == null ? "default" : keyspace.replaceAll("[^A-Za-z0-9_]", "_"))
+				+ "-" + Integer.toHexString(url == null ? 0 : url.hashCode()) + ".history";
+		return new CassandraHistoryCache(new File(directory, name));
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * The cached change sets if they were written at the given version,
+	 * otherwise null. An unreadable file is treated as missing.
+	 */
+	public List<RanChangeSet> read(String version) {
+		if (version == null || !file.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != FORMAT || !version.equals(in.readUTF())) {
+					return null;
+				}
+				int count = in.readInt();
+				List<RanChangeSet> ranChangeSets = new ArrayList<RanChangeSet>(count);
+				for (int i = 0; i < count; i++) {
+					String fileName = readString(in);
+					String id = readString(in);
+					String author = readString(in);
+					String md5sum = readString(in);
+					long dateExecuted = in.readLong();
+					String tag = readString(in);
+					String execType = readString(in);
+					String description = readString(in);
+					String comments = readString(in);
+					int orderExecuted = in.readInt();
+					boolean hasOrderExecuted = in.readBoolean();
+					RanChangeSet ranChangeSet = new RanChangeSet(fileName, id, author, CheckSum.parse(md5sum),
+							dateExecuted == Long.MIN_VALUE ? null : new Date(dateExecuted), tag,
+							ChangeSet.ExecType.valueOf(execType), description, comments);
+					ranChangeSet.setOrderExecuted(hasOrderExecuted ? orderExecuted : null);
+					ranChangeSets.add(ranChangeSet);
+				}
+				return ranChangeSets;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			LogFactory.getLogger().info("Ignoring unreadable history cache " + file + ": " + e.getMessage());
+		} catch (RuntimeException e) {
+			LogFactory.getLogger().info("Ignoring unreadable history cache " + file + ": " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the cache file. The file is written next to the old one and
+	 * renamed, so a reader never sees half a file. Failures are logged, the
+	 * cache is an optimization only.
+	 */
+	public void write(String version, List<RanChangeSet> ranChangeSets) {
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = new File(directory, file.getName() + ".tmp");
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new FileNotFoundException("Cannot create " + directory);
+			}
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				out.writeUTF(version);
+				out.writeInt(ranChangeSets.size());
+				for (RanChangeSet ranChangeSet : ranChangeSets) {
+					writeString(out, ranChangeSet.getChangeLog());
+					writeString(out, ranChangeSet.getId());
+					writeString(out, ranChangeSet.getAuthor());
+					writeString(out, ranChangeSet.getLastCheckSum() == null ? null : ranChangeSet.getLastCheckSum().toString());
+					out.writeLong(ranChangeSet.getDateExecuted() == null ? Long.MIN_VALUE : ranChangeSet.getDateExecuted().getTime());
+					writeString(out, ranChangeSet.getTag());
+					writeString(out, ranChangeSet.getExecType() == null ? null : ranChangeSet.getExecType().name());
+					writeString(out, ranChangeSet.getDescription());
+					writeString(out, ranChangeSet.getComments());
+					out.writeInt(ranChangeSet.getOrderExecuted() == null ? 0 : ranChangeSet.getOrderExecuted());
+					out.writeBoolean(ranChangeSet.getOrderExecuted() != null);
+				}
+			} finally {
+				out.close();
+			}
+			if (file.exists() && !file.delete()) {
+				throw new IOException("Cannot replace " + file);
+			}
+			if (!temp.renameTo(file)) {
+				throw new IOException("Cannot rename " + temp + " to " + file);
+			}
+		} catch (IOException e) {
+			LogFactory.getLogger().info("Could not write history cache " + file + ": " + e.getMessage());
+			temp.delete();
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+}
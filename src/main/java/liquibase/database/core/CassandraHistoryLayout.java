@@ -0,0 +1,68 @@
+package liquibase.database.core;
+
+import liquibase.exception.UnexpectedLiquibaseException;
+
+/**
+ * Layout of the databasechangelog table.
+ * <p>
+ * {@link #V1} keeps one partition per change set ID, so reading the history
+ * touches every partition of the table. {@link #V2} is the table
+ * <code>databasechangelog_v2</code>, partitioned by <code>BUCKET</code>, the
+ * ORDEREXECUTED value divided by {@link #BUCKET_SIZE}, and clustered by
+ * ORDEREXECUTED: the history is a sequential read of a few partitions, in
+ * the order it was written.
+ * <p>
+ * A keyspace using v2 says so in the <code>layout</code> row of the
+ * databasechangeloghead table, so every process reading it agrees on the
+ * table once {@link CassandraHistoryMigrator} has moved the history.
+ */
+public enum CassandraHistoryLayout {
+
+	V1, V2;
+
+	/** ORDEREXECUTED values per partition of the v2 table. */
+	public static final int BUCKET_SIZE = 1000;
+
+	/** Partition key column of the v2 table. */
+	public static final String BUCKET = "BUCKET";
+
+	/** Name of the row in the databasechangeloghead table holding the layout. */
+	public static final String LAYOUT_ROW = "layout";
+
+	/** Name of the row in the databasechangeloghead table holding the highest bucket written. */
+	public static final String BUCKET_ROW = "bucket";
+
+	/**
+	 * The history table of this layout for the configured changelog table
+	 * name.
+	 */
+	public String getTableName(String baseTableName) {
+		return this == V2 ? baseTableName + "_v2" : baseTableName;
+	}
+
+	public String getName() {
+		return name().toLowerCase();
+	}
+
+	/**
+	 * Bucket of the v2 row with the given ORDEREXECUTED value.
+	 */
+	public static int getBucket(int orderExecuted) {
+		return orderExecuted / BUCKET_SIZE;
+	}
+
+	/**
+	 * Layout by its name, <code>v1</code> or <code>v2</code>; v1 if empty.
+	 */
+	public static CassandraHistoryLayout forName(String name) {
+		if (name == null || name.trim().length() == 0) {
+			return V1;
+		}
+		for (CassandraHistoryLayout layout : values()) {
+			if (layout.name().equalsIgnoreCase(name.trim())) {
+				return layout;
+			}
+		}
+		throw new UnexpectedLiquibaseException("Unknown history layout " + name + ", expected v1 or v2");
+	}
+}
@@ -0,0 +1,195 @@
+package liquibase.database.core;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.lockservice.LockService;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.logging.LogFactory;
+import liquibase.sqlgenerator.core.MarkChangeSetRanGeneratorCassandra;
+import liquibase.util.ProgressListener;
+
+/**
+ * Moves the history of a keyspace from the v1 layout of the databasechangelog
+ * table to the v2 layout, see {@link CassandraHistoryLayout}. The copy runs
+ * under the changelog lock, so no update writes history meanwhile, and ends
+ * with the <code>layout</code> row of the databasechangeloghead table, which
+ * switches every process to the v2 table. Processes connected before switch
+ * when they next take the lock, so no update writes v1 rows afterwards.
+ * <p>
+ * Rows keep their ORDEREXECUTED values. A history with missing or duplicate
+ * values, possible in v1, is renumbered in execution order. The v1 table is
+ * left in place and can be dropped once nothing uses it.
+ */
+public class CassandraHistoryMigrator {
+
+	private final CassandraDatabase database;
+	private ProgressListener progressListener;
+
+	public CassandraHistoryMigrator(CassandraDatabase database) {
+		this.database = database;
+	}
+
+	public CassandraHistoryMigrator setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+		return this;
+	}
+
+	/**
+	 * Copies the history to the v2 table, unless the keyspace uses v2
+	 * already.
+	 *
+	 * @return number of rows copied
+	 */
+	public long migrate() throws LiquibaseException {
+		LockService lockService = LockServiceFactory.getInstance().getLockService(database);
+		lockService.waitForLock();
+		try {
+			return copy();
+		} finally {
+			lockService.releaseLock();
+		}
+	}
+
+	private long copy() throws DatabaseException {
+		database.checkDatabaseChangeLogHeadTable();
+		String recorded = database.readHeadValue(CassandraHistoryLayout.LAYOUT_ROW);
+		if (recorded != null && CassandraHistoryLayout.forName(recorded) == CassandraHistoryLayout.V2) {
+			LogFactory.getLogger().info("History of keyspace " + database.getLiquibaseSchemaName() + " is in the v2 layout already");
+			database.setHistoryLayout(CassandraHistoryLayout.V2);
+			return 0;
+		}
+		String keyspace = database.getLiquibaseSchemaName();
+		String source = database.getDatabaseChangeLogBaseTableName();
+		String target = CassandraHistoryLayout.V2.getTableName(source);
+		Executor executor = ExecutorService.getInstance().getExecutor(database);
+		MarkChangeSetRanGeneratorCassandra generator = new MarkChangeSetRanGeneratorCassandra();
+		if (!database.hasTable(source)) {
+			database.setHistoryLayout(CassandraHistoryLayout.V2);
+			executor.execute(generator.generateHeadStatement(database, CassandraHistoryLayout.LAYOUT_ROW, CassandraHistoryLayout.V2.getName()));
+			return 0;
+		}
+
+		CassandraTableMetadata metadata = CassandraTableMetadata.load(database, keyspace, source);
+		List<String> columns = new ArrayList<String>(metadata.getColumnTypes().keySet());
+		StringBuilder definitions = new StringBuilder(CassandraHistoryLayout.BUCKET).append(" int");
+		StringBuilder names = new StringBuilder(CassandraHistoryLayout.BUCKET);
+		StringBuilder markers = new StringBuilder("?");
+		for (String column : columns) {
+			definitions.append(", ").append(column).append(" ").append(metadata.getColumnType(column));
+			names.append(", ").append(column);
+			markers.append(", ?");
+		}
+		List<Map<String, Object>> rows;
+		try {
+			database.executeCql("CREATE TABLE IF NOT EXISTS " + keyspace + "." + target + " (" + definitions
+					+ ", PRIMARY KEY (" + CassandraHistoryLayout.BUCKET + ", ORDEREXECUTED))");
+			rows = database.queryCql("SELECT * FROM " + keyspace + "." + source);
+		} catch (SQLException e) {
+			throw new DatabaseException("Cannot copy " + source + " to " + target + ": " + e.getMessage(), e);
+		}
+		renumber(rows);
+
+		CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+		CassandraBulkWriter writer = new CassandraBulkWriter(database,
+				"INSERT INTO " + keyspace + "." + target + " (" + names + ") VALUES (" + markers + ")",
+				"Migrate " + source, configuration.getMaxConcurrentWrites(), configuration.getWriteBatchSize())
+				.setProgressListener(progressListener);
+		int lastBucket = 0;
+		boolean complete = false;
+		try {
+			for (Map<String, Object> row : rows) {
+				int bucket = CassandraHistoryLayout.getBucket(((Number) row.get("ORDEREXECUTED")).intValue());
+				Object[] values = new Object[columns.size() + 1];
+				values[0] = bucket;
+				for (int i = 0; i < columns.size(); i++) {
+					values[i + 1] = row.get(columns.get(i).toUpperCase());
+				}
+				writer.addToPartition(bucket, values);
+				lastBucket = Math.max(lastBucket, bucket);
+			}
+			complete = true;
+		} finally {
+			if (!complete) {
+				try {
+					writer.finish();
+				} catch (DatabaseException e) {
+					LogFactory.getLogger().debug("Error finishing history migration: " + e.getMessage());
+				}
+			}
+		}
+		long count = writer.finish();
+		if (count != rows.size()) {
+			throw new DatabaseException("Copied " + count + " of " + rows.size() + " rows of " + source + " to " + target);
+		}
+
+		database.setHistoryLayout(CassandraHistoryLayout.V2);
+		executor.execute(generator.generateHeadStatement(database, CassandraHistoryLayout.BUCKET_ROW, String.valueOf(lastBucket)));
+		if (!rows.isEmpty()) {
+			Map<String, Object> last = rows.get(rows.size() - 1);
+			executor.execute(generator.generateHeadStatement(database, MarkChangeSetRanGeneratorCassandra.LAST, (String) last.get("ID")));
+			executor.execute(generator.generateHeadStatement(database, MarkChangeSetRanGeneratorCassandra.LAST_ORDER_EXECUTED,
+					last.get("ORDEREXECUTED").toString()));
+		}
+		executor.execute(generator.generateHeadStatement(database, CassandraHistoryLayout.LAYOUT_ROW, CassandraHistoryLayout.V2.getName()));
+		database.updateDatabaseChangeLogVersion();
+		database.commit();
+		LogFactory.getLogger().info("Moved " + count + " rows of " + keyspace + "." + source + " to " + target
+				+ "; " + source + " can be dropped once no process uses it");
+		return count;
+	}
+
+	/**
+	 * Sorts the rows in execution order and renumbers ORDEREXECUTED from 1 if
+	 * a value is missing or taken twice.
+	 */
+	private void renumber(List<Map<String, Object>> rows) {
+		Collections.sort(rows, new Comparator<Map<String, Object>>() {
+			public int compare(Map<String, Object> a, Map<String, Object> b) {
+				int order = compareNullsLast(toInteger(a.get("ORDEREXECUTED")), toInteger(b.get("ORDEREXECUTED")));
+				return order != 0 ? order : compareNullsLast(a.get("DATEEXECUTED"), b.get("DATEEXECUTED"));
+			}
+		});
+		Set<Integer> seen = new HashSet<Integer>();
+		boolean unique = true;
+		for (Map<String, Object> row : rows) {
+			Integer orderExecuted = toInteger(row.get("ORDEREXECUTED"));
+			if (orderExecuted == null || !seen.add(orderExecuted)) {
+				unique = false;
+				break;
+			}
+		}
+		if (unique) {
+			return;
+		}
+		LogFactory.getLogger().warning("ORDEREXECUTED of " + database.getDatabaseChangeLogBaseTableName()
+				+ " has missing or duplicate values, renumbering " + rows.size() + " rows in execution order");
+		int orderExecuted = 1;
+		for (Map<String, Object> row : rows) {
+			row.put("ORDEREXECUTED", orderExecuted++);
+		}
+	}
+
+	private static Integer toInteger(Object value) {
+		return value instanceof Number ? ((Number) value).intValue() : null;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static int compareNullsLast(Object a, Object b) {
+		if (a == null || b == null) {
+			return a == null ? (b == null ? 0 : 1) : -1;
+		}
+		return a instanceof Comparable && a.getClass() == b.getClass() ? ((Comparable) a).compareTo(b) : 0;
+	}
+}
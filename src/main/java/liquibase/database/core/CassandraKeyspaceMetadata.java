@@ -0,0 +1,194 @@
+package liquibase.database.core;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+
+/**
+ * Snapshot of the tables in one keyspace. It is loaded with a single read of
+ * <code>system.schema_columnfamilies</code> and answers table existence checks
+ * from memory until {@link #invalidate()} is called after DDL.
+ */
+public class CassandraKeyspaceMetadata {
+
+	/** Suffix of the schema object standing for a whole keyspace. */
+	public static final String ANY_TABLE = ".*";
+
+	private static final Pattern SCHEMA_CHANGE = Pattern.compile(
+			"^\\s*(CREATE|ALTER|DROP)\\s", Pattern.CASE_INSENSITIVE);
+	private static final String NAME = "(?:\"[^\"]+\"|\\w+)(?:\\.(?:\"[^\"]+\"|\\w+))?";
+	private static final Pattern TABLE_CHANGE = Pattern.compile(
+			"^\\s*(?:(?:CREATE|ALTER|DROP)\\s+(?:TABLE|COLUMNFAMILY)|TRUNCATE(?:\\s+TABLE)?)\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?(" + NAME + ")",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern INDEX_CREATION = Pattern.compile(
+			"^\\s*CREATE\\s+(?:CUSTOM\\s+)?INDEX\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?(?:\\w+\\s+)?ON\\s+(" + NAME + ")",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern KEYSPACE_CHANGE = Pattern.compile(
+			"^\\s*(?:CREATE|ALTER|DROP)\\s+(?:KEYSPACE|SCHEMA)\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?(" + NAME + ")",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern OTHER_CHANGE = Pattern.compile(
+			"^\\s*(?:CREATE|ALTER|DROP)\\s+(?:OR\\s+REPLACE\\s+)?(?:TYPE|TRIGGER|FUNCTION|AGGREGATE|MATERIALIZED\\s+VIEW|INDEX)\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?(" + NAME + ")",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern LEADING_COMMENTS = Pattern.compile(
+			"^(\\s*(--|//)[^\\n]*\\n|\\s*/\\*.*?\\*/)*", Pattern.DOTALL);
+
+	private final CassandraDatabase database;
+	private final String keyspace;
+	private volatile Set<String> tables;
+	private int loadCount;
+
+	public CassandraKeyspaceMetadata(CassandraDatabase database, String keyspace) {
+		this.database = database;
+		this.keyspace = keyspace;
+	}
+
+	public String getKeyspace() {
+		return keyspace;
+	}
+
+	public boolean hasTable(String tableName) throws DatabaseException {
+		return getTables().contains(tableName.toLowerCase());
+	}
+
+	/**
+	 * Lower case names of the tables in the keyspace, loading the snapshot if
+	 * there is none.
+	 */
+	public Set<String> getTables() throws DatabaseException {
+		Set<String> snapshot = tables;
+		if (snapshot == null) {
+			synchronized (this) {
+				snapshot = tables;
+				if (snapshot == null) {
+					snapshot = load();
+					tables = snapshot;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Drops the snapshot so the next check reloads it.
+	 */
+	public void invalidate() {
+		tables = null;
+	}
+
+	/**
+	 * Number of times the snapshot has been read from the cluster.
+	 */
+	public synchronized int getLoadCount() {
+		return loadCount;
+	}
+
+	/**
+	 * True if the CQL statement changes the schema and a loaded snapshot has
+	 * to be dropped after running it.
+	 */
+	public static boolean isSchemaChange(String cql) {
+		if (cql == null) {
+			return false;
+		}
+		String statement = LEADING_COMMENTS.matcher(cql).replaceFirst("");
+		return SCHEMA_CHANGE.matcher(statement).find();
+	}
+
+	/**
+	 * Schema objects a DDL statement changes, as <code>keyspace.table</code>,
+	 * or <code>keyspace.*</code> for statements on the keyspace itself or on
+	 * objects such as types whose users are not known. A TRUNCATE is not DDL
+	 * but reports the table it empties, so it is not run next to changes of
+	 * that table. Null if the statement is not DDL this method understands.
+	 *
+	 * @param keyspace keyspace of unqualified names
+	 */
+	public static Set<String> getSchemaObjects(String cql, String keyspace) {
+		if (cql == null) {
+			return null;
+		}
+		String statement = LEADING_COMMENTS.matcher(cql).replaceFirst("");
+		Matcher matcher = TABLE_CHANGE.matcher(statement);
+		if (matcher.find() || (matcher = INDEX_CREATION.matcher(statement)).find()) {
+			return Collections.singleton(qualify(matcher.group(1), keyspace));
+		}
+		matcher = KEYSPACE_CHANGE.matcher(statement);
+		if (matcher.find()) {
+			return Collections.singleton(normalize(matcher.group(1)) + ANY_TABLE);
+		}
+		matcher = OTHER_CHANGE.matcher(statement);
+		if (matcher.find()) {
+			String name = qualify(matcher.group(1), keyspace);
+			return Collections.singleton(name.substring(0, name.lastIndexOf('.')) + ANY_TABLE);
+		}
+		return null;
+	}
+
+	/**
+	 * True if two sets of schema objects share a table, or one holds a
+	 * keyspace the other has a table in.
+	 */
+	public static boolean overlap(Set<String> objects, Set<String> others) {
+		for (String object : objects) {
+			String objectKeyspace = object.substring(0, object.lastIndexOf('.'));
+			for (String other : others) {
+				if (object.equals(other)
+						|| (object.endsWith(ANY_TABLE) && other.startsWith(objectKeyspace + "."))
+						|| (other.endsWith(ANY_TABLE) && object.startsWith(other.substring(0, other.length() - 1)))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static String qualify(String name, String keyspace) {
+		int dot = name.startsWith("\"") ? name.indexOf('.', name.indexOf('"', 1)) : name.indexOf('.');
+		if (dot < 0) {
+			return normalize(keyspace) + "." + normalize(name);
+		}
+		return normalize(name.substring(0, dot)) + "." + normalize(name.substring(dot + 1));
+	}
+
+	/**
+	 * Quoted names keep their case, unquoted ones are lower case as in
+	 * Cassandra.
+	 */
+	private static String normalize(String name) {
+		if (name == null) {
+			return "";
+		}
+		if (name.startsWith("\"") && name.endsWith("\"") && name.length() > 1) {
+			return name.substring(1, name.length() - 1);
+		}
+		return name.toLowerCase();
+	}
+
+	private Set<String> load() throws DatabaseException {
+		String sql = "select \"columnfamily_name\" from \"system\".\"schema_columnfamilies\" where \"keyspace_name\" ='" + keyspace + "'";
+		Set<String> names = new HashSet<String>();
+		try {
+			List<Map<String, Object>> rows = database.queryCql(sql);
+			for (Map<String, Object> row : rows) {
+				Object name = row.get("COLUMNFAMILY_NAME");
+				if (name != null) {
+					names.add(name.toString().toLowerCase());
+				}
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException("Cannot read tables of keyspace " + keyspace, e);
+		}
+		loadCount++;
+		LogFactory.getLogger().debug("Loaded " + names.size() + " tables of keyspace " + keyspace);
+		return Collections.unmodifiableSet(names);
+	}
+}
@@ -0,0 +1,302 @@
+package liquibase.database.core;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.database.Database;
+import liquibase.database.DatabaseConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.DriverException;
+
+/**
+ * {@link DatabaseConnection} speaking the CQL binary protocol through the
+ * DataStax java driver. Urls have the form
+ * <code>cql://host1[,host2][:port]/keyspace[?user=..&amp;password=..]</code>,
+ * the port defaults to 9042. Parameter values are url encoded.
+ */
+public class CassandraNativeConnection implements DatabaseConnection {
+
+	public static final String URL_PREFIX = "cql://";
+	public static final int DEFAULT_PORT = 9042;
+
+	/** Number of prepared statements a connection keeps. */
+	public static final int PREPARED_STATEMENT_CACHE_SIZE = 256;
+
+	private static final String[] CREDENTIALS = { "user", "password" };
+
+	private final String url;
+	private final String keyspace;
+	private final String user;
+	private final Cluster cluster;
+	private final Session session;
+	private final Map<String, PreparedStatement> preparedStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+			return size() > PREPARED_STATEMENT_CACHE_SIZE;
+		}
+	};
+	private volatile boolean closed;
+
+	public CassandraNativeConnection(String url) throws DatabaseException {
+		if (!isNativeUrl(url)) {
+			throw new DatabaseException("Not a native protocol url: " + withoutCredentials(url));
+		}
+		this.url = url;
+		URI uri;
+		String authority;
+		int port = DEFAULT_PORT;
+		try {
+			uri = URI.create(url);
+			authority = uri.getRawAuthority();
+			int portIndex = authority.lastIndexOf(':');
+			if (portIndex > 0) {
+				port = Integer.parseInt(authority.substring(portIndex + 1));
+				authority = authority.substring(0, portIndex);
+			}
+		} catch (IllegalArgumentException e) {
+			// the message of the cause repeats the password
+			throw new DatabaseException("Invalid native protocol url: " + withoutCredentials(url));
+		}
+		Map<String, String> parameters = parseQuery(uri.getRawQuery());
+		String path = uri.getPath();
+		this.keyspace = path == null || path.length() <= 1 ? null : path.substring(1);
+		this.user = parameters.get("user");
+
+		Cluster cluster = null;
+		try {
+			Cluster.Builder builder = Cluster.builder()
+					.addContactPoints(authority.split(","))
+					.withPort(port);
+			long schemaAgreementTimeout = CassandraConfiguration.getInstance().getSchemaAgreementTimeout();
+			if (schemaAgreementTimeout > 0) {
+				builder.withMaxSchemaAgreementWaitSeconds((int) Math.max(1, (schemaAgreementTimeout + 999) / 1000));
+			}
+			if (user != null) {
+				builder.withCredentials(user, parameters.get("password"));
+			}
+			cluster = builder.build();
+			this.session = keyspace == null ? cluster.connect() : cluster.connect(keyspace);
+			this.cluster = cluster;
+		} catch (DriverException e) {
+			close(cluster);
+			throw new DatabaseException("Cannot connect to " + withoutCredentials(url), e);
+		} catch (IllegalArgumentException e) {
+			close(cluster);
+			throw new DatabaseException("Cannot connect to " + withoutCredentials(url), e);
+		}
+	}
+
+	public static boolean isNativeUrl(String url) {
+		return url != null && url.startsWith(URL_PREFIX);
+	}
+
+	public Cluster getCluster() {
+		return cluster;
+	}
+
+	public Session getSession() {
+		return session;
+	}
+
+	public String getKeyspace() {
+		return keyspace;
+	}
+
+	public ProtocolVersion getProtocolVersion() {
+		return cluster.getConfiguration().getProtocolOptions().getProtocolVersionEnum();
+	}
+
+	/**
+	 * Prepares a statement once per connection and returns the cached
+	 * statement on later calls. The cache keeps the most recently used
+	 * {@link #PREPARED_STATEMENT_CACHE_SIZE} statements.
+	 */
+	public PreparedStatement prepare(String cql) {
+		PreparedStatement prepared;
+		synchronized (preparedStatements) {
+			prepared = preparedStatements.get(cql);
+		}
+		if (prepared == null) {
+			prepared = session.prepare(cql);
+			synchronized (preparedStatements) {
+				PreparedStatement existing = preparedStatements.get(cql);
+				if (existing != null) {
+					return existing;
+				}
+				preparedStatements.put(cql, prepared);
+			}
+		}
+		return prepared;
+	}
+
+	/**
+	 * Converts the rows of a result set to maps keyed by upper case column
+	 * name, the shape the liquibase executors return.
+	 */
+	public List<Map<String, Object>> toMaps(ResultSet resultSet) {
+		ColumnDefinitions columns = resultSet.getColumnDefinitions();
+		ProtocolVersion protocolVersion = getProtocolVersion();
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		for (Row row : resultSet) {
+			Map<String, Object> map = new HashMap<String, Object>();
+			for (int i = 0; i < columns.size(); i++) {
+				ByteBuffer bytes = row.getBytesUnsafe(i);
+				map.put(columns.getName(i).toUpperCase(), bytes == null ? null : columns.getType(i).deserialize(bytes, protocolVersion));
+			}
+			rows.add(map);
+		}
+		return rows;
+	}
+
+	public int getPreparedStatementCount() {
+		synchronized (preparedStatements) {
+			return preparedStatements.size();
+		}
+	}
+
+	public void close() throws DatabaseException {
+		closed = true;
+		synchronized (preparedStatements) {
+			preparedStatements.clear();
+		}
+		cluster.close();
+	}
+
+	public void commit() throws DatabaseException {
+		// no transactions in cassandra
+	}
+
+	public boolean getAutoCommit() throws DatabaseException {
+		return true;
+	}
+
+	public String getCatalog() throws DatabaseException {
+		return keyspace;
+	}
+
+	public String nativeSQL(String sql) throws DatabaseException {
+		return sql;
+	}
+
+	public void rollback() throws DatabaseException {
+		// no transactions in cassandra
+	}
+
+	public void setAutoCommit(boolean autoCommit) throws DatabaseException {
+	}
+
+	public String getDatabaseProductName() throws DatabaseException {
+		return CassandraDatabase.PRODUCT_NAME;
+	}
+
+	public String getDatabaseProductVersion() throws DatabaseException {
+		for (Host host : cluster.getMetadata().getAllHosts()) {
+			if (host.getCassandraVersion() != null) {
+				return host.getCassandraVersion().toString();
+			}
+		}
+		return "";
+	}
+
+	public int getDatabaseMajorVersion() throws DatabaseException {
+		return versionPart(0);
+	}
+
+	public int getDatabaseMinorVersion() throws DatabaseException {
+		return versionPart(1);
+	}
+
+	public String getURL() {
+		return url;
+	}
+
+	public String getConnectionUserName() {
+		return user;
+	}
+
+	public boolean isClosed() throws DatabaseException {
+		return closed || session.isClosed();
+	}
+
+	public void attached(Database database) {
+	}
+
+	private int versionPart(int index) throws DatabaseException {
+		String[] parts = getDatabaseProductVersion().split("\\.");
+		try {
+			return parts.length > index ? Integer.parseInt(parts[index].replaceAll("[^0-9].*", "")) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * The url without the user and password parameters, for messages and
+	 * logs.
+	 */
+	static String withoutCredentials(String url) {
+		int query = url == null ? -1 : url.indexOf('?');
+		if (query < 0) {
+			return url;
+		}
+		StringBuilder kept = new StringBuilder();
+		for (String pair : url.substring(query + 1).split("&")) {
+			String name = pair.indexOf('=') < 0 ? pair : pair.substring(0, pair.indexOf('='));
+			boolean credential = false;
+			for (String parameter : CREDENTIALS) {
+				credential |= parameter.equalsIgnoreCase(name);
+			}
+			if (!credential) {
+				kept.append(kept.length() == 0 ? "" : "&").append(pair);
+			}
+		}
+		return url.substring(0, query) + (kept.length() == 0 ? "" : "?" + kept);
+	}
+
+	/**
+	 * Parameters of the raw query of a url, with url encoded values decoded.
+	 */
+	static Map<String, String> parseQuery(String query) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int index = pair.indexOf('=');
+			if (index > 0) {
+				try {
+					parameters.put(pair.substring(0, index), URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+				} catch (UnsupportedEncodingException e) {
+					throw new UnexpectedLiquibaseException(e);
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static void close(Cluster cluster) {
+		if (cluster != null) {
+			cluster.close();
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package liquibase.database.core;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.logging.LogFactory;
+
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.exceptions.DriverException;
+
+/**
+ * Reads the databasechangelog table a page at a time and converts each row
+ * straight to a {@link RanChangeSet}. On a native connection the driver pages
+ * the result; over JDBC the reader pages by the token of the ID, since the
+ * Thrift protocol returns whole results. A full page may end in the middle
+ * of an ID partition, so the rows of its last ID are read again as a whole.
+ * The v2 layout is read one bucket partition after the other, in
+ * ORDEREXECUTED order, see {@link CassandraHistoryLayout}.
+ */
+public class CassandraRanChangeSetReader implements Iterator<RanChangeSet> {
+
+	private static final String COLUMNS = "FILENAME, AUTHOR, ID, MD5SUM, DATEEXECUTED, ORDEREXECUTED, TAG, EXECTYPE, DESCRIPTION, COMMENTS";
+
+	/** Format of dates stored as strings, the one of {@link Date#toString()}. */
+	private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			return new SimpleDateFormat("E MMM dd HH:mm:ss z yyyy", Locale.US);
+		}
+	};
+
+	private final CassandraDatabase database;
+	private final String select;
+	private final int fetchSize;
+	private final boolean bucketed;
+	private final int lastBucket;
+
+	private Iterator<Row> rows;
+	private Iterator<RanChangeSet> page = Collections.<RanChangeSet>emptyList().iterator();
+	private String lastId;
+	private int bucket;
+	private Integer lastOrderExecuted;
+	private boolean lastPage;
+	private int pageCount;
+	private int rowCount;
+
+	/**
+	 * @param fetchSize number of rows read per round trip
+	 */
+	public CassandraRanChangeSetReader(CassandraDatabase database, int fetchSize) throws DatabaseException {
+		if (fetchSize < 1) {
+			throw new IllegalArgumentException("Fetch size must be at least 1");
+		}
+		this.database = database;
+		this.fetchSize = fetchSize;
+		this.select = "SELECT " + COLUMNS + " FROM " + database.escapeTableName(database.getLiquibaseCatalogName(),
+				database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName());
+		this.bucketed = database.getHistoryLayout() == CassandraHistoryLayout.V2;
+		this.lastBucket = bucketed ? database.readLastHistoryBucket() : 0;
+		if (database.isNativeConnection()) {
+			try {
+				rows = executeNative(bucketed ? select + " WHERE BUCKET = 0" : select);
+			} catch (DriverException e) {
+				throw new DatabaseException("Cannot read " + database.getDatabaseChangeLogTableName() + ": " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private Iterator<Row> executeNative(String cql) {
+		SimpleStatement statement = new SimpleStatement(cql);
+		statement.setFetchSize(fetchSize);
+		database.getConsistency().apply(statement);
+		CassandraRetryPolicy.Attempts attempts = database.getRetryPolicy().start(statement);
+		while (true) {
+			try {
+				return database.getNativeConnection().getSession().execute(statement).iterator();
+			} catch (DriverException e) {
+				if (!attempts.retry(e)) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	public boolean hasNext() {
+		try {
+			if (rows != null) {
+				while (!rows.hasNext() && bucketed && bucket < lastBucket) {
+					rows = executeNative(select + " WHERE BUCKET = " + ++bucket);
+				}
+				return rows.hasNext();
+			}
+			while (!page.hasNext() && !lastPage) {
+				page = readPage();
+			}
+			return page.hasNext();
+		} catch (DriverException e) {
+			throw new UnexpectedLiquibaseException("Cannot read " + database.getDatabaseChangeLogTableName(), e);
+		} catch (DatabaseException e) {
+			throw new UnexpectedLiquibaseException(e);
+		}
+	}
+
+	public RanChangeSet next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		rowCount++;
+		if (rows != null) {
+			Row row = rows.next();
+			return toRanChangeSet(row.getString("FILENAME"), row.getString("ID"), row.getString("AUTHOR"),
+					row.getString("MD5SUM"), row.getDate("DATEEXECUTED"),
+					row.isNull("ORDEREXECUTED") ? null : row.getInt("ORDEREXECUTED"),
+					row.getString("TAG"), row.getString("EXECTYPE"), row.getString("DESCRIPTION"), row.getString("COMMENTS"));
+		}
+		return page.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Number of round trips made so far over JDBC; the driver pages native
+	 * reads on its own.
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Reads the rows after the last one read, in token order, or in
+	 * ORDEREXECUTED order within the current bucket.
+	 */
+	private Iterator<RanChangeSet> readPage() throws DatabaseException {
+		String cql = select;
+		if (bucketed) {
+			cql += " WHERE BUCKET = " + bucket;
+			if (lastOrderExecuted != null) {
+				cql += " AND ORDEREXECUTED > " + lastOrderExecuted;
+			}
+		} else if (lastId != null) {
+			cql += " WHERE token(ID) > token(" + quote(lastId) + ")";
+		}
+		List<RanChangeSet> ranChangeSets = query(cql + " LIMIT " + fetchSize);
+
+		pageCount++;
+		boolean endOfPartition = ranChangeSets.size() < fetchSize;
+		if (!ranChangeSets.isEmpty()) {
+			lastId = ranChangeSets.get(ranChangeSets.size() - 1).getId();
+			lastOrderExecuted = ranChangeSets.get(ranChangeSets.size() - 1).getOrderExecuted();
+		}
+		if (!bucketed && !endOfPartition) {
+			Iterator<RanChangeSet> iterator = ranChangeSets.iterator();
+			while (iterator.hasNext()) {
+				if (lastId.equals(iterator.next().getId())) {
+					iterator.remove();
+				}
+			}
+			ranChangeSets.addAll(query(select + " WHERE ID = " + quote(lastId)));
+		}
+		if (bucketed && endOfPartition && bucket < lastBucket) {
+			bucket++;
+			lastOrderExecuted = null;
+		} else {
+			lastPage = endOfPartition;
+		}
+		return ranChangeSets.iterator();
+	}
+
+	private List<RanChangeSet> query(String cql) throws DatabaseException {
+		List<RanChangeSet> ranChangeSets = new ArrayList<RanChangeSet>(fetchSize);
+		try {
+			Connection connection = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+			Statement statement = connection.createStatement();
+			try {
+				statement.setFetchSize(fetchSize);
+				ResultSet resultSet = statement.executeQuery(cql);
+				try {
+					while (resultSet.next()) {
+						Object orderExecuted = resultSet.getObject(6);
+						ranChangeSets.add(toRanChangeSet(resultSet.getString(1), resultSet.getString(3), resultSet.getString(2),
+								resultSet.getString(4), resultSet.getObject(5),
+								orderExecuted == null ? null : ((Number) orderExecuted).intValue(),
+								resultSet.getString(7), resultSet.getString(8), resultSet.getString(9), resultSet.getString(10)));
+					}
+				} finally {
+					resultSet.close();
+				}
+			} finally {
+				statement.close();
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException("Cannot read " + database.getDatabaseChangeLogTableName() + ": " + e.getMessage(), e);
+		}
+		return ranChangeSets;
+	}
+
+	private static String quote(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+	private RanChangeSet toRanChangeSet(String fileName, String id, String author, String md5sum, Object dateExecuted,
+			Integer orderExecuted, String tag, String execType, String description, String comments) {
+		try {
+			RanChangeSet ranChangeSet = new RanChangeSet(fileName, id, author, CheckSum.parse(md5sum),
+					toDate(dateExecuted), tag, ChangeSet.ExecType.valueOf(execType), description, comments);
+			ranChangeSet.setOrderExecuted(orderExecuted);
+			return ranChangeSet;
+		} catch (IllegalArgumentException e) {
+			LogFactory.getLogger().info("Unknown EXECTYPE from database: " + execType);
+			throw e;
+		}
+	}
+
+	private static Date toDate(Object value) {
+		if (value instanceof Date) {
+			return (Date) value;
+		} else if (value != null) {
+			try {
+				return DATE_FORMAT.get().parse(value.toString());
+			} catch (ParseException e) {
+				LogFactory.getLogger().info(e.getMessage());
+			}
+		}
+		return null;
+	}
+}
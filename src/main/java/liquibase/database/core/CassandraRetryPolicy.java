@@ -0,0 +1,346 @@
+package liquibase.database.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.logging.LogFactory;
+import liquibase.metrics.CassandraMetrics;
+import liquibase.util.JitteredBackoff;
+
+import org.apache.cassandra.thrift.TimedOutException;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConnectionException;
+import com.datastax.driver.core.RegularStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.BootstrappingException;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.QueryTimeoutException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+
+/**
+ * Runs statements again that failed with a transient error, a timeout or
+ * too few replicas, with jittered exponential backoff, up to
+ * <code>retryMaxAttempts</code> attempts and no later than
+ * <code>retryDeadline</code> after the first one.
+ * <p>
+ * Only idempotent statements are retried, since a timed out write may have
+ * been applied: reads, DDL with <code>IF [NOT] EXISTS</code>, and writes to
+ * the history and lock tables, whose rows and conditions are the same on
+ * every attempt. A lightweight transaction that was applied before it timed
+ * out reports <code>[applied] = false</code> on its retry; callers that care,
+ * such as the lock service, check the row. Statements of change sets run
+ * once, as before. Retries are counted in {@link CassandraMetrics}.
+ * <p>
+ * Callers wrap each statement in a loop:
+ *
+ * <pre>
+ * CassandraRetryPolicy.Attempts attempts = policy.start(cql);
+ * while (true) {
+ *     try {
+ *         return run(cql);
+ *     } catch (SQLException e) {
+ *         if (!attempts.retry(e)) {
+ *             throw e;
+ *         }
+ *     }
+ * }
+ * </pre>
+ */
+public class CassandraRetryPolicy {
+
+	public enum ErrorKind {
+		/** Too few replicas alive, the statement did not run. */
+		UNAVAILABLE,
+		/** The coordinator did not hear back from the replicas in time; the statement may have run. */
+		TIMEOUT,
+		/** The coordinator was overloaded or still bootstrapping. */
+		OVERLOADED,
+		/** No node could be reached. */
+		CONNECTION,
+		/** Anything else, such as invalid CQL. Never retried. */
+		PERMANENT;
+
+		/**
+		 * Name of the {@link CassandraMetrics} counter of retries after this
+		 * kind of error, e.g. <code>retriesTimeout</code>.
+		 */
+		public String getCounter() {
+			return CassandraMetrics.RETRIES + name().charAt(0) + name().substring(1).toLowerCase();
+		}
+	}
+
+	/** Table written by a statement, in group 1. */
+	private static final Pattern WRITE = Pattern.compile("\\b(?:INSERT\\s+INTO|UPDATE|DELETE\\b.*?\\bFROM)\\s+(?:\"?\\w+\"?\\.)?\"?(\\w+)\"?",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	private static final Pattern READ = Pattern.compile("^\\s*SELECT\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern CONDITIONAL = Pattern.compile("\\bIF\\s+(?:NOT\\s+)?EXISTS\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern COUNTER_BATCH = Pattern.compile("^\\s*BEGIN\\s+COUNTER\\b", Pattern.CASE_INSENSITIVE);
+
+	private final CassandraDatabase database;
+	private final int maxAttempts;
+	private final long deadline;
+	private final JitteredBackoff backoff;
+
+	/**
+	 * A policy with the <code>retry*</code> properties.
+	 */
+	public CassandraRetryPolicy(CassandraDatabase database) {
+		this(database, CassandraConfiguration.getInstance().getRetryMaxAttempts(),
+				CassandraConfiguration.getInstance().getRetryBaseDelay(),
+				CassandraConfiguration.getInstance().getRetryMaxDelay(),
+				CassandraConfiguration.getInstance().getRetryDeadline());
+	}
+
+	/**
+	 * @param maxAttempts attempts per statement, 1 for no retries
+	 * @param deadline milliseconds after the first attempt when no more retries are started
+	 */
+	public CassandraRetryPolicy(CassandraDatabase database, int maxAttempts, long baseDelay, long maxDelay, long deadline) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Retry attempts must be at least 1");
+		}
+		this.database = database;
+		this.maxAttempts = maxAttempts;
+		this.deadline = deadline;
+		this.backoff = new JitteredBackoff(baseDelay, maxDelay);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * The attempts at running a CQL statement.
+	 */
+	public Attempts start(String cql) {
+		return new Attempts(cql);
+	}
+
+	/**
+	 * The attempts at running a statement of the native driver.
+	 */
+	public Attempts start(Statement statement) {
+		return new Attempts(getQueryString(statement));
+	}
+
+	/**
+	 * What kind of error this is, looking at the causes too: cassandra-jdbc
+	 * and the stand-in report errors as <code>SQLException</code>s with the
+	 * messages of the server.
+	 */
+	public static ErrorKind classify(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (cause instanceof UnavailableException || cause instanceof org.apache.cassandra.thrift.UnavailableException) {
+				return ErrorKind.UNAVAILABLE;
+			} else if (cause instanceof QueryTimeoutException || cause instanceof ConnectionException
+					|| cause instanceof TimedOutException || cause instanceof SQLTransientConnectionException) {
+				// the driver's OperationTimedOutException is a ConnectionException
+				return ErrorKind.TIMEOUT;
+			} else if (cause instanceof OverloadedException || cause instanceof BootstrappingException) {
+				return ErrorKind.OVERLOADED;
+			} else if (cause instanceof NoHostAvailableException) {
+				return ErrorKind.CONNECTION;
+			}
+			String message = cause.getMessage() == null ? "" : cause.getMessage().toLowerCase();
+			if (message.contains("cannot achieve consistency level") || message.contains("unavailable")) {
+				return ErrorKind.UNAVAILABLE;
+			} else if (message.contains("timed out") || message.contains("timeout")) {
+				return ErrorKind.TIMEOUT;
+			} else if (message.contains("overloaded")) {
+				return ErrorKind.OVERLOADED;
+			}
+		}
+		return ErrorKind.PERMANENT;
+	}
+
+	/**
+	 * True if running the CQL twice has the same effect as running it once.
+	 * A batch is idempotent if all of its statements are.
+	 */
+	public boolean isIdempotent(String cql) {
+		if (cql == null || COUNTER_BATCH.matcher(cql).find()) {
+			return false;
+		}
+		// values must not pass for keywords or table names
+		cql = STRING_LITERAL.matcher(cql).replaceAll("''");
+		if (READ.matcher(cql).find()) {
+			return true;
+		}
+		if (CassandraKeyspaceMetadata.isSchemaChange(cql)) {
+			return CONDITIONAL.matcher(cql).find();
+		}
+		Matcher matcher = WRITE.matcher(cql);
+		boolean found = false;
+		while (matcher.find()) {
+			if (!database.isLiquibaseTable(matcher.group(1))) {
+				return false;
+			}
+			found = true;
+		}
+		return found;
+	}
+
+
+	/**
+	 * True if the connection retries already, see {@link #wrap(Connection)}.
+	 */
+	public static boolean isWrapped(Connection connection) {
+		return Proxy.isProxyClass(connection.getClass()) && Proxy.getInvocationHandler(connection) instanceof ConnectionHandler;
+	}
+
+	/**
+	 * Wraps a JDBC connection so the statements it creates retry, including
+	 * those of the liquibase executor.
+	 */
+	public Connection wrap(Connection connection) {
+		if (isWrapped(connection)) {
+			return connection;
+		}
+		return (Connection) Proxy.newProxyInstance(CassandraRetryPolicy.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new ConnectionHandler(connection));
+	}
+
+	private static String getQueryString(Statement statement) {
+		if (statement instanceof RegularStatement) {
+			return ((RegularStatement) statement).getQueryString();
+		} else if (statement instanceof BoundStatement) {
+			return ((BoundStatement) statement).preparedStatement().getQueryString();
+		} else if (statement instanceof BatchStatement) {
+			StringBuilder cql = new StringBuilder("BEGIN BATCH\n");
+			for (Statement child : ((BatchStatement) statement).getStatements()) {
+				String childCql = getQueryString(child);
+				if (childCql == null) {
+					return null;
+				}
+				cql.append(childCql).append(";\n");
+			}
+			return cql.append("APPLY BATCH").toString();
+		}
+		return null;
+	}
+
+	/**
+	 * The attempts at one statement.
+	 */
+	public class Attempts {
+
+		private final String cql;
+		private final long giveUpAt = System.currentTimeMillis() + deadline;
+		private Boolean idempotent;
+		private int retries;
+
+		Attempts(String cql) {
+			this.cql = cql;
+		}
+
+		/**
+		 * Decides whether to run the statement again after it failed, and
+		 * waits for the backoff if so.
+		 *
+		 * @return false if the error is to be thrown
+		 */
+		public boolean retry(Throwable error) {
+			ErrorKind kind = classify(error);
+			if (kind == ErrorKind.PERMANENT || maxAttempts == 1) {
+				return false;
+			}
+			if (idempotent == null) {
+				idempotent = isIdempotent(cql);
+			}
+			if (!idempotent) {
+				return false;
+			}
+			CassandraMetrics metrics = database.getMetrics();
+			try {
+				if (retries + 1 >= maxAttempts || !backoff.sleep(retries, giveUpAt)) {
+					metrics.increment(CassandraMetrics.RETRIES_EXHAUSTED, 1);
+					LogFactory.getLogger().warning("Giving up after " + (retries + 1) + " attempts: " + error.getMessage());
+					return false;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			retries++;
+			metrics.increment(CassandraMetrics.RETRIES, 1);
+			metrics.increment(kind.getCounter(), 1);
+			LogFactory.getLogger().info("Retry " + retries + " after " + kind.name().toLowerCase() + " error: " + error.getMessage());
+			return true;
+		}
+
+		public int getRetries() {
+			return retries;
+		}
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private class ConnectionHandler implements InvocationHandler {
+
+		private final Connection connection;
+
+		ConnectionHandler(Connection connection) {
+			this.connection = connection;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("equals")) {
+				return proxy == args[0];
+			} else if (method.getName().equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			}
+			Object result = CassandraRetryPolicy.invoke(connection, method, args);
+			if (method.getName().equals("createStatement")) {
+				return Proxy.newProxyInstance(CassandraRetryPolicy.class.getClassLoader(),
+						new Class<?>[] { java.sql.Statement.class }, new StatementHandler((java.sql.Statement) result));
+			}
+			return result;
+		}
+	}
+
+	private class StatementHandler implements InvocationHandler {
+
+		private final java.sql.Statement statement;
+
+		StatementHandler(java.sql.Statement statement) {
+			this.statement = statement;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("equals")) {
+				return proxy == args[0];
+			} else if (method.getName().equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (!method.getName().startsWith("execute") || args == null || !(args[0] instanceof String)) {
+				return CassandraRetryPolicy.invoke(statement, method, args);
+			}
+			Attempts attempts = start((String) args[0]);
+			while (true) {
+				try {
+					return CassandraRetryPolicy.invoke(statement, method, args);
+				} catch (Throwable e) {
+					if (!attempts.retry(e)) {
+						throw e;
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package liquibase.database.core;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+
+import com.datastax.driver.core.exceptions.DriverException;
+
+/**
+ * Waits until every node of the cluster reports the same schema version
+ * after DDL. On a native connection the driver's control connection compares
+ * <code>system.local</code> and <code>system.peers</code> of the live nodes;
+ * over JDBC both tables are read on the node the connection points to. Those
+ * tables do not tell whether a peer is up, so over JDBC a node that is down
+ * keeps the wait going until the timeout.
+ * <p>
+ * A schema change only marks the agreement as pending. The wait happens when
+ * {@link #awaitIfPending()} is called, so DDL statements sent to the same
+ * coordinator one after the other can share a single wait.
+ */
+public class CassandraSchemaAgreement {
+
+	private final CassandraDatabase database;
+	private final long timeout;
+	private final long pollInterval;
+	private boolean pending;
+	private int waitCount;
+
+	/**
+	 * @param timeout milliseconds to wait for agreement, 0 to not wait
+	 * @param pollInterval milliseconds between two checks
+	 */
+	public CassandraSchemaAgreement(CassandraDatabase database, long timeout, long pollInterval) {
+		this.database = database;
+		this.timeout = timeout;
+		this.pollInterval = Math.max(1, pollInterval);
+	}
+
+	/**
+	 * Records that the schema was changed and agreement has to be awaited
+	 * before depending on it.
+	 */
+	public synchronized void schemaChanged() {
+		if (timeout > 0) {
+			pending = true;
+		}
+	}
+
+	public synchronized boolean isPending() {
+		return pending;
+	}
+
+	/**
+	 * Number of times agreement was actually awaited.
+	 */
+	public synchronized int getWaitCount() {
+		return waitCount;
+	}
+
+	/**
+	 * Waits for agreement if a schema change is pending. Agreement that is not
+	 * reached within the timeout is logged, not thrown, as a node that is down
+	 * keeps its old version until it comes back. If the versions cannot be
+	 * read the change stays pending.
+	 *
+	 * @return false if the wait timed out
+	 */
+	public synchronized boolean awaitIfPending() throws DatabaseException {
+		if (!pending) {
+			return true;
+		}
+		waitCount++;
+		long start = System.currentTimeMillis();
+		long deadline = start + timeout;
+		while (true) {
+			Set<String> versions = readSchemaVersions();
+			if (versions.size() <= 1) {
+				pending = false;
+				LogFactory.getLogger().debug("Schema agreement reached after " + (System.currentTimeMillis() - start) + "ms");
+				return true;
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				pending = false;
+				LogFactory.getLogger().warning("No schema agreement after " + timeout + "ms, nodes report schema versions " + versions);
+				return false;
+			}
+			try {
+				Thread.sleep(Math.min(pollInterval, remaining));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DatabaseException("Interrupted while waiting for schema agreement");
+			}
+		}
+	}
+
+	/**
+	 * Distinct schema versions reported by the nodes. A native connection
+	 * only tells whether they agree, so its disagreement is reported as two
+	 * placeholder versions.
+	 */
+	protected Set<String> readSchemaVersions() throws DatabaseException {
+		Set<String> versions = new TreeSet<String>();
+		if (database.isNativeConnection()) {
+			try {
+				if (!database.getNativeConnection().getCluster().getMetadata().checkSchemaAgreement()) {
+					versions.add("local");
+					versions.add("peers");
+				}
+			} catch (DriverException e) {
+				throw new DatabaseException("Cannot check schema agreement: " + e.getMessage(), e);
+			}
+			return versions;
+		}
+		try {
+			addVersions(versions, database.queryCql("SELECT schema_version FROM system.local WHERE key = 'local'"));
+			addVersions(versions, database.queryCql("SELECT schema_version FROM system.peers"));
+		} catch (SQLException e) {
+			throw new DatabaseException("Cannot read schema versions: " + e.getMessage(), e);
+		}
+		return versions;
+	}
+
+	private static void addVersions(Set<String> versions, List<Map<String, Object>> rows) {
+		for (Map<String, Object> row : rows) {
+			Object version = row.get("SCHEMA_VERSION");
+			if (version != null) {
+				versions.add(version.toString());
+			}
+		}
+	}
+}
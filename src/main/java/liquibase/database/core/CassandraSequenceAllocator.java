@@ -0,0 +1,192 @@
+package liquibase.database.core;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+
+/**
+ * Hands out ORDEREXECUTED values of one keyspace. Values come from in-memory
+ * blocks without locking; a new block is only allocated when the current one
+ * runs out.
+ * <p>
+ * Without reservation there is a single block, starting at the value of the
+ * <code>orderexecuted</code> row of the databasechangeloghead table, which
+ * history inserts keep one above the highest ORDEREXECUTED written. Only a
+ * history without that row is scanned for its highest ORDEREXECUTED.
+ * <p>
+ * With reservation, blocks are reserved with lightweight transactions on the
+ * <code>orderexecutedreserved</code> row, so concurrent migrators of a
+ * keyspace never hand out the same value. Only this class writes that row,
+ * and only with lightweight transactions; the first reservation seeds it
+ * like the single block above. Values of a block that is not used up are
+ * skipped.
+ */
+public class CassandraSequenceAllocator {
+
+	/** Name of the databasechangeloghead row history inserts keep one above the highest ORDEREXECUTED. */
+	public static final String ORDER_EXECUTED = "orderexecuted";
+
+	/** Name of the databasechangeloghead row blocks are reserved from. */
+	public static final String RESERVED_ORDER_EXECUTED = "orderexecutedreserved";
+
+	private static final int MAX_RESERVATION_ATTEMPTS = 100;
+
+	private final CassandraDatabase database;
+	private final int blockSize;
+	private final boolean reserve;
+	private volatile Block block;
+	private int reservations;
+
+	/**
+	 * @param reserve reserve blocks of <code>blockSize</code> values cluster-wide
+	 */
+	public CassandraSequenceAllocator(CassandraDatabase database, boolean reserve, int blockSize) {
+		if (reserve && blockSize < 1) {
+			throw new IllegalArgumentException("Sequence block size must be at least 1");
+		}
+		this.database = database;
+		this.reserve = reserve;
+		this.blockSize = blockSize;
+	}
+
+	public int next() throws DatabaseException {
+		while (true) {
+			Block current = block;
+			if (current != null) {
+				int value = current.next.getAndIncrement();
+				if (value < current.limit) {
+					return value;
+				}
+			}
+			synchronized (this) {
+				if (block == current) {
+					block = allocate();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of blocks reserved in the databasechangeloghead table.
+	 */
+	public synchronized int getReservationCount() {
+		return reservations;
+	}
+
+	private Block allocate() throws DatabaseException {
+		if (!reserve || !database.hasTable(database.getDatabaseChangeLogHeadTableName())) {
+			if (block != null) {
+				throw new DatabaseException("ORDEREXECUTED sequence of keyspace " + database.getLiquibaseSchemaName() + " is exhausted");
+			}
+			return new Block(readNextOrderExecuted(), Integer.MAX_VALUE);
+		}
+
+		String table = database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(),
+				database.getDatabaseChangeLogHeadTableName());
+		try {
+			String select = "SELECT VALUE FROM " + table + " WHERE NAME = '" + RESERVED_ORDER_EXECUTED + "'";
+			List<Map<String, Object>> result = database.queryCql(select);
+			for (int attempt = 0; attempt < MAX_RESERVATION_ATTEMPTS; attempt++) {
+				Object value = result.isEmpty() ? null : result.get(0).get("VALUE");
+				if (value == null) {
+					// first reservation in this keyspace
+					result = database.queryCql("INSERT INTO " + table + " (NAME, VALUE) VALUES ('" + RESERVED_ORDER_EXECUTED
+							+ "', '" + readNextOrderExecuted() + "') IF NOT EXISTS");
+					if (isApplied(result)) {
+						result = database.queryCql(select);
+					}
+					continue;
+				}
+				int start = Integer.parseInt(value.toString());
+				int limit = start + blockSize;
+				result = database.queryCql("UPDATE " + table + " SET VALUE = '" + limit + "' WHERE NAME = '" + RESERVED_ORDER_EXECUTED
+						+ "' IF VALUE = '" + start + "'");
+				if (isApplied(result)) {
+					reservations++;
+					LogFactory.getLogger().debug("Reserved ORDEREXECUTED " + start + " to " + (limit - 1));
+					return new Block(start, limit);
+				}
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException("Cannot reserve ORDEREXECUTED values: " + e.getMessage(), e);
+		}
+		throw new DatabaseException("Could not reserve ORDEREXECUTED values after " + MAX_RESERVATION_ATTEMPTS + " attempts");
+	}
+
+	/**
+	 * The value of the <code>orderexecuted</code> row, or one above the
+	 * highest ORDEREXECUTED in the table if there is no such row.
+	 */
+	private int readNextOrderExecuted() throws DatabaseException {
+		if (database.getConnection() != null) {
+			String recorded = database.readHeadValue(ORDER_EXECUTED);
+			if (recorded != null) {
+				try {
+					return Integer.parseInt(recorded.trim());
+				} catch (NumberFormatException e) {
+					LogFactory.getLogger().warning("Ignoring " + ORDER_EXECUTED + " row " + recorded);
+				}
+			}
+		}
+		return readMaxOrderExecuted() + 1;
+	}
+
+	/**
+	 * Highest ORDEREXECUTED in the table. The v2 layout only reads the
+	 * highest bucket that has rows.
+	 */
+	private int readMaxOrderExecuted() throws DatabaseException {
+		if (database.getConnection() == null || !database.hasDatabaseChangeLogTable()) {
+			return 0;
+		}
+		String select = "SELECT ORDEREXECUTED FROM " + database.escapeTableName(database.getLiquibaseCatalogName(),
+				database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName());
+		if (database.getHistoryLayout() != CassandraHistoryLayout.V2) {
+			return readMaxOrderExecuted(select);
+		}
+		for (int bucket = database.readLastHistoryBucket(); bucket >= 0; bucket--) {
+			int max = readMaxOrderExecuted(select + " WHERE BUCKET = " + bucket);
+			if (max > 0) {
+				return max;
+			}
+		}
+		return 0;
+	}
+
+	private int readMaxOrderExecuted(String select) throws DatabaseException {
+		int max = 0;
+		try {
+			for (Map<String, Object> row : database.queryCql(select)) {
+				Object orderExecuted = row.get("ORDEREXECUTED");
+				if (orderExecuted instanceof Number) {
+					max = Math.max(max, ((Number) orderExecuted).intValue());
+				}
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException("Cannot read ORDEREXECUTED: " + e.getMessage(), e);
+		}
+		return max;
+	}
+
+	private static boolean isApplied(List<Map<String, Object>> result) {
+		if (result.isEmpty()) {
+			return false;
+		}
+		Object applied = result.get(0).get("[APPLIED]");
+		return applied instanceof Boolean ? (Boolean) applied : Boolean.parseBoolean(String.valueOf(applied));
+	}
+
+	private static class Block {
+		private final AtomicInteger next;
+		private final int limit;
+
+		private Block(int start, int limit) {
+			this.next = new AtomicInteger(start);
+			this.limit = limit;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package liquibase.database.core;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import liquibase.exception.DatabaseException;
+
+/**
+ * Columns of one table as read from <code>system.schema_columns</code>: their
+ * CQL types and which of them make up the partition key. The types are
+ * translated from the marshal classes Cassandra stores, e.g.
+ * <code>org.apache.cassandra.db.marshal.MapType(UTF8Type,Int32Type)</code>
+ * becomes <code>map&lt;text, int&gt;</code>.
+ */
+public class CassandraTableMetadata {
+
+	private static final String MARSHAL_PACKAGE = "org.apache.cassandra.db.marshal.";
+	private static final Map<String, String> MARSHAL_TYPES = new HashMap<String, String>();
+
+	static {
+		MARSHAL_TYPES.put("AsciiType", "ascii");
+		MARSHAL_TYPES.put("LongType", "bigint");
+		MARSHAL_TYPES.put("BytesType", "blob");
+		MARSHAL_TYPES.put("BooleanType", "boolean");
+		MARSHAL_TYPES.put("CounterColumnType", "counter");
+		MARSHAL_TYPES.put("SimpleDateType", "date");
+		MARSHAL_TYPES.put("DecimalType", "decimal");
+		MARSHAL_TYPES.put("DoubleType", "double");
+		MARSHAL_TYPES.put("FloatType", "float");
+		MARSHAL_TYPES.put("InetAddressType", "inet");
+		MARSHAL_TYPES.put("Int32Type", "int");
+		MARSHAL_TYPES.put("ShortType", "smallint");
+		MARSHAL_TYPES.put("UTF8Type", "text");
+		MARSHAL_TYPES.put("TimeType", "time");
+		MARSHAL_TYPES.put("TimestampType", "timestamp");
+		MARSHAL_TYPES.put("DateType", "timestamp");
+		MARSHAL_TYPES.put("TimeUUIDType", "timeuuid");
+		MARSHAL_TYPES.put("ByteType", "tinyint");
+		MARSHAL_TYPES.put("UUIDType", "uuid");
+		MARSHAL_TYPES.put("IntegerType", "varint");
+		MARSHAL_TYPES.put("ListType", "list");
+		MARSHAL_TYPES.put("SetType", "set");
+		MARSHAL_TYPES.put("MapType", "map");
+		MARSHAL_TYPES.put("TupleType", "tuple");
+		MARSHAL_TYPES.put("FrozenType", "frozen");
+	}
+
+	private final String keyspace;
+	private final String table;
+	private final Map<String, String> columnTypes;
+	private final List<String> partitionKey;
+	private final List<String> clusteringColumns;
+
+	private CassandraTableMetadata(String keyspace, String table, Map<String, String> columnTypes, List<String> partitionKey,
+			List<String> clusteringColumns) {
+		this.keyspace = keyspace;
+		this.table = table;
+		this.columnTypes = Collections.unmodifiableMap(columnTypes);
+		this.partitionKey = Collections.unmodifiableList(partitionKey);
+		this.clusteringColumns = Collections.unmodifiableList(clusteringColumns);
+	}
+
+	/**
+	 * Reads the columns of a table.
+	 *
+	 * @throws DatabaseException if the table does not exist
+	 */
+	public static CassandraTableMetadata load(CassandraDatabase database, String keyspace, String table) throws DatabaseException {
+		String sql = "select \"column_name\", \"type\", \"component_index\", \"validator\" from \"system\".\"schema_columns\""
+				+ " where \"keyspace_name\" = '" + keyspace + "' and \"columnfamily_name\" = '" + table + "'";
+		List<Map<String, Object>> rows;
+		try {
+			rows = database.queryCql(sql);
+		} catch (SQLException e) {
+			throw new DatabaseException("Cannot read columns of " + keyspace + "." + table, e);
+		}
+		if (rows.isEmpty()) {
+			throw new DatabaseException("Table " + keyspace + "." + table + " does not exist");
+		}
+		Map<String, String> columnTypes = new LinkedHashMap<String, String>();
+		TreeMap<Integer, String> partitionKey = new TreeMap<Integer, String>();
+		TreeMap<Integer, String> clusteringColumns = new TreeMap<Integer, String>();
+		for (Map<String, Object> row : rows) {
+			String name = String.valueOf(row.get("COLUMN_NAME"));
+			columnTypes.put(name, toCqlType(String.valueOf(row.get("VALIDATOR"))));
+			Object index = row.get("COMPONENT_INDEX");
+			if ("partition_key".equals(row.get("TYPE"))) {
+				partitionKey.put(index == null ? 0 : ((Number) index).intValue(), name);
+			} else if ("clustering_key".equals(row.get("TYPE"))) {
+				clusteringColumns.put(index == null ? 0 : ((Number) index).intValue(), name);
+			}
+		}
+		return new CassandraTableMetadata(keyspace, table, columnTypes, new ArrayList<String>(partitionKey.values()),
+				new ArrayList<String>(clusteringColumns.values()));
+	}
+
+	public String getKeyspace() {
+		return keyspace;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * CQL type of a column, or null if the table has no such column.
+	 */
+	public String getColumnType(String column) {
+		return columnTypes.get(column);
+	}
+
+	public Map<String, String> getColumnTypes() {
+		return columnTypes;
+	}
+
+	/**
+	 * Partition key columns in key order.
+	 */
+	public List<String> getPartitionKey() {
+		return partitionKey;
+	}
+
+	/**
+	 * Clustering columns in key order.
+	 */
+	public List<String> getClusteringColumns() {
+		return clusteringColumns;
+	}
+
+	/**
+	 * CQL type of a marshal class name. Clustering order and user defined
+	 * types are dropped, a user defined type is returned as its hex encoded
+	 * name.
+	 */
+	static String toCqlType(String validator) {
+		String type = validator.trim();
+		int open = type.indexOf('(');
+		String name = (open < 0 ? type : type.substring(0, open)).trim();
+		if (name.startsWith(MARSHAL_PACKAGE)) {
+			name = name.substring(MARSHAL_PACKAGE.length());
+		}
+		if (open < 0) {
+			String cql = MARSHAL_TYPES.get(name);
+			return cql == null ? name : cql;
+		}
+		List<String> arguments = splitArguments(type.substring(open + 1, type.lastIndexOf(')')));
+		if (name.equals("ReversedType")) {
+			return toCqlType(arguments.get(0));
+		}
+		if (name.equals("UserType")) {
+			return arguments.size() > 1 ? arguments.get(1) : name;
+		}
+		if (name.equals("ColumnToCollectionType") || name.equals("CompositeType")) {
+			return "blob";
+		}
+		StringBuilder cql = new StringBuilder(MARSHAL_TYPES.containsKey(name) ? MARSHAL_TYPES.get(name) : name).append('<');
+		for (int i = 0; i < arguments.size(); i++) {
+			cql.append(i == 0 ? "" : ", ").append(toCqlType(arguments.get(i)));
+		}
+		return cql.append('>').toString();
+	}
+
+	private static List<String> splitArguments(String arguments) {
+		List<String> result = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < arguments.length(); i++) {
+			char c = arguments.charAt(i);
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				result.add(arguments.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		result.add(arguments.substring(start).trim());
+		return result;
+	}
+}
@@ -0,0 +1,192 @@
+package liquibase.database.core;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import liquibase.util.JsonRowReader;
+
+/**
+ * Converts values read from CSV or JSON input to the java types the drivers
+ * bind for a CQL type: <code>int</code> to {@link Integer},
+ * <code>uuid</code> to {@link UUID}, <code>blob</code> from
+ * <code>0x</code> hex to {@link ByteBuffer} and so on. Collections are
+ * taken from JSON, in CSV as a JSON array or object in the cell.
+ */
+public final class CassandraValueConverter {
+
+	private static final String[] TIMESTAMP_PATTERNS = { "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "yyyy-MM-dd HH:mm:ss.SSSZ",
+			"yyyy-MM-dd'T'HH:mm:ssZ", "yyyy-MM-dd HH:mm:ssZ", "yyyy-MM-dd HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss.SSS",
+			"yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" };
+
+	private CassandraValueConverter() {
+	}
+
+	/**
+	 * The value as the java type of the CQL type. Null stays null, as do
+	 * empty strings and <code>NULL</code> for anything but text.
+	 *
+	 * @throws IllegalArgumentException if the value does not fit the type
+	 */
+	public static Object convert(String cqlType, Object value) {
+		if (value == null) {
+			return null;
+		}
+		String type = cqlType.trim().toLowerCase();
+		int open = type.indexOf('<');
+		String name = open < 0 ? type : type.substring(0, open).trim();
+		if (name.equals("ascii") || name.equals("text") || name.equals("varchar")) {
+			return value.toString();
+		}
+		if (value instanceof String) {
+			String string = ((String) value).trim();
+			if (string.length() == 0 || string.equalsIgnoreCase("NULL")) {
+				return null;
+			}
+			value = string;
+		}
+		try {
+			if (name.equals("int")) {
+				return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString());
+			} else if (name.equals("bigint") || name.equals("counter")) {
+				return value instanceof Number ? ((Number) value).longValue() : Long.valueOf(value.toString());
+			} else if (name.equals("smallint")) {
+				return value instanceof Number ? ((Number) value).shortValue() : Short.valueOf(value.toString());
+			} else if (name.equals("tinyint")) {
+				return value instanceof Number ? ((Number) value).byteValue() : Byte.valueOf(value.toString());
+			} else if (name.equals("varint")) {
+				return value instanceof BigInteger ? value : new BigInteger(value.toString());
+			} else if (name.equals("decimal")) {
+				return value instanceof BigDecimal ? value : new BigDecimal(value.toString());
+			} else if (name.equals("double")) {
+				return value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf(value.toString());
+			} else if (name.equals("float")) {
+				return value instanceof Number ? ((Number) value).floatValue() : Float.valueOf(value.toString());
+			} else if (name.equals("boolean")) {
+				return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+			} else if (name.equals("timestamp")) {
+				if (value instanceof Date) {
+					return value;
+				}
+				return value instanceof Number ? new Date(((Number) value).longValue()) : parseTimestamp(value.toString());
+			} else if (name.equals("uuid") || name.equals("timeuuid")) {
+				return value instanceof UUID ? value : UUID.fromString(value.toString());
+			} else if (name.equals("inet")) {
+				return value instanceof InetAddress ? value : InetAddress.getByName(value.toString());
+			} else if (name.equals("blob")) {
+				return toByteBuffer(value);
+			} else if (name.equals("frozen")) {
+				return convert(type.substring(open + 1, type.lastIndexOf('>')), value);
+			} else if (name.equals("list") || name.equals("set")) {
+				String elementType = type.substring(open + 1, type.lastIndexOf('>'));
+				Collection<Object> collection = name.equals("set") ? new LinkedHashSet<Object>() : new ArrayList<Object>();
+				for (Object element : (Collection<?>) parseJson(value, Collection.class)) {
+					collection.add(convert(elementType, element));
+				}
+				return collection;
+			} else if (name.equals("map")) {
+				List<String> types = splitTypes(type.substring(open + 1, type.lastIndexOf('>')));
+				Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>) parseJson(value, Map.class)).entrySet()) {
+					map.put(convert(types.get(0), entry.getKey()), convert(types.get(1), entry.getValue()));
+				}
+				return map;
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Cannot convert '" + value + "' to " + cqlType, e);
+		} catch (UnknownHostException e) {
+			throw new IllegalArgumentException("Cannot convert '" + value + "' to " + cqlType, e);
+		}
+		return value;
+	}
+
+	/**
+	 * Parses epoch milliseconds or an ISO 8601 like date and time.
+	 */
+	public static Date parseTimestamp(String value) {
+		String trimmed = value.trim();
+		if (trimmed.matches("-?\\d+")) {
+			return new Date(Long.parseLong(trimmed));
+		}
+		if (trimmed.endsWith("Z")) {
+			trimmed = trimmed.substring(0, trimmed.length() - 1) + "+0000";
+		}
+		for (String pattern : TIMESTAMP_PATTERNS) {
+			try {
+				SimpleDateFormat format = new SimpleDateFormat(pattern);
+				format.setLenient(false);
+				return format.parse(trimmed);
+			} catch (ParseException e) {
+				// try the next pattern
+			}
+		}
+		throw new IllegalArgumentException("Cannot convert '" + value + "' to a timestamp");
+	}
+
+	private static ByteBuffer toByteBuffer(Object value) {
+		if (value instanceof ByteBuffer) {
+			return (ByteBuffer) value;
+		} else if (value instanceof byte[]) {
+			return ByteBuffer.wrap((byte[]) value);
+		}
+		String hex = value.toString();
+		if (hex.startsWith("0x") || hex.startsWith("0X")) {
+			hex = hex.substring(2);
+		}
+		if (hex.length() % 2 != 0) {
+			throw new IllegalArgumentException("Cannot convert '" + value + "' to a blob, expected hex digits");
+		}
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+
+	private static Object parseJson(Object value, Class<?> expected) {
+		Object parsed = value;
+		if (value instanceof String) {
+			try {
+				parsed = JsonRowReader.parseValue((String) value);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Cannot read collection '" + value + "': " + e.getMessage(), e);
+			}
+		}
+		if (!expected.isInstance(parsed)) {
+			throw new IllegalArgumentException("Cannot convert '" + value + "', expected a JSON " + (expected == Map.class ? "object" : "array"));
+		}
+		return parsed;
+	}
+
+	private static List<String> splitTypes(String types) {
+		List<String> result = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < types.length(); i++) {
+			char c = types.charAt(i);
+			if (c == '<') {
+				depth++;
+			} else if (c == '>') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				result.add(types.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		result.add(types.substring(start).trim());
+		return result;
+	}
+}
@@ -0,0 +1,248 @@
+package liquibase.datatype;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import liquibase.datatype.core.BigIntType;
+import liquibase.datatype.core.BlobType;
+import liquibase.datatype.core.BooleanType;
+import liquibase.datatype.core.CharType;
+import liquibase.datatype.core.ClobType;
+import liquibase.datatype.core.CurrencyType;
+import liquibase.datatype.core.DateTimeType;
+import liquibase.datatype.core.DateType;
+import liquibase.datatype.core.DecimalType;
+import liquibase.datatype.core.DoubleType;
+import liquibase.datatype.core.FloatType;
+import liquibase.datatype.core.IntType;
+import liquibase.datatype.core.MediumIntType;
+import liquibase.datatype.core.NumberType;
+import liquibase.datatype.core.SmallIntType;
+import liquibase.datatype.core.TimeType;
+import liquibase.datatype.core.TinyIntType;
+import liquibase.datatype.core.UUIDType;
+import liquibase.datatype.core.UnknownType;
+import liquibase.exception.UnexpectedLiquibaseException;
+
+/**
+ * Maps liquibase data types to CQL types. Types liquibase knows are looked up
+ * by their class, subclasses resolve to the mapping of the closest registered
+ * superclass. Types liquibase does not know, such as <code>timeuuid</code>,
+ * <code>counter</code>, <code>map&lt;text, text&gt;</code> or
+ * <code>frozen&lt;address&gt;</code>, are checked against the CQL type
+ * grammar and used with registered names replaced. Resolved mappings are
+ * cached, so repeated lookups neither parse nor allocate.
+ * <p>
+ * Custom mappings can be added with {@link #register(Class, String)} and
+ * {@link #register(String, String)}.
+ */
+public class CassandraTypeMapper {
+
+    private static final CassandraTypeMapper INSTANCE = new CassandraTypeMapper();
+
+    /** CQL types that take no parameters. */
+    public static final Set<String> NATIVE_TYPES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "ascii", "bigint", "blob", "boolean", "counter", "date", "decimal", "double", "duration", "float", "inet",
+            "int", "smallint", "text", "time", "timestamp", "timeuuid", "tinyint", "uuid", "varchar", "varint")));
+
+    private final ConcurrentMap<Class<?>, String> registeredClasses = new ConcurrentHashMap<Class<?>, String>();
+    private final ConcurrentMap<String, String> registeredNames = new ConcurrentHashMap<String, String>();
+    private final ConcurrentMap<Class<?>, String> resolvedClasses = new ConcurrentHashMap<Class<?>, String>();
+    private final ConcurrentMap<String, String> resolvedNames = new ConcurrentHashMap<String, String>();
+
+    public CassandraTypeMapper() {
+        register(BooleanType.class, "boolean");
+        register(TinyIntType.class, "tinyint");
+        register(SmallIntType.class, "smallint");
+        register(MediumIntType.class, "int");
+        register(IntType.class, "int");
+        register(BigIntType.class, "bigint");
+        register(FloatType.class, "float");
+        register(DoubleType.class, "double");
+        register(DecimalType.class, "decimal");
+        register(NumberType.class, "decimal");
+        register(CurrencyType.class, "decimal");
+        register(CharType.class, "varchar");
+        register(ClobType.class, "text");
+        register(BlobType.class, "blob");
+        register(DateType.class, "timestamp");
+        register(DateTimeType.class, "timestamp");
+        register(TimeType.class, "time");
+        register(UUIDType.class, "uuid");
+    }
+
+    public static CassandraTypeMapper getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Maps a liquibase data type class, and its subclasses without a mapping
+     * of their own, to a CQL type.
+     */
+    public CassandraTypeMapper register(Class<? extends LiquibaseDataType> type, String cqlType) {
+        registeredClasses.put(type, cqlType);
+        resolvedClasses.clear();
+        return this;
+    }
+
+    /**
+     * Maps a type name liquibase does not know, compared ignoring case, to a
+     * CQL type.
+     */
+    public CassandraTypeMapper register(String typeName, String cqlType) {
+        registeredNames.put(typeName.trim().toLowerCase(Locale.US), cqlType);
+        resolvedNames.clear();
+        return this;
+    }
+
+    /**
+     * The CQL type of a column.
+     *
+     * @throws UnexpectedLiquibaseException if the type has no CQL equivalent
+     */
+    public String toCql(LiquibaseDataType dataType) {
+        if (dataType == null) {
+            throw new UnexpectedLiquibaseException("Column without a type");
+        }
+        if (dataType instanceof UnknownType) {
+            return toCql(dataType.getRawDefinition() == null ? dataType.getName() : dataType.getRawDefinition());
+        }
+        Class<?> type = dataType.getClass();
+        String cql = resolvedClasses.get(type);
+        if (cql != null) {
+            return cql;
+        }
+        for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+            cql = registeredClasses.get(superclass);
+            if (cql != null) {
+                resolvedClasses.put(type, cql);
+                return cql;
+            }
+        }
+        throw new UnexpectedLiquibaseException(dataType + " is not a supported type.");
+    }
+
+    /**
+     * The CQL type of a type name liquibase does not know.
+     */
+    public String toCql(String typeName) {
+        String cql = resolvedNames.get(typeName);
+        if (cql != null) {
+            return cql;
+        }
+        String normalized = typeName.trim().toLowerCase(Locale.US);
+        cql = registeredNames.get(normalized);
+        if (cql == null) {
+            Parser parser = new Parser(typeName.trim());
+            cql = parser.parseType(false);
+            if (cql == null || !parser.atEnd()) {
+                throw new UnexpectedLiquibaseException(typeName + " is not a supported type.");
+            }
+        }
+        resolvedNames.put(typeName, cql);
+        return cql;
+    }
+
+    /**
+     * Recursive descent over <code>type := native | name '&lt;' type (',' type)* '&gt;' | udt</code>,
+     * where user defined types are only accepted inside <code>frozen</code>.
+     */
+    private class Parser {
+        private final String text;
+        private int position;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        /**
+         * The CQL of the type at the current position, with registered names
+         * replaced, or null if it is not a CQL type.
+         */
+        private String parseType(boolean frozen) {
+            String name = parseName();
+            if (name == null) {
+                return null;
+            }
+            String lowerName = name.toLowerCase(Locale.US);
+            if (!peek('<')) {
+                String registered = registeredNames.get(lowerName);
+                if (registered != null) {
+                    return registered;
+                }
+                return NATIVE_TYPES.contains(lowerName) || frozen ? name : null;
+            }
+            int arguments;
+            if (lowerName.equals("map")) {
+                arguments = 2;
+            } else if (lowerName.equals("set") || lowerName.equals("list") || lowerName.equals("frozen")) {
+                arguments = 1;
+            } else if (lowerName.equals("tuple")) {
+                arguments = -1;
+            } else {
+                return null;
+            }
+            position++;
+            StringBuilder cql = new StringBuilder(lowerName).append('<');
+            int count = 0;
+            do {
+                String argument = parseType(frozen || lowerName.equals("frozen"));
+                if (argument == null) {
+                    return null;
+                }
+                cql.append(count++ == 0 ? "" : ", ").append(argument);
+            } while (consume(','));
+            if (!consume('>') || (arguments >= 0 && count != arguments)) {
+                return null;
+            }
+            return cql.append('>').toString();
+        }
+
+        private String parseName() {
+            skipSpaces();
+            int start = position;
+            if (position < text.length() && text.charAt(position) == '"') {
+                int end = text.indexOf('"', position + 1);
+                if (end < 0) {
+                    return null;
+                }
+                position = end + 1;
+                return text.substring(start, position);
+            }
+            while (position < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_' || text.charAt(position) == '.')) {
+                position++;
+            }
+            return position == start ? null : text.substring(start, position);
+        }
+
+        private boolean peek(char c) {
+            skipSpaces();
+            return position < text.length() && text.charAt(position) == c;
+        }
+
+        private boolean consume(char c) {
+            if (peek(c)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean atEnd() {
+            skipSpaces();
+            return position == text.length();
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package liquibase.executor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import liquibase.change.Change;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraNativeConnection;
+import liquibase.database.core.CassandraRetryPolicy;
+import liquibase.database.core.CassandraValueConverter;
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+import liquibase.servicelocator.LiquibaseService;
+import liquibase.sql.visitor.SqlVisitor;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.sqlgenerator.core.LockDatabaseChangeLogGeneratorCassandra;
+import liquibase.sqlgenerator.core.MarkChangeSetRanGeneratorCassandra;
+import liquibase.statement.DatabaseFunction;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.BackfillStatementCassandra;
+import liquibase.statement.core.BulkLoadStatementCassandra;
+import liquibase.statement.core.InitializeDatabaseChangeLogLockTableStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.LockDatabaseChangeLogStatement;
+import liquibase.statement.core.MarkChangeSetRanStatement;
+import liquibase.statement.core.SelectFromDatabaseChangeLogLockStatement;
+import liquibase.statement.core.SelectFromDatabaseChangeLogStatement;
+import liquibase.statement.core.SqlFileStatementCassandra;
+import liquibase.statement.core.UnlockDatabaseChangeLogStatement;
+import liquibase.statement.core.UpdateStatement;
+import liquibase.statement.core.UpdateStatementCassandra;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.DriverException;
+
+/**
+ * Executor running statements over the CQL binary protocol of a
+ * {@link CassandraNativeConnection}. Inserts and updates of the changelog,
+ * head and lock tables are prepared once per connection and only their values
+ * are bound per call; everything else is sent as plain CQL. Statements are
+ * executed asynchronously, the synchronous methods of {@link Executor} wait
+ * for the result.
+ */
+@LiquibaseService(skip = true)
+public class CassandraNativeExecutor extends AbstractExecutor implements Executor {
+
+    private static final MarkChangeSetRanGeneratorCassandra MARK_RAN_GENERATOR = new MarkChangeSetRanGeneratorCassandra();
+    private static final LockDatabaseChangeLogGeneratorCassandra LOCK_GENERATOR = new LockDatabaseChangeLogGeneratorCassandra();
+
+    public CassandraNativeExecutor(CassandraDatabase database) {
+        setDatabase(database);
+    }
+
+    public <T> T queryForObject(SqlStatement sql, Class<T> requiredType) throws DatabaseException {
+        return queryForObject(sql, requiredType, new ArrayList<SqlVisitor>());
+    }
+
+    public <T> T queryForObject(SqlStatement sql, Class<T> requiredType, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        List<Map<String, ?>> rows = queryForList(sql, sqlVisitors);
+        if (rows.isEmpty()) {
+            throw new DatabaseException("Empty result set, expected one row");
+        }
+        if (rows.size() > 1) {
+            throw new DatabaseException("Result set larger than one row");
+        }
+        Map<String, ?> row = rows.get(0);
+        if (row.size() != 1) {
+            throw new DatabaseException("Returned row has " + row.size() + " columns, expected one");
+        }
+        return convert(row.values().iterator().next(), requiredType);
+    }
+
+    public long queryForLong(SqlStatement sql) throws DatabaseException {
+        return queryForLong(sql, new ArrayList<SqlVisitor>());
+    }
+
+    public long queryForLong(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        Long value = queryForObject(sql, Long.class, sqlVisitors);
+        return value == null ? 0 : value;
+    }
+
+    public int queryForInt(SqlStatement sql) throws DatabaseException {
+        return queryForInt(sql, new ArrayList<SqlVisitor>());
+    }
+
+    public int queryForInt(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        Integer value = queryForObject(sql, Integer.class, sqlVisitors);
+        return value == null ? 0 : value;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public List queryForList(SqlStatement sql, Class elementType) throws DatabaseException {
+        return queryForList(sql, elementType, new ArrayList<SqlVisitor>());
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public List queryForList(SqlStatement sql, Class elementType, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        List result = new ArrayList();
+        for (Map<String, ?> row : queryForList(sql, sqlVisitors)) {
+            if (row.size() != 1) {
+                throw new DatabaseException("Returned row has " + row.size() + " columns, expected one");
+            }
+            result.add(convert(row.values().iterator().next(), elementType));
+        }
+        return result;
+    }
+
+    public List<Map<String, ?>> queryForList(SqlStatement sql) throws DatabaseException {
+        return queryForList(sql, new ArrayList<SqlVisitor>());
+    }
+
+    public List<Map<String, ?>> queryForList(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        List<Map<String, ?>> rows = new ArrayList<Map<String, ?>>();
+        CassandraNativeConnection connection = getConnection();
+        for (ResultSet resultSet : run(sql, sqlVisitors)) {
+            rows.addAll(connection.toMaps(resultSet));
+        }
+        return rows;
+    }
+
+    public void execute(Change change) throws DatabaseException {
+        execute(change, new ArrayList<SqlVisitor>());
+    }
+
+    public void execute(Change change, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        for (SqlStatement statement : change.generateStatements(database)) {
+            if (statement.skipOnUnsupported() && !SqlGeneratorFactory.getInstance().supports(statement, database)) {
+                continue;
+            }
+            execute(statement, sqlVisitors);
+        }
+    }
+
+    public void execute(SqlStatement sql) throws DatabaseException {
+        execute(sql, new ArrayList<SqlVisitor>());
+    }
+
+    public void execute(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        run(sql, sqlVisitors);
+    }
+
+    public int update(SqlStatement sql) throws DatabaseException {
+        return update(sql, new ArrayList<SqlVisitor>());
+    }
+
+    /**
+     * Cassandra does not report updated row counts, so this always returns 0
+     * like the JDBC driver.
+     */
+    public int update(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        run(sql, sqlVisitors);
+        return 0;
+    }
+
+    public void comment(String message) throws DatabaseException {
+        LogFactory.getLogger().debug(message);
+    }
+
+    public boolean updatesDatabase() {
+        return true;
+    }
+
+    /**
+     * Sends a statement without waiting for it. The statement must translate
+     * to a single CQL statement.
+     */
+    public ResultSetFuture executeAsync(SqlStatement sql) throws DatabaseException {
+        List<Statement> statements = toCql(sql, Collections.<SqlVisitor>emptyList());
+        if (statements.size() != 1) {
+            throw new DatabaseException(sql.getClass().getSimpleName() + " generates " + statements.size() + " CQL statements, cannot run it asynchronously");
+        }
+        Statement statement = statements.get(0);
+        getDatabase().getConsistency().apply(statement);
+        return getConnection().getSession().executeAsync(statement);
+    }
+
+    /**
+     * Sends the statements as one UNLOGGED batch, a single round trip.
+     */
+    public void executeUnloggedBatch(List<? extends SqlStatement> sql) throws DatabaseException {
+        executeBatch(BatchStatement.Type.UNLOGGED, sql);
+    }
+
+    private void executeBatch(BatchStatement.Type type, List<? extends SqlStatement> sql) throws DatabaseException {
+        BatchStatement batch = new BatchStatement(type);
+        for (SqlStatement statement : sql) {
+            batch.addAll(toCql(statement, Collections.<SqlVisitor>emptyList()));
+        }
+        if (batch.size() == 0) {
+            return;
+        }
+        getDatabase().getConsistency().apply(batch);
+        try {
+            execute(batch);
+        } catch (DriverException e) {
+            throw new DatabaseException("Error executing batch of " + batch.size() + " statements: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs the CQL statements of a liquibase statement one after the other,
+     * waiting for each before sending the next. Bulk loads, backfills and
+     * sql files run their CQL themselves.
+     */
+    protected List<ResultSet> run(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        List<ResultSet> results = new ArrayList<ResultSet>();
+        if (sql instanceof BulkLoadStatementCassandra) {
+            ((BulkLoadStatementCassandra) sql).load();
+            return results;
+        }
+        if (sql instanceof BackfillStatementCassandra) {
+            ((BackfillStatementCassandra) sql).run();
+            return results;
+        }
+        if (sql instanceof SqlFileStatementCassandra) {
+            ((SqlFileStatementCassandra) sql).run();
+            return results;
+        }
+        CassandraNativeConnection connection = getConnection();
+        for (Statement statement : toCql(sql, sqlVisitors)) {
+            getDatabase().getConsistency().apply(statement);
+            try {
+                results.add(execute(statement));
+            } catch (DriverException e) {
+                throw new DatabaseException("Error executing " + describe(statement) + ": " + e.getMessage(), e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs a statement and waits for it, again after transient errors if it
+     * is idempotent, see {@link CassandraRetryPolicy}.
+     */
+    private ResultSet execute(Statement statement) {
+        CassandraRetryPolicy.Attempts attempts = getDatabase().getRetryPolicy().start(statement);
+        while (true) {
+            try {
+                return getConnection().getSession().executeAsync(statement).getUninterruptibly();
+            } catch (DriverException e) {
+                if (!attempts.retry(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    protected List<Statement> toCql(SqlStatement sql, List<SqlVisitor> sqlVisitors) throws DatabaseException {
+        CassandraNativeConnection connection = getConnection();
+        SqlStatement statement = sql;
+        if (sql instanceof MarkChangeSetRanStatement) {
+            SqlStatement runStatement = MARK_RAN_GENERATOR.generateRunStatement((MarkChangeSetRanStatement) sql, database);
+            if (runStatement == null) {
+                return Collections.emptyList();
+            }
+            if (!MARK_RAN_GENERATOR.hasHeadTable(database)) {
+                return toCql(runStatement, sqlVisitors);
+            }
+            List<Statement> statements = new ArrayList<Statement>(toCql(runStatement, sqlVisitors));
+            for (SqlStatement headStatement : MARK_RAN_GENERATOR.generateHeadStatements(database, ((MarkChangeSetRanStatement) sql).getChangeSet().getId(), runStatement, runStatement)) {
+                statements.addAll(toCql(headStatement, Collections.<SqlVisitor>emptyList()));
+            }
+            return statements;
+        } else if (sql instanceof LockDatabaseChangeLogStatement) {
+            statement = LOCK_GENERATOR.generateUpdateStatement((LockDatabaseChangeLogStatement) sql, database);
+        }
+
+        if (isBound(statement, sqlVisitors)) {
+            Statement bound = null;
+            try {
+                if (statement instanceof InsertStatement) {
+                    bound = bindInsert((InsertStatement) statement);
+                } else if (statement instanceof UpdateStatement) {
+                    bound = bindUpdate((UpdateStatement) statement);
+                }
+            } catch (DriverException e) {
+                throw new DatabaseException(e);
+            }
+            if (bound != null) {
+                return Collections.singletonList(bound);
+            }
+        }
+
+        boolean prepare = isLiquibaseTableStatement(sql);
+        List<Statement> statements = new ArrayList<Statement>();
+        for (String cql : applyVisitors(statement, sqlVisitors)) {
+            if (prepare) {
+                statements.add(connection.prepare(cql).bind());
+            } else {
+                statements.add(new SimpleStatement(cql));
+            }
+        }
+        return statements;
+    }
+
+    private Statement bindInsert(InsertStatement statement) {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder markers = new StringBuilder();
+        List<Object> values = new ArrayList<Object>();
+        for (Map.Entry<String, Object> column : statement.getColumnValues().entrySet()) {
+            if (column.getValue() instanceof DatabaseFunction) {
+                return null;
+            }
+            if (values.size() > 0) {
+                columns.append(", ");
+                markers.append(", ");
+            }
+            columns.append(database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getKey()));
+            markers.append("?");
+            values.add(column.getValue());
+        }
+        String cql = "INSERT INTO " + database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName())
+                + " (" + columns + ") VALUES (" + markers + ")";
+        return bind(getConnection().prepare(cql), values);
+    }
+
+    private Statement bindUpdate(UpdateStatement statement) {
+        if (statement.getWhereColumnNames() != null && !statement.getWhereColumnNames().isEmpty()) {
+            return null;
+        }
+        UpdateStatementCassandra cassandraStatement = statement instanceof UpdateStatementCassandra ? (UpdateStatementCassandra) statement : null;
+        StringBuilder cql = new StringBuilder("UPDATE ")
+                .append(database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName()));
+        if (cassandraStatement != null && cassandraStatement.getTimeToLive() != null) {
+            cql.append(" USING TTL ").append(cassandraStatement.getTimeToLive());
+        }
+        cql.append(" SET ");
+        List<Object> values = new ArrayList<Object>();
+        for (Map.Entry<String, Object> column : statement.getNewColumnValues().entrySet()) {
+            if (column.getValue() instanceof DatabaseFunction) {
+                return null;
+            }
+            if (values.size() > 0) {
+                cql.append(", ");
+            }
+            cql.append(database.escapeColumnName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName(), column.getKey()))
+                    .append(" = ?");
+            values.add(column.getValue());
+        }
+        if (statement.getWhereClause() != null) {
+            cql.append(" WHERE ").append(statement.getWhereClause().trim());
+            values.addAll(statement.getWhereParameters());
+        }
+        if (cassandraStatement != null && cassandraStatement.getCondition() != null) {
+            cql.append(" IF ").append(cassandraStatement.getCondition());
+            values.addAll(cassandraStatement.getConditionParameters());
+        }
+        return bind(getConnection().prepare(cql.toString()), values);
+    }
+
+    private Statement bind(PreparedStatement prepared, List<Object> values) {
+        ColumnDefinitions variables = prepared.getVariables();
+        Object[] converted = new Object[values.size()];
+        for (int i = 0; i < converted.length; i++) {
+            converted[i] = toCqlValue(variables.getType(i), values.get(i));
+        }
+        return prepared.bind(converted);
+    }
+
+    /**
+     * Converts a liquibase column value to the java type the driver expects
+     * for the bound CQL type.
+     */
+    protected Object toCqlValue(DataType type, Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (type.getName()) {
+        case TIMESTAMP:
+            if (value instanceof Date) {
+                return new Date(((Date) value).getTime());
+            } else if (value instanceof Number) {
+                return new Date(((Number) value).longValue());
+            }
+            return CassandraValueConverter.parseTimestamp(value.toString());
+        case INT:
+            return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString().trim());
+        case BIGINT:
+        case COUNTER:
+            return value instanceof Number ? ((Number) value).longValue() : Long.valueOf(value.toString().trim());
+        case DOUBLE:
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf(value.toString().trim());
+        case FLOAT:
+            return value instanceof Number ? ((Number) value).floatValue() : Float.valueOf(value.toString().trim());
+        case BOOLEAN:
+            return value instanceof Boolean ? value : Boolean.valueOf(value.toString().trim());
+        case ASCII:
+        case TEXT:
+        case VARCHAR:
+            return value.toString();
+        default:
+            return value;
+        }
+    }
+
+    /**
+     * True if the statement is an insert or update of a liquibase table,
+     * which is prepared once and bound per call. User statements are sent as
+     * plain CQL so their literals do not fill the prepared statement cache.
+     */
+    boolean isBound(SqlStatement statement, List<SqlVisitor> sqlVisitors) {
+        if (sqlVisitors != null && !sqlVisitors.isEmpty()) {
+            return false;
+        }
+        if (statement instanceof InsertStatement) {
+            return getDatabase().isLiquibaseTable(((InsertStatement) statement).getTableName());
+        }
+        if (statement instanceof UpdateStatement) {
+            return getDatabase().isLiquibaseTable(((UpdateStatement) statement).getTableName());
+        }
+        return false;
+    }
+
+    private CassandraDatabase getDatabase() {
+        return (CassandraDatabase) database;
+    }
+
+    private CassandraNativeConnection getConnection() {
+        return (CassandraNativeConnection) database.getConnection();
+    }
+
+    private static boolean isLiquibaseTableStatement(SqlStatement statement) {
+        return statement instanceof SelectFromDatabaseChangeLogStatement
+                || statement instanceof SelectFromDatabaseChangeLogLockStatement
+                || statement instanceof UnlockDatabaseChangeLogStatement
+                || statement instanceof InitializeDatabaseChangeLogLockTableStatement;
+    }
+
+    private static String describe(Statement statement) {
+        if (statement instanceof SimpleStatement) {
+            return ((SimpleStatement) statement).getQueryString();
+        }
+        return statement.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T convert(Object value, Class<T> requiredType) throws DatabaseException {
+        if (value == null || requiredType == null || requiredType.isInstance(value)) {
+            return (T) value;
+        }
+        if (requiredType == String.class) {
+            return (T) value.toString();
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (requiredType == Integer.class) {
+                return (T) Integer.valueOf(number.intValue());
+            } else if (requiredType == Long.class) {
+                return (T) Long.valueOf(number.longValue());
+            } else if (requiredType == Boolean.class) {
+                return (T) Boolean.valueOf(number.intValue() == 1);
+            } else if (requiredType == Double.class) {
+                return (T) Double.valueOf(number.doubleValue());
+            }
+        }
+        if (value instanceof String) {
+            String string = ((String) value).trim();
+            if (requiredType == Integer.class) {
+                return (T) Integer.valueOf(string);
+            } else if (requiredType == Long.class) {
+                return (T) Long.valueOf(string);
+            } else if (requiredType == Boolean.class) {
+                return (T) Boolean.valueOf(string);
+            }
+        }
+        throw new DatabaseException("Cannot convert " + value.getClass().getName() + " to " + requiredType.getName());
+    }
+}
@@ -1,5 +1,9 @@
 package liquibase.lockservice;
 
+import liquibase.changelog.ChangeLogHistoryService;
+import liquibase.changelog.ChangeLogHistoryServiceCassandra;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.configuration.CassandraConfiguration;
 import liquibase.database.Database;
 import liquibase.database.core.CassandraDatabase;
 import liquibase.exception.DatabaseException;
@@ -9,16 +13,33 @@ import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.executor.Executor;
 import liquibase.executor.ExecutorService;
 import liquibase.logging.LogFactory;
+import liquibase.metrics.CassandraMetrics;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.sqlgenerator.core.LockDatabaseChangeLogGeneratorCassandra;
 import liquibase.statement.SqlStatement;
 import liquibase.statement.core.*;
+import liquibase.util.JitteredBackoff;
 
+import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class LockServiceCassandra extends StandardLockService {
 
+    private static final LockDatabaseChangeLogGeneratorCassandra LOCK_GENERATOR = new LockDatabaseChangeLogGeneratorCassandra();
+
+    private final String lockedBy = LockDatabaseChangeLogGeneratorCassandra.getLockedBy() + " #" + Integer.toHexString(new Random().nextInt());
+    private volatile Date lockGranted;
+    private volatile boolean leaseLost;
+    private ScheduledExecutorService heartbeat;
+
     public LockServiceCassandra() {
     	super();
     }
@@ -33,6 +54,12 @@ public class LockServiceCassandra extends StandardLockService {
         return database instanceof CassandraDatabase;
     }
 
+    @Override
+    public void setDatabase(Database database) {
+        super.setDatabase(database);
+        ((CassandraDatabase) database).installNativeExecutor();
+    }
+
     @Override
     public boolean hasDatabaseChangeLogLockTable() throws DatabaseException {
         boolean hasTable = false;
@@ -45,39 +72,141 @@ public class LockServiceCassandra extends StandardLockService {
         return hasTable;
     }
 
+    /**
+     * Drops the keyspace snapshot only when the lock table was missing, so
+     * lock acquisitions against an existing table keep reusing it.
+     */
+    @Override
+    public void init() throws DatabaseException {
+        boolean hadTable = hasDatabaseChangeLogLockTable();
+        try {
+            super.init();
+        } finally {
+            if (!hadTable) {
+                ((CassandraDatabase) database).invalidateKeyspaceMetadata();
+            }
+        }
+    }
+
+    /**
+     * Retries {@link #acquireLock()} with jittered exponential backoff until
+     * the changelog lock wait time runs out.
+     */
+    @Override
+    public void waitForLock() throws LockException {
+        long start = CassandraMetrics.start();
+        boolean failed = true;
+        try {
+            retryAcquireLock();
+            failed = false;
+        } finally {
+            getMetrics().record(CassandraMetrics.LOCK_WAIT, start, failed);
+        }
+    }
+
+    private void retryAcquireLock() throws LockException {
+        CassandraConfiguration configuration = CassandraConfiguration.getInstance();
+        JitteredBackoff backoff = new JitteredBackoff(configuration.getLockRetryBaseDelay(), configuration.getLockRetryMaxDelay());
+        long timeToGiveUp = new Date().getTime() + (getChangeLogLockWaitTime() * 1000 * 60);
+
+        boolean locked = acquireLock();
+        int retry = 0;
+        try {
+            while (!locked && backoff.sleep(retry++, timeToGiveUp)) {
+                LogFactory.getLogger().info("Waiting for changelog lock....");
+                locked = acquireLock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LockException("Interrupted waiting for change log lock");
+        }
+
+        if (!locked) {
+            DatabaseChangeLogLock[] locks = listLocks();
+            String lockedBy;
+            if (locks.length > 0) {
+                DatabaseChangeLogLock lock = locks[0];
+                lockedBy = lock.getLockedBy();
+                if (lock.getLockGranted() != null) {
+                    lockedBy += " since " + DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT).format(lock.getLockGranted());
+                }
+            } else {
+                lockedBy = "UNKNOWN";
+            }
+            throw new LockException("Could not acquire change log lock after " + retry + " retries.  Currently locked by " + lockedBy);
+        }
+    }
+
+    /**
+     * Takes the lock with a single conditional update of the lock row and
+     * decides from its <code>[applied]</code> column, so concurrent callers
+     * can never both win. The lock is a lease: it is written with a TTL and
+     * renewed by a heartbeat, so the lock of a crashed process expires on its
+     * own. Locks left by versions without leases are taken over once they are
+     * older than the lease time.
+     */
     @Override
     public boolean acquireLock() throws LockException {
     	if(hasChangeLogLock()) {
     		return true;
     	}
-      
+
+        long start = CassandraMetrics.start();
+        boolean failed = true;
+        try {
+            boolean acquired = updateLock();
+            failed = false;
+            if (!acquired) {
+                getMetrics().increment(CassandraMetrics.LOCK_CONTENDED, 1);
+            }
+            return acquired;
+        } finally {
+            getMetrics().record(CassandraMetrics.LOCK_ACQUIRE, start, failed);
+        }
+    }
+
+    private boolean updateLock() throws LockException {
     	Executor executor = ExecutorService.getInstance().getExecutor(database);
 
         try {
         	database.rollback();
             this.init();
 
-            Boolean locked = ExecutorService.getInstance().getExecutor(database).queryForObject(new SelectFromDatabaseChangeLogLockStatement("LOCKED"), Boolean.class);
-
-            if (locked) {
+            executor.comment("Lock Database");
+            Integer leaseTime = CassandraConfiguration.getInstance().getLockLeaseTime();
+            Date granted = new Date();
+            long retries = getMetrics().getCounter(CassandraMetrics.RETRIES);
+            List<Map<String, ?>> result = executor.queryForList(LOCK_GENERATOR.generateUpdateStatement(database, lockedBy, granted, leaseTime, "LOCKED = false"));
+            boolean applied = isApplied(result);
+            if (!applied && result.get(0).get("LOCKED") == null) {
+                LogFactory.getLogger().info("Change log lock lease has expired, taking over the lock");
+                applied = isApplied(executor.queryForList(LOCK_GENERATOR.generateUpdateStatement(database, lockedBy, granted, leaseTime, "LOCKED = null")));
+            } else if (!applied && leaseTime != null && leaseTime > 0) {
+                applied = takeOverStaleLock(executor, granted, leaseTime);
+            }
+            if (!applied && getMetrics().getCounter(CassandraMetrics.RETRIES) > retries) {
+                applied = ownsLock(executor);
+            }
+            if (!applied) {
                 return false;
-            } else {
-
-                executor.comment("Lock Database");
-                int rowsUpdated = executor.update(new LockDatabaseChangeLogStatement());
-                if (rowsUpdated > 1) {
-                    throw new LockException("Did not update change log lock correctly");
-                }
-                //Cassandra UPDATE return no result (hence 0 default) for successful update.
-                database.commit();
-                LogFactory.getLogger().info("Successfully acquired change log lock");
+            }
+            database.commit();
+            LogFactory.getLogger().info("Successfully acquired change log lock");
 
-                
-                hasChangeLogLock = true;
+            hasChangeLogLock = true;
+            lockGranted = granted;
+            leaseLost = false;
+            if (leaseTime != null && leaseTime > 0) {
+                startHeartbeat(leaseTime);
+            }
 
-                database.setCanCacheLiquibaseTableInfo(true);
-                return true;
+            database.setCanCacheLiquibaseTableInfo(true);
+            if (database instanceof CassandraDatabase) {
+                ((CassandraDatabase) database).refreshHistoryLayout();
             }
+            return true;
+        } catch (LockException e) {
+            throw e;
         } catch (Exception e) {
             throw new LockException(e);
         } finally {
@@ -89,33 +218,193 @@ public class LockServiceCassandra extends StandardLockService {
         }
 
     }
+
+    /**
+     * Takes over a lock that has no TTL, written by a version without leases,
+     * once it is older than the lease time. The update is conditional on the
+     * owner read, so only one waiting process takes it over.
+     */
+    private boolean takeOverStaleLock(Executor executor, Date granted, int leaseTime) throws DatabaseException, LockException {
+        String table = database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogLockTableName());
+        List<Map<String, ?>> rows = executor.queryForList(new RawSqlStatement("SELECT LOCKED, LOCKEDBY, LOCKGRANTED, TTL(LOCKED) FROM " + table + " WHERE ID = 1"));
+        if (rows.isEmpty()) {
+            return false;
+        }
+        Map<String, ?> row = rows.get(0);
+        Object owner = row.get("LOCKEDBY");
+        Object ownerGranted = row.get("LOCKGRANTED");
+        if (row.get("TTL(LOCKED)") != null || owner == null || !(ownerGranted instanceof Date)
+                || granted.getTime() - ((Date) ownerGranted).getTime() < leaseTime * 1000L) {
+            return false;
+        }
+        LogFactory.getLogger().warning("Taking over change log lock held by " + owner + " since " + ownerGranted + ", it is older than the lease time of " + leaseTime + "s");
+        return isApplied(executor.queryForList(LOCK_GENERATOR.generateUpdateStatement(database, lockedBy, granted, leaseTime, "LOCKEDBY = ?", owner)));
+    }
+
+    /**
+     * True if the lock row is locked by this lock service, whose name is
+     * unique. A retried update reports <code>[applied] = false</code> when
+     * its first attempt timed out after taking the lock.
+     */
+    private boolean ownsLock(Executor executor) throws DatabaseException {
+        String table = database.escapeTableName(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogLockTableName());
+        List<Map<String, ?>> rows = executor.queryForList(new RawSqlStatement("SELECT LOCKED, LOCKEDBY FROM " + table + " WHERE ID = 1"));
+        if (rows.isEmpty()) {
+            return false;
+        }
+        if (Boolean.TRUE.equals(rows.get(0).get("LOCKED")) && lockedBy.equals(rows.get(0).get("LOCKEDBY"))) {
+            LogFactory.getLogger().info("Change log lock was taken by a timed out attempt that was retried");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rewrites the lock row with a fresh TTL every third of the lease time.
+     * The renewal goes through {@link CassandraDatabase#queryCql(String)} so it
+     * never shares the executor's connection with the running update.
+     */
+    private synchronized void startHeartbeat(final int leaseTime) {
+        stopHeartbeat();
+        heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "liquibase-cassandra-lock-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1000L, leaseTime * 1000L / 3);
+        heartbeat.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                renewLease(leaseTime);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopHeartbeat() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+    }
+
+    private void renewLease(int leaseTime) {
+        try {
+            SqlStatement renew = LOCK_GENERATOR.generateUpdateStatement(database, lockedBy, lockGranted, leaseTime, "LOCKEDBY = ?", lockedBy);
+            String cql = SqlGeneratorFactory.getInstance().generateSql(renew, database)[0].toSql();
+            List<Map<String, Object>> result = ((CassandraDatabase) database).queryCql(cql);
+            if (!isApplied(result)) {
+                leaseLost = true;
+                stopHeartbeat();
+                LogFactory.getLogger().severe("Lost the change log lock lease, the lock is now held by " + result.get(0).get("LOCKEDBY"));
+            } else {
+                LogFactory.getLogger().debug("Renewed change log lock lease for " + leaseTime + "s");
+            }
+        } catch (Exception e) {
+            LogFactory.getLogger().warning("Could not renew change log lock lease: " + e.getMessage());
+        }
+    }
+
+    /**
+     * True if a heartbeat found the lock taken over by another process after
+     * the lease expired.
+     */
+    public boolean isLeaseLost() {
+        return leaseLost;
+    }
+
+    /**
+     * Fails if the lease of the lock was lost, so nothing runs or is recorded
+     * under a lock another process holds now. Called before every change and
+     * history write.
+     */
+    public void checkLease() throws LockException {
+        if (leaseLost) {
+            throw new LockException("Lost the change log lock lease to another process, stopping");
+        }
+    }
+
+    /**
+     * Checks the lease of the Cassandra lock service of the database, if it
+     * has one.
+     */
+    public static void checkLease(Database database) throws LockException {
+        LockService lockService = LockServiceFactory.getInstance().getLockService(database);
+        if (lockService instanceof LockServiceCassandra) {
+            ((LockServiceCassandra) lockService).checkLease();
+        }
+    }
+
+    /**
+     * Reads the <code>[applied]</code> column returned by a lightweight
+     * transaction.
+     */
+    protected static boolean isApplied(List<? extends Map<String, ?>> result) throws LockException {
+        if (result == null || result.isEmpty()) {
+            throw new LockException("Conditional update of the change log lock returned no result");
+        }
+        Object applied = result.get(0).get("[APPLIED]");
+        if (applied instanceof Boolean) {
+            return (Boolean) applied;
+        } else if (applied != null) {
+            return Boolean.parseBoolean(applied.toString());
+        }
+        throw new LockException("Conditional update of the change log lock returned no [applied] column: " + result.get(0).keySet());
+    }
     
+    /**
+     * Clears the lock row only if this process still owns it, so a lock taken
+     * over after an expired lease is left alone. Buffered databasechangelog
+     * rows are written first; if that fails the lock is kept until its lease
+     * expires and an unchecked exception fails the update, since liquibase
+     * only logs a {@link LockException} here. After the lease was lost they
+     * are not written, and the change sets run again.
+     */
     @Override
     public void releaseLock() throws LockException {
+        ChangeLogHistoryService historyService = ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database);
+        if (leaseLost) {
+            LogFactory.getLogger().severe("Lost the change log lock lease, buffered databasechangelog rows are not written");
+        } else if (historyService instanceof ChangeLogHistoryServiceCassandra) {
+            try {
+                ((ChangeLogHistoryServiceCassandra) historyService).flush();
+            } catch (DatabaseException e) {
+                stopHeartbeat();
+                throw new UnexpectedLiquibaseException("Not releasing change log lock, executed change sets are not recorded yet: "
+                        + e.getMessage(), e);
+            }
+        }
+        if (database instanceof CassandraDatabase) {
+            try {
+                // the next holder of the lock must find the schema of the last change sets everywhere
+                ((CassandraDatabase) database).awaitSchemaAgreement();
+            } catch (DatabaseException e) {
+                LogFactory.getLogger().warning("Could not wait for schema agreement: " + e.getMessage());
+            }
+        }
+        stopHeartbeat();
         Executor executor = ExecutorService.getInstance().getExecutor(database);
+        long start = CassandraMetrics.start();
+        boolean failed = true;
         try {
             if (this.hasDatabaseChangeLogLockTable()) {
                 executor.comment("Release Database Lock");
                 database.rollback();
-                
-                int updatedRows = executor.update(new UnlockDatabaseChangeLogStatement());
-                
-                //Cassandra CQL update doen't return row count updated, hence default 0. So fetch LOCKED rows
-            	Boolean locked = ExecutorService.getInstance().getExecutor(database).queryForObject(new SelectFromDatabaseChangeLogLockStatement("LOCKED"), Boolean.class);
-            	if(!locked) {
-            		updatedRows = 1;
-            	}
-            	int expectedResult = 1;
-                if (updatedRows != expectedResult) {
-                    throw new LockException("Did not update change log lock correctly.\n\n" + updatedRows + " rows were updated instead of the expected 1 row using executor " + executor.getClass().getName()+" there are "+executor.queryForInt(new RawSqlStatement("select count(*) from "+database.getDatabaseChangeLogLockTableName()))+" rows in the table");
+
+                List<Map<String, ?>> result = executor.queryForList(LOCK_GENERATOR.generateReleaseStatement(database, "LOCKEDBY = ?", lockedBy));
+                if (!isApplied(result) && result.get(0).get("LOCKEDBY") != null) {
+                    LogFactory.getLogger().warning("Change log lock is held by " + result.get(0).get("LOCKEDBY") + ", not releasing it");
                 }
                 database.commit();
             }
+            failed = false;
         } catch (Exception e) {
             throw new LockException(e);
         } finally {
+            getMetrics().record(CassandraMetrics.LOCK_RELEASE, start, failed);
             try {
                 hasChangeLogLock = false;
+                lockGranted = null;
 
                 database.setCanCacheLiquibaseTableInfo(false);
 
@@ -127,6 +416,33 @@ public class LockServiceCassandra extends StandardLockService {
         }
     }
 
+    private CassandraMetrics getMetrics() {
+        return ((CassandraDatabase) database).getMetrics();
+    }
+
+    /**
+     * Clears the lock row whoever holds it.
+     */
+    @Override
+    public void forceReleaseLock() throws LockException, DatabaseException {
+        stopHeartbeat();
+        this.init();
+        try {
+            ExecutorService.getInstance().getExecutor(database).execute(LOCK_GENERATOR.generateReleaseStatement(database, null));
+            database.commit();
+        } finally {
+            hasChangeLogLock = false;
+            lockGranted = null;
+            database.setCanCacheLiquibaseTableInfo(false);
+        }
+    }
+
+    @Override
+    public void reset() {
+        stopHeartbeat();
+        super.reset();
+    }
+
     @SuppressWarnings("rawtypes")
 	@Override
     public DatabaseChangeLogLock[] listLocks() throws LockException {
@@ -136,8 +452,7 @@ public class LockServiceCassandra extends StandardLockService {
             }
 
             List<DatabaseChangeLogLock> allLocks = new ArrayList<DatabaseChangeLogLock>();
-            //SqlStatement sqlStatement = new SelectFromDatabaseChangeLogLockStatement("ID", "LOCKED", "LOCKGRANTED", "LOCKEDBY");
-            SqlStatement sqlStatement = new SelectFromDatabaseChangeLogLockStatement("ID", "LOCKED", "LOCKEDBY");
+            SqlStatement sqlStatement = new SelectFromDatabaseChangeLogLockStatement("ID", "LOCKED", "LOCKGRANTED", "LOCKEDBY");
             List<Map<String, ?>> rows = ExecutorService.getInstance().getExecutor(database).queryForList(sqlStatement);
             for (Map columnMap : rows) {
                 Object lockedValue = columnMap.get("LOCKED");
@@ -148,8 +463,7 @@ public class LockServiceCassandra extends StandardLockService {
                     locked = (Boolean) lockedValue;
                 }
                 if (locked != null && locked) {
-                	Date lockGranted = null;
-                	//Date lockGranted = (Date) columnMap.get("LOCKGRANTED");
+                	Date lockGranted = (Date) columnMap.get("LOCKGRANTED");
                     allLocks.add(new DatabaseChangeLogLock(((Number) columnMap.get("ID")).intValue(), lockGranted, (String) columnMap.get("LOCKEDBY")));
                 }
             }
@@ -0,0 +1,279 @@
+package liquibase.metrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.exception.UnexpectedLiquibaseException;
+
+/**
+ * Timings and counters of the operations of one keyspace, kept per kind of
+ * operation and per change set, and passed on to the {@link MetricsSink}.
+ * Callers time an operation as
+ *
+ * <pre>
+ * long start = CassandraMetrics.start();
+ * boolean failed = true;
+ * try {
+ *     ...
+ *     failed = false;
+ * } finally {
+ *     metrics.record(CassandraMetrics.DDL, start, failed);
+ * }
+ * </pre>
+ *
+ * The database logs {@link #report()} when it is closed.
+ */
+public class CassandraMetrics {
+
+	/** A statement changing the schema. */
+	public static final String DDL = "ddl";
+	/** Any other statement. */
+	public static final String STATEMENT = "statement";
+	/** Waiting until all nodes agree on the schema after DDL. */
+	public static final String SCHEMA_AGREEMENT = "schemaAgreement";
+	/** Taking the changelog lock, retries included. */
+	public static final String LOCK_WAIT = "lockWait";
+	/** One attempt to take the changelog lock. */
+	public static final String LOCK_ACQUIRE = "lockAcquire";
+	public static final String LOCK_RELEASE = "lockRelease";
+	/** Loading the ran change sets. */
+	public static final String HISTORY_READ = "historyRead";
+	/** Writing databasechangelog rows, one or a buffered batch. */
+	public static final String HISTORY_WRITE = "historyWrite";
+	/** Running the changes of a change set, statements and agreement waits included, once per change set. */
+	public static final String CHANGE_SET = "changeSet";
+
+	/** Attempts to take the changelog lock while another process held it. */
+	public static final String LOCK_CONTENDED = "lockContended";
+	public static final String HISTORY_ROWS_READ = "historyRowsRead";
+	public static final String HISTORY_ROWS_WRITTEN = "historyRowsWritten";
+	/** Statements run again after a transient error, see liquibase.database.core.CassandraRetryPolicy. */
+	public static final String RETRIES = "retries";
+	/** Transient errors thrown because the attempts or the deadline ran out. */
+	public static final String RETRIES_EXHAUSTED = "retriesExhausted";
+
+	private static final List<String> OPERATIONS = Arrays.asList(LOCK_WAIT, LOCK_ACQUIRE, HISTORY_READ, CHANGE_SET, DDL,
+			STATEMENT, SCHEMA_AGREEMENT, HISTORY_WRITE, LOCK_RELEASE);
+	private static final int SLOWEST_CHANGE_SETS = 10;
+
+	private static volatile MetricsSink sink;
+
+	private final String keyspace;
+	private final ConcurrentMap<String, LatencyHistogram> operations = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, LatencyHistogram> changeSets = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private final ThreadLocal<String> currentChangeSet = new ThreadLocal<String>();
+
+	public CassandraMetrics(String keyspace) {
+		this.keyspace = keyspace;
+	}
+
+	/**
+	 * The sink of all databases, created from the <code>metricsSink</code>
+	 * property on first use.
+	 */
+	public static MetricsSink getSink() {
+		MetricsSink current = sink;
+		if (current == null) {
+			synchronized (CassandraMetrics.class) {
+				if (sink == null) {
+					sink = createSink(CassandraConfiguration.getInstance().getMetricsSink());
+				}
+				current = sink;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Replaces the sink of all databases; null goes back to the
+	 * <code>metricsSink</code> property.
+	 */
+	public static synchronized void setSink(MetricsSink metricsSink) {
+		sink = metricsSink;
+	}
+
+	private static MetricsSink createSink(String name) {
+		if (name == null || name.trim().length() == 0 || name.trim().equalsIgnoreCase("none")) {
+			return MetricsSink.NONE;
+		}
+		if (name.trim().equalsIgnoreCase("jmx")) {
+			return new JmxMetricsSink();
+		}
+		Class<?> sinkClass;
+		try {
+			sinkClass = Class.forName(name.trim());
+		} catch (ClassNotFoundException e) {
+			throw new UnexpectedLiquibaseException("Metrics sink class " + name + " is not on the classpath", e);
+		}
+		if (!MetricsSink.class.isAssignableFrom(sinkClass)) {
+			throw new UnexpectedLiquibaseException("Metrics sink " + name + " does not implement " + MetricsSink.class.getName());
+		}
+		try {
+			return (MetricsSink) sinkClass.getDeclaredConstructor().newInstance();
+		} catch (NoSuchMethodException e) {
+			throw new UnexpectedLiquibaseException("Metrics sink " + name + " has no constructor without arguments", e);
+		} catch (InvocationTargetException e) {
+			throw new UnexpectedLiquibaseException("Constructor of metrics sink " + name + " failed: " + e.getCause(), e.getCause());
+		} catch (InstantiationException e) {
+			throw new UnexpectedLiquibaseException("Metrics sink " + name + " is abstract", e);
+		} catch (IllegalAccessException e) {
+			throw new UnexpectedLiquibaseException("Constructor of metrics sink " + name + " is not public", e);
+		}
+	}
+
+	/**
+	 * Start of an operation, to pass to {@link #record(String, long, boolean)}.
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records an operation started at <code>start</code>, on behalf of the
+	 * change set running on this thread, if any.
+	 */
+	public void record(String operation, long start, boolean failed) {
+		long nanos = System.nanoTime() - start;
+		histogram(operations, operation).record(nanos, failed);
+		getSink().recordLatency(keyspace, operation, currentChangeSet.get(), nanos, failed);
+	}
+
+	/**
+	 * Marks the change set whose statements run on this thread until
+	 * {@link #endChangeSet(long, boolean)}.
+	 */
+	public void startChangeSet(String changeSet) {
+		currentChangeSet.set(changeSet);
+	}
+
+	/**
+	 * Records the change set started with {@link #startChangeSet(String)}.
+	 */
+	public void endChangeSet(long start, boolean failed) {
+		String changeSet = currentChangeSet.get();
+		currentChangeSet.remove();
+		long nanos = System.nanoTime() - start;
+		histogram(operations, CHANGE_SET).record(nanos, failed);
+		if (changeSet != null) {
+			histogram(changeSets, changeSet).record(nanos, failed);
+		}
+		getSink().recordLatency(keyspace, CHANGE_SET, changeSet, nanos, failed);
+	}
+
+	public void increment(String counter, long delta) {
+		AtomicLong value = counters.get(counter);
+		if (value == null) {
+			AtomicLong created = new AtomicLong();
+			value = counters.putIfAbsent(counter, created);
+			if (value == null) {
+				value = created;
+			}
+		}
+		value.addAndGet(delta);
+		getSink().incrementCounter(keyspace, counter, delta);
+	}
+
+	/**
+	 * Latencies of one kind of operation, null if none was recorded.
+	 */
+	public LatencyHistogram getOperation(String operation) {
+		return operations.get(operation);
+	}
+
+	/**
+	 * Latencies of a change set, by the string form of {@link liquibase.changelog.ChangeSet}.
+	 */
+	public LatencyHistogram getChangeSet(String changeSet) {
+		return changeSets.get(changeSet);
+	}
+
+	public long getCounter(String counter) {
+		AtomicLong value = counters.get(counter);
+		return value == null ? 0 : value.get();
+	}
+
+	public boolean isEmpty() {
+		return operations.isEmpty() && counters.isEmpty();
+	}
+
+	public void reset() {
+		operations.clear();
+		changeSets.clear();
+		counters.clear();
+	}
+
+	/**
+	 * Table of the operations, the counters and the slowest change sets.
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder("Cassandra metrics of keyspace " + keyspace + "\n");
+		report.append(String.format("%-16s %8s %8s %12s %10s %10s %10s %10s %10s%n", "operation", "count", "failed",
+				"total ms", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+		List<String> names = new ArrayList<String>(OPERATIONS);
+		for (String name : new TreeMap<String, LatencyHistogram>(operations).keySet()) {
+			if (!names.contains(name)) {
+				names.add(name);
+			}
+		}
+		for (String name : names) {
+			LatencyHistogram histogram = operations.get(name);
+			if (histogram != null) {
+				report.append(String.format("%-16s %8d %8d %12.1f %10.2f %10.2f %10.2f %10.2f %10.2f%n", name,
+						histogram.getCount(), histogram.getFailures(), toMillis(histogram.getTotalNanos()),
+						toMillis(histogram.getMeanNanos()), toMillis(histogram.getPercentileNanos(50)),
+						toMillis(histogram.getPercentileNanos(95)), toMillis(histogram.getPercentileNanos(99)),
+						toMillis(histogram.getMaxNanos())));
+			}
+		}
+		if (!counters.isEmpty()) {
+			report.append("counters:");
+			for (Map.Entry<String, AtomicLong> counter : new TreeMap<String, AtomicLong>(counters).entrySet()) {
+				report.append(" ").append(counter.getKey()).append("=").append(counter.getValue().get());
+			}
+			report.append("\n");
+		}
+		if (!changeSets.isEmpty()) {
+			List<Map.Entry<String, LatencyHistogram>> slowest = new ArrayList<Map.Entry<String, LatencyHistogram>>(changeSets.entrySet());
+			Collections.sort(slowest, new Comparator<Map.Entry<String, LatencyHistogram>>() {
+				public int compare(Map.Entry<String, LatencyHistogram> a, Map.Entry<String, LatencyHistogram> b) {
+					long x = a.getValue().getTotalNanos();
+					long y = b.getValue().getTotalNanos();
+					return x > y ? -1 : (x == y ? 0 : 1);
+				}
+			});
+			report.append("slowest change sets:\n");
+			for (Map.Entry<String, LatencyHistogram> changeSet : slowest.subList(0, Math.min(SLOWEST_CHANGE_SETS, slowest.size()))) {
+				report.append(String.format("%12.1f ms  %s%s%n", toMillis(changeSet.getValue().getTotalNanos()),
+						changeSet.getKey(), changeSet.getValue().getFailures() > 0 ? " (failed)" : ""));
+			}
+		}
+		return report.toString();
+	}
+
+	private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> histograms, String name) {
+		LatencyHistogram histogram = histograms.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = histograms.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+}
@@ -0,0 +1,162 @@
+package liquibase.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import liquibase.logging.LogFactory;
+
+/**
+ * The default {@link MetricsSink}. Publishes an MBean per kind of operation,
+ * <code>liquibase.cassandra:type=Operation,name=&lt;operation&gt;</code>, and
+ * per counter, <code>liquibase.cassandra:type=Counter,name=&lt;counter&gt;</code>,
+ * over all keyspaces. Change sets get no MBeans, a changelog can have
+ * thousands; their timings are in {@link CassandraMetrics#report()}.
+ */
+public class JmxMetricsSink implements MetricsSink {
+
+	public static final String DOMAIN = "liquibase.cassandra";
+
+	public interface OperationMBean {
+
+		long getCount();
+
+		long getFailures();
+
+		double getTotalMillis();
+
+		double getMeanMillis();
+
+		double getMaxMillis();
+
+		double get50thPercentileMillis();
+
+		double get95thPercentileMillis();
+
+		double get99thPercentileMillis();
+
+		void reset();
+	}
+
+	public interface CounterMBean {
+
+		long getValue();
+	}
+
+	private final ConcurrentMap<String, LatencyHistogram> operations = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+	public void recordLatency(String keyspace, String operation, String changeSet, long nanos, boolean failed) {
+		LatencyHistogram histogram = operations.get(operation);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = operations.putIfAbsent(operation, created);
+			if (histogram == null) {
+				histogram = created;
+				register("Operation", operation, new StandardMBean(new Operation(created), OperationMBean.class, false));
+			}
+		}
+		histogram.record(nanos, failed);
+	}
+
+	public void incrementCounter(String keyspace, String counter, long delta) {
+		AtomicLong value = counters.get(counter);
+		if (value == null) {
+			AtomicLong created = new AtomicLong();
+			value = counters.putIfAbsent(counter, created);
+			if (value == null) {
+				value = created;
+				register("Counter", counter, new StandardMBean(new Counter(created), CounterMBean.class, false));
+			}
+		}
+		value.addAndGet(delta);
+	}
+
+	/**
+	 * Registers the MBean, replacing one of an earlier sink of the same name.
+	 * Metrics that cannot be published are still recorded.
+	 */
+	private void register(String type, String name, StandardMBean mbean) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+			try {
+				server.registerMBean(mbean, objectName);
+			} catch (InstanceAlreadyExistsException e) {
+				server.unregisterMBean(objectName);
+				server.registerMBean(mbean, objectName);
+			}
+		} catch (JMException e) {
+			LogFactory.getLogger().warning("Could not register " + type + " MBean " + name + ": " + e.getMessage());
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+
+	private static class Operation implements OperationMBean {
+
+		private final LatencyHistogram histogram;
+
+		Operation(LatencyHistogram histogram) {
+			this.histogram = histogram;
+		}
+
+		public long getCount() {
+			return histogram.getCount();
+		}
+
+		public long getFailures() {
+			return histogram.getFailures();
+		}
+
+		public double getTotalMillis() {
+			return toMillis(histogram.getTotalNanos());
+		}
+
+		public double getMeanMillis() {
+			return toMillis(histogram.getMeanNanos());
+		}
+
+		public double getMaxMillis() {
+			return toMillis(histogram.getMaxNanos());
+		}
+
+		public double get50thPercentileMillis() {
+			return toMillis(histogram.getPercentileNanos(50));
+		}
+
+		public double get95thPercentileMillis() {
+			return toMillis(histogram.getPercentileNanos(95));
+		}
+
+		public double get99thPercentileMillis() {
+			return toMillis(histogram.getPercentileNanos(99));
+		}
+
+		public void reset() {
+			histogram.reset();
+		}
+	}
+
+	private static class Counter implements CounterMBean {
+
+		private final AtomicLong value;
+
+		Counter(AtomicLong value) {
+			this.value = value;
+		}
+
+		public long getValue() {
+			return value.get();
+		}
+	}
+}
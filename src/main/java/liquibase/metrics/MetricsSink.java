@@ -0,0 +1,34 @@
+package liquibase.metrics;
+
+/**
+ * Receives every timing and counter recorded by {@link CassandraMetrics}.
+ * Implementations are shared by all databases and threads, so they must be
+ * thread safe, and should be cheap: they are called on the path of every
+ * statement. The sink is chosen with the <code>metricsSink</code> property,
+ * <code>jmx</code>, <code>none</code> or the class name of an implementation
+ * with a public no-arg constructor, or with
+ * {@link CassandraMetrics#setSink(MetricsSink)}.
+ */
+public interface MetricsSink {
+
+	/**
+	 * Drops everything.
+	 */
+	MetricsSink NONE = new MetricsSink() {
+
+		public void recordLatency(String keyspace, String operation, String changeSet, long nanos, boolean failed) {
+		}
+
+		public void incrementCounter(String keyspace, String counter, long delta) {
+		}
+	};
+
+	/**
+	 * @param operation one of the operation kinds of {@link CassandraMetrics}
+	 * @param changeSet the change set running at the time, or null
+	 * @param failed true if the operation threw
+	 */
+	void recordLatency(String keyspace, String operation, String changeSet, long nanos, boolean failed);
+
+	void incrementCounter(String keyspace, String counter, long delta);
+}
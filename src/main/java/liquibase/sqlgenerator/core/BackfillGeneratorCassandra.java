@@ -0,0 +1,41 @@
+package liquibase.sqlgenerator.core;
+
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.statement.core.BackfillStatementCassandra;
+
+/**
+ * A backfill only runs against the database, see
+ * {@link BackfillStatementCassandra}. In update SQL output it shows up as a
+ * comment with the select and the update run per row.
+ */
+public class BackfillGeneratorCassandra extends AbstractSqlGenerator<BackfillStatementCassandra> {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(BackfillStatementCassandra statement, Database database) {
+        return database instanceof CassandraDatabase;
+    }
+
+    public ValidationErrors validate(BackfillStatementCassandra statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        ValidationErrors errors = new ValidationErrors();
+        errors.checkRequiredField("tableName", statement.getTableName());
+        errors.checkRequiredField("select", statement.getSelect());
+        errors.checkRequiredField("update", statement.getUpdate());
+        return errors;
+    }
+
+    public Sql[] generateSql(BackfillStatementCassandra statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        return new Sql[] { new UnparsedSql("-- Backfill " + statement.getBackfillId() + ": for each row of SELECT " + statement.getSelect()
+                + " FROM " + database.escapeTableName(null, statement.getSchemaName(), statement.getTableName())
+                + " run " + statement.getUpdate().replaceAll("\\s+", " ")) };
+    }
+}
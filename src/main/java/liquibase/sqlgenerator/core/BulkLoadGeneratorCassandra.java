@@ -0,0 +1,39 @@
+package liquibase.sqlgenerator.core;
+
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.statement.core.BulkLoadStatementCassandra;
+
+/**
+ * A bulk load only runs against the database, see
+ * {@link BulkLoadStatementCassandra}. In update SQL output it shows up as a
+ * comment naming the file and table.
+ */
+public class BulkLoadGeneratorCassandra extends AbstractSqlGenerator<BulkLoadStatementCassandra> {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(BulkLoadStatementCassandra statement, Database database) {
+        return database instanceof CassandraDatabase;
+    }
+
+    public ValidationErrors validate(BulkLoadStatementCassandra statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        ValidationErrors errors = new ValidationErrors();
+        errors.checkRequiredField("tableName", statement.getTableName());
+        errors.checkRequiredField("file", statement.getFile());
+        return errors;
+    }
+
+    public Sql[] generateSql(BulkLoadStatementCassandra statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        return new Sql[] { new UnparsedSql("-- Bulk load of " + statement.getFile() + " (" + statement.getFormat() + ") into "
+                + database.escapeTableName(null, statement.getSchemaName(), statement.getTableName())) };
+    }
+}
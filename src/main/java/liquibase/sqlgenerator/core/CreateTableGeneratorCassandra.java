@@ -1,25 +1,23 @@
 package liquibase.sqlgenerator.core;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import liquibase.database.Database;
 import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraHistoryLayout;
+import liquibase.datatype.CassandraTypeMapper;
 import liquibase.datatype.LiquibaseDataType;
-import liquibase.datatype.core.BigIntType;
-import liquibase.datatype.core.BooleanType;
-import liquibase.datatype.core.CharType;
-import liquibase.datatype.core.DateTimeType;
-import liquibase.datatype.core.DateType;
-import liquibase.datatype.core.DecimalType;
-import liquibase.datatype.core.DoubleType;
-import liquibase.datatype.core.FloatType;
-import liquibase.datatype.core.IntType;
+import liquibase.exception.ValidationErrors;
 import liquibase.sql.Sql;
 import liquibase.sql.UnparsedSql;
 import liquibase.sqlgenerator.SqlGeneratorChain;
 import liquibase.sqlgenerator.core.CreateTableGenerator;
 import liquibase.statement.PrimaryKeyConstraint;
 import liquibase.statement.core.CreateTableStatement;
+import liquibase.statement.core.CreateTableStatementCassandra;
+import liquibase.util.StringUtils;
 
 /**
  * @author Sanjay Bonde
@@ -57,41 +55,133 @@ public class CreateTableGeneratorCassandra extends CreateTableGenerator  {
         	pkConstraint.addColumns("DATEEXECUTED");
         	pkConstraint.addColumns("ORDEREXECUTED");
         }
+        if (isBucketedChangeLogTable(statement, database)) {
+            // v2 layout, see CassandraHistoryLayout
+            pkConstraint = new PrimaryKeyConstraint("PK_DBCHNGLOG");
+            pkConstraint.addColumns(CassandraHistoryLayout.BUCKET);
+            pkConstraint.addColumns("ORDEREXECUTED");
+            sql.append(CassandraHistoryLayout.BUCKET).append(" int, ");
+        }
         for (String column : statement.getColumns()) {
             String type = getDataType(dataTypes.get(column));
             sql.append(column).append(" ").append(type).append(", ");
         }
 
+        List<String> partitionKey = new ArrayList<String>();
+        List<String> clusteringColumns = new ArrayList<String>();
+        splitPrimaryKey(statement, pkConstraint, partitionKey, clusteringColumns);
         sql.append("PRIMARY KEY (");
-        for (String col : pkConstraint.getColumns()) {
-            sql.append(col).append(", ");
+        if (partitionKey.size() == 1) {
+            sql.append(partitionKey.get(0));
+        } else {
+            sql.append("(").append(StringUtils.join(partitionKey, ", ")).append(")");
+        }
+        for (String column : clusteringColumns) {
+            sql.append(", ").append(column);
         }
-        sql.delete(sql.length() - 2, sql.length());
         sql.append("))");
 
+        if (statement instanceof CreateTableStatementCassandra) {
+            List<String> options = getTableOptions((CreateTableStatementCassandra) statement);
+            if (!options.isEmpty()) {
+                sql.append(" WITH ").append(StringUtils.join(options, " AND "));
+            }
+        }
+
         return new Sql[] {new UnparsedSql(sql.toString())};
     }
 
-    private String getDataType(LiquibaseDataType dataType) {
-        if (dataType instanceof BooleanType) {
-            return "boolean";
-        } else if (dataType instanceof IntType) {
-            return "int";
-        } else if (dataType instanceof BigIntType) {
-            return "bigint";
-        } else if (dataType instanceof FloatType) {
-            return "float";
-        } else if (dataType instanceof DoubleType) {
-            return "double";
-        } else if (dataType instanceof CharType) {
-            return "varchar";
-        } else if (dataType instanceof DecimalType) {
-            return "decimal";
-        } else if (dataType instanceof DateType || dataType instanceof DateTimeType) {
-            return "timestamp";
-        } else {
-            throw new RuntimeException(dataType + " is not a supported type.");
+    @Override
+    public ValidationErrors validate(CreateTableStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        ValidationErrors errors = super.validate(statement, database, sqlGeneratorChain);
+        if (!(statement instanceof CreateTableStatementCassandra)) {
+            return errors;
+        }
+        CreateTableStatementCassandra cassandraStatement = (CreateTableStatementCassandra) statement;
+        for (String column : cassandraStatement.getPartitionKeyColumns()) {
+            if (!containsIgnoreCase(statement.getColumns(), column)) {
+                errors.addError("Partition key column " + column + " is not a column of table " + statement.getTableName());
+            }
+        }
+        if (statement.getPrimaryKeyConstraint() == null && cassandraStatement.getPartitionKeyColumns().isEmpty()) {
+            errors.addError("Table " + statement.getTableName() + " needs a primary key");
+        }
+        List<String> partitionKey = new ArrayList<String>();
+        List<String> clusteringColumns = new ArrayList<String>();
+        splitPrimaryKey(statement, statement.getPrimaryKeyConstraint(), partitionKey, clusteringColumns);
+        for (Map.Entry<String, String> order : cassandraStatement.getClusteringOrder().entrySet()) {
+            if (!containsIgnoreCase(clusteringColumns, order.getKey())) {
+                errors.addError("Clustering order column " + order.getKey() + " is not a clustering column of table " + statement.getTableName());
+            }
+            if (!"ASC".equalsIgnoreCase(order.getValue()) && !"DESC".equalsIgnoreCase(order.getValue())) {
+                errors.addError("Clustering order of " + order.getKey() + " must be ASC or DESC, not " + order.getValue());
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Splits the primary key into the partition key and the clustering
+     * columns. Without partition key columns on the statement, the first
+     * primary key column is the partition key.
+     */
+    private void splitPrimaryKey(CreateTableStatement statement, PrimaryKeyConstraint pkConstraint,
+                                 List<String> partitionKey, List<String> clusteringColumns) {
+        List<String> primaryKey = pkConstraint == null ? new ArrayList<String>() : pkConstraint.getColumns();
+        if (statement instanceof CreateTableStatementCassandra
+                && !((CreateTableStatementCassandra) statement).getPartitionKeyColumns().isEmpty()) {
+            partitionKey.addAll(((CreateTableStatementCassandra) statement).getPartitionKeyColumns());
+        } else if (!primaryKey.isEmpty()) {
+            partitionKey.add(primaryKey.get(0));
         }
+        for (String column : primaryKey) {
+            if (!containsIgnoreCase(partitionKey, column)) {
+                clusteringColumns.add(column);
+            }
+        }
+    }
+
+    /**
+     * The <code>WITH</code> clauses: clustering order, the table options and
+     * the remarks as comment.
+     */
+    private List<String> getTableOptions(CreateTableStatementCassandra statement) {
+        List<String> options = new ArrayList<String>();
+        if (!statement.getClusteringOrder().isEmpty()) {
+            List<String> order = new ArrayList<String>();
+            for (Map.Entry<String, String> column : statement.getClusteringOrder().entrySet()) {
+                order.add(column.getKey() + " " + column.getValue().toUpperCase());
+            }
+            options.add("CLUSTERING ORDER BY (" + StringUtils.join(order, ", ") + ")");
+        }
+        for (Map.Entry<String, String> option : statement.getTableOptions().entrySet()) {
+            options.add(option.getKey() + " = " + option.getValue());
+        }
+        if (statement.getRemarks() != null && !statement.getTableOptions().containsKey("comment")) {
+            options.add("comment = '" + statement.getRemarks().replace("'", "''") + "'");
+        }
+        return options;
+    }
+
+    private static boolean isBucketedChangeLogTable(CreateTableStatement statement, Database database) {
+        String baseTableName = ((CassandraDatabase) database).getDatabaseChangeLogBaseTableName();
+        return statement.getTableName().equalsIgnoreCase(CassandraHistoryLayout.V2.getTableName(baseTableName));
+    }
+
+    private static boolean containsIgnoreCase(List<String> names, String name) {
+        for (String candidate : names) {
+            if (candidate.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * CQL type of a column, see {@link CassandraTypeMapper}.
+     */
+    private String getDataType(LiquibaseDataType dataType) {
+        return CassandraTypeMapper.getInstance().toCql(dataType);
     }
 
 }
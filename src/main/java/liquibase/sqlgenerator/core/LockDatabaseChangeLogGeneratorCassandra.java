@@ -1,5 +1,8 @@
 package liquibase.sqlgenerator.core;
 
+import java.util.Date;
+
+import liquibase.configuration.CassandraConfiguration;
 import liquibase.database.Database;
 import liquibase.database.core.CassandraDatabase;
 import liquibase.sql.Sql;
@@ -7,6 +10,7 @@ import liquibase.sqlgenerator.SqlGeneratorChain;
 import liquibase.sqlgenerator.SqlGeneratorFactory;
 import liquibase.statement.core.LockDatabaseChangeLogStatement;
 import liquibase.statement.core.UpdateStatement;
+import liquibase.statement.core.UpdateStatementCassandra;
 
 public class LockDatabaseChangeLogGeneratorCassandra extends LockDatabaseChangeLogGenerator {
 
@@ -21,14 +25,63 @@ public class LockDatabaseChangeLogGeneratorCassandra extends LockDatabaseChangeL
     
     @Override
     public Sql[] generateSql(LockDatabaseChangeLogStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
-    	String liquibaseSchema = database.getLiquibaseSchemaName();
+        return SqlGeneratorFactory.getInstance().generateSql(generateUpdateStatement(statement, database), database);
+    }
+
+    /**
+     * The UPDATE of the lock row behind this statement, for callers that bind
+     * its values instead of generating the CQL text. It is a lightweight
+     * transaction: the row is only taken if it is not locked, and the
+     * <code>[applied]</code> column of the result tells the caller whether it won.
+     * The lock is written with the configured lease TTL.
+     */
+    public UpdateStatement generateUpdateStatement(LockDatabaseChangeLogStatement statement, Database database) {
+        return generateUpdateStatement(database, getLockedBy(), new Date(), CassandraConfiguration.getInstance().getLockLeaseTime(), "LOCKED = false");
+    }
+
+    /**
+     * Writes the lock row for <code>lockedBy</code> if the condition holds.
+     *
+     * @param leaseTime seconds until the lock expires unless it is written again, 0 or null to never expire
+     * @param condition lightweight transaction condition on unescaped column names, with <code>?</code> placeholders for the parameters
+     */
+    public UpdateStatementCassandra generateUpdateStatement(Database database, String lockedBy, Date lockGranted, Integer leaseTime, String condition, Object... parameters) {
+        String liquibaseSchema = database.getLiquibaseSchemaName();
         String liquibaseCatalog = database.getLiquibaseCatalogName();
-        UpdateStatement updateStatement = new UpdateStatement(liquibaseCatalog, liquibaseSchema, database.getDatabaseChangeLogLockTableName());
+        String tableName = database.getDatabaseChangeLogLockTableName();
+        UpdateStatementCassandra updateStatement = new UpdateStatementCassandra(liquibaseCatalog, liquibaseSchema, tableName);
         updateStatement.addNewColumnValue("LOCKED", true);
-        updateStatement.addNewColumnValue("LOCKGRANTED",new java.util.Date());
-        updateStatement.addNewColumnValue("LOCKEDBY", hostname + " (" + hostaddress + ")");
-        updateStatement.setWhereClause(database.escapeColumnName(liquibaseCatalog, liquibaseSchema, database.getDatabaseChangeLogLockTableName(), "ID") + " = 1 ");
-        return SqlGeneratorFactory.getInstance().generateSql(updateStatement, database);
+        updateStatement.addNewColumnValue("LOCKGRANTED", lockGranted);
+        updateStatement.addNewColumnValue("LOCKEDBY", lockedBy);
+        updateStatement.setWhereClause(database.escapeColumnName(liquibaseCatalog, liquibaseSchema, tableName, "ID") + " = 1");
+        if (leaseTime != null && leaseTime > 0) {
+            updateStatement.setTimeToLive(leaseTime);
+        }
+        updateStatement.setCondition(condition, parameters);
+        return updateStatement;
+    }
+
+    /**
+     * Clears the lock row if the condition holds, without a TTL so the
+     * released state never expires.
+     */
+    public UpdateStatementCassandra generateReleaseStatement(Database database, String condition, Object... parameters) {
+        String liquibaseSchema = database.getLiquibaseSchemaName();
+        String liquibaseCatalog = database.getLiquibaseCatalogName();
+        String tableName = database.getDatabaseChangeLogLockTableName();
+        UpdateStatementCassandra updateStatement = new UpdateStatementCassandra(liquibaseCatalog, liquibaseSchema, tableName);
+        updateStatement.addNewColumnValue("LOCKED", false);
+        updateStatement.addNewColumnValue("LOCKGRANTED", null);
+        updateStatement.addNewColumnValue("LOCKEDBY", null);
+        updateStatement.setWhereClause(database.escapeColumnName(liquibaseCatalog, liquibaseSchema, tableName, "ID") + " = 1");
+        updateStatement.setCondition(condition, parameters);
+        return updateStatement;
+    }
 
+    /**
+     * Identifies this host as lock owner, the way the standard generator does.
+     */
+    public static String getLockedBy() {
+        return hostname + " (" + hostaddress + ")";
     }
-}
\ No newline at end of file
+}
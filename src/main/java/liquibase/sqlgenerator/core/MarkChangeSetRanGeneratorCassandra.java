@@ -1,12 +1,21 @@
 package liquibase.sqlgenerator.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 import liquibase.change.Change;
 import liquibase.change.core.TagDatabaseChange;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
 import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
+import liquibase.configuration.CassandraConfiguration;
 import liquibase.database.Database;
 import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraHistoryLayout;
+import liquibase.database.core.CassandraSequenceAllocator;
+import liquibase.exception.DatabaseException;
 import liquibase.exception.LiquibaseException;
 import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.sql.Sql;
@@ -25,6 +34,15 @@ import liquibase.util.StringUtils;
  */
 public class MarkChangeSetRanGeneratorCassandra extends MarkChangeSetRanGenerator {
 
+    /** Name of the version row in the databasechangeloghead table. */
+    public static final String VERSION = "version";
+
+    /** Name of the row in the databasechangeloghead table holding the ID of the change set executed last. */
+    public static final String LAST = "last";
+
+    /** Name of the row in the databasechangeloghead table holding the ORDEREXECUTED of the row of the change set executed last. */
+    public static final String LAST_ORDER_EXECUTED = "lastorderexecuted";
+
     @Override
     public int getPriority() {
         return PRIORITY_DATABASE;
@@ -38,6 +56,114 @@ public class MarkChangeSetRanGeneratorCassandra extends MarkChangeSetRanGenerato
     @Override
 	public Sql[] generateSql(MarkChangeSetRanStatement statement, Database database,
         SqlGeneratorChain sqlGeneratorChain) {
+        SqlStatement runStatement = generateRunStatement(statement, database);
+        if (runStatement == null) {
+            return new Sql[0]; //don't mark
+        }
+        Sql[] runSql = SqlGeneratorFactory.getInstance().generateSql(runStatement, database);
+        if (!hasHeadTable(database)) {
+            return runSql;
+        }
+        List<Sql> result = new ArrayList<Sql>(Arrays.asList(runSql));
+        for (SqlStatement headStatement : generateHeadStatements(database, statement.getChangeSet().getId(), runStatement, runStatement)) {
+            result.addAll(Arrays.asList(SqlGeneratorFactory.getInstance().generateSql(headStatement, database)));
+        }
+        return result.toArray(new Sql[result.size()]);
+    }
+
+    /**
+     * The writes to the databasechangeloghead table that follow a history
+     * write once it has succeeded. Each is a single row, written on its own.
+     * The ID of the change set executed last and the ORDEREXECUTED of its row
+     * let tagging find the row without a scan. For a row inserted into the v2
+     * layout, its bucket is the highest one readers look at. For an inserted
+     * row, the next ORDEREXECUTED to hand out follows. With
+     * <code>historyCache</code> on, a new random version comes last, so a
+     * local copy of the history can tell it is stale from a single row.
+     *
+     * @param lastChangeSetId change set written last, or null if the write does not run a change set
+     * @param lastStatement the history write of that change set, or null
+     * @param lastInsert the history write of the highest ORDEREXECUTED written, or null
+     */
+    public List<SqlStatement> generateHeadStatements(Database database, String lastChangeSetId, SqlStatement lastStatement, SqlStatement lastInsert) {
+        List<SqlStatement> statements = new ArrayList<SqlStatement>();
+        if (lastChangeSetId != null) {
+            statements.add(generateHeadStatement(database, LAST, lastChangeSetId));
+            Object orderExecuted = getOrderExecuted(lastStatement);
+            if (orderExecuted != null) {
+                statements.add(generateHeadStatement(database, LAST_ORDER_EXECUTED, orderExecuted.toString()));
+            }
+        }
+        if (lastInsert instanceof InsertStatement) {
+            Object bucket = ((InsertStatement) lastInsert).getColumnValue(CassandraHistoryLayout.BUCKET);
+            if (bucket != null) {
+                statements.add(generateHeadStatement(database, CassandraHistoryLayout.BUCKET_ROW, bucket.toString()));
+            }
+            Object orderExecuted = ((InsertStatement) lastInsert).getColumnValue("ORDEREXECUTED");
+            if (orderExecuted instanceof Number && !CassandraConfiguration.getInstance().getSequenceReservation()) {
+                // reserved values come from their own row, and concurrent
+                // migrators would move this one back and forth
+                statements.add(generateHeadStatement(database, CassandraSequenceAllocator.ORDER_EXECUTED,
+                        String.valueOf(((Number) orderExecuted).intValue() + 1)));
+            }
+        }
+        if (CassandraConfiguration.getInstance().getHistoryCache()) {
+            statements.add(generateVersionStatement(database));
+        }
+        return statements;
+    }
+
+    /**
+     * ORDEREXECUTED of the row a history write inserts, or updates in the v2
+     * layout; null for other writes.
+     */
+    private Object getOrderExecuted(SqlStatement statement) {
+        if (statement instanceof InsertStatement) {
+            return ((InsertStatement) statement).getColumnValue("ORDEREXECUTED");
+        } else if (statement instanceof UpdateStatement) {
+            UpdateStatement update = (UpdateStatement) statement;
+            if (update.getWhereClause() != null && update.getWhereClause().trim().startsWith(CassandraHistoryLayout.BUCKET)
+                    && update.getWhereParameters().size() == 2) {
+                return update.getWhereParameters().get(1);
+            }
+        }
+        return null;
+    }
+
+    public InsertStatement generateVersionStatement(Database database) {
+        return generateHeadStatement(database, VERSION, UUID.randomUUID().toString());
+    }
+
+    public InsertStatement generateHeadStatement(Database database, String name, String value) {
+        return new InsertStatement(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(),
+                ((CassandraDatabase) database).getDatabaseChangeLogHeadTableName())
+                .addColumnValue("NAME", name)
+                .addColumnValue("VALUE", value);
+    }
+
+    /**
+     * True if the databasechangeloghead table exists, i.e. the history
+     * service created it when it was initialized.
+     */
+    public boolean hasHeadTable(Database database) {
+        CassandraDatabase cassandraDatabase = (CassandraDatabase) database;
+        try {
+            return cassandraDatabase.hasTable(cassandraDatabase.getDatabaseChangeLogHeadTableName());
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException(e);
+        }
+    }
+
+    /**
+     * The INSERT or UPDATE of the databasechangelog row behind this statement,
+     * or null if the change set is not marked. The native executor binds its
+     * values to a prepared statement instead of generating the CQL text.
+     * <p>
+     * In the v2 layout the row of a change set run before is addressed by the
+     * bucket and ORDEREXECUTED of its last run, read from the history. The v1
+     * table has DATEEXECUTED in its key, so updating it there fails as before.
+     */
+    public SqlStatement generateRunStatement(MarkChangeSetRanStatement statement, Database database) {
      	String dateValue = new java.sql.Date(System.currentTimeMillis()).toString();
 
         ChangeSet changeSet = statement.getChangeSet();
@@ -46,8 +172,19 @@ public class MarkChangeSetRanGeneratorCassandra extends MarkChangeSetRanGenerato
         try {
         	CassandraDatabase cassandraDatabase = (CassandraDatabase)database;
             if (statement.getExecType().equals(ChangeSet.ExecType.FAILED) || statement.getExecType().equals(ChangeSet.ExecType.SKIPPED)) {
-                return new Sql[0]; //don't mark
-            } else  if (statement.getExecType().ranBefore) {
+                return null;
+            } else if (statement.getExecType().ranBefore && cassandraDatabase.getHistoryLayout() == CassandraHistoryLayout.V2) {
+                RanChangeSet ranChangeSet = ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database).getRanChangeSet(changeSet);
+                if (ranChangeSet == null || ranChangeSet.getOrderExecuted() == null) {
+                    throw new DatabaseException("Change set " + changeSet + " is not in " + database.getDatabaseChangeLogTableName());
+                }
+                runStatement = new UpdateStatement(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName())
+                    .addNewColumnValue("DATEEXECUTED", dateValue)
+                    .addNewColumnValue("MD5SUM", escapeNull(changeSet.generateCheckSum().toString()))
+                    .addNewColumnValue("EXECTYPE", escapeNull(statement.getExecType().value))
+                    .setWhereClause("BUCKET=? AND ORDEREXECUTED=?")
+                    .addWhereParameters(CassandraHistoryLayout.getBucket(ranChangeSet.getOrderExecuted()), ranChangeSet.getOrderExecuted());
+            } else if (statement.getExecType().ranBefore) {
                 runStatement = new UpdateStatement(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName())
                     .addNewColumnValue("DATEEXECUTED", dateValue)
                     .addNewColumnValue("MD5SUM", escapeNull(changeSet.generateCheckSum().toString()))
@@ -55,12 +192,17 @@ public class MarkChangeSetRanGeneratorCassandra extends MarkChangeSetRanGenerato
                     .setWhereClause("ID=? AND AUTHOR=? AND FILENAME=?")
                     .addWhereParameters(changeSet.getId(), changeSet.getAuthor(), changeSet.getFilePath());
             } else {
-                runStatement = new InsertStatement(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName())
+                int orderExecuted = cassandraDatabase.getNextChangeSetSequenceValue();
+                runStatement = new InsertStatement(database.getLiquibaseCatalogName(), database.getLiquibaseSchemaName(), database.getDatabaseChangeLogTableName());
+                if (cassandraDatabase.getHistoryLayout() == CassandraHistoryLayout.V2) {
+                    ((InsertStatement) runStatement).addColumnValue(CassandraHistoryLayout.BUCKET, CassandraHistoryLayout.getBucket(orderExecuted));
+                }
+                ((InsertStatement) runStatement)
                     .addColumnValue("ID", escapeNull(changeSet.getId()))
                     .addColumnValue("AUTHOR", escapeNull(changeSet.getAuthor()))
                     .addColumnValue("FILENAME", escapeNull(changeSet.getFilePath()))
                     .addColumnValue("DATEEXECUTED", dateValue)
-                    .addColumnValue("ORDEREXECUTED", escapeNull(cassandraDatabase.getNextChangeSetSequenceValue()))
+                    .addColumnValue("ORDEREXECUTED", orderExecuted)
                     .addColumnValue("MD5SUM", escapeNull(changeSet.generateCheckSum().toString()))
                     .addColumnValue("DESCRIPTION", limitSize((String) escapeNull(changeSet.getDescription())))
                     .addColumnValue("COMMENTS", limitSize(StringUtils.trimToEmpty(changeSet.getComments())))
@@ -84,7 +226,7 @@ public class MarkChangeSetRanGeneratorCassandra extends MarkChangeSetRanGenerato
             throw new UnexpectedLiquibaseException(e);
         }
 
-        return SqlGeneratorFactory.getInstance().generateSql(runStatement, database);
+        return runStatement;
     }
 
     private Object escapeNull(Object value) {
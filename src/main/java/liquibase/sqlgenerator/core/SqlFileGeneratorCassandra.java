@@ -0,0 +1,51 @@
+package liquibase.sqlgenerator.core;
+
+import java.util.List;
+
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.exception.ValidationErrors;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.statement.core.SqlFileStatementCassandra;
+
+/**
+ * The statements of a {@link SqlFileStatementCassandra} for update SQL
+ * output. Running the script does not use this generator, it streams the
+ * file instead.
+ */
+public class SqlFileGeneratorCassandra extends AbstractSqlGenerator<SqlFileStatementCassandra> {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(SqlFileStatementCassandra statement, Database database) {
+        return database instanceof CassandraDatabase;
+    }
+
+    public ValidationErrors validate(SqlFileStatementCassandra statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        ValidationErrors errors = new ValidationErrors();
+        errors.checkRequiredField("path", statement.getPath());
+        return errors;
+    }
+
+    public Sql[] generateSql(SqlFileStatementCassandra statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        List<String> statements;
+        try {
+            statements = statement.readStatements();
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException(e);
+        }
+        Sql[] sql = new Sql[statements.size()];
+        for (int i = 0; i < sql.length; i++) {
+            sql[i] = new UnparsedSql(statements.get(i));
+        }
+        return sql;
+    }
+}
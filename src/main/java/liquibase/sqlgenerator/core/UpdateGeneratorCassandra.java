@@ -0,0 +1,67 @@
+package liquibase.sqlgenerator.core;
+
+import java.util.Date;
+import java.util.Iterator;
+
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.sql.Sql;
+import liquibase.sql.UnparsedSql;
+import liquibase.sqlgenerator.SqlGeneratorChain;
+import liquibase.statement.core.UpdateStatement;
+import liquibase.statement.core.UpdateStatementCassandra;
+
+/**
+ * Adds the <code>USING TTL</code> and <code>IF</code> clauses of an
+ * {@link UpdateStatementCassandra} to the standard UPDATE.
+ */
+public class UpdateGeneratorCassandra extends UpdateGenerator {
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_DATABASE;
+    }
+
+    @Override
+    public boolean supports(UpdateStatement statement, Database database) {
+        return database instanceof CassandraDatabase && statement instanceof UpdateStatementCassandra;
+    }
+
+    @Override
+    public Sql[] generateSql(UpdateStatement statement, Database database, SqlGeneratorChain sqlGeneratorChain) {
+        UpdateStatementCassandra cassandraStatement = (UpdateStatementCassandra) statement;
+        String sql = sqlGeneratorChain.generateSql(statement, database)[0].toSql();
+
+        String prefix = "UPDATE " + database.escapeTableName(statement.getCatalogName(), statement.getSchemaName(), statement.getTableName());
+        if (cassandraStatement.getTimeToLive() != null && sql.startsWith(prefix)) {
+            sql = prefix + " USING TTL " + cassandraStatement.getTimeToLive() + sql.substring(prefix.length());
+        }
+        if (cassandraStatement.getCondition() != null) {
+            sql = sql.trim() + " IF " + replaceParameters(cassandraStatement.getCondition(), cassandraStatement.getConditionParameters().iterator());
+        }
+        return new Sql[] { new UnparsedSql(sql, getAffectedTable(statement)) };
+    }
+
+    private String replaceParameters(String condition, Iterator<Object> parameters) {
+        StringBuilder result = new StringBuilder();
+        for (char c : condition.toCharArray()) {
+            if (c == '?' && parameters.hasNext()) {
+                result.append(toCqlLiteral(parameters.next()));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    static String toCqlLiteral(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        } else if (value instanceof Date) {
+            return String.valueOf(((Date) value).getTime());
+        }
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,106 @@
+package liquibase.statement.core;
+
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.CassandraBackfill;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.statement.AbstractSqlStatement;
+import liquibase.statement.ExecutablePreparedStatement;
+
+/**
+ * Runs a CQL update for every row of a table with a {@link CassandraBackfill}.
+ * Settings left null take their value from the configuration.
+ */
+public class BackfillStatementCassandra extends AbstractSqlStatement implements ExecutablePreparedStatement {
+
+    private final CassandraDatabase database;
+    private final String backfillId;
+    private final String schemaName;
+    private final String tableName;
+    private final String select;
+    private final String update;
+    private Integer threads;
+    private Integer rangeCount;
+    private Integer pageSize;
+    private Integer maxRowsPerSecond;
+
+    public BackfillStatementCassandra(CassandraDatabase database, String backfillId, String schemaName, String tableName,
+                                      String select, String update) {
+        this.database = database;
+        this.backfillId = backfillId;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.select = select;
+        this.update = update;
+    }
+
+    public String getBackfillId() {
+        return backfillId;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getSelect() {
+        return select;
+    }
+
+    public String getUpdate() {
+        return update;
+    }
+
+    public BackfillStatementCassandra setThreads(Integer threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public BackfillStatementCassandra setRangeCount(Integer rangeCount) {
+        this.rangeCount = rangeCount;
+        return this;
+    }
+
+    public BackfillStatementCassandra setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public BackfillStatementCassandra setMaxRowsPerSecond(Integer maxRowsPerSecond) {
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        return this;
+    }
+
+    /**
+     * Runs the backfill. The statement factory is not used.
+     */
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        run();
+    }
+
+    /**
+     * Runs the backfill.
+     *
+     * @return number of rows updated
+     */
+    public long run() throws DatabaseException {
+        CassandraBackfill backfill = new CassandraBackfill(database, backfillId,
+                schemaName == null ? database.getDefaultSchemaName() : schemaName, tableName, select, update);
+        if (threads != null) {
+            backfill.setThreads(threads);
+        }
+        if (rangeCount != null) {
+            backfill.setRangeCount(rangeCount);
+        }
+        if (pageSize != null) {
+            backfill.setPageSize(pageSize);
+        }
+        if (maxRowsPerSecond != null) {
+            backfill.setMaxRowsPerSecond(maxRowsPerSecond);
+        }
+        return backfill.run();
+    }
+}
@@ -0,0 +1,152 @@
+package liquibase.statement.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.CassandraBulkLoader;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.resource.ResourceAccessor;
+import liquibase.resource.UtfBomAwareReader;
+import liquibase.statement.AbstractSqlStatement;
+import liquibase.statement.ExecutablePreparedStatement;
+import liquibase.util.JsonRowReader;
+import liquibase.util.StreamUtil;
+import liquibase.util.csv.CSVReader;
+
+/**
+ * Loads a CSV or JSON file into a table with a {@link CassandraBulkLoader}.
+ * The file is read when the statement runs, row by row.
+ */
+public class BulkLoadStatementCassandra extends AbstractSqlStatement implements ExecutablePreparedStatement {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_JSON = "json";
+
+    private final CassandraDatabase database;
+    private final String schemaName;
+    private final String tableName;
+    private final String file;
+    private final Boolean relativeToChangelogFile;
+    private final ChangeSet changeSet;
+    private final ResourceAccessor resourceAccessor;
+    private String format = FORMAT_CSV;
+    private String encoding;
+    private char separator = CSVReader.DEFAULT_SEPARATOR;
+    private char quotchar = CSVReader.DEFAULT_QUOTE_CHARACTER;
+    private Map<String, String> columnNames = new HashMap<String, String>();
+    private Set<String> skippedColumns = new HashSet<String>();
+
+    public BulkLoadStatementCassandra(CassandraDatabase database, String schemaName, String tableName, String file,
+                                      Boolean relativeToChangelogFile, ChangeSet changeSet, ResourceAccessor resourceAccessor) {
+        this.database = database;
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.file = file;
+        this.relativeToChangelogFile = relativeToChangelogFile;
+        this.changeSet = changeSet;
+        this.resourceAccessor = resourceAccessor;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * {@link #FORMAT_CSV} or {@link #FORMAT_JSON}.
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    public BulkLoadStatementCassandra setFormat(String format) {
+        this.format = format;
+        return this;
+    }
+
+    public BulkLoadStatementCassandra setEncoding(String encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    public BulkLoadStatementCassandra setSeparator(char separator) {
+        this.separator = separator;
+        return this;
+    }
+
+    public BulkLoadStatementCassandra setQuotchar(char quotchar) {
+        this.quotchar = quotchar;
+        return this;
+    }
+
+    /**
+     * Column names by field name of the input, for fields not named like
+     * their column.
+     */
+    public BulkLoadStatementCassandra setColumnName(String field, String columnName) {
+        columnNames.put(field, columnName);
+        return this;
+    }
+
+    public BulkLoadStatementCassandra skipColumn(String field) {
+        skippedColumns.add(field);
+        return this;
+    }
+
+    /**
+     * Loads the file. The statement factory is not used, the rows are
+     * written by a {@link liquibase.database.core.CassandraBulkWriter}.
+     */
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        load();
+    }
+
+    /**
+     * Loads the file.
+     *
+     * @return number of rows written
+     */
+    public long load() throws DatabaseException {
+        String keyspace = schemaName == null ? database.getDefaultSchemaName() : schemaName;
+        CassandraBulkLoader loader = new CassandraBulkLoader(database, keyspace, tableName)
+                .setColumnNames(columnNames)
+                .setSkippedColumns(skippedColumns);
+        Reader reader;
+        try {
+            InputStream stream = StreamUtil.openStream(file, relativeToChangelogFile, changeSet, resourceAccessor);
+            if (stream == null) {
+                throw new DatabaseException("Data file " + file + " was not found");
+            }
+            reader = encoding == null ? new UtfBomAwareReader(stream) : new UtfBomAwareReader(stream, encoding);
+        } catch (IOException e) {
+            throw new DatabaseException("Cannot open data file " + file + ": " + e.getMessage(), e);
+        }
+        try {
+            if (FORMAT_JSON.equalsIgnoreCase(format)) {
+                return loader.loadJson(new JsonRowReader(reader));
+            }
+            return loader.loadCsv(new CSVReader(reader, separator, quotchar));
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // nothing left to read
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package liquibase.statement.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CREATE TABLE with the Cassandra specific layout of the primary key and
+ * <code>WITH</code> table options. Primary key columns not in the partition
+ * key are clustering columns, in the order they were added.
+ */
+public class CreateTableStatementCassandra extends CreateTableStatement {
+
+    private List<String> partitionKeyColumns = new ArrayList<String>();
+    private Map<String, String> clusteringOrder = new LinkedHashMap<String, String>();
+    private Map<String, String> tableOptions = new LinkedHashMap<String, String>();
+
+    public CreateTableStatementCassandra(String catalogName, String schemaName, String tableName) {
+        super(catalogName, schemaName, tableName);
+    }
+
+    public CreateTableStatementCassandra(String catalogName, String schemaName, String tableName, String remarks) {
+        super(catalogName, schemaName, tableName, remarks);
+    }
+
+    /**
+     * Columns of the partition key. If empty, the first primary key column
+     * is the partition key.
+     */
+    public List<String> getPartitionKeyColumns() {
+        return partitionKeyColumns;
+    }
+
+    public CreateTableStatementCassandra setPartitionKeyColumns(List<String> partitionKeyColumns) {
+        this.partitionKeyColumns = new ArrayList<String>(partitionKeyColumns);
+        return this;
+    }
+
+    /**
+     * Sort direction, ASC or DESC, of clustering columns.
+     */
+    public Map<String, String> getClusteringOrder() {
+        return clusteringOrder;
+    }
+
+    public CreateTableStatementCassandra addClusteringOrder(String column, String direction) {
+        clusteringOrder.put(column, direction);
+        return this;
+    }
+
+    /**
+     * Table options by name, with values as CQL literals, e.g.
+     * <code>default_time_to_live</code> to <code>86400</code>.
+     */
+    public Map<String, String> getTableOptions() {
+        return tableOptions;
+    }
+
+    public CreateTableStatementCassandra setTableOption(String name, String cqlValue) {
+        tableOptions.put(name, cqlValue);
+        return this;
+    }
+}
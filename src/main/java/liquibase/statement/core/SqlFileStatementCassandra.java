@@ -0,0 +1,308 @@
+package liquibase.statement.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.database.PreparedStatementFactory;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraKeyspaceMetadata;
+import liquibase.database.core.CassandraTableMetadata;
+import liquibase.exception.DatabaseException;
+import liquibase.logging.LogFactory;
+import liquibase.resource.ResourceAccessor;
+import liquibase.resource.UtfBomAwareReader;
+import liquibase.statement.AbstractSqlStatement;
+import liquibase.statement.ExecutablePreparedStatement;
+import liquibase.util.CqlStatementSplitter;
+import liquibase.util.CqlWrite;
+import liquibase.util.StreamUtil;
+
+/**
+ * Runs a CQL script statement by statement while reading it with a
+ * {@link CqlStatementSplitter}, so scripts of any size run in constant
+ * memory. With a <code>batchSize</code> above 1, consecutive INSERT, UPDATE
+ * and DELETE statements of one partition are sent as UNLOGGED batches of up
+ * to that many statements, so a batch only goes to the replicas of that
+ * partition. A statement only joins a batch if its table and full primary key
+ * can be read from its literals, see {@link CqlWrite}, and it writes a row
+ * the batch does not write yet, since the statements of a batch share a
+ * timestamp. Conditional writes and writes of counter tables run on their
+ * own.
+ */
+public class SqlFileStatementCassandra extends AbstractSqlStatement implements ExecutablePreparedStatement {
+
+    /** Statements between two progress reports. */
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    private final CassandraDatabase database;
+    private final String path;
+    private final Boolean relativeToChangelogFile;
+    private final ChangeSet changeSet;
+    private final ResourceAccessor resourceAccessor;
+    private String encoding;
+    private String endDelimiter;
+    private boolean splitStatements = true;
+    private boolean stripComments;
+    private int batchSize = 1;
+
+    public SqlFileStatementCassandra(CassandraDatabase database, String path, Boolean relativeToChangelogFile, ChangeSet changeSet,
+                                     ResourceAccessor resourceAccessor) {
+        this.database = database;
+        this.path = path;
+        this.relativeToChangelogFile = relativeToChangelogFile;
+        this.changeSet = changeSet;
+        this.resourceAccessor = resourceAccessor;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public SqlFileStatementCassandra setEncoding(String encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    /**
+     * Literal text ending a statement, <code>;</code> if null. Unlike for
+     * other databases it is not a regular expression.
+     */
+    public SqlFileStatementCassandra setEndDelimiter(String endDelimiter) {
+        this.endDelimiter = endDelimiter;
+        return this;
+    }
+
+    public SqlFileStatementCassandra setSplitStatements(boolean splitStatements) {
+        this.splitStatements = splitStatements;
+        return this;
+    }
+
+    public SqlFileStatementCassandra setStripComments(boolean stripComments) {
+        this.stripComments = stripComments;
+        return this;
+    }
+
+    public SqlFileStatementCassandra setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * Runs the script. The statement factory is not used.
+     */
+    public void execute(PreparedStatementFactory factory) throws DatabaseException {
+        run();
+    }
+
+    /**
+     * Runs the statements of the script in order.
+     *
+     * @return number of statements run
+     */
+    public long run() throws DatabaseException {
+        long start = System.currentTimeMillis();
+        CqlStatementSplitter splitter = open();
+        Batch batch = new Batch();
+        Map<String, CassandraTableMetadata> tables = new HashMap<String, CassandraTableMetadata>();
+        long count = 0;
+        try {
+            String cql;
+            while ((cql = nextStatement(splitter)) != null) {
+                cql = expandExpressions(cql);
+                Row row = batchSize > 1 ? getRow(cql, tables) : null;
+                if (row != null) {
+                    if (!batch.accepts(row)) {
+                        executeBatch(batch, splitter);
+                    }
+                    batch.add(cql, row);
+                    if (batch.statements.size() >= batchSize) {
+                        executeBatch(batch, splitter);
+                    }
+                } else {
+                    executeBatch(batch, splitter);
+                    execute(cql, splitter);
+                    if (CassandraKeyspaceMetadata.isSchemaChange(cql)) {
+                        tables.clear();
+                    }
+                }
+                if (++count % PROGRESS_INTERVAL == 0) {
+                    LogFactory.getLogger().info(path + ": " + count + " statements run");
+                }
+            }
+            executeBatch(batch, splitter);
+        } finally {
+            try {
+                splitter.close();
+            } catch (IOException e) {
+                // nothing left to read
+            }
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        LogFactory.getLogger().info(path + ": " + count + " statements in " + elapsed + "ms (" + (count * 1000 / elapsed) + " statements/s)");
+        return count;
+    }
+
+    /**
+     * The statements of the script, read in full. Only meant for update SQL
+     * output.
+     */
+    public List<String> readStatements() throws DatabaseException {
+        List<String> statements = new ArrayList<String>();
+        CqlStatementSplitter splitter = open();
+        try {
+            String cql;
+            while ((cql = nextStatement(splitter)) != null) {
+                statements.add(expandExpressions(cql));
+            }
+        } finally {
+            try {
+                splitter.close();
+            } catch (IOException e) {
+                // nothing left to read
+            }
+        }
+        return statements;
+    }
+
+    private CqlStatementSplitter open() throws DatabaseException {
+        try {
+            InputStream stream = StreamUtil.openStream(path, relativeToChangelogFile, changeSet, resourceAccessor);
+            if (stream == null) {
+                throw new DatabaseException("File " + path + " was not found");
+            }
+            Reader reader = encoding == null ? new UtfBomAwareReader(stream) : new UtfBomAwareReader(stream, encoding);
+            // without splitting the whole script is one statement, a delimiter that cannot occur ends it
+            return new CqlStatementSplitter(reader, splitStatements ? endDelimiter : "\u0000\u0000", stripComments);
+        } catch (IOException e) {
+            throw new DatabaseException("Cannot open " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private String nextStatement(CqlStatementSplitter splitter) throws DatabaseException {
+        try {
+            return splitter.nextStatement();
+        } catch (IOException e) {
+            throw new DatabaseException("Cannot read " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private String expandExpressions(String cql) {
+        if (changeSet == null || changeSet.getChangeLogParameters() == null) {
+            return cql;
+        }
+        return changeSet.getChangeLogParameters().expandExpressions(cql, changeSet.getChangeLog());
+    }
+
+    /**
+     * The row a statement writes, or null if it cannot be batched.
+     */
+    private Row getRow(String cql, Map<String, CassandraTableMetadata> tables) {
+        CqlWrite write = CqlWrite.parse(cql);
+        if (write == null) {
+            return null;
+        }
+        String keyspace = write.getKeyspace();
+        if (keyspace == null) {
+            keyspace = database.getDefaultSchemaName() == null ? database.getLiquibaseSchemaName() : database.getDefaultSchemaName();
+        }
+        String table = keyspace + "." + write.getTable();
+        if (!tables.containsKey(table)) {
+            try {
+                tables.put(table, CassandraTableMetadata.load(database, keyspace, write.getTable()));
+            } catch (DatabaseException e) {
+                // the statement runs on its own and reports the error
+                tables.put(table, null);
+            }
+        }
+        CassandraTableMetadata metadata = tables.get(table);
+        if (metadata == null || metadata.getColumnTypes().containsValue("counter")) {
+            return null;
+        }
+        List<String> partition = new ArrayList<String>();
+        partition.add(table);
+        for (String column : metadata.getPartitionKey()) {
+            String value = write.getValues().get(column);
+            if (value == null) {
+                return null;
+            }
+            partition.add(value);
+        }
+        List<String> key = new ArrayList<String>(partition);
+        for (String column : metadata.getClusteringColumns()) {
+            String value = write.getValues().get(column);
+            if (value == null) {
+                return null;
+            }
+            key.add(value);
+        }
+        return new Row(partition, key);
+    }
+
+    private void executeBatch(Batch batch, CqlStatementSplitter splitter) throws DatabaseException {
+        if (batch.statements.isEmpty()) {
+            return;
+        }
+        execute(batch.statements.size() == 1 ? batch.statements.get(0) : CassandraDatabase.toUnloggedBatch(batch.statements), splitter);
+        batch.clear();
+    }
+
+    private void execute(String cql, CqlStatementSplitter splitter) throws DatabaseException {
+        try {
+            database.executeCql(cql);
+        } catch (SQLException e) {
+            throw new DatabaseException(path + ", near line " + splitter.getStatementLine() + ": " + e.getMessage()
+                    + " [" + (cql.length() > 200 ? cql.substring(0, 200) + "..." : cql) + "]", e);
+        }
+    }
+
+    /**
+     * Primary key literals of a row, prefixed with its table.
+     */
+    private static class Row {
+        private final List<String> partition;
+        private final List<String> key;
+
+        private Row(List<String> partition, List<String> key) {
+            this.partition = partition;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Statements of one partition waiting to be sent.
+     */
+    private static class Batch {
+        private final List<String> statements = new ArrayList<String>();
+        private final Set<List<String>> keys = new HashSet<List<String>>();
+        private List<String> partition;
+
+        /**
+         * True if the row is of the partition of the batch and not written
+         * by it yet.
+         */
+        private boolean accepts(Row row) {
+            return partition == null || (partition.equals(row.partition) && !keys.contains(row.key));
+        }
+
+        private void add(String cql, Row row) {
+            statements.add(cql);
+            keys.add(row.key);
+            partition = row.partition;
+        }
+
+        private void clear() {
+            statements.clear();
+            keys.clear();
+            partition = null;
+        }
+    }
+}
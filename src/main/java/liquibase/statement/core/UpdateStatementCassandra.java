@@ -0,0 +1,50 @@
+package liquibase.statement.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * UPDATE with the Cassandra specific <code>USING TTL</code> and
+ * <code>IF</code> (lightweight transaction) clauses.
+ */
+public class UpdateStatementCassandra extends UpdateStatement {
+
+    private Integer timeToLive;
+    private String condition;
+    private List<Object> conditionParameters = new ArrayList<Object>();
+
+    public UpdateStatementCassandra(String catalogName, String schemaName, String tableName) {
+        super(catalogName, schemaName, tableName);
+    }
+
+    /**
+     * Seconds after which the written cells expire, or null for no TTL.
+     */
+    public Integer getTimeToLive() {
+        return timeToLive;
+    }
+
+    public UpdateStatementCassandra setTimeToLive(Integer timeToLive) {
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    /**
+     * Condition of the lightweight transaction, without the IF keyword. Values
+     * can be passed as <code>?</code> placeholders.
+     */
+    public String getCondition() {
+        return condition;
+    }
+
+    public UpdateStatementCassandra setCondition(String condition, Object... parameters) {
+        this.condition = condition;
+        this.conditionParameters = new ArrayList<Object>(Arrays.asList(parameters));
+        return this;
+    }
+
+    public List<Object> getConditionParameters() {
+        return conditionParameters;
+    }
+}
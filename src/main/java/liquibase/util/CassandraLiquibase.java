@@ -0,0 +1,91 @@
+package liquibase.util;
+
+import java.util.List;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.RuntimeEnvironment;
+import liquibase.changelog.ChangeLogIterator;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.filter.ChangeSetFilter;
+import liquibase.changelog.visitor.ChangeExecListener;
+import liquibase.changelog.visitor.ChangeSetVisitor;
+import liquibase.changelog.visitor.ParallelUpdateVisitor;
+import liquibase.changelog.visitor.UpdateVisitor;
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.database.Database;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * {@link Liquibase} that, with <code>parallelUpdate</code> on, runs change
+ * sets only changing the schema of unrelated tables concurrently during
+ * update, see {@link ParallelUpdateVisitor}. Everything else behaves as in
+ * liquibase.
+ */
+public class CassandraLiquibase extends Liquibase {
+
+	private boolean parallelUpdate = CassandraConfiguration.getInstance().getParallelUpdate();
+	private int parallelUpdateThreads = CassandraConfiguration.getInstance().getParallelUpdateThreads();
+	private ChangeExecListener changeExecListener;
+
+	public CassandraLiquibase(String changeLogFile, ResourceAccessor resourceAccessor, Database database) throws LiquibaseException {
+		super(changeLogFile, resourceAccessor, database);
+	}
+
+	public boolean isParallelUpdate() {
+		return parallelUpdate;
+	}
+
+	public CassandraLiquibase setParallelUpdate(boolean parallelUpdate) {
+		this.parallelUpdate = parallelUpdate;
+		return this;
+	}
+
+	public CassandraLiquibase setParallelUpdateThreads(int parallelUpdateThreads) {
+		this.parallelUpdateThreads = parallelUpdateThreads;
+		return this;
+	}
+
+	@Override
+	public void setChangeExecListener(ChangeExecListener listener) {
+		super.setChangeExecListener(listener);
+		this.changeExecListener = listener;
+	}
+
+	@Override
+	protected UpdateVisitor createUpdateVisitor() {
+		if (parallelUpdate && getDatabase() instanceof CassandraDatabase) {
+			return new ParallelUpdateVisitor((CassandraDatabase) getDatabase(), changeExecListener, parallelUpdateThreads);
+		}
+		return super.createUpdateVisitor();
+	}
+
+	/**
+	 * Runs the change sets a {@link ParallelUpdateVisitor} still holds once
+	 * the changelog has been iterated, while the lock is held.
+	 */
+	@Override
+	protected ChangeLogIterator getStandardChangelogIterator(Contexts contexts, LabelExpression labelExpression,
+			DatabaseChangeLog changeLog) throws DatabaseException {
+		List<ChangeSetFilter> filters = super.getStandardChangelogIterator(contexts, labelExpression, changeLog).getChangeSetFilters();
+		return new ChangeLogIterator(changeLog, filters.toArray(new ChangeSetFilter[filters.size()])) {
+			@Override
+			public void run(ChangeSetVisitor visitor, RuntimeEnvironment env) throws LiquibaseException {
+				if (!(visitor instanceof ParallelUpdateVisitor)) {
+					super.run(visitor, env);
+					return;
+				}
+				try {
+					super.run(visitor, env);
+					((ParallelUpdateVisitor) visitor).flush();
+				} finally {
+					((ParallelUpdateVisitor) visitor).close();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,371 @@
+package liquibase.util;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.change.ChangeFactory;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.logging.LogFactory;
+import liquibase.parser.ChangeLogParserFactory;
+import liquibase.resource.ResourceAccessor;
+import liquibase.servicelocator.ServiceLocator;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+
+/**
+ * Runs one changelog against many keyspaces on a bounded pool of worker
+ * threads. Every keyspace gets its own connection, and with it its own lock
+ * and history service.
+ * <p>
+ * The liquibase service factories are not thread safe, so keyspaces are
+ * migrated in windows: the databases of a window are connected in parallel,
+ * their services are created on the calling thread, and only then are the
+ * migrations of the window run in parallel. Services are reset once a window
+ * is done, instead of by each migration.
+ * <p>
+ * The migrations of a window generate SQL at the same time. The
+ * {@link SqlGeneratorFactory} fills its caches in plain hash maps as it goes,
+ * so they are replaced by synchronized maps first, see
+ * {@link #makeSqlGeneratorFactoryThreadSafe()}. The executors, lock and history
+ * services, changes and data types are kept in concurrent maps by their
+ * factories. The database and changelog parser factories, the service
+ * locator and the default logger are only read once created, and are created
+ * on the calling thread before the first window.
+ */
+public class CassandraMigrationOrchestrator {
+
+	public enum FailurePolicy {
+		/** Keyspaces not started yet are skipped after the first failure. */
+		FAIL_FAST,
+		/** Every keyspace is migrated whatever happened to the others. */
+		CONTINUE
+	}
+
+	public enum Status {
+		SUCCEEDED, FAILED, SKIPPED
+	}
+
+	/**
+	 * Outcome of one keyspace.
+	 */
+	public static class KeyspaceResult {
+		private final String keyspace;
+		private Status status = Status.SKIPPED;
+		private Throwable error;
+		private long connectMillis;
+		private long migrateMillis;
+
+		public KeyspaceResult(String keyspace) {
+			this.keyspace = keyspace;
+		}
+
+		public String getKeyspace() {
+			return keyspace;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public Throwable getError() {
+			return error;
+		}
+
+		public long getConnectMillis() {
+			return connectMillis;
+		}
+
+		public long getMigrateMillis() {
+			return migrateMillis;
+		}
+
+		@Override
+		public String toString() {
+			return keyspace + ": " + status + " (connect " + connectMillis + "ms, migrate " + migrateMillis + "ms)"
+					+ (error == null ? "" : " " + error.getMessage());
+		}
+	}
+
+	private static final Class<?> SYNCHRONIZED_MAP = Collections.synchronizedMap(new HashMap<Object, Object>()).getClass();
+
+	private final String connString;
+	private final String changeLogFile;
+	private final ResourceAccessor resourceAccessor;
+	private int parallelism = 4;
+	private int windowSize = 16;
+	private FailurePolicy failurePolicy = FailurePolicy.FAIL_FAST;
+	private Contexts contexts = new Contexts();
+	private LabelExpression labelExpression = new LabelExpression();
+
+	/**
+	 * @param connString connection url of any keyspace of the cluster, its path is replaced by each keyspace
+	 */
+	public CassandraMigrationOrchestrator(String connString, String changeLogFile, ResourceAccessor resourceAccessor) {
+		this.connString = connString;
+		this.changeLogFile = changeLogFile;
+		this.resourceAccessor = resourceAccessor;
+	}
+
+	/**
+	 * Number of keyspaces migrated at the same time.
+	 */
+	public CassandraMigrationOrchestrator setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Number of keyspaces connected at the same time, at least the
+	 * parallelism.
+	 */
+	public CassandraMigrationOrchestrator setWindowSize(int windowSize) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Window size must be at least 1");
+		}
+		this.windowSize = windowSize;
+		return this;
+	}
+
+	public CassandraMigrationOrchestrator setFailurePolicy(FailurePolicy failurePolicy) {
+		this.failurePolicy = failurePolicy;
+		return this;
+	}
+
+	public CassandraMigrationOrchestrator setContexts(Contexts contexts) {
+		this.contexts = contexts;
+		return this;
+	}
+
+	public CassandraMigrationOrchestrator setLabelExpression(LabelExpression labelExpression) {
+		this.labelExpression = labelExpression;
+		return this;
+	}
+
+	/**
+	 * Migrates the keyspaces and returns their outcomes in the order given.
+	 */
+	public List<KeyspaceResult> migrate(List<String> keyspaces) {
+		List<KeyspaceResult> results = new ArrayList<KeyspaceResult>();
+		for (String keyspace : keyspaces) {
+			results.add(new KeyspaceResult(keyspace));
+		}
+		final AtomicBoolean failed = new AtomicBoolean();
+		final AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "liquibase-cassandra-migrate-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long start = System.currentTimeMillis();
+		try {
+			initFactories();
+			boolean serial = parallelism > 1 && !makeSqlGeneratorFactoryThreadSafe();
+			int window = Math.max(windowSize, parallelism);
+			for (int from = 0; from < results.size() && !(failed.get() && failurePolicy == FailurePolicy.FAIL_FAST); from += window) {
+				migrateWindow(workers, results.subList(from, Math.min(from + window, results.size())), failed, serial);
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+
+		int succeeded = 0;
+		for (KeyspaceResult result : results) {
+			if (result.status == Status.SUCCEEDED) {
+				succeeded++;
+			} else {
+				LogFactory.getLogger().warning("Migration of " + result);
+			}
+		}
+		LogFactory.getLogger().info("Migrated " + succeeded + " of " + results.size() + " keyspaces in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return results;
+	}
+
+	/**
+	 * Creates the factories that are only read afterwards on the calling
+	 * thread.
+	 */
+	private static void initFactories() {
+		LogFactory.getLogger();
+		ServiceLocator.getInstance();
+		DatabaseFactory.getInstance();
+		ChangeLogParserFactory.getInstance();
+		ChangeFactory.getInstance();
+		DataTypeFactory.getInstance();
+		SqlGeneratorFactory.getInstance();
+	}
+
+	/**
+	 * Replaces the caches the {@link SqlGeneratorFactory} of liquibase 3.4
+	 * fills on the first use of each statement type by synchronized maps.
+	 *
+	 * @return false if the caches cannot be replaced, then the migrations run one at a time
+	 */
+	static synchronized boolean makeSqlGeneratorFactoryThreadSafe() {
+		SqlGeneratorFactory factory = SqlGeneratorFactory.getInstance();
+		try {
+			for (String name : new String[] { "generatorsByKey", "genericInterfacesCache", "genericSuperClassCache" }) {
+				Field field = SqlGeneratorFactory.class.getDeclaredField(name);
+				field.setAccessible(true);
+				Map<?, ?> cache = (Map<?, ?>) field.get(factory);
+				if (cache.getClass() != SYNCHRONIZED_MAP) {
+					field.set(factory, Collections.synchronizedMap(new HashMap<Object, Object>(cache)));
+				}
+			}
+			return true;
+		} catch (Exception e) {
+			LogFactory.getLogger().warning("Cannot make the SQL generator caches thread safe, migrating one keyspace at a time: " + e);
+			return false;
+		}
+	}
+
+	private void migrateWindow(ExecutorService workers, List<KeyspaceResult> window, final AtomicBoolean failed, boolean serial) {
+		final Database[] databases = new Database[window.size()];
+		try {
+			List<Future<?>> connects = new ArrayList<Future<?>>();
+			for (int i = 0; i < window.size(); i++) {
+				final int index = i;
+				final KeyspaceResult result = window.get(i);
+				connects.add(workers.submit(new Callable<Void>() {
+					public Void call() {
+						long start = System.currentTimeMillis();
+						try {
+							databases[index] = LiquibaseExtensionUtil.createCassandraDatabase(connString, result.keyspace);
+						} catch (Throwable t) {
+							fail(result, t, failed);
+						}
+						result.connectMillis = System.currentTimeMillis() - start;
+						return null;
+					}
+				}));
+			}
+			waitFor(connects);
+
+			// create the services while no migration reads the factories
+			for (Database database : databases) {
+				if (database != null) {
+					LockServiceFactory.getInstance().getLockService(database);
+					ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database);
+				}
+			}
+
+			List<Future<?>> migrations = new ArrayList<Future<?>>();
+			for (int i = 0; i < window.size(); i++) {
+				final Database database = databases[i];
+				final KeyspaceResult result = window.get(i);
+				if (database == null) {
+					continue;
+				}
+				Future<?> migration = workers.submit(new Callable<Void>() {
+					public Void call() {
+						if (failed.get() && failurePolicy == FailurePolicy.FAIL_FAST) {
+							return null;
+						}
+						long start = System.currentTimeMillis();
+						try {
+							new WindowLiquibase(changeLogFile, resourceAccessor, database).update(contexts, labelExpression);
+							result.status = Status.SUCCEEDED;
+						} catch (Throwable t) {
+							fail(result, t, failed);
+						}
+						result.migrateMillis = System.currentTimeMillis() - start;
+						return null;
+					}
+				});
+				if (serial) {
+					waitFor(Collections.<Future<?>>singletonList(migration));
+				}
+				migrations.add(migration);
+			}
+			waitFor(migrations);
+		} finally {
+			for (Database database : databases) {
+				if (database != null) {
+					try {
+						database.close();
+					} catch (DatabaseException e) {
+						LogFactory.getLogger().debug("Error closing " + database + ": " + e.getMessage());
+					}
+				}
+			}
+			LockServiceFactory.getInstance().resetAll();
+			ChangeLogHistoryServiceFactory.getInstance().resetAll();
+			for (Database database : databases) {
+				if (database != null) {
+					liquibase.executor.ExecutorService.getInstance().clearExecutor(database);
+				}
+			}
+		}
+	}
+
+	private void fail(KeyspaceResult result, Throwable t, AtomicBoolean failed) {
+		result.status = Status.FAILED;
+		result.error = t;
+		failed.set(true);
+		LogFactory.getLogger().severe("Migration of keyspace " + result.keyspace + " failed", t);
+	}
+
+	private static void waitFor(List<Future<?>> futures) {
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				// recorded in the keyspace result
+			}
+		}
+	}
+
+	/**
+	 * Leaves the services alone when a migration ends, they are shared by the
+	 * migrations of the window and reset with it.
+	 */
+	private static class WindowLiquibase extends CassandraLiquibase {
+		public WindowLiquibase(String changeLogFile, ResourceAccessor resourceAccessor, Database database) throws LiquibaseException {
+			super(changeLogFile, resourceAccessor, database);
+		}
+
+		@Override
+		protected void resetServices() {
+		}
+	}
+
+	/**
+	 * Keyspaces of the results that did not succeed.
+	 */
+	public static List<String> getUnsuccessfulKeyspaces(List<KeyspaceResult> results) {
+		List<String> keyspaces = new ArrayList<String>();
+		for (KeyspaceResult result : results) {
+			if (result.status != Status.SUCCEEDED) {
+				keyspaces.add(result.keyspace);
+			}
+		}
+		return Collections.unmodifiableList(keyspaces);
+	}
+}
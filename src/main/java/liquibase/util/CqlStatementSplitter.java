@@ -0,0 +1,211 @@
+package liquibase.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a CQL script into statements while reading it, so only the
+ * statement being read is held in memory. Delimiters inside string literals
+ * (<code>'it''s'</code>), <code>$$</code> strings, quoted names, map and set
+ * literals (<code>{'a': 'b;c'}</code>) and comments (<code>--</code>,
+ * <code>//</code> and <code>/* *&#47;</code>, which do not nest) do not end a
+ * statement. The delimiter is literal text, not a regular expression as
+ * <code>endDelimiter</code> is for other databases.
+ */
+public class CqlStatementSplitter implements Closeable {
+
+	/** Default statement delimiter. */
+	public static final String DEFAULT_DELIMITER = ";";
+
+	private final Reader reader;
+	private final String delimiter;
+	private final boolean stripComments;
+	private final StringBuilder statement = new StringBuilder();
+	private int next = -2;
+	private long line = 1;
+	private long statementLine;
+
+	/**
+	 * @param delimiter literal text ending a statement, null for {@link #DEFAULT_DELIMITER}
+	 * @param stripComments leave comments out of the returned statements
+	 */
+	public CqlStatementSplitter(Reader reader, String delimiter, boolean stripComments) {
+		this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+		this.delimiter = delimiter == null || delimiter.length() == 0 ? DEFAULT_DELIMITER : delimiter;
+		this.stripComments = stripComments;
+	}
+
+	/**
+	 * The next statement without its delimiter, trimmed, or null at the end
+	 * of the script. Statements holding nothing but comments are skipped.
+	 *
+	 * @throws IOException if the script ends inside a string or comment
+	 */
+	public String nextStatement() throws IOException {
+		statement.setLength(0);
+		boolean content = false;
+		int depth = 0;
+		int c;
+		while ((c = read()) != -1) {
+			// moves past comments until the statement itself starts
+			if (!content && !Character.isWhitespace(c)) {
+				statementLine = line;
+			}
+			if (c == '\'' || c == '"') {
+				content = true;
+				readQuoted((char) c);
+			} else if (c == '$' && peek() == '$') {
+				content = true;
+				read();
+				readDollarQuoted();
+			} else if (c == '-' && peek() == '-' || c == '/' && peek() == '/') {
+				readLineComment((char) c);
+			} else if (c == '/' && peek() == '*') {
+				readBlockComment();
+			} else if (depth == 0 && c == delimiter.charAt(0) && matchesDelimiter()) {
+				if (content) {
+					return statement.toString().trim();
+				}
+				statement.setLength(0);
+			} else {
+				if (c == '{') {
+					depth++;
+				} else if (c == '}' && depth > 0) {
+					depth--;
+				}
+				content |= !Character.isWhitespace(c);
+				statement.append((char) c);
+			}
+		}
+		return content ? statement.toString().trim() : null;
+	}
+
+	/**
+	 * Line of the script the last returned statement starts on, counting
+	 * from 1.
+	 */
+	public long getStatementLine() {
+		return statementLine;
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private void readQuoted(char quote) throws IOException {
+		statement.append(quote);
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw error("Unterminated " + (quote == '\'' ? "string" : "quoted name"));
+			}
+			statement.append((char) c);
+			if (c == quote) {
+				if (peek() != quote) {
+					return;
+				}
+				statement.append((char) read());
+			}
+		}
+	}
+
+	private void readDollarQuoted() throws IOException {
+		statement.append("$$");
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw error("Unterminated $$ string");
+			}
+			statement.append((char) c);
+			if (c == '$' && peek() == '$') {
+				statement.append((char) read());
+				return;
+			}
+		}
+	}
+
+	private void readLineComment(char start) throws IOException {
+		StringBuilder comment = stripComments ? null : statement.append(start);
+		int c;
+		while ((c = peek()) != -1 && c != '\n') {
+			read();
+			if (comment != null) {
+				comment.append((char) c);
+			}
+		}
+		if (stripComments) {
+			statement.append(' ');
+		}
+	}
+
+	private void readBlockComment() throws IOException {
+		if (!stripComments) {
+			statement.append('/');
+		}
+		read();
+		if (!stripComments) {
+			statement.append('*');
+		}
+		int previous = 0;
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw error("Unterminated comment");
+			}
+			if (!stripComments) {
+				statement.append((char) c);
+			}
+			if (previous == '*' && c == '/') {
+				break;
+			}
+			previous = c;
+		}
+		if (stripComments) {
+			statement.append(' ');
+		}
+	}
+
+	/**
+	 * True if the delimiter, whose first character has been read, follows.
+	 * Consumes it if so.
+	 */
+	private boolean matchesDelimiter() throws IOException {
+		if (delimiter.length() == 1) {
+			return true;
+		}
+		reader.mark(delimiter.length());
+		int saved = next;
+		long savedLine = line;
+		for (int i = 1; i < delimiter.length(); i++) {
+			if (read() != delimiter.charAt(i)) {
+				reader.reset();
+				next = saved;
+				line = savedLine;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int peek() throws IOException {
+		if (next == -2) {
+			next = reader.read();
+		}
+		return next;
+	}
+
+	private int read() throws IOException {
+		int c = peek();
+		next = -2;
+		if (c == '\n') {
+			line++;
+		}
+		return c;
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " in statement starting on line " + statementLine);
+	}
+}
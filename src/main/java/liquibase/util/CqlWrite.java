@@ -0,0 +1,258 @@
+package liquibase.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An INSERT, UPDATE or DELETE of a single row, as far as it can be read from
+ * its CQL text: the table and the literal values given for columns, from the
+ * column list of an INSERT or the <code>column = value</code> relations of a
+ * WHERE clause. String literals, quoted names and collection literals are
+ * skipped while looking for keywords and separators. Names are lower case
+ * unless quoted.
+ */
+public class CqlWrite {
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z][A-Za-z0-9_]*|\"([^\"]|\"\")+\"");
+	private static final Pattern FUNCTION_CALL = Pattern.compile("^[A-Za-z_][A-Za-z0-9_.]*\\s*\\(");
+	private static final Pattern TABLE = Pattern.compile("(" + IDENTIFIER.pattern() + ")(\\.(" + IDENTIFIER.pattern() + "))?");
+
+	private final String keyspace;
+	private final String table;
+	private final Map<String, String> values;
+
+	private CqlWrite(String keyspace, String table, Map<String, String> values) {
+		this.keyspace = keyspace;
+		this.table = table;
+		this.values = Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * Reads a write statement. Null for other statements, conditional writes
+	 * (<code>IF</code>), JSON inserts, bind markers and relations other than
+	 * equality with a literal.
+	 */
+	public static CqlWrite parse(String cql) {
+		if (cql == null) {
+			return null;
+		}
+		String statement = cql.trim();
+		boolean[] topLevel = topLevel(statement);
+		String verb = statement.split("\\s", 2)[0].toUpperCase();
+		if (indexOfKeyword(statement, topLevel, "IF", 0) >= 0) {
+			return null;
+		}
+		if (verb.equals("INSERT")) {
+			return parseInsert(statement, topLevel);
+		}
+		int from;
+		int where = indexOfKeyword(statement, topLevel, "WHERE", 0);
+		if (verb.equals("UPDATE")) {
+			from = verb.length();
+		} else if (verb.equals("DELETE")) {
+			from = indexOfKeyword(statement, topLevel, "FROM", 0);
+			from = from < 0 ? -1 : from + "FROM".length();
+		} else {
+			return null;
+		}
+		if (from < 0 || where < from) {
+			return null;
+		}
+		String[] name = parseTable(statement.substring(from).trim());
+		Map<String, String> values = parseRelations(statement.substring(where + "WHERE".length()));
+		return name == null || values == null ? null : new CqlWrite(name[0], name[1], values);
+	}
+
+	/**
+	 * Keyspace the statement names, or null for the current keyspace.
+	 */
+	public String getKeyspace() {
+		return keyspace;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Literal values by column name, as written in the statement.
+	 */
+	public Map<String, String> getValues() {
+		return values;
+	}
+
+	private static CqlWrite parseInsert(String statement, boolean[] topLevel) {
+		int into = indexOfKeyword(statement, topLevel, "INTO", 0);
+		int open = statement.indexOf('(', into);
+		int valuesKeyword = indexOfKeyword(statement, topLevel, "VALUES", 0);
+		if (into < 0 || open < 0 || valuesKeyword < open) {
+			return null;
+		}
+		String[] name = parseTable(statement.substring(into + "INTO".length(), open).trim());
+		int close = indexOfClosing(statement, topLevel, open);
+		int valuesOpen = statement.indexOf('(', valuesKeyword);
+		int valuesClose = indexOfClosing(statement, topLevel, valuesOpen);
+		if (name == null || close < 0 || valuesOpen < 0 || valuesClose < 0) {
+			return null;
+		}
+		List<String> columns = split(statement.substring(open + 1, close), ",");
+		List<String> literals = split(statement.substring(valuesOpen + 1, valuesClose), ",");
+		if (columns.size() != literals.size()) {
+			return null;
+		}
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (int i = 0; i < columns.size(); i++) {
+			String column = toName(columns.get(i));
+			if (column == null || !isLiteral(literals.get(i))) {
+				return null;
+			}
+			values.put(column, literals.get(i));
+		}
+		return new CqlWrite(name[0], name[1], values);
+	}
+
+	/**
+	 * The <code>column = literal</code> relations of a WHERE clause joined
+	 * with AND, null if it holds any other relation.
+	 */
+	private static Map<String, String> parseRelations(String where) {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (String relation : split(where, "AND")) {
+			int equals = relation.indexOf('=');
+			if (equals <= 0 || "<>!".indexOf(relation.charAt(equals - 1)) >= 0) {
+				return null;
+			}
+			String column = toName(relation.substring(0, equals));
+			String literal = relation.substring(equals + 1).trim();
+			if (column == null || !isLiteral(literal)) {
+				return null;
+			}
+			values.put(column, literal);
+		}
+		return values;
+	}
+
+	/**
+	 * Keyspace and table of the name the text starts with.
+	 */
+	private static String[] parseTable(String text) {
+		Matcher matcher = TABLE.matcher(text);
+		if (!matcher.lookingAt()) {
+			return null;
+		}
+		String first = toName(matcher.group(1));
+		return matcher.group(3) == null ? new String[] { null, first } : new String[] { first, toName(matcher.group(4)) };
+	}
+
+	private static String toName(String text) {
+		String name = text.trim();
+		if (!IDENTIFIER.matcher(name).matches()) {
+			return null;
+		}
+		if (name.startsWith("\"")) {
+			return name.substring(1, name.length() - 1).replace("\"\"", "\"");
+		}
+		return name.toLowerCase();
+	}
+
+	private static boolean isLiteral(String value) {
+		return value.length() > 0 && !value.equals("?") && !value.startsWith(":") && !FUNCTION_CALL.matcher(value).find();
+	}
+
+	/**
+	 * Splits text at a separator found at its top level. Word separators
+	 * only match whole words.
+	 */
+	private static List<String> split(String text, String separator) {
+		boolean[] topLevel = topLevel(text);
+		boolean word = Character.isLetter(separator.charAt(0));
+		List<String> parts = new ArrayList<String>();
+		int start = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (topLevel[i] && text.regionMatches(true, i, separator, 0, separator.length())
+					&& (!word || isWordAt(text, i, separator.length()))) {
+				parts.add(text.substring(start, i).trim());
+				start = i + separator.length();
+				i = start - 1;
+			}
+		}
+		parts.add(text.substring(start).trim());
+		return parts;
+	}
+
+	private static int indexOfKeyword(String statement, boolean[] topLevel, String keyword, int from) {
+		for (int i = from; i <= statement.length() - keyword.length(); i++) {
+			if (topLevel[i] && statement.regionMatches(true, i, keyword, 0, keyword.length())
+					&& isWordAt(statement, i, keyword.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isWordAt(String text, int index, int length) {
+		return (index == 0 || !isNamePart(text.charAt(index - 1)))
+				&& (index + length == text.length() || !isNamePart(text.charAt(index + length)));
+	}
+
+	private static boolean isNamePart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '"';
+	}
+
+	private static int indexOfClosing(String statement, boolean[] topLevel, int open) {
+		if (open < 0 || !topLevel[open]) {
+			return -1;
+		}
+		for (int i = open + 1; i < statement.length(); i++) {
+			if (topLevel[i] && statement.charAt(i) == ')') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Marks the positions outside string literals, quoted names, $$ strings
+	 * and brackets. Opening and closing brackets of the top level are marked
+	 * too.
+	 */
+	private static boolean[] topLevel(String statement) {
+		boolean[] topLevel = new boolean[statement.length()];
+		int depth = 0;
+		for (int i = 0; i < statement.length(); i++) {
+			char c = statement.charAt(i);
+			if (c == '\'' || c == '"') {
+				// a doubled quote is part of the literal or name
+				int end = i + 1;
+				while (end < statement.length()) {
+					if (statement.charAt(end) == c) {
+						if (end + 1 < statement.length() && statement.charAt(end + 1) == c) {
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					end++;
+				}
+				i = end;
+			} else if (c == '$' && statement.startsWith("$$", i)) {
+				int end = statement.indexOf("$$", i + 2);
+				i = end < 0 ? statement.length() : end + 1;
+			} else if (c == '(' || c == '[' || c == '{') {
+				topLevel[i] = depth == 0;
+				depth++;
+			} else if (c == ')' || c == ']' || c == '}') {
+				depth = Math.max(0, depth - 1);
+				topLevel[i] = depth == 0;
+			} else {
+				topLevel[i] = depth == 0;
+			}
+		}
+		return topLevel;
+	}
+}
@@ -0,0 +1,66 @@
+package liquibase.util;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with random jitter. The delay before retry
+ * <code>n</code> is drawn from the upper half of
+ * <code>min(maxDelay, baseDelay * 2^n)</code>, so callers that failed at the
+ * same moment don't retry at the same moment.
+ */
+public class JitteredBackoff {
+
+	private final long baseDelay;
+	private final long maxDelay;
+	private final Random random;
+
+	/**
+	 * @param baseDelay delay in milliseconds before the first retry
+	 * @param maxDelay upper bound of any delay in milliseconds
+	 */
+	public JitteredBackoff(long baseDelay, long maxDelay) {
+		this(baseDelay, maxDelay, new Random());
+	}
+
+	public JitteredBackoff(long baseDelay, long maxDelay, Random random) {
+		if (baseDelay < 1 || maxDelay < baseDelay) {
+			throw new IllegalArgumentException("Invalid backoff delays " + baseDelay + "/" + maxDelay);
+		}
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.random = random;
+	}
+
+	/**
+	 * Milliseconds to wait before the given retry, counting from 0.
+	 */
+	public long getDelay(int retry) {
+		long ceiling = maxDelay;
+		if (retry < 62 && baseDelay <= (maxDelay >> Math.min(retry, 62))) {
+			ceiling = Math.min(maxDelay, baseDelay << retry);
+		}
+		long half = ceiling / 2;
+		return half + (long) (random.nextDouble() * (ceiling - half + 1));
+	}
+
+	/**
+	 * Sleeps for the delay of the given retry, never past the deadline.
+	 * @return false if the deadline has passed
+	 */
+	public boolean sleep(int retry, long deadline) throws InterruptedException {
+		long remaining = deadline - System.currentTimeMillis();
+		if (remaining <= 0) {
+			return false;
+		}
+		Thread.sleep(Math.min(remaining, getDelay(retry)));
+		return true;
+	}
+
+	public long getBaseDelay() {
+		return baseDelay;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+}
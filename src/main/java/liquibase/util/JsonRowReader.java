@@ -0,0 +1,275 @@
+package liquibase.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the objects of a JSON array one at a time, so files of any size can
+ * be loaded without holding them in memory:
+ * <pre>
+ * [ {"id": 1, "name": "a", "tags": ["x", "y"]}, {"id": 2, "name": "b"} ]
+ * </pre>
+ * Objects become maps, arrays lists, numbers {@link Integer}, {@link Long},
+ * {@link BigInteger} or {@link BigDecimal}. Newline delimited objects without
+ * the enclosing array are read as well.
+ */
+public class JsonRowReader implements Closeable {
+
+	private final Reader reader;
+	private int next = -2;
+	private boolean inArray;
+	private boolean started;
+	private long line = 1;
+
+	public JsonRowReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * The next object, or null at the end of the input.
+	 *
+	 * @throws IOException if the input is not valid JSON
+	 */
+	public Map<String, Object> readRow() throws IOException {
+		int c = skipSpaces();
+		if (!started) {
+			started = true;
+			if (c == '[') {
+				inArray = true;
+				read();
+				c = skipSpaces();
+				if (c == ']') {
+					read();
+					return null;
+				}
+			}
+		} else if (inArray) {
+			if (c == ']') {
+				read();
+				return null;
+			}
+			expect(',');
+			c = skipSpaces();
+		}
+		if (c == -1) {
+			if (inArray) {
+				throw error("Unterminated array");
+			}
+			return null;
+		}
+		if (c != '{') {
+			throw error("Expected an object");
+		}
+		return readObject();
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Parses a single JSON value, e.g. a collection written in a CSV cell.
+	 */
+	public static Object parseValue(String json) throws IOException {
+		JsonRowReader reader = new JsonRowReader(new StringReader(json));
+		reader.started = true;
+		Object value = reader.readValue();
+		if (reader.skipSpaces() != -1) {
+			throw reader.error("Unexpected content after value");
+		}
+		return value;
+	}
+
+	private Object readValue() throws IOException {
+		int c = skipSpaces();
+		switch (c) {
+		case '{':
+			return readObject();
+		case '[':
+			return readArray();
+		case '"':
+			return readString();
+		case 't':
+			readLiteral("true");
+			return Boolean.TRUE;
+		case 'f':
+			readLiteral("false");
+			return Boolean.FALSE;
+		case 'n':
+			readLiteral("null");
+			return null;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				return readNumber();
+			}
+			throw error("Unexpected " + (c == -1 ? "end of input" : "'" + (char) c + "'"));
+		}
+	}
+
+	private Map<String, Object> readObject() throws IOException {
+		expect('{');
+		Map<String, Object> object = new LinkedHashMap<String, Object>();
+		if (skipSpaces() == '}') {
+			read();
+			return object;
+		}
+		do {
+			if (skipSpaces() != '"') {
+				throw error("Expected a field name");
+			}
+			String name = readString();
+			expect(':');
+			object.put(name, readValue());
+		} while (consume(','));
+		expect('}');
+		return object;
+	}
+
+	private List<Object> readArray() throws IOException {
+		expect('[');
+		List<Object> array = new ArrayList<Object>();
+		if (skipSpaces() == ']') {
+			read();
+			return array;
+		}
+		do {
+			array.add(readValue());
+		} while (consume(','));
+		expect(']');
+		return array;
+	}
+
+	private String readString() throws IOException {
+		expect('"');
+		StringBuilder value = new StringBuilder();
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw error("Unterminated string");
+			} else if (c == '"') {
+				return value.toString();
+			} else if (c != '\\') {
+				value.append((char) c);
+				continue;
+			}
+			c = read();
+			switch (c) {
+			case 'b':
+				value.append('\b');
+				break;
+			case 'f':
+				value.append('\f');
+				break;
+			case 'n':
+				value.append('\n');
+				break;
+			case 'r':
+				value.append('\r');
+				break;
+			case 't':
+				value.append('\t');
+				break;
+			case 'u':
+				char[] hex = new char[4];
+				for (int i = 0; i < 4; i++) {
+					hex[i] = (char) read();
+				}
+				try {
+					value.append((char) Integer.parseInt(new String(hex), 16));
+				} catch (NumberFormatException e) {
+					throw error("Invalid unicode escape");
+				}
+				break;
+			case -1:
+				throw error("Unterminated string");
+			default:
+				value.append((char) c);
+			}
+		}
+	}
+
+	private Number readNumber() throws IOException {
+		StringBuilder number = new StringBuilder();
+		boolean decimal = false;
+		int c = peek();
+		while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+			decimal |= c == '.' || c == 'e' || c == 'E';
+			number.append((char) read());
+			c = peek();
+		}
+		try {
+			if (decimal) {
+				return new BigDecimal(number.toString());
+			}
+			BigInteger value = new BigInteger(number.toString());
+			if (value.bitLength() < 32) {
+				return value.intValue();
+			} else if (value.bitLength() < 64) {
+				return value.longValue();
+			}
+			return value;
+		} catch (NumberFormatException e) {
+			throw error("Invalid number " + number);
+		}
+	}
+
+	private void readLiteral(String literal) throws IOException {
+		for (int i = 0; i < literal.length(); i++) {
+			if (read() != literal.charAt(i)) {
+				throw error("Expected " + literal);
+			}
+		}
+	}
+
+	private boolean consume(char c) throws IOException {
+		if (skipSpaces() == c) {
+			read();
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char c) throws IOException {
+		if (skipSpaces() != c) {
+			throw error("Expected '" + c + "'");
+		}
+		read();
+	}
+
+	private int skipSpaces() throws IOException {
+		int c = peek();
+		while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+			read();
+			c = peek();
+		}
+		return c;
+	}
+
+	private int peek() throws IOException {
+		if (next == -2) {
+			next = reader.read();
+		}
+		return next;
+	}
+
+	private int read() throws IOException {
+		int c = peek();
+		next = -2;
+		if (c == '\n') {
+			line++;
+		}
+		return c;
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " in JSON input at line " + line);
+	}
+}
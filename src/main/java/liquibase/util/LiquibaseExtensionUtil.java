@@ -3,6 +3,9 @@ package liquibase.util;
 import java.net.URI;
 import java.text.MessageFormat;
 import liquibase.database.Database;
+import liquibase.database.core.CassandraConsistency;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraNativeConnection;
 import liquibase.exception.DatabaseException;
 import liquibase.integration.commandline.CommandLineUtils;
 
@@ -29,9 +32,25 @@ public class LiquibaseExtensionUtil {
 		return createCassandraDatabase(connString, schema);
 	}
 	
+	/**
+	 * Create a Cassandra Database object using connection string and schema.
+	 * <code>cql://</code> urls connect with the native protocol driver,
+	 * anything else goes through the cassandra-jdbc driver. The url may carry
+	 * the consistency levels of {@link CassandraConsistency}.
+	 * @param connString
+	 * @param schema
+	 * @return
+	 * @throws DatabaseException
+	 */
 	public static Database createCassandraDatabase(String connString,
 			String schema) throws DatabaseException {
 	    	String url = adjustConnString(connString, schema);
+	    	if (CassandraNativeConnection.isNativeUrl(url)) {
+	    		CassandraDatabase database = new CassandraDatabase();
+	    		database.setConnection(new CassandraNativeConnection(url));
+	    		database.setLiquibaseSchemaName(schema);
+	    		return database;
+	    	}
 			String username = "";
 			String password = "";
 			String driver = "org.apache.cassandra.cql.jdbc.CassandraDriver";
@@ -46,14 +65,19 @@ public class LiquibaseExtensionUtil {
 			String liquibaseCatalogName = null;
 			//String liquibaseSchemaName = null;
 			String liquibaseSchemaName = schema;
-			return CommandLineUtils.createDatabaseObject(new LiquibaseExtensionUtil().getClass().getClassLoader(), url, username, password, driver, defaultCatalogName, defaultSchemaName, outputDefaultCatalog, outputDefaultSchema, databaseClass, driverPropertiesFile, propertyProviderClass, liquibaseCatalogName, liquibaseSchemaName);	
+			// cassandra-jdbc rejects parameters it does not know
+			Database database = CommandLineUtils.createDatabaseObject(new LiquibaseExtensionUtil().getClass().getClassLoader(), CassandraConsistency.removeParameters(url), username, password, driver, defaultCatalogName, defaultSchemaName, outputDefaultCatalog, outputDefaultSchema, databaseClass, driverPropertiesFile, propertyProviderClass, liquibaseCatalogName, liquibaseSchemaName);
+			if (database instanceof CassandraDatabase) {
+				((CassandraDatabase) database).getConsistency().setLevels(url);
+			}
+			return database;
 	}
 	   
 	   public static String adjustConnString(String connString, String username) {
 	    	if(connString == null || connString.equals("")) {
 	    		return connString;
 	    	}
-			String cleanURI = connString.substring(5);
+			String cleanURI = connString.startsWith("jdbc:") ? connString.substring(5) : connString;
 
 			URI uri = URI.create(cleanURI);
 			return connString.replace(uri.getPath(), "/"+username);
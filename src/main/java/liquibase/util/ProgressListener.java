@@ -0,0 +1,15 @@
+package liquibase.util;
+
+/**
+ * Receives progress of long running operations of the extension, such as
+ * bulk writes. It may be called from driver threads.
+ */
+public interface ProgressListener {
+
+    /**
+     * @param operation name of the running operation
+     * @param processed number of items done so far
+     * @param elapsedMillis milliseconds since the operation started
+     */
+    void onProgress(String operation, long processed, long elapsedMillis);
+}
@@ -0,0 +1,42 @@
+package liquibase.util;
+
+/**
+ * Spreads work evenly over time: {@link #acquire(int)} blocks until the
+ * permits fit into <code>permitsPerSecond</code>. Permits not used in a
+ * quiet period are not saved up, so a limiter that was idle does not allow
+ * a burst afterwards. Shared by several threads, the rate holds for all of
+ * them together.
+ */
+public class RateLimiter {
+
+	private final double nanosPerPermit;
+	private long nextFree = System.nanoTime();
+
+	/**
+	 * @param permitsPerSecond greater than 0
+	 */
+	public RateLimiter(double permitsPerSecond) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+		}
+		this.nanosPerPermit = 1000000000d / permitsPerSecond;
+	}
+
+	/**
+	 * Waits until the permits may be used.
+	 */
+	public void acquire(int permits) throws InterruptedException {
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (nextFree < now) {
+				nextFree = now;
+			}
+			wait = nextFree - now;
+			nextFree += (long) (permits * nanosPerPermit);
+		}
+		if (wait > 0) {
+			Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+		}
+	}
+}
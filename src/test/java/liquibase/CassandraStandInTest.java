@@ -0,0 +1,522 @@
+package liquibase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.changelog.ChangeLogHistoryServiceCassandra;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.RanChangeSet;
+import liquibase.changelog.StandardChangeLogHistoryService;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraHistoryLayout;
+import liquibase.database.core.CassandraHistoryMigrator;
+import liquibase.database.core.CassandraRanChangeSetReader;
+import liquibase.database.core.CassandraSchemaAgreement;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.executor.ExecutorService;
+import liquibase.lockservice.LockService;
+import liquibase.lockservice.LockServiceCassandra;
+import liquibase.lockservice.LockServiceFactory;
+import liquibase.metrics.CassandraMetrics;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.standin.CassandraStandIn;
+import liquibase.util.CassandraLiquibase;
+
+/**
+ * Runs the update, tag, clearChecksums and lock scenarios of
+ * {@link CassandraExtensionsTest} against an in-process
+ * {@link CassandraStandIn}, so they need no Cassandra node.
+ */
+public class CassandraStandInTest {
+
+	private static final String CHANGELOG = "cassandra/changelog.xml";
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+
+	@Before
+	public void setUp() throws Exception {
+		LockServiceFactory.getInstance().register(new LockServiceCassandra());
+		node = new CassandraStandIn();
+		database = node.connect("abc");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		LockServiceFactory.getInstance().resetAll();
+		ChangeLogHistoryServiceFactory.reset();
+		ExecutorService.getInstance().reset();
+		CassandraConfiguration.getInstance().setLockLeaseTime(null);
+		CassandraConfiguration.getInstance().setHistoryLayout(null);
+		CassandraConfiguration.getInstance().setHistoryWriteBehind(false);
+		CassandraConfiguration.getInstance().setRetryBaseDelay(100L).setRetryMaxDelay(5000L);
+		database.close();
+		node.shutdown();
+	}
+
+	@Test
+	public void update() throws Exception {
+		liquibase(database).update(new Contexts());
+
+		assertTrue(node.hasTable("abc", "raw_metrics"));
+		List<Map<String, Object>> history = node.query("abc", "SELECT id, exectype FROM databasechangelog");
+		assertFalse(history.isEmpty());
+		for (Map<String, Object> row : history) {
+			assertEquals("EXECUTED", row.get("exectype"));
+		}
+		assertFalse(isLocked());
+
+		CassandraMetrics metrics = database.getMetrics();
+		assertTrue(metrics.getOperation(CassandraMetrics.DDL).getCount() > 0);
+		assertEquals(1, metrics.getOperation(CassandraMetrics.LOCK_WAIT).getCount());
+		assertEquals(history.size(), metrics.getCounter(CassandraMetrics.HISTORY_ROWS_WRITTEN));
+		assertTrue(metrics.report().contains("slowest change sets"));
+
+		node.clearStatements();
+		liquibase(node.connect("abc")).update(new Contexts());
+		assertEquals(0, node.countStatements("CREATE TABLE raw_metrics"));
+		assertEquals(history.size(), node.query("abc", "SELECT id FROM databasechangelog").size());
+	}
+
+	@Test
+	public void lockReusesTheKeyspaceSnapshot() throws Exception {
+		liquibase(database).update(new Contexts());
+		LockService lockService = LockServiceFactory.getInstance().getLockService(database);
+		node.clearStatements();
+		lockService.waitForLock();
+		lockService.releaseLock();
+
+		assertEquals(0, node.countStatements("schema_columnfamilies"));
+	}
+
+	@Test
+	public void orderExecutedIsSeededFromTheHeadRow() throws Exception {
+		liquibase(database).update(new Contexts());
+		assertEquals("9", node.query("abc", "SELECT value FROM databasechangeloghead WHERE name = 'orderexecuted'").get(0).get("value"));
+
+		node.clearStatements();
+		new Liquibase("cassandra/parallel-changelog.xml", new ClassLoaderResourceAccessor(), node.connect("abc")).update(new Contexts());
+		assertEquals(0, node.countStatements("^SELECT ORDEREXECUTED FROM"));
+		assertEquals(13, historyIds().size());
+		assertEquals(Arrays.asList("1", "2", "3", "4", "5"), historyIds().subList(8, 13));
+	}
+
+	@Test
+	public void tag() throws Exception {
+		liquibase(database).update(new Contexts());
+		liquibase(database).tag("tagged");
+
+		String lastId = database.getLastChangeSetId();
+		assertNotNull(lastId);
+		Map<String, Object> row = node.query("abc", "SELECT tag FROM databasechangelog WHERE id = '" + lastId.replace("'", "''") + "'").get(0);
+		assertEquals("tagged", row.get("tag"));
+	}
+
+	@Test
+	public void historyServiceTagsWithoutAScan() throws Exception {
+		liquibase(database).update(new Contexts());
+		node.clearStatements();
+		ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database).tag("tagged");
+
+		assertEquals(0, node.countStatements("COUNT\\(\\*\\)"));
+		assertEquals(0, node.countStatements("SELECT FILENAME"));
+		Map<String, Object> row = node.query("abc", "SELECT tag FROM databasechangelog WHERE id = '"
+				+ database.getLastChangeSetId().replace("'", "''") + "'").get(0);
+		assertEquals("tagged", row.get("tag"));
+	}
+
+	@Test
+	public void clearChecksums() throws Exception {
+		liquibase(database).update(new Contexts());
+		database.clearChecksums();
+
+		List<Map<String, Object>> history = node.query("abc", "SELECT md5sum FROM databasechangelog");
+		assertFalse(history.isEmpty());
+		for (Map<String, Object> row : history) {
+			assertNull(row.get("md5sum"));
+		}
+	}
+
+	@Test
+	public void clearChecksumsBatchesByPartition() throws Exception {
+		liquibase(database).update(new Contexts());
+		node.clearStatements();
+		database.clearChecksums();
+		// one partition per ID
+		assertEquals(0, node.countStatements("^BEGIN UNLOGGED BATCH"));
+		assertEquals(8, node.countStatements("^UPDATE abc\\.databasechangelog SET MD5SUM = null"));
+
+		CassandraConfiguration.getInstance().setHistoryLayout("v2");
+		CassandraDatabase bucketed = node.connect("bucketed");
+		new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), bucketed).update(new Contexts());
+		node.clearStatements();
+		bucketed.clearChecksums();
+		// one bucket
+		assertEquals(1, node.countStatements("^BEGIN UNLOGGED BATCH"));
+		assertEquals(0, node.countStatements("^UPDATE bucketed\\.databasechangelog_v2 SET MD5SUM = null"));
+		for (Map<String, Object> row : node.query("bucketed", "SELECT md5sum FROM databasechangelog_v2")) {
+			assertNull(row.get("md5sum"));
+		}
+	}
+
+	@Test
+	public void lockIsExclusive() throws Exception {
+		LockService first = LockServiceFactory.getInstance().getLockService(database);
+		LockService second = new LockServiceCassandra();
+		second.setDatabase(node.connect("abc"));
+
+		assertTrue(first.acquireLock());
+		assertTrue(isLocked());
+		assertFalse(second.acquireLock());
+
+		first.releaseLock();
+		assertFalse(isLocked());
+		assertTrue(second.acquireLock());
+		second.releaseLock();
+	}
+
+	@Test
+	public void expiredLeaseIsTakenOver() throws Exception {
+		CassandraConfiguration.getInstance().setLockLeaseTime(60);
+		LockServiceCassandra first = new LockServiceCassandra();
+		first.setDatabase(database);
+		LockService second = new LockServiceCassandra();
+		second.setDatabase(node.connect("abc"));
+
+		assertTrue(first.acquireLock());
+		assertFalse(second.acquireLock());
+
+		// the first process stops renewing its lease, as if it had crashed
+		first.reset();
+		node.advanceClock(61000);
+		assertTrue(second.acquireLock());
+		second.releaseLock();
+	}
+
+	@Test
+	public void lostLeaseStopsUpdate() throws Exception {
+		CassandraConfiguration.getInstance().setLockLeaseTime(3);
+		LockServiceCassandra first = (LockServiceCassandra) LockServiceFactory.getInstance().getLockService(database);
+		LockService second = new LockServiceCassandra();
+		second.setDatabase(node.connect("abc"));
+		first.waitForLock();
+
+		// the lease expires before the first process renews it, e.g. after a long pause
+		node.advanceClock(4000);
+		assertTrue(second.acquireLock());
+		for (int i = 0; i < 50 && !first.isLeaseLost(); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue(first.isLeaseLost());
+
+		try {
+			liquibase(database).update(new Contexts());
+			fail("update should stop after losing the lease");
+		} catch (LiquibaseException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("lease"));
+		}
+		assertFalse(node.hasTable("abc", "raw_metrics"));
+		assertTrue(node.query("abc", "SELECT id FROM databasechangelog").isEmpty());
+		assertTrue(isLocked());
+		second.releaseLock();
+	}
+
+	@Test
+	public void failedUpdateReleasesLockAndResumes() throws Exception {
+		node.failOn("CREATE TABLE raw_metrics_3\\b", 1);
+		try {
+			liquibase(database).update(new Contexts());
+			fail("update should fail on the injected failure");
+		} catch (LiquibaseException e) {
+			// expected
+		}
+		assertFalse(isLocked());
+		assertFalse(node.hasTable("abc", "raw_metrics_3"));
+
+		liquibase(node.connect("abc")).update(new Contexts());
+		assertTrue(node.hasTable("abc", "raw_metrics_3"));
+		assertEquals(1, node.countStatements("CREATE TABLE raw_metrics\\s"));
+	}
+
+	@Test
+	public void latencyIsAppliedToEveryStatement() throws Exception {
+		node.setLatency(2);
+		long start = System.nanoTime();
+		liquibase(database).update(new Contexts());
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+		assertTrue(elapsedMillis >= 2 * node.getStatementCount());
+	}
+
+	@Test
+	public void bucketedHistory() throws Exception {
+		CassandraConfiguration.getInstance().setHistoryLayout("v2");
+		liquibase(database).update(new Contexts());
+		node.clearStatements();
+		database.tag("tagged");
+		// tagging reads head rows and the tagged row by key, not the history
+		assertEquals(0, node.countStatements("SELECT FILENAME"));
+
+		assertFalse(node.hasTable("abc", "databasechangelog"));
+		List<Map<String, Object>> history = node.query("abc", "SELECT id, tag FROM databasechangelog_v2 WHERE bucket = 0");
+		assertEquals(8, history.size());
+		assertEquals("tagged", history.get(history.size() - 1).get("tag"));
+		assertEquals("v2", node.query("abc", "SELECT value FROM databasechangeloghead WHERE name = 'layout'").get(0).get("value"));
+		assertEquals("0", node.query("abc", "SELECT value FROM databasechangeloghead WHERE name = 'bucket'").get(0).get("value"));
+
+		// the layout row wins over the property
+		CassandraConfiguration.getInstance().setHistoryLayout(null);
+		node.clearStatements();
+		liquibase(node.connect("abc")).update(new Contexts());
+		assertEquals(0, node.countStatements("CREATE TABLE raw_metrics"));
+		assertEquals(history.size(), node.query("abc", "SELECT id FROM databasechangelog_v2").size());
+	}
+
+	@Test
+	public void migrateHistory() throws Exception {
+		liquibase(database).update(new Contexts());
+		int rows = node.query("abc", "SELECT id FROM databasechangelog").size();
+
+		assertEquals(rows, new CassandraHistoryMigrator(node.connect("abc")).migrate());
+		assertEquals(rows, node.query("abc", "SELECT id FROM databasechangelog_v2 WHERE bucket = 0").size());
+		assertFalse(isLocked());
+
+		CassandraDatabase migrated = node.connect("abc");
+		assertEquals(CassandraHistoryLayout.V2, migrated.getHistoryLayout());
+		node.clearStatements();
+		migrated.tag("migrated");
+		assertEquals(0, node.countStatements("SELECT FILENAME"));
+		assertEquals(1, node.query("abc", "SELECT id FROM databasechangelog_v2 WHERE bucket = 0 AND orderexecuted = " + rows).size());
+		assertEquals("migrated", node.query("abc", "SELECT tag FROM databasechangelog_v2 WHERE bucket = 0 AND orderexecuted = " + rows).get(0).get("tag"));
+		node.clearStatements();
+		liquibase(migrated).update(new Contexts());
+		assertEquals(0, node.countStatements("CREATE TABLE raw_metrics"));
+		assertEquals(rows, migrated.getRanChangeSets((StandardChangeLogHistoryService) ChangeLogHistoryServiceFactory
+				.getInstance().getChangeLogService(migrated), migrated).size());
+	}
+
+	@Test
+	public void processesConnectedBeforeAMigrationSwitchWithTheLock() throws Exception {
+		liquibase(database).update(new Contexts());
+		assertEquals(CassandraHistoryLayout.V1, database.getHistoryLayout());
+		long rows = new CassandraHistoryMigrator(node.connect("abc")).migrate();
+
+		new Liquibase("cassandra/parallel-changelog.xml", new ClassLoaderResourceAccessor(), database).update(new Contexts());
+		assertEquals(CassandraHistoryLayout.V2, database.getHistoryLayout());
+		assertEquals(rows, node.query("abc", "SELECT id FROM databasechangelog").size());
+		assertEquals(rows + 5, node.query("abc", "SELECT id FROM databasechangelog_v2 WHERE bucket = 0").size());
+	}
+
+	@Test
+	public void transientErrorsAreRetried() throws Exception {
+		CassandraConfiguration.getInstance().setRetryBaseDelay(1L).setRetryMaxDelay(2L);
+		CassandraDatabase database = node.connect("abc");
+		node.timeOutOn("INSERT INTO abc\\.databasechangelog\\b", 1);
+		node.timeOutOn("UPDATE abc\\.databasechangeloglock\\b.*IF LOCKED = false", 1);
+		node.failOn("SELECT .* FROM abc\\.databasechangelog\\b", 1);
+		liquibase(database).update(new Contexts());
+
+		assertFalse(isLocked());
+		assertEquals(8, node.query("abc", "SELECT id FROM databasechangelog").size());
+		assertEquals(3, database.getMetrics().getCounter(CassandraMetrics.RETRIES));
+		assertEquals(2, database.getMetrics().getCounter(CassandraMetrics.RETRIES + "Timeout"));
+		assertEquals(1, database.getMetrics().getCounter(CassandraMetrics.RETRIES + "Unavailable"));
+		assertEquals(0, database.getMetrics().getCounter(CassandraMetrics.RETRIES_EXHAUSTED));
+	}
+
+	@Test
+	public void pagedHistoryReadsWholePartitions() throws Exception {
+		liquibase(database).update(new Contexts());
+		// the same IDs in another changelog file, two rows per ID partition
+		for (Map<String, Object> row : node.query("abc", "SELECT id, author, md5sum, dateexecuted, orderexecuted, exectype FROM databasechangelog")) {
+			node.execute("abc", "INSERT INTO databasechangelog (ID, AUTHOR, FILENAME, MD5SUM, DATEEXECUTED, ORDEREXECUTED, EXECTYPE) VALUES (?, ?, ?, ?, ?, ?, ?)",
+					Arrays.asList(row.get("id"), row.get("author"), "other.xml", row.get("md5sum"), row.get("dateexecuted"),
+							((Integer) row.get("orderexecuted")) + 8, row.get("exectype")));
+		}
+
+		for (int fetchSize : new int[] { 1, 2, 3, 5, 1000 }) {
+			CassandraRanChangeSetReader reader = new CassandraRanChangeSetReader(database, fetchSize);
+			Set<String> read = new HashSet<String>();
+			while (reader.hasNext()) {
+				RanChangeSet ranChangeSet = reader.next();
+				read.add(ranChangeSet.getChangeLog() + "::" + ranChangeSet.getId());
+			}
+			assertEquals("fetch size " + fetchSize, 16, read.size());
+			assertEquals("fetch size " + fetchSize, 16, reader.getRowCount());
+		}
+	}
+
+	@Test
+	public void historyVersionFollowsHistoryWrite() throws Exception {
+		node.failOn("INSERT INTO abc\\.databasechangelog\\b", -1);
+		try {
+			liquibase(database).update(new Contexts());
+			fail("update should fail on the injected failure");
+		} catch (LiquibaseException e) {
+			// expected
+		}
+
+		List<String> statements = node.getStatements();
+		int firstHistoryWrite = -1;
+		for (int i = 0; i < statements.size(); i++) {
+			String statement = statements.get(i);
+			assertFalse(statement, statement.contains("databasechangelog ") && statement.contains("databasechangeloghead"));
+			if (firstHistoryWrite < 0 && statement.matches("(?s)INSERT INTO abc\\.databasechangelog\\b.*")) {
+				firstHistoryWrite = i;
+			} else if (firstHistoryWrite >= 0) {
+				assertFalse(statement, statement.contains("'version'"));
+			}
+		}
+		assertTrue(firstHistoryWrite >= 0);
+	}
+
+	@Test
+	public void schemaAgreementStaysPendingWhenVersionsCannotBeRead() throws Exception {
+		CassandraSchemaAgreement agreement = new CassandraSchemaAgreement(database, 1000, 10);
+		agreement.schemaChanged();
+		// reads are retried
+		node.failOn("FROM system\\.peers", -1);
+		try {
+			agreement.awaitIfPending();
+			fail("reading the schema versions should fail");
+		} catch (DatabaseException e) {
+			// expected
+		}
+		assertTrue(agreement.isPending());
+
+		node.clearFaults();
+		assertTrue(agreement.awaitIfPending());
+		assertFalse(agreement.isPending());
+	}
+
+	@Test
+	public void failedHistoryFlushFailsUpdate() throws Exception {
+		CassandraConfiguration.getInstance().setHistoryWriteBehind(true);
+		// history writes are retried
+		node.failOn("INSERT INTO abc\\.databasechangelog\\b", -1);
+		try {
+			liquibase(database).update(new Contexts());
+			fail("update should fail on the injected failure");
+		} catch (UnexpectedLiquibaseException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("not recorded"));
+		}
+		assertTrue(node.hasTable("abc", "raw_metrics_8"));
+		assertEquals(0, node.query("abc", "SELECT id FROM databasechangelog").size());
+		// the lock is kept, and so are the rows
+		assertTrue(isLocked());
+
+		node.clearFaults();
+		ChangeLogHistoryServiceCassandra historyService = (ChangeLogHistoryServiceCassandra) ChangeLogHistoryServiceFactory
+				.getInstance().getChangeLogService(database);
+		historyService.flush();
+		assertEquals(8, node.query("abc", "SELECT id FROM databasechangelog").size());
+	}
+
+	@Test
+	public void failedParallelUpdateRecordsChangeSetsBeforeTheFailure() throws Exception {
+		// conditional DDL is retried, so fail it until cleared
+		node.failOn("CREATE TABLE IF NOT EXISTS parallel_metrics_3\\b", -1);
+		try {
+			parallelLiquibase(database).update(new Contexts());
+			fail("update should fail on the injected failure");
+		} catch (LiquibaseException e) {
+			// expected
+		}
+		assertFalse(isLocked());
+		assertTrue(node.hasTable("abc", "parallel_metrics_5"));
+		assertEquals(Arrays.asList("1", "2"), historyIds());
+
+		node.clearFaults();
+		parallelLiquibase(node.connect("abc")).update(new Contexts());
+		assertEquals(Arrays.asList("1", "2", "3", "4", "5"), historyIds());
+	}
+
+	@Test
+	public void changeSetIsTimedOnceForAllItsChanges() throws Exception {
+		new Liquibase("cassandra/multi-change-changelog.xml", new ClassLoaderResourceAccessor(), database).update(new Contexts());
+
+		CassandraMetrics metrics = database.getMetrics();
+		assertEquals(2, metrics.getOperation(CassandraMetrics.DDL).getCount());
+		assertEquals(1, metrics.getOperation(CassandraMetrics.CHANGE_SET).getCount());
+		assertEquals(1, metrics.getChangeSet("cassandra/multi-change-changelog.xml::1::jsanda").getCount());
+	}
+
+	@Test
+	public void parallelUpdateTimesEachChangeSet() throws Exception {
+		parallelLiquibase(database).update(new Contexts());
+
+		CassandraMetrics metrics = database.getMetrics();
+		for (String id : Arrays.asList("1", "2", "3", "4", "5")) {
+			assertEquals(1, metrics.getChangeSet("cassandra/parallel-changelog.xml::" + id + "::jsanda").getCount());
+		}
+	}
+
+	@Test
+	public void lostLeaseStopsParallelUpdate() throws Exception {
+		CassandraConfiguration.getInstance().setLockLeaseTime(3);
+		LockServiceCassandra first = (LockServiceCassandra) LockServiceFactory.getInstance().getLockService(database);
+		LockService second = new LockServiceCassandra();
+		second.setDatabase(node.connect("abc"));
+		first.waitForLock();
+
+		node.advanceClock(4000);
+		assertTrue(second.acquireLock());
+		for (int i = 0; i < 50 && !first.isLeaseLost(); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue(first.isLeaseLost());
+
+		try {
+			parallelLiquibase(database).update(new Contexts());
+			fail("update should stop after losing the lease");
+		} catch (LiquibaseException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("lease"));
+		}
+		assertFalse(node.hasTable("abc", "parallel_metrics_1"));
+		second.releaseLock();
+	}
+
+	private Liquibase liquibase(CassandraDatabase database) throws LiquibaseException {
+		return new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database);
+	}
+
+	private CassandraLiquibase parallelLiquibase(CassandraDatabase database) throws LiquibaseException {
+		return new CassandraLiquibase("cassandra/parallel-changelog.xml", new ClassLoaderResourceAccessor(), database)
+				.setParallelUpdate(true);
+	}
+
+	/**
+	 * The recorded change set ids by ORDEREXECUTED.
+	 */
+	private List<String> historyIds() throws Exception {
+		Map<Integer, String> ids = new TreeMap<Integer, String>();
+		for (Map<String, Object> row : node.query("abc", "SELECT id, orderexecuted FROM databasechangelog")) {
+			ids.put((Integer) row.get("orderexecuted"), (String) row.get("id"));
+		}
+		return new ArrayList<String>(ids.values());
+	}
+
+	private boolean isLocked() throws Exception {
+		List<Map<String, Object>> rows = node.query("abc", "SELECT locked FROM databasechangeloglock WHERE id = 1");
+		return !rows.isEmpty() && Boolean.TRUE.equals(rows.get(0).get("locked"));
+	}
+}
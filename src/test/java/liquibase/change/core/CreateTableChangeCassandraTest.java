@@ -0,0 +1,98 @@
+package liquibase.change.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import liquibase.change.ColumnConfig;
+import liquibase.change.ConstraintsConfig;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+
+public class CreateTableChangeCassandraTest {
+
+	private final CassandraDatabase database = new CassandraDatabase();
+
+	@Test
+	public void attributesBecomeTheKeyLayoutAndTableOptions() {
+		CreateTableChangeCassandra change = change();
+		change.setPartitionKey("schedule_id, day");
+		change.setClusteringOrder("time DESC");
+		change.setCompaction("TimeWindowCompactionStrategy");
+		change.setCompression("{'sstable_compression': 'LZ4Compressor'}");
+		change.setCaching("KEYS_ONLY");
+		change.setBloomFilterFpChance(0.01);
+		change.setDefaultTimeToLive(604800);
+		change.setGcGraceSeconds(3600);
+		change.setTableOptions("read_repair_chance = 0.0 AND speculative_retry = '99PERCENTILE'");
+
+		assertEquals("CREATE TABLE ks.raw_metrics (schedule_id int, day int, time timestamp, value double, "
+				+ "PRIMARY KEY ((schedule_id, day), time)) WITH CLUSTERING ORDER BY (time DESC) "
+				+ "AND compaction = {'class': 'TimeWindowCompactionStrategy'} "
+				+ "AND compression = {'sstable_compression': 'LZ4Compressor'} AND caching = 'KEYS_ONLY' "
+				+ "AND bloom_filter_fp_chance = 0.01 AND default_time_to_live = 604800 AND gc_grace_seconds = 3600 "
+				+ "AND read_repair_chance = 0.0 AND speculative_retry = '99PERCENTILE'", generate(change));
+	}
+
+	@Test
+	public void withoutAttributesTheFirstPrimaryKeyColumnIsThePartitionKey() {
+		assertEquals("CREATE TABLE ks.raw_metrics (schedule_id int, day int, time timestamp, value double, "
+				+ "PRIMARY KEY (schedule_id, day, time))", generate(change()));
+	}
+
+	@Test
+	public void clusteringOrderNeedsAColumnAndDirection() {
+		CreateTableChangeCassandra change = change();
+		change.setPartitionKey("schedule_id, day");
+		change.setClusteringOrder("time DOWN, day time DESC");
+
+		List<String> errors = change.validate(database).getErrorMessages();
+		assertTrue(errors.toString(), errors.contains("Invalid clustering order 'time DOWN', expected a column followed by ASC or DESC"));
+		assertTrue(errors.toString(), errors.contains("Invalid clustering order 'day time DESC', expected a column followed by ASC or DESC"));
+	}
+
+	@Test
+	public void bloomFilterFpChanceMustBeAProbability() {
+		CreateTableChangeCassandra change = change();
+		change.setBloomFilterFpChance(0.0);
+		assertTrue(change.validate(database).getErrorMessages().contains("bloomFilterFpChance must be greater than 0 and at most 1"));
+
+		change.setBloomFilterFpChance(1.5);
+		assertTrue(change.validate(database).getErrorMessages().contains("bloomFilterFpChance must be greater than 0 and at most 1"));
+
+		change.setBloomFilterFpChance(1.0);
+		assertTrue(change.validate(database).getErrorMessages().isEmpty());
+	}
+
+	private static CreateTableChangeCassandra change() {
+		CreateTableChangeCassandra change = new CreateTableChangeCassandra();
+		change.setSchemaName("ks");
+		change.setTableName("raw_metrics");
+		change.addColumn(column("schedule_id", "int", true));
+		change.addColumn(column("day", "int", true));
+		change.addColumn(column("time", "timestamp", true));
+		change.addColumn(column("value", "double", false));
+		return change;
+	}
+
+	private static ColumnConfig column(String name, String type, boolean primaryKey) {
+		ColumnConfig column = new ColumnConfig().setName(name).setType(type);
+		if (primaryKey) {
+			column.setConstraints(new ConstraintsConfig().setPrimaryKey(true));
+		}
+		return column;
+	}
+
+	private String generate(CreateTableChangeCassandra change) {
+		SqlStatement[] statements = change.generateStatements(database);
+		assertEquals(1, statements.length);
+		Sql[] sql = SqlGeneratorFactory.getInstance().generateSql(statements[0], database);
+		assertEquals(1, sql.length);
+		return sql[0].toSql();
+	}
+}
@@ -0,0 +1,159 @@
+package liquibase.changelog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.ExecutorService;
+import liquibase.sqlgenerator.core.MarkChangeSetRanGeneratorCassandra;
+import liquibase.standin.CassandraStandIn;
+import liquibase.statement.core.MarkChangeSetRanStatement;
+
+public class ChangeLogHistoryBufferTest {
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+	private ChangeLogHistoryBuffer buffer;
+
+	@Before
+	public void setUp() throws Exception {
+		node = new CassandraStandIn();
+		database = node.connect("abc");
+		ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database).init();
+		buffer = new ChangeLogHistoryBuffer(database);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		CassandraConfiguration.getInstance().setHistoryLayout(null);
+		ChangeLogHistoryServiceFactory.reset();
+		ExecutorService.getInstance().reset();
+		database.close();
+		node.shutdown();
+	}
+
+	@Test
+	public void rowsAloneInTheirPartitionAreNotBatched() throws Exception {
+		for (int i = 1; i <= 25; i++) {
+			add(changeSet(String.valueOf(i)), ChangeSet.ExecType.EXECUTED);
+		}
+		assertEquals(25, buffer.size());
+		node.clearStatements();
+		buffer.flush();
+
+		assertEquals(0, buffer.size());
+		assertEquals(1, buffer.getFlushCount());
+		assertEquals(0, node.countStatements("^BEGIN UNLOGGED BATCH"));
+		assertEquals(25, node.countStatements("^INSERT INTO abc\\.databasechangelog "));
+		assertEquals(25, node.query("abc", "SELECT id FROM databasechangelog").size());
+		assertEquals("25", node.query("abc", "SELECT value FROM databasechangeloghead WHERE name = 'last'").get(0).get("value"));
+		// single head rows, without the version row only the history cache reads
+		assertEquals(0, node.countStatements("^BEGIN BATCH"));
+		assertEquals(3, node.countStatements("^INSERT INTO abc\\.databasechangeloghead "));
+		assertEquals(0, node.query("abc", "SELECT value FROM databasechangeloghead WHERE name = 'version'").size());
+	}
+
+	@Test
+	public void rowsOfAPartitionShareABatch() throws Exception {
+		ChangeLogHistoryServiceFactory.reset();
+		database.close();
+		CassandraConfiguration.getInstance().setHistoryLayout("v2");
+		database = node.connect("def");
+		ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database).init();
+		buffer = new ChangeLogHistoryBuffer(database);
+		for (int i = 1; i <= 25; i++) {
+			add(changeSet(String.valueOf(i)), ChangeSet.ExecType.EXECUTED);
+		}
+		node.clearStatements();
+		buffer.flush();
+
+		// one bucket, split at the batch size limit
+		assertEquals(2, node.countStatements("^BEGIN UNLOGGED BATCH"));
+		assertEquals(0, node.countStatements("^INSERT INTO def\\.databasechangelog_v2 "));
+		assertEquals(25, node.query("def", "SELECT id FROM databasechangelog_v2").size());
+	}
+
+	@Test
+	public void secondWriteOfARowFlushesTheFirst() throws Exception {
+		ChangeSet changeSet = changeSet("1");
+		add(changeSet, ChangeSet.ExecType.EXECUTED);
+		add(changeSet("2"), ChangeSet.ExecType.EXECUTED);
+		assertEquals(0, buffer.getFlushCount());
+
+		add(changeSet, ChangeSet.ExecType.EXECUTED);
+		assertEquals(1, buffer.getFlushCount());
+		assertEquals(1, buffer.size());
+		assertEquals(2, node.query("abc", "SELECT id FROM databasechangelog").size());
+	}
+
+	@Test
+	public void failedFlushKeepsTheRows() throws Exception {
+		for (int i = 1; i <= 3; i++) {
+			add(changeSet(String.valueOf(i)), ChangeSet.ExecType.EXECUTED);
+		}
+		node.failOn("^INSERT INTO abc\\.databasechangelog .*'2'", -1);
+		try {
+			buffer.flush();
+			fail("flush should fail on the injected failure");
+		} catch (DatabaseException e) {
+			// expected
+		}
+		// the row written before the failure is no longer buffered
+		assertEquals(2, buffer.size());
+		assertEquals(0, buffer.getFlushCount());
+		assertEquals(1, node.query("abc", "SELECT id FROM databasechangelog").size());
+
+		node.clearFaults();
+		buffer.flush();
+		assertEquals(0, buffer.size());
+		assertEquals(3, node.query("abc", "SELECT id FROM databasechangelog").size());
+	}
+
+	@Test
+	public void bufferedRunsReplaceTheRowsRead() throws Exception {
+		ChangeSet first = changeSet("1");
+		ChangeSet second = changeSet("2");
+		List<RanChangeSet> read = Arrays.asList(new RanChangeSet(first, ChangeSet.ExecType.EXECUTED, null, null));
+		assertEquals(read, buffer.applyTo(read));
+
+		add(first, ChangeSet.ExecType.RERAN);
+		add(second, ChangeSet.ExecType.EXECUTED);
+		List<RanChangeSet> applied = buffer.applyTo(read);
+		assertEquals(2, applied.size());
+		assertEquals(ChangeSet.ExecType.RERAN, find(applied, first).getExecType());
+		assertEquals(ChangeSet.ExecType.EXECUTED, find(applied, second).getExecType());
+		assertEquals(1, read.size());
+		assertEquals(2, buffer.applyTo(Collections.<RanChangeSet>emptyList()).size());
+	}
+
+	private void add(ChangeSet changeSet, ChangeSet.ExecType execType) throws DatabaseException {
+		buffer.add(changeSet, execType, new MarkChangeSetRanGeneratorCassandra()
+				.generateRunStatement(new MarkChangeSetRanStatement(changeSet, execType), database));
+	}
+
+	private static ChangeSet changeSet(String id) {
+		return new ChangeSet(id, "test", false, false, "changelog.xml", null, null, null);
+	}
+
+	private static RanChangeSet find(List<RanChangeSet> ranChangeSets, ChangeSet changeSet) {
+		List<RanChangeSet> found = new ArrayList<RanChangeSet>();
+		for (RanChangeSet ranChangeSet : ranChangeSets) {
+			if (ranChangeSet.isSameAs(changeSet)) {
+				found.add(ranChangeSet);
+			}
+		}
+		assertEquals(1, found.size());
+		return found.get(0);
+	}
+}
@@ -0,0 +1,70 @@
+package liquibase.changelog.visitor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import liquibase.changelog.ChangeSet;
+import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraKeyspaceMetadata;
+
+public class ParallelUpdateVisitorTest {
+
+	private final ParallelUpdateVisitor visitor = new ParallelUpdateVisitor(new CassandraDatabase(), null, 2);
+
+	@Test
+	public void unrelatedChangeSetsShareALevel() {
+		List<List<ParallelUpdateVisitor.PlannedChangeSet>> levels = visitor.toLevels(Arrays.asList(
+				plan("1", "CREATE TABLE a (id int PRIMARY KEY)"),
+				plan("2", "CREATE TABLE b (id int PRIMARY KEY)"),
+				plan("3", "CREATE TABLE c (id int PRIMARY KEY)")));
+
+		assertEquals(Arrays.asList(Arrays.asList("1", "2", "3")), ids(levels));
+	}
+
+	@Test
+	public void changeSetsGoAfterTheLastChangeSetTheyShareATableWith() {
+		List<List<ParallelUpdateVisitor.PlannedChangeSet>> levels = visitor.toLevels(Arrays.asList(
+				plan("1", "CREATE TABLE a (id int PRIMARY KEY)"),
+				plan("2", "CREATE TABLE b (id int PRIMARY KEY)"),
+				plan("3", "ALTER TABLE a ADD value text"),
+				plan("4", "CREATE INDEX ON b (id)"),
+				plan("5", "ALTER TABLE a ADD other text"),
+				plan("6", "CREATE TABLE c (id int PRIMARY KEY)")));
+
+		assertEquals(Arrays.asList(Arrays.asList("1", "2", "6"), Arrays.asList("3", "4"), Arrays.asList("5")), ids(levels));
+	}
+
+	@Test
+	public void keyspaceChangesGoAfterTheirTables() {
+		List<List<ParallelUpdateVisitor.PlannedChangeSet>> levels = visitor.toLevels(Arrays.asList(
+				plan("1", "CREATE TABLE ks.a (id int PRIMARY KEY)"),
+				plan("2", "CREATE TABLE other.b (id int PRIMARY KEY)"),
+				plan("3", "ALTER KEYSPACE ks WITH durable_writes = false"),
+				plan("4", "CREATE TABLE ks.c (id int PRIMARY KEY)")));
+
+		assertEquals(Arrays.asList(Arrays.asList("1", "2"), Arrays.asList("3"), Arrays.asList("4")), ids(levels));
+	}
+
+	private static ParallelUpdateVisitor.PlannedChangeSet plan(String id, String cql) {
+		ChangeSet changeSet = new ChangeSet(id, "test", false, false, "changelog.xml", null, null, null);
+		return new ParallelUpdateVisitor.PlannedChangeSet(changeSet, null, ChangeSet.RunStatus.NOT_RAN,
+				Arrays.asList(cql), CassandraKeyspaceMetadata.getSchemaObjects(cql, "ks"));
+	}
+
+	private static List<List<String>> ids(List<List<ParallelUpdateVisitor.PlannedChangeSet>> levels) {
+		List<List<String>> ids = new ArrayList<List<String>>();
+		for (List<ParallelUpdateVisitor.PlannedChangeSet> level : levels) {
+			List<String> levelIds = new ArrayList<String>();
+			for (ParallelUpdateVisitor.PlannedChangeSet plan : level) {
+				levelIds.add(plan.getChangeSet().getId());
+			}
+			ids.add(levelIds);
+		}
+		return ids;
+	}
+}
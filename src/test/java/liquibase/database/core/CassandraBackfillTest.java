@@ -0,0 +1,95 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.exception.DatabaseException;
+import liquibase.standin.CassandraStandIn;
+
+public class CassandraBackfillTest {
+
+	private static final int ROWS = 50;
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+
+	@Before
+	public void setUp() throws Exception {
+		CassandraConfiguration.getInstance().setRetryBaseDelay(1L).setRetryMaxDelay(2L);
+		node = new CassandraStandIn();
+		database = node.connect("abc");
+		node.execute("abc", "CREATE TABLE orders (id int PRIMARY KEY, legacy text, attr text)", Collections.emptyList());
+		for (int i = 0; i < ROWS; i++) {
+			node.execute("abc", "INSERT INTO orders (id, legacy) VALUES (?, ?)", Arrays.<Object>asList(i, "v" + i));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		CassandraConfiguration.getInstance().setRetryBaseDelay(100L).setRetryMaxDelay(5000L);
+		database.close();
+		node.shutdown();
+	}
+
+	@Test
+	public void everyRowIsUpdated() throws Exception {
+		assertEquals(ROWS, backfill().setThreads(2).setRangeCount(4).setPageSize(7).run());
+
+		assertBackfilled();
+		assertEquals(0, node.query("abc", "SELECT id FROM databasechangelogbackfill WHERE id = 'orders'").size());
+	}
+
+	@Test
+	public void interruptedBackfillResumesFromItsCheckpoints() throws Exception {
+		// the third page is written but its checkpoint is lost
+		node.failOn("ROWS_WRITTEN = 15 WHERE", -1);
+		try {
+			backfill().setThreads(1).setRangeCount(1).setPageSize(5).run();
+			fail("backfill should fail on the injected failure");
+		} catch (DatabaseException e) {
+			// expected
+		}
+		long checkpointed = 0;
+		for (Map<String, Object> row : node.query("abc", "SELECT rows_written FROM databasechangelogbackfill WHERE id = 'orders'")) {
+			checkpointed += ((Number) row.get("rows_written")).longValue();
+		}
+		assertEquals(10, checkpointed);
+
+		node.clearFaults();
+		assertEquals(ROWS - checkpointed, backfill().setThreads(1).setPageSize(5).run());
+		assertBackfilled();
+	}
+
+	@Test
+	public void updateNeedsMarkers() throws Exception {
+		try {
+			new CassandraBackfill(database, "orders", "abc", "orders", "id", "UPDATE orders SET attr = 'x' WHERE id = 1").run();
+			fail("an update without markers updates no selected row");
+		} catch (DatabaseException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(":column markers"));
+		}
+	}
+
+	private CassandraBackfill backfill() {
+		return new CassandraBackfill(database, "orders", "abc", "orders", "id, legacy", "UPDATE orders SET attr = :legacy WHERE id = :id");
+	}
+
+	private void assertBackfilled() throws Exception {
+		int rows = 0;
+		for (Map<String, Object> row : node.query("abc", "SELECT id, legacy, attr FROM orders")) {
+			assertEquals(row.get("legacy"), row.get("attr"));
+			rows++;
+		}
+		assertEquals(ROWS, rows);
+	}
+}
@@ -0,0 +1,113 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.exception.DatabaseException;
+import liquibase.standin.CassandraStandIn;
+import liquibase.util.JsonRowReader;
+import liquibase.util.csv.CSVReader;
+
+public class CassandraBulkLoaderTest {
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+
+	@Before
+	public void setUp() throws Exception {
+		node = new CassandraStandIn();
+		database = node.connect("abc");
+		node.execute("abc", "CREATE TABLE readings (id int, day text, v int, note text, PRIMARY KEY (id, day))", Collections.emptyList());
+		node.clearStatements();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		database.close();
+		node.shutdown();
+	}
+
+	@Test
+	public void csvRowsAreBatchedByPartition() throws Exception {
+		long count = loader().loadCsv(csv("id,day,v,note\n1,mon,10,first\n2,mon,,\n1,tue,11,second\n\n1,wed,12,third\n"));
+
+		assertEquals(4, count);
+		Map<String, Map<String, Object>> rows = rows();
+		assertEquals(4, rows.size());
+		assertEquals(11, rows.get("1/tue").get("v"));
+		assertEquals("second", rows.get("1/tue").get("note"));
+		// empty values are left unset, not written as null, except for text
+		assertNull(rows.get("2/mon").get("v"));
+		assertEquals("", rows.get("2/mon").get("note"));
+		// the three rows of partition 1 share a batch, partition 2 is written alone
+		assertEquals(1, node.countStatements("^BEGIN UNLOGGED BATCH"));
+		assertEquals(1, node.countStatements("^INSERT INTO abc\\.readings \\(id, day, note\\) VALUES"));
+	}
+
+	@Test
+	public void fieldsAreRenamedOrSkipped() throws Exception {
+		Map<String, String> columnNames = new HashMap<String, String>();
+		columnNames.put("value", "v");
+		long count = loader().setColumnNames(columnNames).setSkippedColumns(Collections.singleton("ignored"))
+				.loadCsv(csv("ID,Day,value,ignored\n1,mon,10,x\n"));
+
+		assertEquals(1, count);
+		assertEquals(10, rows().get("1/mon").get("v"));
+	}
+
+	@Test
+	public void jsonObjectsAreLoaded() throws Exception {
+		long count = loader().loadJson(new JsonRowReader(new StringReader(
+				"[{\"id\": 1, \"day\": \"mon\", \"v\": 10}, {\"id\": 2, \"day\": \"tue\", \"v\": 20, \"note\": \"n\"}]")));
+
+		assertEquals(2, count);
+		assertEquals(20, rows().get("2/tue").get("v"));
+		assertEquals("n", rows().get("2/tue").get("note"));
+	}
+
+	@Test
+	public void invalidInputNamesTheRow() throws Exception {
+		assertFails("id,day,v\n1,mon,10\n2,tue\n", "line 3 has 2 fields");
+		assertFails("id,day,v\n1,mon,ten\n", "line 2, column v");
+		assertFails("id,day,color\n1,mon,red\n", "table has no column color");
+		assertFails("day,v\nmon,10\n", "no value for partition key column id");
+	}
+
+	private void assertFails(String input, String message) throws Exception {
+		try {
+			loader().loadCsv(csv(input));
+			fail(input);
+		} catch (DatabaseException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private CassandraBulkLoader loader() {
+		return new CassandraBulkLoader(database, "abc", "readings");
+	}
+
+	private static CSVReader csv(String input) {
+		return new CSVReader(new StringReader(input));
+	}
+
+	private Map<String, Map<String, Object>> rows() throws Exception {
+		Map<String, Map<String, Object>> rows = new HashMap<String, Map<String, Object>>();
+		List<Map<String, Object>> result = node.query("abc", "SELECT id, day, v, note FROM readings");
+		for (Map<String, Object> row : result) {
+			rows.put(row.get("id") + "/" + row.get("day"), row);
+		}
+		return rows;
+	}
+}
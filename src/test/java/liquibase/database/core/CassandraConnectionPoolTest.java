@@ -0,0 +1,111 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.standin.CassandraStandIn;
+import liquibase.standin.CassandraStandInDriver;
+
+public class CassandraConnectionPoolTest {
+
+	private CassandraStandIn node;
+
+	@Before
+	public void setUp() {
+		node = new CassandraStandIn();
+		node.createKeyspace("abc");
+	}
+
+	@After
+	public void tearDown() {
+		node.shutdown();
+	}
+
+	@Test
+	public void releasedConnectionsAreReused() throws Exception {
+		CassandraConnectionPool pool = pool(2, 100);
+		Connection first = pool.borrow();
+		pool.release(first);
+		Connection second = pool.borrow();
+
+		assertSame(first, second);
+		assertEquals(1, pool.getCreatedCount());
+		assertEquals(2, pool.getBorrowCount());
+		assertEquals(1, pool.getInUseCount());
+		pool.release(second);
+		assertEquals(0, pool.getInUseCount());
+		assertEquals(1, pool.getIdleCount());
+		pool.close();
+	}
+
+	@Test
+	public void borrowsWaitForAFreeConnection() throws Exception {
+		CassandraConnectionPool pool = pool(1, 50);
+		Connection connection = pool.borrow();
+		try {
+			pool.borrow();
+			fail("the pool has a single connection");
+		} catch (SQLException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Timed out"));
+		}
+		assertEquals(1, pool.getWaitCount());
+		assertEquals(1, pool.getPeakInUseCount());
+
+		pool.release(connection);
+		assertSame(connection, pool.borrow());
+		pool.close();
+	}
+
+	@Test
+	public void closedConnectionsAreReplaced() throws Exception {
+		CassandraConnectionPool pool = pool(2, 100);
+		Connection connection = pool.borrow();
+		pool.release(connection);
+		connection.close();
+
+		Connection replacement = pool.borrow();
+		assertNotSame(connection, replacement);
+		assertEquals(2, pool.getCreatedCount());
+		assertEquals(1, pool.getDiscardedCount());
+		pool.release(replacement);
+		pool.close();
+	}
+
+	@Test
+	public void closingThePoolClosesItsConnections() throws Exception {
+		CassandraConnectionPool pool = pool(2, 100);
+		Connection idle = pool.borrow();
+		Connection borrowed = pool.borrow();
+		pool.release(idle);
+		pool.close();
+
+		assertTrue(idle.isClosed());
+		pool.release(borrowed);
+		assertTrue(borrowed.isClosed());
+		try {
+			pool.borrow();
+			fail("the pool is closed");
+		} catch (SQLException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("closed"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sizeMustBePositive() {
+		pool(0, 100);
+	}
+
+	private CassandraConnectionPool pool(int maxSize, long waitTime) {
+		return new CassandraConnectionPool(node.getUrl("abc"), CassandraStandInDriver.class.getName(), maxSize, waitTime);
+	}
+}
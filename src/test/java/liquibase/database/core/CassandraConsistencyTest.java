@@ -0,0 +1,159 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+
+import org.junit.After;
+import org.junit.Test;
+
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.database.core.CassandraConsistency.Operation;
+import liquibase.exception.UnexpectedLiquibaseException;
+
+import org.apache.cassandra.cql.jdbc.CassandraStatementExtras;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.SimpleStatement;
+
+public class CassandraConsistencyTest {
+
+	private final CassandraConsistency consistency = new CassandraConsistency(new CassandraDatabase());
+
+	@After
+	public void tearDown() {
+		CassandraConfiguration.getInstance().setHistoryReadConsistency(null);
+	}
+
+	@Test
+	public void statementsAreClassifiedByTable() {
+		assertEquals(Operation.HISTORY_READ, consistency.classify("SELECT id, author FROM databasechangelog WHERE id = '1'"));
+		assertEquals(Operation.HISTORY_READ, consistency.classify("select * from \"ks\".\"databasechangelog_v2\""));
+		assertEquals(Operation.HISTORY_WRITE, consistency.classify("INSERT INTO ks.databasechangelog (id) VALUES ('1')"));
+		assertEquals(Operation.HISTORY_WRITE, consistency.classify("UPDATE databasechangeloghead SET id = '1' WHERE key = 'head'"));
+		assertEquals(Operation.HISTORY_WRITE, consistency.classify("BEGIN UNLOGGED BATCH DELETE FROM databasechangelog WHERE id = '1' APPLY BATCH"));
+		assertEquals(Operation.LOCK, consistency.classify("UPDATE databasechangeloglock SET locked = true WHERE id = 1 IF locked = false"));
+		assertEquals(Operation.DDL, consistency.classify("CREATE TABLE databasechangelog (id text PRIMARY KEY)"));
+		assertEquals(Operation.DDL, consistency.classify("ALTER TABLE metrics ADD value double"));
+		assertNull(consistency.classify("SELECT * FROM metrics"));
+		assertNull(consistency.classify("INSERT INTO databasechangelog_archive (id) VALUES ('1')"));
+		assertNull(consistency.classify("TRUNCATE databasechangelog"));
+		assertNull(consistency.classify(null));
+	}
+
+	@Test
+	public void levelsAreReadFromTheConfigurationThenTheUrl() {
+		CassandraConfiguration.getInstance().setHistoryReadConsistency("local_one");
+		CassandraConsistency configured = new CassandraConsistency(new CassandraDatabase());
+		assertEquals(ConsistencyLevel.LOCAL_ONE, configured.getLevel(Operation.HISTORY_READ));
+
+		configured.setLevels("cql://host/ks?user=u&historyReadConsistency=QUORUM&ddlConsistency=ALL&lockSerialConsistency=LOCAL_SERIAL");
+		assertEquals(ConsistencyLevel.QUORUM, configured.getLevel(Operation.HISTORY_READ));
+		assertEquals(ConsistencyLevel.ALL, configured.getLevel(Operation.DDL));
+		assertNull(configured.getLevel(Operation.LOCK));
+		assertEquals(ConsistencyLevel.LOCAL_SERIAL, configured.getLockSerialLevel());
+	}
+
+	@Test
+	public void unknownAndNonSerialLevelsAreRejected() {
+		try {
+			consistency.setLevels("jdbc:cassandra://host:9160/ks?historyWriteConsistency=QUORATE");
+			fail("unknown level accepted");
+		} catch (UnexpectedLiquibaseException e) {
+			assertEquals("Unknown consistency level QUORATE for historyWriteConsistency", e.getMessage());
+		}
+		try {
+			consistency.setLockSerialLevel(ConsistencyLevel.QUORUM);
+			fail("non serial level accepted");
+		} catch (UnexpectedLiquibaseException e) {
+			assertEquals("QUORUM is not a serial consistency level", e.getMessage());
+		}
+	}
+
+	@Test
+	public void levelParametersAreRemovedFromTheUrl() {
+		assertEquals("jdbc:cassandra://host:9160/ks?version=3.0.0&user=u",
+				CassandraConsistency.removeParameters("jdbc:cassandra://host:9160/ks?version=3.0.0&historyReadConsistency=ONE"
+						+ "&user=u&lockSerialConsistency=SERIAL"));
+		assertEquals("jdbc:cassandra://host:9160/ks", CassandraConsistency.removeParameters("jdbc:cassandra://host:9160/ks?ddlConsistency=ALL"));
+		assertEquals("jdbc:cassandra://host:9160/ks", CassandraConsistency.removeParameters("jdbc:cassandra://host:9160/ks"));
+	}
+
+	@Test
+	public void nativeStatementsGetTheLevelOfTheirOperation() {
+		consistency.setLevel(Operation.HISTORY_WRITE, ConsistencyLevel.LOCAL_QUORUM)
+				.setLevel(Operation.LOCK, ConsistencyLevel.QUORUM)
+				.setLockSerialLevel(ConsistencyLevel.LOCAL_SERIAL);
+
+		BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+		batch.add(new SimpleStatement("INSERT INTO databasechangelog (id) VALUES ('1')"));
+		consistency.apply(batch);
+		assertEquals(ConsistencyLevel.LOCAL_QUORUM, batch.getConsistencyLevel());
+
+		SimpleStatement lock = new SimpleStatement("UPDATE databasechangeloglock SET locked = true WHERE id = 1 IF locked = false");
+		consistency.apply(lock);
+		assertEquals(ConsistencyLevel.QUORUM, lock.getConsistencyLevel());
+		assertEquals(ConsistencyLevel.LOCAL_SERIAL, lock.getSerialConsistencyLevel());
+
+		SimpleStatement read = new SimpleStatement("SELECT * FROM databasechangelog");
+		consistency.apply(read);
+		assertNull(read.getConsistencyLevel());
+	}
+
+	@Test
+	public void jdbcStatementsFallBackToTheDriverLevelForLevelsThriftLacks() throws Exception {
+		consistency.setLevel(Operation.HISTORY_WRITE, ConsistencyLevel.QUORUM)
+				.setLevel(Operation.HISTORY_READ, ConsistencyLevel.LOCAL_ONE);
+		RecordingStatement recorded = new RecordingStatement();
+		Connection connection = consistency.wrap(connection(recorded.proxy()));
+		assertSame(connection, consistency.wrap(connection));
+
+		connection.createStatement().execute("INSERT INTO databasechangelog (id) VALUES ('1')");
+		assertEquals(org.apache.cassandra.thrift.ConsistencyLevel.QUORUM, recorded.level);
+
+		recorded.level = null;
+		connection.createStatement().execute("SELECT * FROM databasechangelog");
+		assertNull(recorded.level);
+
+		connection.createStatement().execute("SELECT * FROM metrics");
+		assertNull(recorded.level);
+	}
+
+	private static Connection connection(final CassandraStatementExtras statement) {
+		return (Connection) Proxy.newProxyInstance(CassandraConsistencyTest.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						return method.getName().equals("createStatement") ? statement : null;
+					}
+				});
+	}
+
+	/**
+	 * JDBC statement of the cassandra-jdbc driver keeping the level set last.
+	 */
+	private static class RecordingStatement implements InvocationHandler {
+
+		private org.apache.cassandra.thrift.ConsistencyLevel level;
+
+		CassandraStatementExtras proxy() {
+			return (CassandraStatementExtras) Proxy.newProxyInstance(CassandraConsistencyTest.class.getClassLoader(),
+					new Class<?>[] { CassandraStatementExtras.class }, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getName().equals("setConsistencyLevel")) {
+				level = (org.apache.cassandra.thrift.ConsistencyLevel) args[0];
+			} else if (method.getName().equals("execute")) {
+				return Boolean.TRUE;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeLogHistoryService;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.executor.ExecutorService;
+import liquibase.standin.CassandraStandIn;
+
+public class CassandraHistoryCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		ChangeLogHistoryServiceFactory.reset();
+		ExecutorService.getInstance().reset();
+		CassandraConfiguration.getInstance().setHistoryCache(false);
+	}
+
+	@Test
+	public void readsWhatWasWrittenAtTheSameVersion() throws Exception {
+		CassandraHistoryCache cache = new CassandraHistoryCache(new File(folder.getRoot(), "sub/abc.history"));
+		RanChangeSet full = new RanChangeSet("changelog.xml", "1", "test", CheckSum.parse("7:d41d8cd98f00b204e9800998ecf8427e"),
+				new Date(1000), "tag", ChangeSet.ExecType.EXECUTED, "description", "comments");
+		full.setOrderExecuted(1);
+		RanChangeSet sparse = new RanChangeSet("changelog.xml", "2", "test", null, null, null, ChangeSet.ExecType.MARK_RAN, null, null);
+		cache.write("version", Arrays.asList(full, sparse));
+
+		List<RanChangeSet> read = cache.read("version");
+		assertEquals(2, read.size());
+		assertEquals("1", read.get(0).getId());
+		assertEquals(full.getLastCheckSum(), read.get(0).getLastCheckSum());
+		assertEquals(new Date(1000), read.get(0).getDateExecuted());
+		assertEquals("tag", read.get(0).getTag());
+		assertEquals("comments", read.get(0).getComments());
+		assertEquals(Integer.valueOf(1), read.get(0).getOrderExecuted());
+		assertEquals(ChangeSet.ExecType.MARK_RAN, read.get(1).getExecType());
+		assertNull(read.get(1).getLastCheckSum());
+		assertNull(read.get(1).getDateExecuted());
+		assertNull(read.get(1).getOrderExecuted());
+		assertFalse(new File(folder.getRoot(), "sub/abc.history.tmp").exists());
+
+		assertNull(cache.read("other"));
+		assertNull(cache.read(null));
+	}
+
+	@Test
+	public void unreadableFilesAreMissing() throws Exception {
+		File file = folder.newFile("abc.history");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(new byte[] { 1, 2, 3 });
+		} finally {
+			out.close();
+		}
+		assertNull(new CassandraHistoryCache(file).read("version"));
+		assertNull(new CassandraHistoryCache(new File(folder.getRoot(), "missing.history")).read("version"));
+	}
+
+	@Test
+	public void filesAreNamedAfterKeyspaceAndCluster() {
+		File a = CassandraHistoryCache.forKeyspace(folder.getRoot(), "jdbc:cassandra://a:9160/ks", "my-ks").getFile();
+		File b = CassandraHistoryCache.forKeyspace(folder.getRoot(), "jdbc:cassandra://b:9160/ks", "my-ks").getFile();
+		assertTrue(a.getName(), a.getName().startsWith("my_ks-"));
+		assertFalse(a.equals(b));
+	}
+
+	@Test
+	public void historyIsReadFromTheCacheUntilItChanges() throws Exception {
+		CassandraConfiguration.getInstance().setHistoryCache(true).setHistoryCacheDirectory(folder.getRoot().getPath());
+		CassandraStandIn node = new CassandraStandIn();
+		CassandraDatabase database = node.connect("abc");
+		try {
+			ChangeLogHistoryService service = ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database);
+			service.init();
+			service.setExecType(changeSet("1"), ChangeSet.ExecType.EXECUTED);
+			assertEquals(1, service.getRanChangeSets().size());
+
+			node.clearStatements();
+			assertEquals(1, service.getRanChangeSets().size());
+			assertEquals(0, node.countStatements("^SELECT FILENAME"));
+
+			// a history write changes the version row
+			service.setExecType(changeSet("2"), ChangeSet.ExecType.EXECUTED);
+			node.clearStatements();
+			assertEquals(2, service.getRanChangeSets().size());
+			assertEquals(1, node.countStatements("^SELECT FILENAME"));
+		} finally {
+			database.close();
+			node.shutdown();
+		}
+	}
+
+	private static ChangeSet changeSet(String id) {
+		return new ChangeSet(id, "test", false, false, "changelog.xml", null, null, null);
+	}
+}
@@ -0,0 +1,83 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import liquibase.standin.CassandraStandIn;
+
+public class CassandraKeyspaceMetadataTest {
+
+	@Test
+	public void snapshotIsLoadedOnceUntilDdl() throws Exception {
+		CassandraStandIn node = new CassandraStandIn();
+		CassandraDatabase database = node.connect("abc");
+		try {
+			node.execute("abc", "CREATE TABLE a (id int PRIMARY KEY)", new ArrayList<Object>());
+			CassandraKeyspaceMetadata metadata = database.getKeyspaceMetadata();
+			assertTrue(database.hasTable("a"));
+			assertTrue(database.hasTable("A"));
+			assertFalse(database.hasTable("b"));
+			assertEquals(1, metadata.getLoadCount());
+
+			// DDL of other clients is only seen once the snapshot is dropped
+			node.execute("abc", "CREATE TABLE b (id int PRIMARY KEY)", new ArrayList<Object>());
+			assertFalse(database.hasTable("b"));
+			database.invalidateKeyspaceMetadata();
+			assertTrue(database.hasTable("b"));
+			assertEquals(2, metadata.getLoadCount());
+
+			// DDL run by the extension drops it on its own
+			database.executeCql("-- comment\nCREATE TABLE c (id int PRIMARY KEY)");
+			assertTrue(database.hasTable("c"));
+			assertEquals(3, metadata.getLoadCount());
+			assertEquals(3, node.countStatements("schema_columnfamilies"));
+		} finally {
+			database.close();
+			node.shutdown();
+		}
+	}
+
+	@Test
+	public void schemaChanges() {
+		assertTrue(CassandraKeyspaceMetadata.isSchemaChange("create table a (id int primary key)"));
+		assertTrue(CassandraKeyspaceMetadata.isSchemaChange("/* a */ -- b\n  DROP TABLE a"));
+		assertFalse(CassandraKeyspaceMetadata.isSchemaChange("TRUNCATE a"));
+		assertFalse(CassandraKeyspaceMetadata.isSchemaChange("INSERT INTO a (id) VALUES (1)"));
+		assertFalse(CassandraKeyspaceMetadata.isSchemaChange("UPDATE a SET created = 1 WHERE id = 1"));
+		assertFalse(CassandraKeyspaceMetadata.isSchemaChange(null));
+	}
+
+	@Test
+	public void schemaObjects() {
+		assertEquals(Collections.singleton("ks.a"), CassandraKeyspaceMetadata.getSchemaObjects("CREATE TABLE IF NOT EXISTS A (id int PRIMARY KEY)", "ks"));
+		assertEquals(Collections.singleton("other.Mixed"), CassandraKeyspaceMetadata.getSchemaObjects("ALTER TABLE other.\"Mixed\" ADD v text", "ks"));
+		assertEquals(Collections.singleton("ks.a"), CassandraKeyspaceMetadata.getSchemaObjects("CREATE INDEX a_v ON a (v)", "ks"));
+		assertEquals(Collections.singleton("ks.a"), CassandraKeyspaceMetadata.getSchemaObjects("TRUNCATE a", "ks"));
+		assertEquals(Collections.singleton("other.*"), CassandraKeyspaceMetadata.getSchemaObjects("ALTER KEYSPACE other WITH durable_writes = false", "ks"));
+		assertEquals(Collections.singleton("ks.*"), CassandraKeyspaceMetadata.getSchemaObjects("CREATE TYPE address (street text)", "ks"));
+		assertEquals(Collections.singleton("ks.*"), CassandraKeyspaceMetadata.getSchemaObjects("DROP INDEX a_v", "ks"));
+		assertNull(CassandraKeyspaceMetadata.getSchemaObjects("INSERT INTO a (id) VALUES (1)", "ks"));
+	}
+
+	@Test
+	public void overlappingSchemaObjects() {
+		assertTrue(CassandraKeyspaceMetadata.overlap(set("ks.a", "ks.b"), set("ks.b")));
+		assertFalse(CassandraKeyspaceMetadata.overlap(set("ks.a"), set("ks.b", "other.a")));
+		assertTrue(CassandraKeyspaceMetadata.overlap(set("ks.*"), set("ks.b")));
+		assertTrue(CassandraKeyspaceMetadata.overlap(set("ks.b"), set("ks.*")));
+		assertFalse(CassandraKeyspaceMetadata.overlap(set("ks.*"), set("ks2.b")));
+	}
+
+	private static HashSet<String> set(String... objects) {
+		return new HashSet<String>(Arrays.asList(objects));
+	}
+}
@@ -0,0 +1,47 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import liquibase.exception.DatabaseException;
+
+public class CassandraNativeConnectionTest {
+
+	@Test
+	public void parameterValuesAreDecoded() {
+		Map<String, String> parameters = CassandraNativeConnection.parseQuery("user=admin&password=p%40ss+w%26rd&empty=");
+		assertEquals("admin", parameters.get("user"));
+		assertEquals("p@ss w&rd", parameters.get("password"));
+		assertEquals("", parameters.get("empty"));
+		assertTrue(CassandraNativeConnection.parseQuery(null).isEmpty());
+	}
+
+	@Test
+	public void credentialsAreStrippedFromMessages() {
+		assertEquals("cql://a,b:9042/abc", CassandraNativeConnection.withoutCredentials("cql://a,b:9042/abc?user=u&password=secret"));
+		assertEquals("cql://a/abc?readConsistency=QUORUM",
+				CassandraNativeConnection.withoutCredentials("cql://a/abc?password=secret&readConsistency=QUORUM&USER=u"));
+		assertEquals("cql://a/abc", CassandraNativeConnection.withoutCredentials("cql://a/abc"));
+		assertNull(CassandraNativeConnection.withoutCredentials(null));
+	}
+
+	@Test
+	public void failedConnectionsDoNotShowThePassword() {
+		for (String url : new String[] { "cql://127.0.0.1:1/abc?user=u&password=secret", "cql://127.0.0.1:port/abc?password=secret" }) {
+			try {
+				new CassandraNativeConnection(url);
+				fail(url);
+			} catch (DatabaseException e) {
+				assertFalse(e.getMessage(), e.getMessage().contains("secret"));
+				assertTrue(e.getMessage(), e.getMessage().contains("cql://127.0.0.1:"));
+			}
+		}
+	}
+}
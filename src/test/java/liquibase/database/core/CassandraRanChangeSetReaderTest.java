@@ -0,0 +1,117 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.RanChangeSet;
+import liquibase.configuration.CassandraConfiguration;
+import liquibase.executor.ExecutorService;
+import liquibase.standin.CassandraStandIn;
+
+public class CassandraRanChangeSetReaderTest {
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+
+	@Before
+	public void setUp() throws Exception {
+		node = new CassandraStandIn();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ChangeLogHistoryServiceFactory.reset();
+		ExecutorService.getInstance().reset();
+		CassandraConfiguration.getInstance().setHistoryLayout(null);
+		database.close();
+		node.shutdown();
+	}
+
+	@Test
+	public void emptyHistory() throws Exception {
+		connect();
+		CassandraRanChangeSetReader reader = new CassandraRanChangeSetReader(database, 10);
+
+		assertFalse(reader.hasNext());
+		assertEquals(0, reader.getRowCount());
+		assertEquals(1, reader.getPageCount());
+	}
+
+	@Test
+	public void readsOnePagePerRoundTrip() throws Exception {
+		connect();
+		for (int i = 1; i <= 8; i++) {
+			insert("INSERT INTO databasechangelog (ID, AUTHOR, FILENAME, MD5SUM, DATEEXECUTED, ORDEREXECUTED, EXECTYPE) VALUES (?, ?, ?, ?, ?, ?, ?)",
+					String.valueOf(i), i);
+		}
+
+		CassandraRanChangeSetReader reader = new CassandraRanChangeSetReader(database, 3);
+		List<String> ids = new ArrayList<String>();
+		while (reader.hasNext()) {
+			RanChangeSet ranChangeSet = reader.next();
+			ids.add(ranChangeSet.getId());
+			assertEquals("test", ranChangeSet.getAuthor());
+			assertEquals(Integer.valueOf(ranChangeSet.getId()), ranChangeSet.getOrderExecuted());
+		}
+		assertEquals(8, ids.size());
+		assertEquals(8, new HashSet<String>(ids).size());
+		assertEquals(3, reader.getPageCount());
+		assertEquals(3, node.countStatements("^SELECT FILENAME.* LIMIT 3$"));
+	}
+
+	@Test
+	public void bucketedHistoryIsReadInOrderAcrossBuckets() throws Exception {
+		CassandraConfiguration.getInstance().setHistoryLayout("v2");
+		connect();
+		int[] orderExecuted = { 1001, 3, 999, 1000, 1 };
+		for (int value : orderExecuted) {
+			insert("INSERT INTO databasechangelog_v2 (ID, AUTHOR, FILENAME, MD5SUM, DATEEXECUTED, ORDEREXECUTED, EXECTYPE, BUCKET) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+					"id" + value, value, CassandraHistoryLayout.getBucket(value));
+		}
+		node.execute("abc", "INSERT INTO databasechangeloghead (NAME, VALUE) VALUES ('bucket', '1')", new ArrayList<Object>());
+
+		for (int fetchSize : new int[] { 1, 2, 1000 }) {
+			CassandraRanChangeSetReader reader = new CassandraRanChangeSetReader(database, fetchSize);
+			List<Integer> read = new ArrayList<Integer>();
+			while (reader.hasNext()) {
+				read.add(reader.next().getOrderExecuted());
+			}
+			assertEquals("fetch size " + fetchSize, Arrays.asList(1, 3, 999, 1000, 1001), read);
+		}
+	}
+
+	@Test
+	public void fetchSizeMustBePositive() throws Exception {
+		connect();
+		try {
+			new CassandraRanChangeSetReader(database, 0);
+			fail("fetch size 0 should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private void connect() throws Exception {
+		database = node.connect("abc");
+		ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database).init();
+		node.clearStatements();
+	}
+
+	private void insert(String cql, String id, int orderExecuted, Object... more) throws Exception {
+		List<Object> values = new ArrayList<Object>(Arrays.<Object>asList(id, "test", "changelog.xml", null, new Date(), orderExecuted, "EXECUTED"));
+		values.addAll(Arrays.asList(more));
+		node.execute("abc", cql, values);
+	}
+}
@@ -0,0 +1,117 @@
+package liquibase.database.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.executor.ExecutorService;
+import liquibase.standin.CassandraStandIn;
+
+public class CassandraSequenceAllocatorTest {
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+
+	@Before
+	public void setUp() throws Exception {
+		node = new CassandraStandIn();
+		database = node.connect("abc");
+		ChangeLogHistoryServiceFactory.getInstance().getChangeLogService(database).init();
+		for (int orderExecuted : new int[] { 3, 5, 1 }) {
+			node.execute("abc", "INSERT INTO databasechangelog (ID, AUTHOR, FILENAME, DATEEXECUTED, ORDEREXECUTED, EXECTYPE) VALUES (?, ?, ?, ?, ?, ?)",
+					Arrays.<Object>asList("id" + orderExecuted, "test", "changelog.xml", new Date(), orderExecuted, "EXECUTED"));
+		}
+		node.clearStatements();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ChangeLogHistoryServiceFactory.reset();
+		ExecutorService.getInstance().reset();
+		database.close();
+		node.shutdown();
+	}
+
+	@Test
+	public void withoutHeadRowValuesFollowTheHighestInTheTable() throws Exception {
+		CassandraSequenceAllocator allocator = new CassandraSequenceAllocator(database, false, 0);
+		assertEquals(6, allocator.next());
+		assertEquals(7, allocator.next());
+		assertEquals(1, node.countStatements("^SELECT ORDEREXECUTED FROM"));
+		assertEquals(0, allocator.getReservationCount());
+	}
+
+	@Test
+	public void headRowSeedsTheSequence() throws Exception {
+		node.execute("abc", "INSERT INTO databasechangeloghead (NAME, VALUE) VALUES ('orderexecuted', '20')", Collections.emptyList());
+		CassandraSequenceAllocator allocator = new CassandraSequenceAllocator(database, false, 0);
+		assertEquals(20, allocator.next());
+		assertEquals(0, node.countStatements("^SELECT ORDEREXECUTED FROM"));
+	}
+
+	@Test
+	public void reservedBlocksAreNeverShared() throws Exception {
+		final CassandraSequenceAllocator first = new CassandraSequenceAllocator(database, true, 3);
+		CassandraDatabase other = node.connect("abc");
+		final CassandraSequenceAllocator second = new CassandraSequenceAllocator(other, true, 3);
+		final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (final CassandraSequenceAllocator allocator : new CassandraSequenceAllocator[] { first, second, first, second }) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 10; i++) {
+							values.add(allocator.next());
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		other.close();
+
+		assertEquals(Collections.emptyList(), errors);
+		Set<Integer> distinct = new HashSet<Integer>(values);
+		assertEquals(40, distinct.size());
+		assertEquals(6, (int) Collections.min(distinct));
+		int reserved = first.getReservationCount() + second.getReservationCount();
+		assertEquals(reserved * 3 + 6, Integer.parseInt((String) node.query("abc",
+				"SELECT value FROM databasechangeloghead WHERE name = 'orderexecutedreserved'").get(0).get("value")));
+		// the row history inserts write is never touched by a lightweight transaction
+		assertEquals(0, node.query("abc", "SELECT value FROM databasechangeloghead WHERE name = 'orderexecuted'").size());
+		assertEquals(0, node.countStatements("'orderexecuted'.* IF "));
+	}
+
+	@Test
+	public void firstReservationStartsAtTheHeadRow() throws Exception {
+		node.execute("abc", "INSERT INTO databasechangeloghead (NAME, VALUE) VALUES ('orderexecuted', '20')", Collections.emptyList());
+		CassandraSequenceAllocator allocator = new CassandraSequenceAllocator(database, true, 5);
+		assertEquals(20, allocator.next());
+		assertEquals("25", node.query("abc", "SELECT value FROM databasechangeloghead WHERE name = 'orderexecutedreserved'").get(0).get("value"));
+		assertEquals("20", node.query("abc", "SELECT value FROM databasechangeloghead WHERE name = 'orderexecuted'").get(0).get("value"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void reservedBlocksMustHoldAValue() {
+		new CassandraSequenceAllocator(database, true, 0);
+	}
+}
@@ -0,0 +1,71 @@
+package liquibase.datatype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import liquibase.datatype.core.IntType;
+import liquibase.datatype.core.NVarcharType;
+import liquibase.datatype.core.TimestampType;
+import liquibase.datatype.core.UnknownType;
+import liquibase.datatype.core.XMLType;
+import liquibase.exception.UnexpectedLiquibaseException;
+
+public class CassandraTypeMapperTest {
+
+	private final CassandraTypeMapper mapper = new CassandraTypeMapper();
+
+	@Test
+	public void knownTypesMapByClass() {
+		assertEquals("int", mapper.toCql(new IntType()));
+		// subclasses without a mapping of their own use their superclass'
+		assertEquals("timestamp", mapper.toCql(new TimestampType()));
+		assertEquals("varchar", mapper.toCql(new NVarcharType()));
+
+		mapper.register(TimestampType.class, "bigint");
+		assertEquals("bigint", mapper.toCql(new TimestampType()));
+	}
+
+	@Test
+	public void unknownTypesAreCheckedAgainstTheCqlGrammar() {
+		assertEquals("timeuuid", mapper.toCql("timeuuid"));
+		assertEquals("map<text, int>", mapper.toCql("map< text ,int >"));
+		assertEquals("map<text, frozen<address>>", mapper.toCql("MAP<text,FROZEN<address>>"));
+		assertEquals("tuple<int, text, uuid>", mapper.toCql("tuple<int,text,uuid>"));
+		assertEquals("frozen<\"Address\">", mapper.toCql("frozen<\"Address\">"));
+		assertEquals("counter", mapper.toCql(unknown("counter")));
+	}
+
+	@Test
+	public void registeredNamesAreReplaced() {
+		mapper.register("JSON", "text");
+		assertEquals("text", mapper.toCql("json"));
+		assertEquals("list<text>", mapper.toCql("list<Json>"));
+	}
+
+	@Test
+	public void unsupportedTypesFail() {
+		for (String type : new String[] { "address", "set<address>", "map<text>", "list<int", "list<int>>", "widget<int>", "int int", "" }) {
+			try {
+				mapper.toCql(type);
+				fail(type);
+			} catch (UnexpectedLiquibaseException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("not a supported type"));
+			}
+		}
+		try {
+			mapper.toCql(new XMLType());
+			fail("xml has no CQL type");
+		} catch (UnexpectedLiquibaseException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("not a supported type"));
+		}
+	}
+
+	private static LiquibaseDataType unknown(String definition) {
+		UnknownType type = new UnknownType(definition);
+		type.finishInitialization(definition);
+		return type;
+	}
+}
@@ -0,0 +1,57 @@
+package liquibase.executor;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.database.core.CassandraDatabase;
+import liquibase.sql.visitor.AppendSqlVisitor;
+import liquibase.sql.visitor.SqlVisitor;
+import liquibase.standin.CassandraStandIn;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.RawSqlStatement;
+import liquibase.statement.core.UpdateStatement;
+
+public class CassandraNativeExecutorTest {
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+	private CassandraNativeExecutor executor;
+
+	@Before
+	public void setUp() throws Exception {
+		node = new CassandraStandIn();
+		database = node.connect("abc");
+		executor = new CassandraNativeExecutor(database);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		database.close();
+		node.shutdown();
+	}
+
+	@Test
+	public void liquibaseTablesAreBound() {
+		for (String table : new String[] { "DATABASECHANGELOG", "databasechangelog_v2", "databasechangeloghead", "DATABASECHANGELOGLOCK" }) {
+			assertTrue(table, executor.isBound(new InsertStatement(null, "abc", table), null));
+			assertTrue(table, executor.isBound(new UpdateStatement(null, "abc", table), Collections.<SqlVisitor>emptyList()));
+		}
+	}
+
+	@Test
+	public void userStatementsAreSentAsPlainCql() {
+		assertFalse(executor.isBound(new InsertStatement(null, "abc", "orders"), null));
+		assertFalse(executor.isBound(new UpdateStatement(null, "abc", "orders").setWhereClause("id = 1"), null));
+		assertFalse(executor.isBound(new RawSqlStatement("UPDATE databasechangeloglock SET locked = false WHERE id = 1"), null));
+		// visitors rewrite the generated CQL
+		AppendSqlVisitor visitor = new AppendSqlVisitor();
+		visitor.setValue(" USING TTL 10");
+		assertFalse(executor.isBound(new InsertStatement(null, "abc", "databasechangelog"), Collections.<SqlVisitor>singletonList(visitor)));
+	}
+}
@@ -0,0 +1,91 @@
+package liquibase.sqlgenerator.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import liquibase.database.core.CassandraDatabase;
+import liquibase.datatype.core.DoubleType;
+import liquibase.datatype.core.IntType;
+import liquibase.datatype.core.TimestampType;
+import liquibase.statement.core.CreateTableStatementCassandra;
+
+public class CreateTableGeneratorCassandraTest {
+
+	private final CassandraDatabase database = new CassandraDatabase();
+	private final CreateTableGeneratorCassandra generator = new CreateTableGeneratorCassandra();
+
+	@Test
+	public void firstPrimaryKeyColumnIsThePartitionKeyByDefault() {
+		CreateTableStatementCassandra statement = new CreateTableStatementCassandra(null, "ks", "events");
+		statement.addPrimaryKeyColumn("id", new IntType(), null, null, null);
+		statement.addPrimaryKeyColumn("time", new TimestampType(), null, null, null);
+
+		assertEquals("CREATE TABLE ks.events (id int, time timestamp, PRIMARY KEY (id, time))", generate(statement));
+	}
+
+	@Test
+	public void compositePartitionKeyWithClusteringOrderAndOptions() {
+		CreateTableStatementCassandra statement = new CreateTableStatementCassandra(null, "ks", "raw_metrics", "raw data, it's big");
+		statement.addPrimaryKeyColumn("schedule_id", new IntType(), null, null, null);
+		statement.addPrimaryKeyColumn("day", new IntType(), null, null, null);
+		statement.addPrimaryKeyColumn("time", new TimestampType(), null, null, null);
+		statement.addColumn("value", new DoubleType());
+		statement.setPartitionKeyColumns(Arrays.asList("schedule_id", "day"))
+				.addClusteringOrder("time", "desc")
+				.setTableOption("default_time_to_live", "86400")
+				.setTableOption("compaction", "{'class': 'TimeWindowCompactionStrategy'}");
+
+		assertEquals("CREATE TABLE ks.raw_metrics (schedule_id int, day int, time timestamp, value double, "
+				+ "PRIMARY KEY ((schedule_id, day), time)) WITH CLUSTERING ORDER BY (time DESC) "
+				+ "AND default_time_to_live = 86400 AND compaction = {'class': 'TimeWindowCompactionStrategy'} "
+				+ "AND comment = 'raw data, it''s big'", generate(statement));
+	}
+
+	@Test
+	public void commentOptionReplacesTheRemarks() {
+		CreateTableStatementCassandra statement = new CreateTableStatementCassandra(null, "ks", "events", "remarks");
+		statement.addPrimaryKeyColumn("id", new IntType(), null, null, null);
+		statement.setTableOption("comment", "'option'");
+
+		assertEquals("CREATE TABLE ks.events (id int, PRIMARY KEY (id)) WITH comment = 'option'", generate(statement));
+	}
+
+	@Test
+	public void partitionKeyColumnsMustBeColumns() {
+		CreateTableStatementCassandra statement = new CreateTableStatementCassandra(null, "ks", "events");
+		statement.addPrimaryKeyColumn("id", new IntType(), null, null, null);
+		statement.setPartitionKeyColumns(Arrays.asList("id", "bucket"));
+
+		assertEquals(Collections.singletonList("Partition key column bucket is not a column of table events"),
+				generator.validate(statement, database, null).getErrorMessages());
+	}
+
+	@Test
+	public void tableNeedsAPrimaryKey() {
+		CreateTableStatementCassandra statement = new CreateTableStatementCassandra(null, "ks", "events");
+		statement.addColumn("id", new IntType());
+
+		assertEquals(Collections.singletonList("Table events needs a primary key"),
+				generator.validate(statement, database, null).getErrorMessages());
+	}
+
+	@Test
+	public void clusteringOrderNeedsAClusteringColumnAndDirection() {
+		CreateTableStatementCassandra statement = new CreateTableStatementCassandra(null, "ks", "events");
+		statement.addPrimaryKeyColumn("id", new IntType(), null, null, null);
+		statement.addPrimaryKeyColumn("time", new TimestampType(), null, null, null);
+		statement.addClusteringOrder("id", "ASC").addClusteringOrder("time", "UP");
+
+		assertEquals(Arrays.asList("Clustering order column id is not a clustering column of table events",
+				"Clustering order of time must be ASC or DESC, not UP"),
+				generator.validate(statement, database, null).getErrorMessages());
+	}
+
+	private String generate(CreateTableStatementCassandra statement) {
+		return generator.generateSql(statement, database, null)[0].toSql();
+	}
+}
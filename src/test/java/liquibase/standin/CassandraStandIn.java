@@ -0,0 +1,1367 @@
+package liquibase.standin;
+
+import java.math.BigDecimal;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import liquibase.database.core.CassandraDatabase;
+import liquibase.database.core.CassandraValueConverter;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.standin.CqlParser.AlterTable;
+import liquibase.standin.CqlParser.Assignment;
+import liquibase.standin.CqlParser.Batch;
+import liquibase.standin.CqlParser.CreateKeyspace;
+import liquibase.standin.CqlParser.CreateTable;
+import liquibase.standin.CqlParser.Delete;
+import liquibase.standin.CqlParser.DropKeyspace;
+import liquibase.standin.CqlParser.DropTable;
+import liquibase.standin.CqlParser.Insert;
+import liquibase.standin.CqlParser.Modification;
+import liquibase.standin.CqlParser.Relation;
+import liquibase.standin.CqlParser.Select;
+import liquibase.standin.CqlParser.Selector;
+import liquibase.standin.CqlParser.Statement;
+import liquibase.standin.CqlParser.Truncate;
+import liquibase.standin.CqlParser.Update;
+import liquibase.standin.CqlParser.Use;
+
+/**
+ * In-process stand-in for a single Cassandra node, so the extension can be
+ * run end to end without a cluster. It keeps keyspaces and tables in memory
+ * and implements the parts of CQL the extension relies on: partition and
+ * clustering keys with rows in token order, <code>token()</code> ranges,
+ * TTLs, lightweight transactions, batches and the
+ * <code>system.schema_*</code>, <code>system.local</code> and
+ * <code>system.peers</code> tables. Connect with {@link #connect(String)}, or
+ * over JDBC with the url of {@link #getUrl(String)}.
+ * <p>
+ * Latency and failures can be injected per statement pattern, and the clock
+ * TTLs are measured with can be moved forward, so slow nodes, timeouts and
+ * expiring leases can be tested offline. Every statement is logged.
+ */
+public class CassandraStandIn {
+
+	/** Error message of a timed out write, as the driver reports it. */
+	public static final String WRITE_TIMEOUT = "Operation timed out - received only 0 responses.";
+	/** Error message of a statement failed before it ran. */
+	public static final String UNAVAILABLE = "Cannot achieve consistency level ONE";
+
+	private static final AtomicInteger COUNT = new AtomicInteger();
+	private static final Map<String, String> MARSHAL_TYPES = new LinkedHashMap<String, String>();
+
+	static {
+		MARSHAL_TYPES.put("ascii", "AsciiType");
+		MARSHAL_TYPES.put("bigint", "LongType");
+		MARSHAL_TYPES.put("blob", "BytesType");
+		MARSHAL_TYPES.put("boolean", "BooleanType");
+		MARSHAL_TYPES.put("counter", "CounterColumnType");
+		MARSHAL_TYPES.put("date", "SimpleDateType");
+		MARSHAL_TYPES.put("decimal", "DecimalType");
+		MARSHAL_TYPES.put("double", "DoubleType");
+		MARSHAL_TYPES.put("float", "FloatType");
+		MARSHAL_TYPES.put("inet", "InetAddressType");
+		MARSHAL_TYPES.put("int", "Int32Type");
+		MARSHAL_TYPES.put("smallint", "ShortType");
+		MARSHAL_TYPES.put("text", "UTF8Type");
+		MARSHAL_TYPES.put("varchar", "UTF8Type");
+		MARSHAL_TYPES.put("time", "TimeType");
+		MARSHAL_TYPES.put("timestamp", "TimestampType");
+		MARSHAL_TYPES.put("timeuuid", "TimeUUIDType");
+		MARSHAL_TYPES.put("tinyint", "ByteType");
+		MARSHAL_TYPES.put("uuid", "UUIDType");
+		MARSHAL_TYPES.put("varint", "IntegerType");
+		MARSHAL_TYPES.put("list", "ListType");
+		MARSHAL_TYPES.put("set", "SetType");
+		MARSHAL_TYPES.put("map", "MapType");
+		MARSHAL_TYPES.put("frozen", "FrozenType");
+	}
+
+	private final String name;
+	private final Map<String, Map<String, Table>> keyspaces = new TreeMap<String, Map<String, Table>>();
+	private final List<Fault> faults = new CopyOnWriteArrayList<Fault>();
+	private final List<String> statements = Collections.synchronizedList(new ArrayList<String>());
+	private final AtomicLong statementCount = new AtomicLong();
+	private volatile long latency;
+	private volatile long clockOffset;
+	private volatile UUID schemaVersion = UUID.randomUUID();
+	private long lastWriteTime;
+
+	public CassandraStandIn() {
+		this.name = "node" + COUNT.incrementAndGet();
+		CassandraStandInDriver.register(name, this);
+	}
+
+	/**
+	 * JDBC url of a connection to the keyspace.
+	 */
+	public String getUrl(String keyspace) {
+		return CassandraStandInDriver.URL_PREFIX + name + "/" + keyspace;
+	}
+
+	/**
+	 * A database connected to the keyspace over JDBC, creating the keyspace
+	 * if it does not exist.
+	 */
+	public CassandraDatabase connect(String keyspace) throws DatabaseException {
+		createKeyspace(keyspace);
+		CassandraDatabase database = new CassandraDatabase();
+		try {
+			database.setConnection(new JdbcConnection(DriverManager.getConnection(getUrl(keyspace))));
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+		database.setDefaultSchemaName(keyspace);
+		database.setLiquibaseSchemaName(keyspace);
+		return database;
+	}
+
+	/**
+	 * Stops answering connections opened with {@link #getUrl(String)}.
+	 */
+	public void shutdown() {
+		CassandraStandInDriver.unregister(name);
+	}
+
+	public synchronized void createKeyspace(String keyspace) {
+		if (!keyspaces.containsKey(keyspace)) {
+			keyspaces.put(keyspace, new TreeMap<String, Table>());
+			schemaChanged();
+		}
+	}
+
+	public synchronized boolean hasTable(String keyspace, String table) {
+		Map<String, Table> tables = keyspaces.get(keyspace);
+		return tables != null && tables.containsKey(table);
+	}
+
+	/**
+	 * Runs a statement.
+	 *
+	 * @param keyspace keyspace of tables named without one, may be null
+	 * @param parameters values of the bind markers, may be null
+	 * @throws SQLException if the statement is invalid or fails, or an injected failure matches it
+	 */
+	public Result execute(String keyspace, String cql, List<?> parameters) throws SQLException {
+		statementCount.incrementAndGet();
+		statements.add(cql);
+		long delay = latency;
+		Fault after = null;
+		for (Fault fault : faults) {
+			if (fault.pattern.matcher(cql).find() && fault.take()) {
+				if (fault.latency > 0) {
+					delay += fault.latency;
+				} else if (fault.afterExecution) {
+					after = fault;
+				} else {
+					throw new SQLException(fault.message);
+				}
+			}
+		}
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted", e);
+			}
+		}
+		Statement statement = CqlParser.parse(cql, parameters);
+		Result result;
+		synchronized (this) {
+			result = execute(keyspace, statement);
+		}
+		if (after != null) {
+			throw new SQLException(after.message);
+		}
+		return result;
+	}
+
+	/**
+	 * Rows of a query, with the column names Cassandra labels them with.
+	 */
+	public List<Map<String, Object>> query(String keyspace, String cql) throws SQLException {
+		return execute(keyspace, cql, null).toMaps();
+	}
+
+	// --- injected faults
+
+	/**
+	 * Delays every statement.
+	 */
+	public CassandraStandIn setLatency(long millis) {
+		this.latency = millis;
+		return this;
+	}
+
+	/**
+	 * Delays statements matching the expression by another
+	 * <code>millis</code>.
+	 */
+	public CassandraStandIn addLatency(String regex, long millis) {
+		faults.add(new Fault(regex, -1, false, millis, null));
+		return this;
+	}
+
+	/**
+	 * Fails the next <code>times</code> statements matching the expression
+	 * without running them, or all of them if <code>times</code> is
+	 * negative.
+	 */
+	public CassandraStandIn failOn(String regex, int times) {
+		faults.add(new Fault(regex, times, false, 0, UNAVAILABLE));
+		return this;
+	}
+
+	/**
+	 * Runs the next <code>times</code> statements matching the expression but
+	 * reports a write timeout, like a coordinator that did not hear back from
+	 * the replica in time.
+	 */
+	public CassandraStandIn timeOutOn(String regex, int times) {
+		faults.add(new Fault(regex, times, true, 0, WRITE_TIMEOUT));
+		return this;
+	}
+
+	public CassandraStandIn clearFaults() {
+		faults.clear();
+		latency = 0;
+		return this;
+	}
+
+	// --- clock and statistics
+
+	/**
+	 * Moves the clock TTLs expire by forward.
+	 */
+	public CassandraStandIn advanceClock(long millis) {
+		clockOffset += millis;
+		return this;
+	}
+
+	public long currentTimeMillis() {
+		return System.currentTimeMillis() + clockOffset;
+	}
+
+	public long getStatementCount() {
+		return statementCount.get();
+	}
+
+	/**
+	 * Statements run so far, oldest first.
+	 */
+	public List<String> getStatements() {
+		synchronized (statements) {
+			return new ArrayList<String>(statements);
+		}
+	}
+
+	/**
+	 * Number of logged statements matching the expression.
+	 */
+	public int countStatements(String regex) {
+		Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+		int count = 0;
+		for (String statement : getStatements()) {
+			if (pattern.matcher(statement).find()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public void clearStatements() {
+		statements.clear();
+	}
+
+	public UUID getSchemaVersion() {
+		return schemaVersion;
+	}
+
+	// --- execution
+
+	private Result execute(String keyspace, Statement statement) throws SQLException {
+		if (statement instanceof Select) {
+			return select(keyspace, (Select) statement);
+		} else if (statement instanceof Modification) {
+			return modify(keyspace, Collections.singletonList((Modification) statement));
+		} else if (statement instanceof Batch) {
+			return modify(keyspace, ((Batch) statement).statements);
+		} else if (statement instanceof Use) {
+			if (!keyspaces.containsKey(statement.keyspace)) {
+				throw new SQLException("Keyspace '" + statement.keyspace + "' does not exist");
+			}
+			Result result = new Result(Collections.<String>emptyList());
+			result.keyspace = statement.keyspace;
+			return result;
+		}
+		if (statement instanceof CreateKeyspace) {
+			if (keyspaces.containsKey(statement.keyspace)) {
+				if (!((CreateKeyspace) statement).ifNotExists) {
+					throw new SQLException("Cannot add existing keyspace \"" + statement.keyspace + "\"");
+				}
+				return Result.NONE;
+			}
+			keyspaces.put(statement.keyspace, new TreeMap<String, Table>());
+		} else if (statement instanceof DropKeyspace) {
+			if (keyspaces.remove(statement.keyspace) == null && !((DropKeyspace) statement).ifExists) {
+				throw new SQLException("Cannot drop non existing keyspace '" + statement.keyspace + "'.");
+			}
+		} else if (statement instanceof CreateTable) {
+			CreateTable create = (CreateTable) statement;
+			Map<String, Table> tables = tables(keyspace, statement);
+			if (tables.containsKey(create.table)) {
+				if (!create.ifNotExists) {
+					throw new SQLException("Cannot add already existing column family \"" + create.table + "\" to keyspace \""
+							+ keyspace(keyspace, statement) + "\"");
+				}
+				return Result.NONE;
+			}
+			tables.put(create.table, new Table(keyspace(keyspace, statement), create));
+		} else if (statement instanceof DropTable) {
+			if (tables(keyspace, statement).remove(statement.table) == null && !((DropTable) statement).ifExists) {
+				throw new SQLException("Cannot drop non existing column family '" + statement.table + "' in keyspace '"
+						+ keyspace(keyspace, statement) + "'.");
+			}
+		} else if (statement instanceof AlterTable) {
+			alter(table(keyspace, statement), (AlterTable) statement);
+		} else if (statement instanceof Truncate) {
+			table(keyspace, statement).rows.clear();
+			return Result.NONE;
+		}
+		schemaChanged();
+		return Result.NONE;
+	}
+
+	private void alter(Table table, AlterTable alter) throws SQLException {
+		for (Map.Entry<String, String> column : alter.addedColumns.entrySet()) {
+			if (table.types.containsKey(column.getKey())) {
+				throw new SQLException("Invalid column name " + column.getKey() + " because it conflicts with an existing column");
+			}
+			table.types.put(column.getKey(), column.getValue().toLowerCase());
+		}
+		for (String column : alter.droppedColumns) {
+			if (table.isKey(column)) {
+				throw new SQLException("Cannot drop PRIMARY KEY part " + column);
+			}
+			table.column(column);
+			table.types.remove(column);
+			for (Row row : table.rows.values()) {
+				row.cells.remove(column);
+			}
+		}
+		for (Map.Entry<String, String> rename : alter.renamedColumns.entrySet()) {
+			int index = table.clusteringColumns.indexOf(rename.getKey());
+			if (index < 0 && !table.partitionKey.contains(rename.getKey())) {
+				throw new SQLException("Cannot rename non PRIMARY KEY part " + rename.getKey());
+			}
+			Map<String, String> types = new LinkedHashMap<String, String>();
+			for (Map.Entry<String, String> column : table.types.entrySet()) {
+				types.put(column.getKey().equals(rename.getKey()) ? rename.getValue() : column.getKey(), column.getValue());
+			}
+			table.types.clear();
+			table.types.putAll(types);
+			Collections.replaceAll(table.partitionKey, rename.getKey(), rename.getValue());
+			Collections.replaceAll(table.clusteringColumns, rename.getKey(), rename.getValue());
+		}
+	}
+
+	private void schemaChanged() {
+		schemaVersion = UUID.randomUUID();
+	}
+
+	// --- writes
+
+	/**
+	 * Applies a statement, or the statements of a batch. Conditions of a
+	 * batch are all checked before anything is written.
+	 */
+	private Result modify(String keyspace, List<Modification> modifications) throws SQLException {
+		long now = currentTimeMillis();
+		long writeTime = nextWriteTime(now);
+		Result conditional = null;
+		List<Modification> conditions = new ArrayList<Modification>();
+		for (Modification modification : modifications) {
+			if (modification.isConditional()) {
+				conditions.add(modification);
+			}
+		}
+		for (Modification modification : conditions) {
+			Table table = table(keyspace, modification);
+			for (RowKey key : table.keys(modification, !(modification instanceof Delete))) {
+				Result failed = checkConditions(table, key, modification, now);
+				if (failed != null) {
+					return failed;
+				}
+			}
+		}
+		if (!conditions.isEmpty()) {
+			conditional = new Result(Collections.singletonList("[applied]"));
+			conditional.rows.add(new Object[] { Boolean.TRUE });
+		}
+		for (Modification modification : modifications) {
+			Table table = table(keyspace, modification);
+			if (modification instanceof Insert) {
+				insert(table, (Insert) modification, now, writeTime);
+			} else if (modification instanceof Update) {
+				update(table, (Update) modification, now, writeTime);
+			} else {
+				delete(table, (Delete) modification, now);
+			}
+		}
+		return conditional == null ? Result.NONE : conditional;
+	}
+
+	/**
+	 * The result of a lightweight transaction that does not apply, or null if
+	 * its conditions hold.
+	 */
+	private Result checkConditions(Table table, RowKey key, Modification modification, long now) throws SQLException {
+		Row row = table.rows.get(key);
+		boolean exists = row != null && row.isLive(now);
+		boolean applies;
+		if (modification.ifNotExists) {
+			applies = !exists;
+		} else if (modification.ifExists) {
+			applies = exists;
+		} else {
+			applies = true;
+			for (Relation condition : modification.conditions) {
+				String column = condition.columns.get(0);
+				Object current = exists ? table.value(key, row, column, now) : null;
+				if (!matches(table, column, current, condition)) {
+					applies = false;
+				}
+			}
+		}
+		if (applies) {
+			return null;
+		}
+		List<String> columns = new ArrayList<String>();
+		columns.add("[applied]");
+		if (exists && modification.ifNotExists) {
+			columns.addAll(table.types.keySet());
+		} else if (exists && !modification.ifExists) {
+			for (Relation condition : modification.conditions) {
+				if (!columns.contains(condition.columns.get(0))) {
+					columns.add(condition.columns.get(0));
+				}
+			}
+		}
+		Result result = new Result(columns);
+		Object[] values = new Object[columns.size()];
+		values[0] = Boolean.FALSE;
+		for (int i = 1; i < values.length; i++) {
+			values[i] = table.value(key, row, columns.get(i), now);
+		}
+		result.rows.add(values);
+		return result;
+	}
+
+	private void insert(Table table, Insert insert, long now, long writeTime) throws SQLException {
+		for (RowKey key : table.keys(insert, true)) {
+			Row row = table.row(key, now);
+			long expiresAt = expiry(insert.ttl, now);
+			row.marker = expiresAt;
+			for (Map.Entry<String, Object> value : insert.values.entrySet()) {
+				if (!table.isKey(value.getKey())) {
+					row.set(value.getKey(), table.convert(value.getKey(), value.getValue()), expiresAt, writeTime);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void update(Table table, Update update, long now, long writeTime) throws SQLException {
+		long expiresAt = expiry(update.ttl, now);
+		for (RowKey key : table.keys(update, true)) {
+			Row row = table.row(key, now);
+			for (Assignment assignment : update.assignments) {
+				String column = assignment.column;
+				if (table.isKey(column)) {
+					throw new SQLException("PRIMARY KEY part " + column + " found in SET part");
+				}
+				String type = table.column(column);
+				Cell cell = row.live(column, now);
+				Object current = cell == null ? null : cell.value;
+				Object value;
+				if (assignment.element != null) {
+					value = setElement(table, column, type, current, assignment);
+				} else if (assignment.operator.equals("=")) {
+					value = table.convert(column, assignment.value);
+				} else {
+					Object operand = table.convert(column, assignment.value);
+					if (type.startsWith("counter") || current instanceof Number || operand instanceof Number) {
+						long delta = operand == null ? 0 : ((Number) operand).longValue();
+						long base = current == null ? 0 : ((Number) current).longValue();
+						value = assignment.operator.equals("+") ? base + delta : base - delta;
+					} else {
+						value = combine(current, operand, assignment);
+					}
+				}
+				row.set(column, value, expiresAt, writeTime);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Object setElement(Table table, String column, String type, Object current, Assignment assignment) throws SQLException {
+		String inner = type.substring(type.indexOf('<') + 1, type.lastIndexOf('>'));
+		if (type.startsWith("map")) {
+			String[] types = splitTypes(inner);
+			Map<Object, Object> map = current == null ? new LinkedHashMap<Object, Object>() : new LinkedHashMap<Object, Object>((Map<Object, Object>) current);
+			Object key = convert(types[0], assignment.element);
+			Object value = convert(types[1], assignment.value);
+			if (value == null) {
+				map.remove(key);
+			} else {
+				map.put(key, value);
+			}
+			return map.isEmpty() ? null : map;
+		} else if (type.startsWith("list")) {
+			List<Object> list = current == null ? new ArrayList<Object>() : new ArrayList<Object>((List<Object>) current);
+			int index = ((Number) assignment.element).intValue();
+			if (index < 0 || index >= list.size()) {
+				throw new SQLException("List index " + index + " out of bound, list has size " + list.size());
+			}
+			list.set(index, convert(inner, assignment.value));
+			return list;
+		}
+		throw new SQLException("Invalid operation (" + column + "[" + assignment.element + "] = ...) for non collection column " + column);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object combine(Object current, Object operand, Assignment assignment) {
+		if (operand instanceof Map) {
+			Map<Object, Object> map = current == null ? new LinkedHashMap<Object, Object>() : new LinkedHashMap<Object, Object>((Map<Object, Object>) current);
+			if (assignment.operator.equals("+")) {
+				map.putAll((Map<Object, Object>) operand);
+			} else {
+				map.keySet().removeAll(((Map<Object, Object>) operand).keySet());
+			}
+			return map.isEmpty() ? null : map;
+		}
+		Collection<Object> collection;
+		if (operand instanceof Set) {
+			collection = current == null ? new java.util.LinkedHashSet<Object>() : new java.util.LinkedHashSet<Object>((Collection<Object>) current);
+		} else {
+			collection = new ArrayList<Object>();
+		}
+		if (assignment.operator.equals("-")) {
+			if (current != null && collection.isEmpty()) {
+				collection.addAll((Collection<Object>) current);
+			}
+			collection.removeAll((Collection<Object>) operand);
+		} else if (assignment.prepend) {
+			collection.addAll((Collection<Object>) operand);
+			if (current != null) {
+				collection.addAll((Collection<Object>) current);
+			}
+		} else {
+			if (current != null && !(operand instanceof Set)) {
+				collection.addAll((Collection<Object>) current);
+			}
+			collection.addAll((Collection<Object>) operand);
+		}
+		return collection.isEmpty() ? null : collection;
+	}
+
+	private void delete(Table table, Delete delete, long now) throws SQLException {
+		for (RowKey key : table.keys(delete, false)) {
+			List<RowKey> matching = new ArrayList<RowKey>();
+			if (key.clustering == null) {
+				for (RowKey rowKey : table.partition(key).keySet()) {
+					matching.add(rowKey);
+				}
+			} else {
+				matching.add(key);
+			}
+			for (RowKey rowKey : matching) {
+				if (delete.columns.isEmpty()) {
+					table.rows.remove(rowKey);
+					continue;
+				}
+				Row row = table.rows.get(rowKey);
+				if (row == null) {
+					continue;
+				}
+				for (Assignment column : delete.columns) {
+					String type = table.column(column.column);
+					Cell cell = row.live(column.column, now);
+					if (column.element == null || cell == null) {
+						row.cells.remove(column.column);
+					} else if (cell.value instanceof Map) {
+						Map<?, ?> map = new LinkedHashMap<Object, Object>((Map<?, ?>) cell.value);
+						map.remove(convert(splitTypes(type.substring(type.indexOf('<') + 1, type.lastIndexOf('>')))[0], column.element));
+						cell.value = map.isEmpty() ? null : map;
+					} else if (cell.value instanceof List) {
+						List<?> list = new ArrayList<Object>((List<?>) cell.value);
+						list.remove(((Number) column.element).intValue());
+						cell.value = list.isEmpty() ? null : list;
+					}
+				}
+			}
+		}
+	}
+
+	private long expiry(Integer ttl, long now) {
+		return ttl == null || ttl == 0 ? 0 : now + ttl * 1000L;
+	}
+
+	/**
+	 * Write time in microseconds, increasing even for writes within the same
+	 * millisecond.
+	 */
+	private long nextWriteTime(long now) {
+		lastWriteTime = Math.max(lastWriteTime + 1, now * 1000);
+		return lastWriteTime;
+	}
+
+	// --- reads
+
+	private Result select(String keyspace, Select select) throws SQLException {
+		String name = keyspace(keyspace, select);
+		if (name.equals("system")) {
+			return selectSystem(select);
+		}
+		Table table = table(keyspace, select);
+		long now = currentTimeMillis();
+		List<String> columns = new ArrayList<String>();
+		if (select.all) {
+			columns.addAll(table.types.keySet());
+		} else {
+			for (Selector selector : select.selectors) {
+				for (String column : selector.columns) {
+					table.column(column);
+				}
+				columns.add(selector.label());
+			}
+		}
+		for (Relation relation : select.where) {
+			for (String column : relation.columns) {
+				table.column(column);
+			}
+		}
+
+		Result result = new Result(columns);
+		long count = 0;
+		int limit = select.limit == null ? Integer.MAX_VALUE : select.limit;
+		for (Map.Entry<RowKey, Row> entry : table.candidates(select.where).entrySet()) {
+			RowKey key = entry.getKey();
+			Row row = entry.getValue();
+			if (!row.isLive(now) || !table.matches(key, row, select.where, now)) {
+				continue;
+			}
+			if (isCount(select)) {
+				count++;
+				continue;
+			}
+			Object[] values = new Object[columns.size()];
+			if (select.all) {
+				for (int i = 0; i < values.length; i++) {
+					values[i] = table.value(key, row, columns.get(i), now);
+				}
+			} else {
+				for (int i = 0; i < values.length; i++) {
+					values[i] = select(table, key, row, select.selectors.get(i), now);
+				}
+			}
+			result.rows.add(values);
+			if (result.rows.size() >= limit) {
+				break;
+			}
+		}
+		if (isCount(select)) {
+			result.rows.add(new Object[] { count });
+		}
+		return result;
+	}
+
+	private boolean isCount(Select select) {
+		return select.selectors.size() == 1 && "count".equals(select.selectors.get(0).function);
+	}
+
+	private Object select(Table table, RowKey key, Row row, Selector selector, long now) throws SQLException {
+		if (selector.function == null) {
+			return table.value(key, row, selector.columns.get(0), now);
+		} else if (selector.function.equals("token")) {
+			return key.token;
+		} else if (selector.function.equals("ttl") || selector.function.equals("writetime")) {
+			Cell cell = row.live(selector.columns.get(0), now);
+			if (cell == null) {
+				return null;
+			} else if (selector.function.equals("writetime")) {
+				return cell.writeTime;
+			}
+			return cell.expiresAt == 0 ? null : (Object) (int) Math.max(1, (cell.expiresAt - now + 999) / 1000);
+		}
+		throw new SQLException("Unknown function '" + selector.function + "'");
+	}
+
+	private Result selectSystem(Select select) throws SQLException {
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		String table = select.table;
+		if (table.equals("local")) {
+			Map<String, Object> local = new LinkedHashMap<String, Object>();
+			local.put("key", "local");
+			local.put("cluster_name", "Stand-in Cluster");
+			local.put("cql_version", "3.2.1");
+			local.put("data_center", "datacenter1");
+			local.put("partitioner", "org.apache.cassandra.dht.Murmur3Partitioner");
+			local.put("rack", "rack1");
+			local.put("release_version", "2.1.13");
+			local.put("schema_version", schemaVersion);
+			rows.add(local);
+		} else if (table.equals("peers")) {
+			rows = new ArrayList<Map<String, Object>>();
+		} else if (table.equals("schema_keyspaces")) {
+			for (String keyspace : keyspaces.keySet()) {
+				Map<String, Object> row = new LinkedHashMap<String, Object>();
+				row.put("keyspace_name", keyspace);
+				row.put("durable_writes", Boolean.TRUE);
+				row.put("strategy_class", "org.apache.cassandra.locator.SimpleStrategy");
+				row.put("strategy_options", "{\"replication_factor\":\"1\"}");
+				rows.add(row);
+			}
+		} else if (table.equals("schema_columnfamilies")) {
+			for (Map.Entry<String, Map<String, Table>> keyspace : keyspaces.entrySet()) {
+				for (String name : keyspace.getValue().keySet()) {
+					Map<String, Object> row = new LinkedHashMap<String, Object>();
+					row.put("keyspace_name", keyspace.getKey());
+					row.put("columnfamily_name", name);
+					rows.add(row);
+				}
+			}
+		} else if (table.equals("schema_columns")) {
+			for (Map.Entry<String, Map<String, Table>> keyspace : keyspaces.entrySet()) {
+				for (Table columns : keyspace.getValue().values()) {
+					for (String column : columns.types.keySet()) {
+						Map<String, Object> row = new LinkedHashMap<String, Object>();
+						row.put("keyspace_name", keyspace.getKey());
+						row.put("columnfamily_name", columns.name);
+						row.put("column_name", column);
+						int partitionIndex = columns.partitionKey.indexOf(column);
+						int clusteringIndex = columns.clusteringColumns.indexOf(column);
+						row.put("component_index", partitionIndex >= 0 && columns.partitionKey.size() > 1 ? (Object) partitionIndex
+								: clusteringIndex >= 0 ? (Object) clusteringIndex : null);
+						row.put("type", partitionIndex >= 0 ? "partition_key" : clusteringIndex >= 0 ? "clustering_key" : "regular");
+						String validator = toMarshalType(columns.types.get(column));
+						row.put("validator", columns.descending.contains(column)
+								? "org.apache.cassandra.db.marshal.ReversedType(" + validator + ")" : validator);
+						rows.add(row);
+					}
+				}
+			}
+		} else {
+			throw new SQLException("unconfigured columnfamily " + table);
+		}
+
+		List<String> columns = new ArrayList<String>();
+		if (select.all) {
+			columns.addAll(rows.isEmpty() ? Collections.<String>emptyList() : rows.get(0).keySet());
+		} else {
+			for (Selector selector : select.selectors) {
+				columns.add(selector.label());
+			}
+		}
+		Result result = new Result(columns);
+		long count = 0;
+		for (Map<String, Object> row : rows) {
+			boolean matches = true;
+			for (Relation relation : select.where) {
+				Object value = row.get(relation.columns.get(0));
+				if (!matches(null, relation.columns.get(0), value, relation)) {
+					matches = false;
+				}
+			}
+			if (!matches) {
+				continue;
+			}
+			if (isCount(select)) {
+				count++;
+				continue;
+			}
+			Object[] values = new Object[columns.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = select.all ? row.get(columns.get(i)) : row.get(select.selectors.get(i).columns.get(0));
+			}
+			result.rows.add(values);
+		}
+		if (isCount(select)) {
+			result.rows.add(new Object[] { count });
+		}
+		return result;
+	}
+
+	private static String toMarshalType(String type) {
+		String trimmed = type.trim();
+		int open = trimmed.indexOf('<');
+		String name = open < 0 ? trimmed : trimmed.substring(0, open).trim();
+		String marshal = MARSHAL_TYPES.get(name);
+		if (marshal == null) {
+			marshal = "BytesType";
+		}
+		StringBuilder validator = new StringBuilder("org.apache.cassandra.db.marshal.").append(marshal);
+		if (open >= 0) {
+			String[] inner = splitTypes(trimmed.substring(open + 1, trimmed.lastIndexOf('>')));
+			validator.append('(');
+			for (int i = 0; i < inner.length; i++) {
+				validator.append(i == 0 ? "" : ",").append(toMarshalType(inner[i]));
+			}
+			validator.append(')');
+		}
+		return validator.toString();
+	}
+
+	/**
+	 * True if the value satisfies the relation.
+	 */
+	private static boolean matches(Table table, String column, Object value, Relation relation) throws SQLException {
+		List<Object> operands = new ArrayList<Object>();
+		for (Object operand : relation.values) {
+			operands.add(table == null ? (operand == CqlParser.NULL ? null : operand) : table.convert(column, operand));
+		}
+		String operator = relation.operator;
+		if (operator.equals("IN")) {
+			for (Object operand : operands) {
+				if (compare(value, operand) == 0) {
+					return true;
+				}
+			}
+			return false;
+		} else if (operator.equals("CONTAINS")) {
+			return value instanceof Collection && ((Collection<?>) value).contains(operands.get(0))
+					|| value instanceof Map && ((Map<?, ?>) value).containsValue(operands.get(0));
+		} else if (operator.equals("CONTAINS KEY")) {
+			return value instanceof Map && ((Map<?, ?>) value).containsKey(operands.get(0));
+		}
+		Object operand = operands.get(0);
+		if (operator.equals("=")) {
+			return compare(value, operand) == 0;
+		} else if (operator.equals("!=")) {
+			return compare(value, operand) != 0;
+		} else if (value == null || operand == null) {
+			return false;
+		}
+		int comparison = compare(value, operand);
+		return operator.equals("<") ? comparison < 0 : operator.equals("<=") ? comparison <= 0
+				: operator.equals(">") ? comparison > 0 : comparison >= 0;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static int compare(Object a, Object b) {
+		if (a == null || b == null) {
+			return a == null ? (b == null ? 0 : -1) : 1;
+		}
+		if (a instanceof Number && b instanceof Number && a.getClass() != b.getClass()) {
+			return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+		}
+		if (a instanceof Comparable && a.getClass() == b.getClass()) {
+			return ((Comparable) a).compareTo(b);
+		}
+		return a.equals(b) ? 0 : a.toString().compareTo(b.toString());
+	}
+
+	private static Object convert(String type, Object value) throws SQLException {
+		if (value == CqlParser.NULL || value == null) {
+			return null;
+		}
+		try {
+			return CassandraValueConverter.convert(type, value);
+		} catch (IllegalArgumentException e) {
+			throw new SQLException("Invalid value for type " + type + ": " + e.getMessage(), e);
+		} catch (ClassCastException e) {
+			throw new SQLException("Invalid value " + value + " for type " + type, e);
+		}
+	}
+
+	private static String[] splitTypes(String types) {
+		List<String> result = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < types.length(); i++) {
+			char c = types.charAt(i);
+			if (c == '<') {
+				depth++;
+			} else if (c == '>') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				result.add(types.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		result.add(types.substring(start).trim());
+		return result.toArray(new String[result.size()]);
+	}
+
+	/**
+	 * Token of a partition key, spread over the range of the Murmur3
+	 * partitioner. Equal keys have equal tokens; the values are not those
+	 * Cassandra computes.
+	 */
+	static long token(Object[] partitionKey) {
+		long hash = 0xcbf29ce484222325L;
+		for (Object value : partitionKey) {
+			String text = value instanceof Date ? String.valueOf(((Date) value).getTime()) : String.valueOf(value);
+			for (int i = 0; i < text.length(); i++) {
+				hash ^= text.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			hash ^= 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash == Long.MIN_VALUE ? Long.MAX_VALUE : hash;
+	}
+
+	private String keyspace(String keyspace, Statement statement) throws SQLException {
+		String name = statement.keyspace != null ? statement.keyspace : keyspace;
+		if (name == null) {
+			throw new SQLException("No keyspace has been specified. USE a keyspace, or explicitly specify keyspace.tablename");
+		}
+		return name;
+	}
+
+	private Map<String, Table> tables(String keyspace, Statement statement) throws SQLException {
+		String name = keyspace(keyspace, statement);
+		Map<String, Table> tables = keyspaces.get(name);
+		if (tables == null) {
+			throw new SQLException("Keyspace '" + name + "' does not exist");
+		}
+		return tables;
+	}
+
+	private Table table(String keyspace, Statement statement) throws SQLException {
+		Table table = tables(keyspace, statement).get(statement.table);
+		if (table == null) {
+			throw new SQLException("unconfigured columnfamily " + statement.table);
+		}
+		return table;
+	}
+
+	// --- storage
+
+	/**
+	 * Result of a statement: column labels and rows.
+	 */
+	public static class Result {
+		static final Result NONE = new Result(Collections.<String>emptyList());
+
+		private final List<String> columns;
+		private final List<Object[]> rows = new ArrayList<Object[]>();
+		String keyspace;
+
+		Result(List<String> columns) {
+			this.columns = columns;
+		}
+
+		public List<String> getColumns() {
+			return columns;
+		}
+
+		public List<Object[]> getRows() {
+			return rows;
+		}
+
+		/**
+		 * True for queries and lightweight transactions, which return rows.
+		 */
+		public boolean hasColumns() {
+			return !columns.isEmpty();
+		}
+
+		public List<Map<String, Object>> toMaps() {
+			List<Map<String, Object>> maps = new ArrayList<Map<String, Object>>(rows.size());
+			for (Object[] row : rows) {
+				Map<String, Object> map = new LinkedHashMap<String, Object>();
+				for (int i = 0; i < columns.size(); i++) {
+					map.put(columns.get(i), row[i]);
+				}
+				maps.add(map);
+			}
+			return maps;
+		}
+	}
+
+	private static class Fault {
+		private final Pattern pattern;
+		private final AtomicInteger remaining;
+		private final boolean afterExecution;
+		private final long latency;
+		private final String message;
+
+		private Fault(String regex, int times, boolean afterExecution, long latency, String message) {
+			this.pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+			this.remaining = new AtomicInteger(times);
+			this.afterExecution = afterExecution;
+			this.latency = latency;
+			this.message = message;
+		}
+
+		/**
+		 * True if the fault applies once more.
+		 */
+		private boolean take() {
+			while (true) {
+				int left = remaining.get();
+				if (left < 0) {
+					return true;
+				} else if (left == 0) {
+					return false;
+				} else if (remaining.compareAndSet(left, left - 1)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	private static class Cell {
+		private Object value;
+		private final long expiresAt;
+		private final long writeTime;
+
+		private Cell(Object value, long expiresAt, long writeTime) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+			this.writeTime = writeTime;
+		}
+
+		private boolean isLive(long now) {
+			return value != null && (expiresAt == 0 || expiresAt > now);
+		}
+	}
+
+	private static class Row {
+		private final Map<String, Cell> cells = new LinkedHashMap<String, Cell>();
+		/** Expiry of the row marker an INSERT writes: -1 for none, 0 for no TTL. */
+		private long marker = -1;
+
+		private boolean isLive(long now) {
+			if (marker == 0 || marker > now) {
+				return true;
+			}
+			for (Cell cell : cells.values()) {
+				if (cell.isLive(now)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private Cell live(String column, long now) {
+			Cell cell = cells.get(column);
+			return cell != null && cell.isLive(now) ? cell : null;
+		}
+
+		private void set(String column, Object value, long expiresAt, long writeTime) {
+			if (value == null) {
+				cells.remove(column);
+			} else {
+				cells.put(column, new Cell(value, expiresAt, writeTime));
+			}
+		}
+	}
+
+	/**
+	 * Primary key of a row. A key without clustering values stands for the
+	 * start of its partition, one without partition values for the start of
+	 * its token.
+	 */
+	private static class RowKey {
+		private final long token;
+		private final Object[] partition;
+		private final Object[] clustering;
+
+		private RowKey(long token, Object[] partition, Object[] clustering) {
+			this.token = token;
+			this.partition = partition;
+			this.clustering = clustering;
+		}
+	}
+
+	private static class Table {
+		private final String keyspace;
+		private final String name;
+		private final Map<String, String> types = new LinkedHashMap<String, String>();
+		private final List<String> partitionKey;
+		private final List<String> clusteringColumns;
+		private final Set<String> descending;
+		private final TreeMap<RowKey, Row> rows;
+
+		private Table(String keyspace, CreateTable create) throws SQLException {
+			this.keyspace = keyspace;
+			this.name = create.table;
+			this.partitionKey = new ArrayList<String>(create.partitionKey);
+			this.clusteringColumns = new ArrayList<String>(create.clusteringColumns);
+			this.descending = new HashSet<String>(create.descending);
+			// key columns first, then the others by name, as Cassandra lists them
+			for (String column : create.partitionKey) {
+				types.put(column, type(create, column));
+			}
+			for (String column : create.clusteringColumns) {
+				types.put(column, type(create, column));
+			}
+			for (String column : new TreeMap<String, String>(create.columns).keySet()) {
+				if (!types.containsKey(column)) {
+					types.put(column, type(create, column));
+				}
+			}
+			this.rows = new TreeMap<RowKey, Row>(new Comparator<RowKey>() {
+				public int compare(RowKey a, RowKey b) {
+					if (a.token != b.token) {
+						return a.token < b.token ? -1 : 1;
+					}
+					int comparison = compareValues(a.partition, b.partition, null);
+					return comparison != 0 ? comparison : compareValues(a.clustering, b.clustering, clusteringColumns);
+				}
+			});
+		}
+
+		private int compareValues(Object[] a, Object[] b, List<String> columns) {
+			if (a == null || b == null) {
+				return a == null ? (b == null ? 0 : -1) : 1;
+			}
+			for (int i = 0; i < a.length; i++) {
+				int comparison = CassandraStandIn.compare(a[i], b[i]);
+				if (comparison != 0) {
+					return columns != null && descending.contains(columns.get(i)) ? -comparison : comparison;
+				}
+			}
+			return 0;
+		}
+
+		private static String type(CreateTable create, String column) throws SQLException {
+			String type = create.columns.get(column);
+			if (type == null) {
+				throw new SQLException("Unknown definition " + column + " referenced in PRIMARY KEY");
+			}
+			return type.toLowerCase();
+		}
+
+		private boolean isKey(String column) {
+			return partitionKey.contains(column) || clusteringColumns.contains(column);
+		}
+
+		/**
+		 * Type of a column.
+		 *
+		 * @throws SQLException if there is no such column
+		 */
+		private String column(String column) throws SQLException {
+			String type = types.get(column);
+			if (type == null) {
+				throw new SQLException("Undefined name " + column + " in table " + keyspace + "." + name);
+			}
+			return type;
+		}
+
+		private Object convert(String column, Object value) throws SQLException {
+			return CassandraStandIn.convert(column(column), value);
+		}
+
+		private Object value(RowKey key, Row row, String column, long now) throws SQLException {
+			int index = partitionKey.indexOf(column);
+			if (index >= 0) {
+				return key.partition[index];
+			}
+			index = clusteringColumns.indexOf(column);
+			if (index >= 0) {
+				return key.clustering[index];
+			}
+			column(column);
+			Cell cell = row == null ? null : row.live(column, now);
+			return cell == null ? null : cell.value;
+		}
+
+		private Row row(RowKey key, long now) {
+			Row row = rows.get(key);
+			if (row == null || !row.isLive(now)) {
+				row = new Row();
+				rows.put(key, row);
+			}
+			return row;
+		}
+
+		/**
+		 * Rows of the partition of the key.
+		 */
+		private NavigableMap<RowKey, Row> partition(RowKey key) {
+			NavigableMap<RowKey, Row> partition = new TreeMap<RowKey, Row>(rows.comparator());
+			for (Map.Entry<RowKey, Row> entry : rows.tailMap(new RowKey(key.token, key.partition, null), true).entrySet()) {
+				if (entry.getKey().token != key.token || compareValues(entry.getKey().partition, key.partition, null) != 0) {
+					break;
+				}
+				partition.put(entry.getKey(), entry.getValue());
+			}
+			return partition;
+		}
+
+		/**
+		 * Keys the WHERE clause of a write names: all partition key columns
+		 * must be given with = or IN, and all clustering columns too if
+		 * <code>full</code>.
+		 */
+		private List<RowKey> keys(Modification modification, boolean full) throws SQLException {
+			Map<String, List<Object>> values = new LinkedHashMap<String, List<Object>>();
+			if (modification instanceof Insert) {
+				for (Map.Entry<String, Object> value : ((Insert) modification).values.entrySet()) {
+					column(value.getKey());
+					values.put(value.getKey(), Collections.singletonList(convert(value.getKey(), value.getValue())));
+				}
+			} else {
+				for (Relation relation : modification.where) {
+					String column = relation.columns.get(0);
+					if (relation.token || !isKey(column) || !(relation.operator.equals("=") || relation.operator.equals("IN"))) {
+						throw new SQLException("Non PRIMARY KEY " + column + " found in where clause");
+					}
+					List<Object> converted = new ArrayList<Object>();
+					for (Object value : relation.values) {
+						converted.add(convert(column, value));
+					}
+					values.put(column, converted);
+				}
+			}
+			List<Object[]> partitions = combinations(partitionKey, values, true);
+			List<Object[]> clusterings = clusteringColumns.isEmpty() ? Collections.singletonList(new Object[0])
+					: combinations(clusteringColumns, values, full);
+			List<RowKey> keys = new ArrayList<RowKey>();
+			for (Object[] partition : partitions) {
+				for (Object[] clustering : clusterings) {
+					keys.add(new RowKey(token(partition), partition, clustering));
+				}
+			}
+			return keys;
+		}
+
+		private List<Object[]> combinations(List<String> columns, Map<String, List<Object>> values, boolean required) throws SQLException {
+			List<Object[]> combinations = new ArrayList<Object[]>();
+			combinations.add(new Object[columns.size()]);
+			for (int i = 0; i < columns.size(); i++) {
+				List<Object> columnValues = values.get(columns.get(i));
+				if (columnValues == null) {
+					if (required) {
+						throw new SQLException("Missing mandatory PRIMARY KEY part " + columns.get(i));
+					}
+					return Collections.singletonList(null);
+				}
+				List<Object[]> next = new ArrayList<Object[]>();
+				for (Object[] combination : combinations) {
+					for (Object value : columnValues) {
+						if (value == null) {
+							throw new SQLException("Invalid null value for PRIMARY KEY part " + columns.get(i));
+						}
+						Object[] copy = combination.clone();
+						copy[i] = value;
+						next.add(copy);
+					}
+				}
+				combinations = next;
+			}
+			return combinations;
+		}
+
+		/**
+		 * Rows that may match the WHERE clause of a query: those of one
+		 * partition, of a token range or all of them.
+		 */
+		private NavigableMap<RowKey, Row> candidates(List<Relation> where) throws SQLException {
+			Object[] partition = new Object[partitionKey.size()];
+			int given = 0;
+			long from = Long.MIN_VALUE;
+			long to = Long.MAX_VALUE;
+			for (Relation relation : where) {
+				if (relation.token) {
+					long token = tokenOf(relation);
+					String operator = relation.operator;
+					if (operator.equals(">")) {
+						from = Math.max(from, token == Long.MAX_VALUE ? token : token + 1);
+					} else if (operator.equals(">=")) {
+						from = Math.max(from, token);
+					} else if (operator.equals("<")) {
+						to = Math.min(to, token == Long.MIN_VALUE ? token : token - 1);
+					} else if (operator.equals("<=")) {
+						to = Math.min(to, token);
+					} else if (operator.equals("=")) {
+						from = Math.max(from, token);
+						to = Math.min(to, token);
+					}
+				} else if (relation.operator.equals("=") && partitionKey.contains(relation.columns.get(0))) {
+					partition[partitionKey.indexOf(relation.columns.get(0))] = convert(relation.columns.get(0), relation.values.get(0));
+					given++;
+				}
+			}
+			if (given == partition.length) {
+				return partition(new RowKey(token(partition), partition, null));
+			}
+			if (from > to) {
+				return new TreeMap<RowKey, Row>(rows.comparator());
+			}
+			NavigableMap<RowKey, Row> range = rows.tailMap(new RowKey(from, null, null), true);
+			return to == Long.MAX_VALUE ? range : range.headMap(new RowKey(to + 1, null, null), false);
+		}
+
+		private boolean matches(RowKey key, Row row, List<Relation> where, long now) throws SQLException {
+			for (Relation relation : where) {
+				if (relation.token) {
+					if (!CassandraStandIn.matches(null, null, key.token, tokenRelation(relation))) {
+						return false;
+					}
+				} else if (!CassandraStandIn.matches(this, relation.columns.get(0), value(key, row, relation.columns.get(0), now), relation)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private Relation tokenRelation(Relation relation) throws SQLException {
+			Relation resolved = new Relation();
+			resolved.operator = relation.operator;
+			resolved.values.add(tokenOf(relation));
+			return resolved;
+		}
+
+		private long tokenOf(Relation relation) throws SQLException {
+			if (!relation.tokenOfValues) {
+				Object value = relation.values.get(0);
+				if (!(value instanceof Number)) {
+					throw new SQLException("Invalid token value " + value);
+				}
+				return ((Number) value).longValue();
+			}
+			if (relation.values.size() != partitionKey.size()) {
+				throw new SQLException("Expected " + partitionKey.size() + " values in token()");
+			}
+			Object[] partition = new Object[partitionKey.size()];
+			for (int i = 0; i < partition.length; i++) {
+				partition[i] = convert(partitionKey.get(i), relation.values.get(i));
+			}
+			return token(partition);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Cassandra stand-in " + name + " " + keyspaces.keySet();
+	}
+}
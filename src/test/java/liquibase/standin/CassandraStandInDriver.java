@@ -0,0 +1,486 @@
+package liquibase.standin;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import liquibase.standin.CassandraStandIn.Result;
+
+/**
+ * JDBC driver connecting to {@link CassandraStandIn}s, with urls of the form
+ * <code>jdbc:cassandra-inprocess://&lt;node&gt;/&lt;keyspace&gt;</code>. The
+ * connection pool of {@link liquibase.database.core.CassandraDatabase}
+ * opens its connections with {@link DriverManager}, so they reach the same
+ * stand-in as the connection the database was created with. Connections,
+ * statements and result sets are proxies implementing what the extension
+ * calls; anything else returns a default value.
+ */
+public class CassandraStandInDriver implements Driver {
+
+	public static final String URL_PREFIX = "jdbc:cassandra-inprocess://";
+
+	private static final Map<String, CassandraStandIn> NODES = new ConcurrentHashMap<String, CassandraStandIn>();
+
+	static {
+		try {
+			DriverManager.registerDriver(new CassandraStandInDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	static void register(String name, CassandraStandIn node) {
+		NODES.put(name, node);
+	}
+
+	static void unregister(String name) {
+		NODES.remove(name);
+	}
+
+	public Connection connect(String url, Properties info) throws SQLException {
+		if (!acceptsURL(url)) {
+			return null;
+		}
+		String path = url.substring(URL_PREFIX.length());
+		int slash = path.indexOf('/');
+		CassandraStandIn node = NODES.get(slash < 0 ? path : path.substring(0, slash));
+		if (node == null) {
+			throw new SQLException("Connection refused: " + url);
+		}
+		String keyspace = slash < 0 || slash == path.length() - 1 ? null : path.substring(slash + 1);
+		return proxy(Connection.class, new ConnectionHandler(node, url, keyspace));
+	}
+
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith(URL_PREFIX);
+	}
+
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(CassandraStandInDriver.class.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+	private static class ConnectionHandler implements InvocationHandler {
+		private final CassandraStandIn node;
+		private final String url;
+		private String keyspace;
+		private boolean closed;
+		private boolean autoCommit = true;
+
+		private ConnectionHandler(CassandraStandIn node, String url, String keyspace) {
+			this.node = node;
+			this.url = url;
+			this.keyspace = keyspace;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (closed && (name.equals("createStatement") || name.equals("prepareStatement"))) {
+				throw new SQLException("Connection is closed");
+			}
+			if (name.equals("createStatement")) {
+				return proxy(Statement.class, new StatementHandler(this, proxy, null));
+			} else if (name.equals("prepareStatement")) {
+				return proxy(PreparedStatement.class, new StatementHandler(this, proxy, (String) args[0]));
+			} else if (name.equals("getMetaData")) {
+				return proxy(DatabaseMetaData.class, new MetaDataHandler(url, proxy));
+			} else if (name.equals("close")) {
+				closed = true;
+				return null;
+			} else if (name.equals("isClosed")) {
+				return closed;
+			} else if (name.equals("isValid")) {
+				return !closed;
+			} else if (name.equals("getAutoCommit")) {
+				return autoCommit;
+			} else if (name.equals("setAutoCommit")) {
+				autoCommit = (Boolean) args[0];
+				return null;
+			} else if (name.equals("getCatalog") || name.equals("getSchema")) {
+				return keyspace;
+			} else if (name.equals("setCatalog") || name.equals("setSchema")) {
+				keyspace = (String) args[0];
+				return null;
+			} else if (name.equals("nativeSQL")) {
+				return args[0];
+			} else if (name.equals("unwrap")) {
+				return proxy;
+			} else if (name.equals("isWrapperFor")) {
+				return ((Class<?>) args[0]).isInstance(proxy);
+			}
+			return objectMethod(proxy, method, args);
+		}
+
+		private Result execute(String cql, List<Object> parameters) throws SQLException {
+			Result result = node.execute(keyspace, cql, parameters);
+			if (result.keyspace != null) {
+				keyspace = result.keyspace;
+			}
+			return result;
+		}
+	}
+
+	private static class MetaDataHandler implements InvocationHandler {
+		private final String url;
+		private final Object connection;
+
+		private MetaDataHandler(String url, Object connection) {
+			this.url = url;
+			this.connection = connection;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("getDatabaseProductName")) {
+				return "Cassandra";
+			} else if (name.equals("getDatabaseProductVersion")) {
+				return "2.1.13";
+			} else if (name.equals("getDatabaseMajorVersion")) {
+				return 2;
+			} else if (name.equals("getDatabaseMinorVersion")) {
+				return 1;
+			} else if (name.equals("getDriverName")) {
+				return "Cassandra stand-in";
+			} else if (name.equals("getDriverVersion")) {
+				return "1.0";
+			} else if (name.equals("getURL")) {
+				return url;
+			} else if (name.equals("getUserName")) {
+				return "cassandra";
+			} else if (name.equals("getConnection")) {
+				return connection;
+			} else if (name.equals("getIdentifierQuoteString")) {
+				return "\"";
+			} else if (name.equals("getSQLKeywords")) {
+				return "";
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	/**
+	 * Handler of plain and prepared statements; <code>cql</code> is the
+	 * prepared statement, or null.
+	 */
+	private static class StatementHandler implements InvocationHandler {
+		private final ConnectionHandler connection;
+		private final Object connectionProxy;
+		private final String cql;
+		private final List<Object> parameters = new ArrayList<Object>();
+		private final List<String> batch = new ArrayList<String>();
+		private ResultSet resultSet;
+		private int updateCount = -1;
+		private int fetchSize;
+		private boolean closed;
+
+		private StatementHandler(ConnectionHandler connection, Object connectionProxy, String cql) {
+			this.connection = connection;
+			this.connectionProxy = connectionProxy;
+			this.cql = cql;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("executeQuery") || name.equals("execute") || name.equals("executeUpdate")) {
+				if (closed) {
+					throw new SQLException("Statement is closed");
+				}
+				boolean prepared = args == null || args.length == 0;
+				Result result = connection.execute(prepared ? cql : (String) args[0], prepared ? parameters : null);
+				resultSet = proxy(ResultSet.class, new ResultSetHandler(result, proxy));
+				updateCount = result.hasColumns() ? -1 : 0;
+				if (name.equals("executeQuery")) {
+					return resultSet;
+				}
+				return name.equals("execute") ? (Object) result.hasColumns() : (Object) 0;
+			} else if (name.equals("addBatch")) {
+				batch.add((String) args[0]);
+				return null;
+			} else if (name.equals("clearBatch")) {
+				batch.clear();
+				return null;
+			} else if (name.equals("executeBatch")) {
+				int[] counts = new int[batch.size()];
+				for (int i = 0; i < counts.length; i++) {
+					connection.execute(batch.get(i), null);
+				}
+				batch.clear();
+				return counts;
+			} else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+					&& !name.equals("setFetchSize") && !name.equals("setMaxRows") && !name.equals("setQueryTimeout")) {
+				int index = (Integer) args[0];
+				while (parameters.size() < index) {
+					parameters.add(CqlParser.NULL);
+				}
+				parameters.set(index - 1, name.equals("setNull") || args[1] == null ? CqlParser.NULL : args[1]);
+				return null;
+			} else if (name.equals("clearParameters")) {
+				parameters.clear();
+				return null;
+			} else if (name.equals("getResultSet")) {
+				return resultSet;
+			} else if (name.equals("getUpdateCount")) {
+				return updateCount;
+			} else if (name.equals("getMoreResults")) {
+				updateCount = -1;
+				return false;
+			} else if (name.equals("setFetchSize")) {
+				fetchSize = (Integer) args[0];
+				return null;
+			} else if (name.equals("getFetchSize")) {
+				return fetchSize;
+			} else if (name.equals("getConnection")) {
+				return connectionProxy;
+			} else if (name.equals("close")) {
+				closed = true;
+				return null;
+			} else if (name.equals("isClosed")) {
+				return closed;
+			}
+			return objectMethod(proxy, method, args);
+		}
+	}
+
+	private static class ResultSetHandler implements InvocationHandler {
+		private final Result result;
+		private final Object statement;
+		private int index = -1;
+		private boolean wasNull;
+		private boolean closed;
+
+		private ResultSetHandler(Result result, Object statement) {
+			this.result = result;
+			this.statement = statement;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("next")) {
+				return ++index < result.getRows().size();
+			} else if (name.equals("wasNull")) {
+				return wasNull;
+			} else if (name.equals("getMetaData")) {
+				return proxy(ResultSetMetaData.class, new ResultSetMetaDataHandler(result));
+			} else if (name.equals("findColumn")) {
+				return column(args[0]) + 1;
+			} else if (name.equals("getStatement")) {
+				return statement;
+			} else if (name.equals("close")) {
+				closed = true;
+				return null;
+			} else if (name.equals("isClosed")) {
+				return closed;
+			} else if (name.startsWith("get") && args != null && args.length >= 1
+					&& (args[0] instanceof Integer || args[0] instanceof String)) {
+				if (index < 0 || index >= result.getRows().size()) {
+					throw new SQLException("No current row");
+				}
+				Object value = result.getRows().get(index)[column(args[0])];
+				wasNull = value == null;
+				return convert(value, method.getReturnType());
+			}
+			return objectMethod(proxy, method, args);
+		}
+
+		private int column(Object column) throws SQLException {
+			if (column instanceof Integer) {
+				int index = (Integer) column - 1;
+				if (index < 0 || index >= result.getColumns().size()) {
+					throw new SQLException("Invalid column index " + column);
+				}
+				return index;
+			}
+			for (int i = 0; i < result.getColumns().size(); i++) {
+				if (result.getColumns().get(i).equalsIgnoreCase((String) column)) {
+					return i;
+				}
+			}
+			throw new SQLException("No column " + column + " in " + result.getColumns());
+		}
+
+		private Object convert(Object value, Class<?> type) throws SQLException {
+			if (value == null) {
+				return defaultValue(type);
+			} else if (type == String.class) {
+				return value instanceof Date ? new Timestamp(((Date) value).getTime()).toString() : value.toString();
+			} else if (type == Object.class) {
+				return value;
+			} else if (value instanceof Number) {
+				Number number = (Number) value;
+				if (type == int.class) {
+					return number.intValue();
+				} else if (type == long.class) {
+					return number.longValue();
+				} else if (type == short.class) {
+					return number.shortValue();
+				} else if (type == byte.class) {
+					return number.byteValue();
+				} else if (type == double.class) {
+					return number.doubleValue();
+				} else if (type == float.class) {
+					return number.floatValue();
+				} else if (type == BigDecimal.class) {
+					return new BigDecimal(number.toString());
+				}
+			} else if (value instanceof Date) {
+				long millis = ((Date) value).getTime();
+				if (type == Timestamp.class) {
+					return new Timestamp(millis);
+				} else if (type == java.sql.Date.class) {
+					return new java.sql.Date(millis);
+				} else if (type == java.sql.Time.class) {
+					return new java.sql.Time(millis);
+				}
+			} else if (value instanceof Boolean && type == boolean.class) {
+				return value;
+			} else if (value instanceof ByteBuffer && type == byte[].class) {
+				ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+				byte[] bytes = new byte[buffer.remaining()];
+				buffer.get(bytes);
+				return bytes;
+			}
+			if (type.isInstance(value)) {
+				return value;
+			}
+			throw new SQLException("Cannot read " + value.getClass().getSimpleName() + " value as " + type.getSimpleName());
+		}
+	}
+
+	private static class ResultSetMetaDataHandler implements InvocationHandler {
+		private final Result result;
+
+		private ResultSetMetaDataHandler(Result result) {
+			this.result = result;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("getColumnCount")) {
+				return result.getColumns().size();
+			} else if (name.equals("getColumnLabel") || name.equals("getColumnName")) {
+				return result.getColumns().get((Integer) args[0] - 1);
+			} else if (name.equals("getColumnType")) {
+				return sqlType(sample((Integer) args[0] - 1));
+			} else if (name.equals("getColumnClassName")) {
+				Object sample = sample((Integer) args[0] - 1);
+				return sample == null ? Object.class.getName() : sample.getClass().getName();
+			} else if (name.equals("getTableName") || name.equals("getSchemaName") || name.equals("getCatalogName")) {
+				return "";
+			}
+			return objectMethod(proxy, method, args);
+		}
+
+		/**
+		 * First value of the column that is not null, as types are not kept.
+		 */
+		private Object sample(int column) {
+			for (Object[] row : result.getRows()) {
+				if (row[column] != null) {
+					return row[column];
+				}
+			}
+			return null;
+		}
+
+		private static int sqlType(Object value) {
+			if (value instanceof String) {
+				return Types.VARCHAR;
+			} else if (value instanceof Integer) {
+				return Types.INTEGER;
+			} else if (value instanceof Long) {
+				return Types.BIGINT;
+			} else if (value instanceof Boolean) {
+				return Types.BOOLEAN;
+			} else if (value instanceof Double) {
+				return Types.DOUBLE;
+			} else if (value instanceof Float) {
+				return Types.FLOAT;
+			} else if (value instanceof BigDecimal) {
+				return Types.DECIMAL;
+			} else if (value instanceof Date) {
+				return Types.TIMESTAMP;
+			} else if (value instanceof ByteBuffer) {
+				return Types.BINARY;
+			} else if (value instanceof UUID) {
+				return Types.OTHER;
+			}
+			return Types.JAVA_OBJECT;
+		}
+	}
+
+	/**
+	 * The value a method not implemented by a proxy returns.
+	 */
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == short.class) {
+			return (short) 0;
+		} else if (type == byte.class) {
+			return (byte) 0;
+		} else if (type == double.class) {
+			return 0d;
+		} else if (type == float.class) {
+			return 0f;
+		}
+		return null;
+	}
+
+	private static Object objectMethod(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("equals")) {
+			return proxy == args[0];
+		} else if (name.equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		} else if (name.equals("toString")) {
+			return "stand-in " + method.getDeclaringClass().getSimpleName();
+		}
+		return defaultValue(method.getReturnType());
+	}
+}
@@ -0,0 +1,931 @@
+package liquibase.standin;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parser of the CQL the extension and its changelogs send: DDL of keyspaces
+ * and tables, INSERT, UPDATE and DELETE with TTLs and lightweight
+ * transaction conditions, SELECT with <code>token()</code> ranges, and
+ * batches. Bind markers are replaced by the given parameters while parsing.
+ * Unquoted names are lower cased, as Cassandra does.
+ */
+class CqlParser {
+
+	private static final Pattern UUID_LITERAL = Pattern.compile(
+			"[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+	private static final Pattern NUMBER = Pattern.compile("\\d+(\\.\\d+)?([eE][+-]?\\d+)?");
+	private static final Pattern BLOB = Pattern.compile("0[xX][0-9a-fA-F]*");
+	/** 100ns intervals between 1582-10-15, the epoch of version 1 UUIDs, and 1970-01-01. */
+	private static final long GREGORIAN_OFFSET = 0x01B21DD213814000L;
+	private static final Random RANDOM = new Random();
+
+	enum TokenType {
+		NAME, QUOTED_NAME, STRING, NUMBER, UUID, BLOB, SYMBOL, MARKER, END
+	}
+
+	static class Token {
+		final TokenType type;
+		final String text;
+
+		Token(TokenType type, String text) {
+			this.type = type;
+			this.text = text;
+		}
+
+		boolean is(String keyword) {
+			return (type == TokenType.NAME || type == TokenType.SYMBOL) && text.equalsIgnoreCase(keyword);
+		}
+
+		@Override
+		public String toString() {
+			return type == TokenType.END ? "end of statement" : "'" + text + "'";
+		}
+	}
+
+	/** Marker standing for a <code>null</code> literal among parsed values. */
+	static final Object NULL = new Object() {
+		@Override
+		public String toString() {
+			return "null";
+		}
+	};
+
+	// --- statements
+
+	abstract static class Statement {
+		String keyspace;
+		String table;
+	}
+
+	static class Use extends Statement {
+	}
+
+	static class CreateKeyspace extends Statement {
+		boolean ifNotExists;
+	}
+
+	static class DropKeyspace extends Statement {
+		boolean ifExists;
+	}
+
+	static class CreateTable extends Statement {
+		boolean ifNotExists;
+		final Map<String, String> columns = new LinkedHashMap<String, String>();
+		final List<String> partitionKey = new ArrayList<String>();
+		final List<String> clusteringColumns = new ArrayList<String>();
+		final Set<String> descending = new LinkedHashSet<String>();
+	}
+
+	static class DropTable extends Statement {
+		boolean ifExists;
+	}
+
+	static class AlterTable extends Statement {
+		final Map<String, String> addedColumns = new LinkedHashMap<String, String>();
+		final List<String> droppedColumns = new ArrayList<String>();
+		final Map<String, String> renamedColumns = new LinkedHashMap<String, String>();
+	}
+
+	static class Truncate extends Statement {
+	}
+
+	/** DDL the stand-in accepts without keeping anything, e.g. indexes and types. */
+	static class OtherSchemaChange extends Statement {
+	}
+
+	static class Relation {
+		/** Column names; several for a <code>token()</code> relation. */
+		final List<String> columns = new ArrayList<String>();
+		boolean token;
+		String operator;
+		/** Values compared with; several for IN, the key values for <code>token(...)</code> on the right. */
+		final List<Object> values = new ArrayList<Object>();
+		boolean tokenOfValues;
+	}
+
+	static class Assignment {
+		String column;
+		Object element;
+		/** <code>=</code>, <code>+</code> (appended or added) or <code>-</code>. */
+		String operator = "=";
+		boolean prepend;
+		Object value;
+	}
+
+	abstract static class Modification extends Statement {
+		Integer ttl;
+		Long timestamp;
+		final List<Relation> where = new ArrayList<Relation>();
+		final List<Relation> conditions = new ArrayList<Relation>();
+		boolean ifExists;
+		boolean ifNotExists;
+
+		boolean isConditional() {
+			return ifExists || ifNotExists || !conditions.isEmpty();
+		}
+	}
+
+	static class Insert extends Modification {
+		final Map<String, Object> values = new LinkedHashMap<String, Object>();
+	}
+
+	static class Update extends Modification {
+		final List<Assignment> assignments = new ArrayList<Assignment>();
+	}
+
+	static class Delete extends Modification {
+		final List<Assignment> columns = new ArrayList<Assignment>();
+	}
+
+	static class Batch extends Statement {
+		final List<Modification> statements = new ArrayList<Modification>();
+	}
+
+	static class Selector {
+		String function;
+		final List<String> columns = new ArrayList<String>();
+		String alias;
+
+		String label() {
+			if (alias != null) {
+				return alias;
+			} else if (function == null) {
+				return columns.get(0);
+			} else if (function.equals("count")) {
+				return "count";
+			}
+			StringBuilder label = new StringBuilder(function).append('(');
+			for (int i = 0; i < columns.size(); i++) {
+				label.append(i == 0 ? "" : ", ").append(columns.get(i));
+			}
+			return label.append(')').toString();
+		}
+	}
+
+	static class Select extends Statement {
+		boolean all;
+		final List<Selector> selectors = new ArrayList<Selector>();
+		final List<Relation> where = new ArrayList<Relation>();
+		Integer limit;
+	}
+
+	// --- parsing
+
+	private final String cql;
+	private final List<Token> tokens;
+	private final Iterator<?> parameters;
+	private int position;
+
+	private CqlParser(String cql, List<?> parameters) throws SQLException {
+		this.cql = cql;
+		this.tokens = tokenize(cql);
+		this.parameters = parameters == null ? null : parameters.iterator();
+	}
+
+	/**
+	 * Parses one statement, or a batch.
+	 *
+	 * @param parameters values of the bind markers in order, null if there are none
+	 * @throws SQLException on a syntax error or a bind marker without value
+	 */
+	static Statement parse(String cql, List<?> parameters) throws SQLException {
+		CqlParser parser = new CqlParser(cql, parameters);
+		Statement statement = parser.statement();
+		parser.accept(";");
+		if (parser.peek().type != TokenType.END) {
+			throw parser.error("Unexpected " + parser.peek());
+		}
+		return statement;
+	}
+
+	private Statement statement() throws SQLException {
+		if (accept("SELECT")) {
+			return select();
+		} else if (accept("INSERT")) {
+			return insert();
+		} else if (accept("UPDATE")) {
+			return update();
+		} else if (accept("DELETE")) {
+			return delete();
+		} else if (accept("BEGIN")) {
+			return batch();
+		} else if (accept("CREATE")) {
+			return create();
+		} else if (accept("DROP")) {
+			return drop();
+		} else if (accept("ALTER")) {
+			return alter();
+		} else if (accept("TRUNCATE")) {
+			Truncate truncate = new Truncate();
+			accept("TABLE");
+			tableName(truncate);
+			return truncate;
+		} else if (accept("USE")) {
+			Use use = new Use();
+			use.keyspace = name();
+			return use;
+		}
+		throw error("Unsupported statement starting with " + peek());
+	}
+
+	private Select select() throws SQLException {
+		Select select = new Select();
+		accept("DISTINCT");
+		if (accept("*")) {
+			select.all = true;
+		} else {
+			do {
+				select.selectors.add(selector());
+			} while (accept(","));
+		}
+		expect("FROM");
+		tableName(select);
+		if (accept("WHERE")) {
+			relations(select.where);
+		}
+		if (accept("ORDER")) {
+			expect("BY");
+			do {
+				name();
+				if (!accept("ASC")) {
+					accept("DESC");
+				}
+			} while (accept(","));
+		}
+		if (accept("LIMIT")) {
+			select.limit = ((Number) term()).intValue();
+		}
+		if (accept("ALLOW")) {
+			expect("FILTERING");
+		}
+		return select;
+	}
+
+	private Selector selector() throws SQLException {
+		Selector selector = new Selector();
+		String name = name();
+		if (accept("(")) {
+			selector.function = name;
+			if (accept("*")) {
+				selector.function = "count";
+			} else if (peek().type == TokenType.NUMBER) {
+				next();
+				selector.function = "count";
+			} else if (!peek().is(")")) {
+				do {
+					selector.columns.add(name());
+				} while (accept(","));
+			}
+			expect(")");
+		} else {
+			selector.columns.add(name);
+		}
+		if (accept("AS")) {
+			selector.alias = name();
+		}
+		return selector;
+	}
+
+	private Insert insert() throws SQLException {
+		Insert insert = new Insert();
+		expect("INTO");
+		tableName(insert);
+		List<String> columns = new ArrayList<String>();
+		expect("(");
+		do {
+			columns.add(name());
+		} while (accept(","));
+		expect(")");
+		expect("VALUES");
+		expect("(");
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				expect(",");
+			}
+			insert.values.put(columns.get(i), term());
+		}
+		expect(")");
+		if (accept("IF")) {
+			expect("NOT");
+			expect("EXISTS");
+			insert.ifNotExists = true;
+		}
+		using(insert);
+		return insert;
+	}
+
+	private Update update() throws SQLException {
+		Update update = new Update();
+		tableName(update);
+		using(update);
+		expect("SET");
+		do {
+			update.assignments.add(assignment());
+		} while (accept(","));
+		expect("WHERE");
+		relations(update.where);
+		conditions(update);
+		return update;
+	}
+
+	private Assignment assignment() throws SQLException {
+		Assignment assignment = new Assignment();
+		assignment.column = name();
+		if (accept("[")) {
+			assignment.element = term();
+			expect("]");
+		}
+		expect("=");
+		if (peek().type == TokenType.NAME && (peek(1).is("+") || peek(1).is("-"))) {
+			if (name().equals(assignment.column)) {
+				assignment.operator = next().text;
+				assignment.value = term();
+				return assignment;
+			}
+			position--;
+		}
+		assignment.value = term();
+		if (accept("+")) {
+			// prepending to a list
+			assignment.operator = "+";
+			assignment.prepend = true;
+			if (!name().equals(assignment.column)) {
+				throw error("Only " + assignment.column + " can be prepended to");
+			}
+		}
+		return assignment;
+	}
+
+	private Delete delete() throws SQLException {
+		Delete delete = new Delete();
+		if (!peek().is("FROM")) {
+			do {
+				Assignment column = new Assignment();
+				column.column = name();
+				if (accept("[")) {
+					column.element = term();
+					expect("]");
+				}
+				delete.columns.add(column);
+			} while (accept(","));
+		}
+		expect("FROM");
+		tableName(delete);
+		using(delete);
+		expect("WHERE");
+		relations(delete.where);
+		conditions(delete);
+		return delete;
+	}
+
+	private void using(Modification modification) throws SQLException {
+		if (!accept("USING")) {
+			return;
+		}
+		do {
+			if (accept("TTL")) {
+				modification.ttl = ((Number) term()).intValue();
+			} else {
+				expect("TIMESTAMP");
+				modification.timestamp = ((Number) term()).longValue();
+			}
+		} while (accept("AND"));
+	}
+
+	private void conditions(Modification modification) throws SQLException {
+		if (!accept("IF")) {
+			return;
+		}
+		if (accept("EXISTS")) {
+			modification.ifExists = true;
+		} else if (accept("NOT")) {
+			expect("EXISTS");
+			modification.ifNotExists = true;
+		} else {
+			relations(modification.conditions);
+		}
+	}
+
+	private Batch batch() throws SQLException {
+		Batch batch = new Batch();
+		if (!accept("UNLOGGED")) {
+			accept("COUNTER");
+		}
+		expect("BATCH");
+		if (accept("USING")) {
+			expect("TIMESTAMP");
+			term();
+		}
+		while (!accept("APPLY")) {
+			Statement statement = statement();
+			if (!(statement instanceof Modification)) {
+				throw error("Only INSERT, UPDATE and DELETE can be batched");
+			}
+			batch.statements.add((Modification) statement);
+			accept(";");
+		}
+		expect("BATCH");
+		return batch;
+	}
+
+	private Statement create() throws SQLException {
+		if (accept("KEYSPACE") || accept("SCHEMA")) {
+			CreateKeyspace create = new CreateKeyspace();
+			create.ifNotExists = ifNotExists();
+			create.keyspace = name();
+			skipRest();
+			return create;
+		}
+		if (!accept("TABLE") && !accept("COLUMNFAMILY")) {
+			skipRest();
+			return new OtherSchemaChange();
+		}
+		CreateTable create = new CreateTable();
+		create.ifNotExists = ifNotExists();
+		tableName(create);
+		expect("(");
+		do {
+			if (accept("PRIMARY")) {
+				expect("KEY");
+				expect("(");
+				if (accept("(")) {
+					do {
+						create.partitionKey.add(name());
+					} while (accept(","));
+					expect(")");
+				} else {
+					create.partitionKey.add(name());
+				}
+				while (accept(",")) {
+					create.clusteringColumns.add(name());
+				}
+				expect(")");
+			} else {
+				String column = name();
+				create.columns.put(column, type());
+				if (accept("PRIMARY")) {
+					expect("KEY");
+					create.partitionKey.add(column);
+				} else {
+					accept("STATIC");
+				}
+			}
+		} while (accept(","));
+		expect(")");
+		if (create.partitionKey.isEmpty()) {
+			throw error("No PRIMARY KEY specified for table " + create.table);
+		}
+		if (accept("WITH")) {
+			while (peek().type != TokenType.END && !peek().is(";")) {
+				if (accept("CLUSTERING")) {
+					expect("ORDER");
+					expect("BY");
+					expect("(");
+					do {
+						String column = name();
+						if (accept("DESC")) {
+							create.descending.add(column);
+						} else {
+							accept("ASC");
+						}
+					} while (accept(","));
+					expect(")");
+				} else {
+					next();
+				}
+			}
+		}
+		return create;
+	}
+
+	private Statement drop() throws SQLException {
+		if (accept("KEYSPACE") || accept("SCHEMA")) {
+			DropKeyspace drop = new DropKeyspace();
+			drop.ifExists = ifExists();
+			drop.keyspace = name();
+			return drop;
+		}
+		if (!accept("TABLE") && !accept("COLUMNFAMILY")) {
+			skipRest();
+			return new OtherSchemaChange();
+		}
+		DropTable drop = new DropTable();
+		drop.ifExists = ifExists();
+		tableName(drop);
+		return drop;
+	}
+
+	private Statement alter() throws SQLException {
+		if (!accept("TABLE") && !accept("COLUMNFAMILY")) {
+			skipRest();
+			return new OtherSchemaChange();
+		}
+		AlterTable alter = new AlterTable();
+		tableName(alter);
+		if (accept("ADD")) {
+			boolean parenthesized = accept("(");
+			do {
+				String column = name();
+				alter.addedColumns.put(column, type());
+			} while (accept(","));
+			if (parenthesized) {
+				expect(")");
+			}
+		} else if (accept("DROP")) {
+			boolean parenthesized = accept("(");
+			do {
+				alter.droppedColumns.add(name());
+			} while (accept(","));
+			if (parenthesized) {
+				expect(")");
+			}
+		} else if (accept("RENAME")) {
+			do {
+				String from = name();
+				expect("TO");
+				alter.renamedColumns.put(from, name());
+			} while (accept("AND"));
+		} else {
+			skipRest();
+		}
+		return alter;
+	}
+
+	private boolean ifNotExists() throws SQLException {
+		if (accept("IF")) {
+			expect("NOT");
+			expect("EXISTS");
+			return true;
+		}
+		return false;
+	}
+
+	private boolean ifExists() throws SQLException {
+		if (accept("IF")) {
+			expect("EXISTS");
+			return true;
+		}
+		return false;
+	}
+
+	private void relations(List<Relation> relations) throws SQLException {
+		do {
+			relations.add(relation());
+		} while (accept("AND"));
+	}
+
+	private Relation relation() throws SQLException {
+		Relation relation = new Relation();
+		if (peek().is("TOKEN") && peek(1).is("(")) {
+			next();
+			next();
+			relation.token = true;
+			do {
+				relation.columns.add(name());
+			} while (accept(","));
+			expect(")");
+		} else {
+			relation.columns.add(name());
+		}
+		Token operator = next();
+		if (operator.is("IN")) {
+			relation.operator = "IN";
+			expect("(");
+			if (!peek().is(")")) {
+				do {
+					relation.values.add(term());
+				} while (accept(","));
+			}
+			expect(")");
+			return relation;
+		}
+		if (operator.is("CONTAINS")) {
+			relation.operator = accept("KEY") ? "CONTAINS KEY" : "CONTAINS";
+		} else if (operator.type == TokenType.SYMBOL && (operator.text.equals("=") || operator.text.equals("<")
+				|| operator.text.equals(">") || operator.text.equals("<=") || operator.text.equals(">=") || operator.text.equals("!="))) {
+			relation.operator = operator.text;
+		} else {
+			throw error("Expected a relation operator, found " + operator);
+		}
+		if (relation.token && peek().is("TOKEN") && peek(1).is("(")) {
+			next();
+			next();
+			relation.tokenOfValues = true;
+			do {
+				relation.values.add(term());
+			} while (accept(","));
+			expect(")");
+		} else {
+			relation.values.add(term());
+		}
+		return relation;
+	}
+
+	/**
+	 * A literal, bind marker or collection. <code>null</code> is returned as
+	 * {@link #NULL}.
+	 */
+	private Object term() throws SQLException {
+		Token token = next();
+		switch (token.type) {
+		case STRING:
+			return token.text;
+		case NUMBER:
+			return number(token.text);
+		case UUID:
+			return UUID.fromString(token.text);
+		case BLOB:
+			return blob(token.text.substring(2));
+		case MARKER:
+			if (parameters == null || !parameters.hasNext()) {
+				throw error("No value bound to marker " + token.text);
+			}
+			Object value = parameters.next();
+			return value == null ? NULL : value;
+		case NAME:
+			if (token.is("null")) {
+				return NULL;
+			} else if (token.is("true") || token.is("false")) {
+				return Boolean.valueOf(token.text.toLowerCase());
+			} else if (token.is("NaN")) {
+				return Double.NaN;
+			} else if (token.is("Infinity")) {
+				return Double.POSITIVE_INFINITY;
+			} else if (accept("(")) {
+				return function(token.text.toLowerCase());
+			}
+			break;
+		case SYMBOL:
+			if (token.text.equals("-")) {
+				Object number = term();
+				if (number instanceof Long) {
+					return -(Long) number;
+				} else if (number instanceof BigDecimal) {
+					return ((BigDecimal) number).negate();
+				} else if (number instanceof Double) {
+					return -(Double) number;
+				}
+			} else if (token.text.equals("[")) {
+				List<Object> list = new ArrayList<Object>();
+				if (!accept("]")) {
+					do {
+						list.add(term());
+					} while (accept(","));
+					expect("]");
+				}
+				return list;
+			} else if (token.text.equals("{")) {
+				return braces();
+			}
+			break;
+		default:
+			break;
+		}
+		throw error("Expected a value, found " + token);
+	}
+
+	private Object braces() throws SQLException {
+		if (accept("}")) {
+			return new LinkedHashMap<Object, Object>();
+		}
+		Object first = term();
+		if (accept(":")) {
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+			map.put(first, term());
+			while (accept(",")) {
+				Object key = term();
+				expect(":");
+				map.put(key, term());
+			}
+			expect("}");
+			return map;
+		}
+		Set<Object> set = new LinkedHashSet<Object>();
+		set.add(first);
+		while (accept(",")) {
+			set.add(term());
+		}
+		expect("}");
+		return set;
+	}
+
+	private Object function(String name) throws SQLException {
+		List<Object> arguments = new ArrayList<Object>();
+		if (!accept(")")) {
+			do {
+				arguments.add(term());
+			} while (accept(","));
+			expect(")");
+		}
+		if (name.equals("now")) {
+			return timeUuid(System.currentTimeMillis());
+		} else if (name.equals("uuid")) {
+			return UUID.randomUUID();
+		} else if (name.equals("dateof") || name.equals("totimestamp")) {
+			return new Date(millis((UUID) arguments.get(0)));
+		} else if (name.equals("unixtimestampof") || name.equals("tounixtimestamp")) {
+			return millis((UUID) arguments.get(0));
+		}
+		throw error("Unsupported function " + name);
+	}
+
+	private String type() throws SQLException {
+		String type = name();
+		if (accept("<")) {
+			StringBuilder generic = new StringBuilder(type).append('<');
+			generic.append(type());
+			while (accept(",")) {
+				generic.append(", ").append(type());
+			}
+			expect(">");
+			type = generic.append('>').toString();
+		}
+		return type;
+	}
+
+	private void tableName(Statement statement) throws SQLException {
+		String name = name();
+		if (accept(".")) {
+			statement.keyspace = name;
+			name = name();
+		}
+		statement.table = name;
+	}
+
+	private String name() throws SQLException {
+		Token token = next();
+		if (token.type == TokenType.QUOTED_NAME) {
+			return token.text;
+		} else if (token.type == TokenType.NAME) {
+			return token.text.toLowerCase();
+		}
+		throw error("Expected a name, found " + token);
+	}
+
+	private void skipRest() {
+		while (peek().type != TokenType.END && !peek().is(";")) {
+			position++;
+		}
+	}
+
+	private boolean accept(String keyword) {
+		if (peek().is(keyword)) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(String keyword) throws SQLException {
+		if (!accept(keyword)) {
+			throw error("Expected " + keyword + ", found " + peek());
+		}
+	}
+
+	private Token peek() {
+		return peek(0);
+	}
+
+	private Token peek(int ahead) {
+		return tokens.get(Math.min(position + ahead, tokens.size() - 1));
+	}
+
+	private Token next() {
+		Token token = peek();
+		if (position < tokens.size() - 1) {
+			position++;
+		}
+		return token;
+	}
+
+	private SQLException error(String message) {
+		return new SQLException("line 1: " + message + " in " + cql);
+	}
+
+	/**
+	 * A version 1 UUID of the time, with a random clock sequence and node.
+	 */
+	static UUID timeUuid(long millis) {
+		long timestamp = millis * 10000 + GREGORIAN_OFFSET;
+		long mostSigBits = (timestamp << 32) | ((timestamp >>> 16) & 0xFFFF0000L) | 0x1000L | ((timestamp >>> 48) & 0x0FFFL);
+		long leastSigBits = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return new UUID(mostSigBits, leastSigBits);
+	}
+
+	static long millis(UUID timeUuid) {
+		return (timeUuid.timestamp() - GREGORIAN_OFFSET) / 10000;
+	}
+
+	private static Object number(String text) {
+		if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+			return text.length() < 19 ? (Object) Long.valueOf(text) : new BigDecimal(text);
+		}
+		return new BigDecimal(text);
+	}
+
+	private static ByteBuffer blob(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+
+	private static List<Token> tokenize(String cql) throws SQLException {
+		List<Token> tokens = new ArrayList<Token>();
+		int length = cql.length();
+		int i = 0;
+		while (i < length) {
+			char c = cql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '-' && i + 1 < length && cql.charAt(i + 1) == '-' || c == '/' && i + 1 < length && cql.charAt(i + 1) == '/') {
+				while (i < length && cql.charAt(i) != '\n') {
+					i++;
+				}
+			} else if (c == '/' && i + 1 < length && cql.charAt(i + 1) == '*') {
+				int end = cql.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+			} else if (c == '\'' || c == '"') {
+				StringBuilder text = new StringBuilder();
+				i++;
+				while (true) {
+					if (i >= length) {
+						throw new SQLException("Unterminated " + (c == '\'' ? "string" : "quoted name") + " in " + cql);
+					}
+					char d = cql.charAt(i++);
+					if (d == c) {
+						if (i < length && cql.charAt(i) == c) {
+							text.append(c);
+							i++;
+							continue;
+						}
+						break;
+					}
+					text.append(d);
+				}
+				tokens.add(new Token(c == '\'' ? TokenType.STRING : TokenType.QUOTED_NAME, text.toString()));
+			} else if (c == '$' && i + 1 < length && cql.charAt(i + 1) == '$') {
+				int end = cql.indexOf("$$", i + 2);
+				if (end < 0) {
+					throw new SQLException("Unterminated $$ string in " + cql);
+				}
+				tokens.add(new Token(TokenType.STRING, cql.substring(i + 2, end)));
+				i = end + 2;
+			} else {
+				Matcher uuid = UUID_LITERAL.matcher(cql).region(i, length);
+				Matcher blob = BLOB.matcher(cql).region(i, length);
+				Matcher number = NUMBER.matcher(cql).region(i, length);
+				if (uuid.lookingAt()) {
+					tokens.add(new Token(TokenType.UUID, uuid.group()));
+					i = uuid.end();
+				} else if (blob.lookingAt()) {
+					tokens.add(new Token(TokenType.BLOB, blob.group()));
+					i = blob.end();
+				} else if (number.lookingAt()) {
+					tokens.add(new Token(TokenType.NUMBER, number.group()));
+					i = number.end();
+				} else if (Character.isLetter(c) || c == '_') {
+					int start = i;
+					while (i < length && (Character.isLetterOrDigit(cql.charAt(i)) || cql.charAt(i) == '_')) {
+						i++;
+					}
+					tokens.add(new Token(TokenType.NAME, cql.substring(start, i)));
+				} else if (c == '?') {
+					tokens.add(new Token(TokenType.MARKER, "?"));
+					i++;
+				} else if (c == ':' && i + 1 < length && (Character.isLetter(cql.charAt(i + 1)) || cql.charAt(i + 1) == '_')) {
+					int start = i++;
+					while (i < length && (Character.isLetterOrDigit(cql.charAt(i)) || cql.charAt(i) == '_')) {
+						i++;
+					}
+					tokens.add(new Token(TokenType.MARKER, cql.substring(start, i)));
+				} else if ((c == '<' || c == '>' || c == '!') && i + 1 < length && cql.charAt(i + 1) == '=') {
+					tokens.add(new Token(TokenType.SYMBOL, cql.substring(i, i + 2)));
+					i += 2;
+				} else if ("(),;=<>.*:{}[]+-".indexOf(c) >= 0) {
+					tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c)));
+					i++;
+				} else {
+					throw new SQLException("Unexpected character '" + c + "' in " + cql);
+				}
+			}
+		}
+		tokens.add(new Token(TokenType.END, ""));
+		return tokens;
+	}
+}
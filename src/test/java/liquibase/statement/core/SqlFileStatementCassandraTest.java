@@ -0,0 +1,114 @@
+package liquibase.statement.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import liquibase.database.core.CassandraDatabase;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import liquibase.standin.CassandraStandIn;
+
+public class SqlFileStatementCassandraTest {
+
+	private static final String SCRIPT = "cassandra/seed.cql";
+
+	private CassandraStandIn node;
+	private CassandraDatabase database;
+
+	@Before
+	public void setUp() throws Exception {
+		node = new CassandraStandIn();
+		database = node.connect("abc");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		database.close();
+		node.shutdown();
+	}
+
+	@Test
+	public void statementsRunOneByOne() throws Exception {
+		assertEquals(13, statement().run());
+
+		assertEquals(13, scriptStatements().size());
+		assertSeeded();
+	}
+
+	@Test
+	public void writesOfOnePartitionAreBatched() throws Exception {
+		assertEquals(13, statement().setBatchSize(2).run());
+
+		assertEquals(Arrays.asList(
+				"CREATE TABLE seed (id int, n int, v text, PRIMARY KEY (id, n))",
+				"CREATE TABLE seed_counts (id int PRIMARY KEY, c counter)",
+				batch("INSERT INTO seed (id, n, v) VALUES (1, 1, 'a')", "INSERT INTO seed (id, n, v) VALUES (1, 2, 'a')"),
+				// another partition ends the batch
+				"INSERT INTO seed (id, n, v) VALUES (1, 3, 'a')",
+				batch("INSERT INTO seed (id, n, v) VALUES (2, 1, 'a')", "INSERT INTO seed (id, n, v) VALUES (2, 2, 'a')"),
+				// a conditional update runs on its own
+				"UPDATE seed SET v = 'b' WHERE id = 1 AND n = 1 IF EXISTS",
+				// a row already written by the batch ends it, the writes would share a timestamp
+				"INSERT INTO seed (id, n, v) VALUES (3, 1, 'a')",
+				"UPDATE seed SET v = 'c' WHERE id = 3 AND n = 1",
+				// counter updates run on their own
+				"UPDATE seed_counts SET c = c + 1 WHERE id = 1",
+				"UPDATE seed_counts SET c = c + 1 WHERE id = 1",
+				"DELETE FROM seed WHERE id = 2 AND n = 2"), scriptStatements());
+		assertSeeded();
+	}
+
+	@Test
+	public void batchesHoldAPartitionUpToTheBatchSize() throws Exception {
+		statement().setBatchSize(100).run();
+
+		List<String> statements = scriptStatements();
+		assertEquals(10, statements.size());
+		assertEquals(batch("INSERT INTO seed (id, n, v) VALUES (1, 1, 'a')", "INSERT INTO seed (id, n, v) VALUES (1, 2, 'a')",
+				"INSERT INTO seed (id, n, v) VALUES (1, 3, 'a')"), statements.get(2));
+		assertEquals(batch("INSERT INTO seed (id, n, v) VALUES (2, 1, 'a')", "INSERT INTO seed (id, n, v) VALUES (2, 2, 'a')"),
+				statements.get(3));
+		assertSeeded();
+	}
+
+	private SqlFileStatementCassandra statement() {
+		return new SqlFileStatementCassandra(database, SCRIPT, false, null, new ClassLoaderResourceAccessor());
+	}
+
+	private List<String> scriptStatements() {
+		List<String> statements = new ArrayList<String>();
+		for (String statement : node.getStatements()) {
+			if (statement.contains(" seed ") || statement.contains(" seed_counts ")) {
+				statements.add(statement);
+			}
+		}
+		return statements;
+	}
+
+	private void assertSeeded() throws Exception {
+		Map<String, String> values = new HashMap<String, String>();
+		for (Map<String, Object> row : node.query("abc", "SELECT id, n, v FROM seed")) {
+			values.put(row.get("id") + "/" + row.get("n"), (String) row.get("v"));
+		}
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put("1/1", "b");
+		expected.put("1/2", "a");
+		expected.put("1/3", "a");
+		expected.put("2/1", "a");
+		expected.put("3/1", "c");
+		assertEquals(expected, values);
+		assertEquals(2L, ((Number) node.query("abc", "SELECT c FROM seed_counts WHERE id = 1").get(0).get("c")).longValue());
+	}
+
+	private static String batch(String... statements) {
+		return CassandraDatabase.toUnloggedBatch(Arrays.asList(statements));
+	}
+}
@@ -0,0 +1,58 @@
+package liquibase.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import liquibase.database.core.CassandraDatabase;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.DeleteStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.RawSqlStatement;
+import liquibase.statement.core.SelectFromDatabaseChangeLogLockStatement;
+import liquibase.statement.core.UpdateStatement;
+
+public class CassandraMigrationOrchestratorTest {
+
+	@Test
+	public void sqlGenerationIsThreadSafe() throws Exception {
+		SqlGeneratorFactory.reset();
+		assertTrue(CassandraMigrationOrchestrator.makeSqlGeneratorFactoryThreadSafe());
+		// again, e.g. for the next window
+		assertTrue(CassandraMigrationOrchestrator.makeSqlGeneratorFactoryThreadSafe());
+
+		final CassandraDatabase database = new CassandraDatabase();
+		final SqlStatement[] statements = {
+				new InsertStatement(null, "abc", "t").addColumnValue("id", 1),
+				new UpdateStatement(null, "abc", "t").addNewColumnValue("v", 2).setWhereClause("id = 1"),
+				new DeleteStatement(null, "abc", "t").setWhere("id = 1"),
+				new SelectFromDatabaseChangeLogLockStatement("LOCKED"),
+				new RawSqlStatement("SELECT * FROM abc.t") };
+		ExecutorService threads = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 400; i++) {
+				final SqlStatement statement = statements[i % statements.length];
+				results.add(threads.submit(new Callable<String>() {
+					public String call() {
+						return SqlGeneratorFactory.getInstance().generateSql(statement, database)[0].toSql();
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(results.get(i % statements.length).get(), results.get(i).get());
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package liquibase.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CqlStatementSplitterTest {
+
+	@Test
+	public void splitsOnTheDelimiter() throws IOException {
+		assertEquals(Arrays.asList("CREATE TABLE a (id int PRIMARY KEY)", "INSERT INTO a (id) VALUES (1)"),
+				split("CREATE TABLE a (id int PRIMARY KEY);\n\n  INSERT INTO a (id) VALUES (1);\n", null, false));
+	}
+
+	@Test
+	public void lastStatementNeedsNoDelimiter() throws IOException {
+		assertEquals(Arrays.asList("SELECT * FROM a", "SELECT * FROM b"), split("SELECT * FROM a;SELECT * FROM b", null, false));
+	}
+
+	@Test
+	public void emptyStatementsAreSkipped() throws IOException {
+		assertEquals(Arrays.asList("SELECT * FROM a"), split(";;\n;SELECT * FROM a;;\n", null, false));
+	}
+
+	@Test
+	public void delimitersInStringsDoNotSplit() throws IOException {
+		assertEquals(Arrays.asList("INSERT INTO a (id, v) VALUES (1, 'it''s; here')", "SELECT \"odd;\"\"name\" FROM a"),
+				split("INSERT INTO a (id, v) VALUES (1, 'it''s; here');SELECT \"odd;\"\"name\" FROM a;", null, false));
+	}
+
+	@Test
+	public void delimitersInDollarStringsDoNotSplit() throws IOException {
+		String function = "CREATE FUNCTION f (v text) RETURNS NULL ON NULL INPUT RETURNS text LANGUAGE java AS $$ return v + \";\"; $$";
+		assertEquals(Arrays.asList(function, "SELECT f(v) FROM a"), split(function + ";\nSELECT f(v) FROM a;", null, false));
+	}
+
+	@Test
+	public void delimitersInMapLiteralsDoNotSplit() throws IOException {
+		assertEquals(Arrays.asList("INSERT INTO a (id, m) VALUES (1, {'k': 'v', 'x': {'y': 2}})", "ALTER TABLE a WITH comment = 'c'"),
+				split("INSERT INTO a (id, m) VALUES (1, {'k': 'v', 'x': {'y': 2}});ALTER TABLE a WITH comment = 'c';", null, false));
+		assertEquals(Arrays.asList("UPDATE a SET s = s + {1; 2} WHERE id = 1"), split("UPDATE a SET s = s + {1; 2} WHERE id = 1;", null, false));
+	}
+
+	@Test
+	public void delimitersInCommentsDoNotSplit() throws IOException {
+		assertEquals(Arrays.asList("SELECT * -- one; two\nFROM a", "SELECT * // three;\nFROM b", "SELECT /* four; */ * FROM c"),
+				split("SELECT * -- one; two\nFROM a;SELECT * // three;\nFROM b;SELECT /* four; */ * FROM c;", null, false));
+	}
+
+	@Test
+	public void commentsAreStripped() throws IOException {
+		assertEquals(Arrays.asList("SELECT *  \nFROM a", "SELECT   * FROM b"),
+				split("-- heading\nSELECT * -- one; two\nFROM a;SELECT /* three; */ * FROM b;\n-- trailing; comment\n", null, true));
+	}
+
+	@Test
+	public void statementsOfOnlyCommentsAreSkipped() throws IOException {
+		assertEquals(Arrays.asList("SELECT * FROM a"), split("SELECT * FROM a;\n-- done\n/* really; */\n", null, false));
+	}
+
+	@Test
+	public void blockCommentsDoNotNest() throws IOException {
+		// as in Cassandra, the first */ ends the comment
+		assertEquals(Arrays.asList("SELECT /* a /* b */ * FROM a", "c */ SELECT * FROM b"),
+				split("SELECT /* a /* b */ * FROM a;c */ SELECT * FROM b;", null, false));
+	}
+
+	@Test
+	public void unterminatedStringsAndCommentsFail() {
+		for (String script : new String[] { "SELECT * FROM a;\nSELECT 'x FROM b;", "SELECT * FROM a;\nSELECT \"x FROM b;",
+				"SELECT * FROM a;\nSELECT $$ x FROM b;", "SELECT * FROM a;\nSELECT /* x FROM b;" }) {
+			try {
+				split(script, null, false);
+				fail(script);
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("Unterminated"));
+				assertTrue(e.getMessage(), e.getMessage().endsWith("line 2"));
+			}
+		}
+	}
+
+	@Test
+	public void multiCharacterDelimiters() throws IOException {
+		assertEquals(Arrays.asList("SELECT ';' FROM a; SELECT * FROM b", "SELECT * FROM c"),
+				split("SELECT ';' FROM a; SELECT * FROM b\nGO\nSELECT * FROM c\nGO", "\nGO", false));
+		// a partial match is part of the statement
+		assertEquals(Arrays.asList("SELECT a;b FROM t", "SELECT c; FROM u"), split("SELECT a;b FROM t;;SELECT c; FROM u", ";;", false));
+	}
+
+	@Test
+	public void delimitersAreLiteral() throws IOException {
+		assertEquals(Arrays.asList("SELECT * FROM a", "SELECT * FROM b"), split("SELECT * FROM a.*SELECT * FROM b", ".*", false));
+	}
+
+	@Test
+	public void tracksTheLineAStatementStartsOn() throws IOException {
+		CqlStatementSplitter splitter = new CqlStatementSplitter(new StringReader(
+				"SELECT * FROM a;\n\n-- comment\n/* block\ncomment */\nSELECT 'multi\nline'\nFROM b;  SELECT * FROM c;\nSELECT\n\n"), null, false);
+		long[] lines = { 1, 6, 8, 9 };
+		for (long line : lines) {
+			splitter.nextStatement();
+			assertEquals(line, splitter.getStatementLine());
+		}
+		assertEquals(null, splitter.nextStatement());
+	}
+
+	private static List<String> split(String script, String delimiter, boolean stripComments) throws IOException {
+		CqlStatementSplitter splitter = new CqlStatementSplitter(new StringReader(script), delimiter, stripComments);
+		List<String> statements = new ArrayList<String>();
+		String statement;
+		while ((statement = splitter.nextStatement()) != null) {
+			statements.add(statement);
+		}
+		splitter.close();
+		return statements;
+	}
+}
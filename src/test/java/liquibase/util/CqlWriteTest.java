@@ -0,0 +1,54 @@
+package liquibase.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CqlWriteTest {
+
+	@Test
+	public void insertValuesByColumn() {
+		CqlWrite write = CqlWrite.parse("INSERT INTO ks.\"Seed\" (id, \"Name\", v) VALUES (1, 'it''s, (a)', {'k': [1, 2]}) USING TTL 60");
+
+		assertEquals("ks", write.getKeyspace());
+		assertEquals("Seed", write.getTable());
+		assertEquals(values("id", "1", "Name", "'it''s, (a)'", "v", "{'k': [1, 2]}"), write.getValues());
+	}
+
+	@Test
+	public void updateAndDeleteValuesFromTheWhereClause() {
+		CqlWrite update = CqlWrite.parse("update Seed using ttl 60 set v = 'where id = 2' WHERE ID = 1 and n = 'and'");
+		assertNull(update.getKeyspace());
+		assertEquals("seed", update.getTable());
+		assertEquals(values("id", "1", "n", "'and'"), update.getValues());
+
+		CqlWrite delete = CqlWrite.parse("DELETE v FROM seed USING TIMESTAMP 5 WHERE id = 1 AND n = 2");
+		assertEquals("seed", delete.getTable());
+		assertEquals(values("id", "1", "n", "2"), delete.getValues());
+	}
+
+	@Test
+	public void writesWithoutLiteralKeysAreNotRead() {
+		assertNull(CqlWrite.parse("UPDATE seed SET v = 'b' WHERE id = 1 IF EXISTS"));
+		assertNull(CqlWrite.parse("INSERT INTO seed (id, v) VALUES (1, 'a') IF NOT EXISTS"));
+		assertNull(CqlWrite.parse("INSERT INTO seed (id, v) VALUES (?, ?)"));
+		assertNull(CqlWrite.parse("INSERT INTO seed (id, v) VALUES (now(), 'a')"));
+		assertNull(CqlWrite.parse("INSERT INTO seed JSON '{\"id\": 1}'"));
+		assertNull(CqlWrite.parse("DELETE FROM seed WHERE id IN (1, 2)"));
+		assertNull(CqlWrite.parse("DELETE FROM seed WHERE id = 1 AND n >= 2"));
+		assertNull(CqlWrite.parse("SELECT * FROM seed WHERE id = 1"));
+		assertNull(CqlWrite.parse("BEGIN BATCH INSERT INTO seed (id) VALUES (1) APPLY BATCH"));
+	}
+
+	private static Map<String, String> values(String... columnsAndValues) {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (int i = 0; i < columnsAndValues.length; i += 2) {
+			values.put(columnsAndValues[i], columnsAndValues[i + 1]);
+		}
+		return values;
+	}
+}
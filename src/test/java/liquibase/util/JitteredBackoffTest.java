@@ -0,0 +1,57 @@
+package liquibase.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JitteredBackoffTest {
+
+	@Test
+	public void delaysDoubleUpToTheMaximum() {
+		JitteredBackoff backoff = new JitteredBackoff(100, 1000, new Random(42));
+		long[] ceilings = { 100, 200, 400, 800, 1000, 1000 };
+		for (int retry = 0; retry < ceilings.length; retry++) {
+			for (int i = 0; i < 100; i++) {
+				long delay = backoff.getDelay(retry);
+				assertTrue("retry " + retry + ": " + delay, delay >= ceilings[retry] / 2 && delay <= ceilings[retry]);
+			}
+		}
+	}
+
+	@Test
+	public void delaysAreJittered() {
+		JitteredBackoff backoff = new JitteredBackoff(100, 1000, new Random(42));
+		long first = backoff.getDelay(3);
+		boolean differs = false;
+		for (int i = 0; i < 20 && !differs; i++) {
+			differs = backoff.getDelay(3) != first;
+		}
+		assertTrue(differs);
+	}
+
+	@Test
+	public void largeRetriesDoNotOverflow() {
+		JitteredBackoff backoff = new JitteredBackoff(1, Long.MAX_VALUE / 2, new Random(42));
+		for (int retry : new int[] { 62, 63, 64, 1000, Integer.MAX_VALUE }) {
+			long delay = backoff.getDelay(retry);
+			assertTrue("retry " + retry + ": " + delay, delay >= Long.MAX_VALUE / 4 && delay <= Long.MAX_VALUE / 2);
+		}
+	}
+
+	@Test
+	public void sleepStopsAtTheDeadline() throws InterruptedException {
+		JitteredBackoff backoff = new JitteredBackoff(10000, 10000);
+		assertFalse(backoff.sleep(0, System.currentTimeMillis() - 1));
+		long start = System.currentTimeMillis();
+		assertTrue(backoff.sleep(0, start + 20));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maximumBelowBaseIsRejected() {
+		new JitteredBackoff(100, 50);
+	}
+}